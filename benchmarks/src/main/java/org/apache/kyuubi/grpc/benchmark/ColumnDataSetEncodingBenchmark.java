@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.benchmark;
+
+import com.google.protobuf.*;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.jdbc.ColumnData;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the legacy per-cell {@link Any} encoding of {@link ColumnDataSet}
+ * with the typed column vectors, for a fact-table shaped batch mixing
+ * long, double and string columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnDataSetEncodingBenchmark {
+
+  @Param({"10", "100"})
+  public int columns;
+
+  @Param({"1000", "10000"})
+  public int rows;
+
+  private List<List<Object>> table;
+  private ColumnDataSet anyDataSet;
+  private ColumnDataSet typedDataSet;
+  private byte[] anyBytes;
+  private byte[] typedBytes;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    table = new ArrayList<>(columns);
+    for (int c = 0; c < columns; c++) {
+      List<Object> column = new ArrayList<>(rows);
+      for (int r = 0; r < rows; r++) {
+        switch (c % 3) {
+          case 0:
+            column.add(random.nextLong());
+            break;
+          case 1:
+            column.add(random.nextDouble());
+            break;
+          default:
+            column.add("value-" + random.nextInt(100000));
+            break;
+        }
+      }
+      table.add(column);
+    }
+    anyDataSet = encodeAny();
+    typedDataSet = encodeTyped();
+    anyBytes = anyDataSet.toByteArray();
+    typedBytes = typedDataSet.toByteArray();
+  }
+
+  @TearDown
+  public void report() {
+    System.out.printf("%n[columns=%d, rows=%d] serialized size: any=%d bytes, typed=%d bytes%n",
+      columns, rows, anyBytes.length, typedBytes.length);
+  }
+
+  private static TypeId typeOf(int column) {
+    switch (column % 3) {
+      case 0:
+        return TypeId.LONG;
+      case 1:
+        return TypeId.DOUBLE;
+      default:
+        return TypeId.STRING;
+    }
+  }
+
+  private ColumnDataSet encodeAny() {
+    ColumnDataSet.Builder builder = ColumnDataSet.newBuilder();
+    for (List<Object> column : table) {
+      ColumnData.Builder data = ColumnData.newBuilder();
+      for (Object value : column) {
+        Message message;
+        if (value instanceof Long) {
+          message = Int64Value.of((Long) value);
+        } else if (value instanceof Double) {
+          message = DoubleValue.of((Double) value);
+        } else {
+          message = StringValue.of((String) value);
+        }
+        data.addValues(Any.pack(message));
+      }
+      builder.addColumns(data);
+    }
+    return builder.build();
+  }
+
+  private ColumnDataSet encodeTyped() {
+    ColumnDataSet.Builder builder = ColumnDataSet.newBuilder();
+    for (int c = 0; c < table.size(); c++) {
+      builder.addColumns(ColumnVectors.encode(typeOf(c), table.get(c)));
+    }
+    return builder.build();
+  }
+
+  @Benchmark
+  public byte[] serializeAny() {
+    return encodeAny().toByteArray();
+  }
+
+  @Benchmark
+  public byte[] serializeTyped() {
+    return encodeTyped().toByteArray();
+  }
+
+  @Benchmark
+  public void deserializeAny(Blackhole bh) throws InvalidProtocolBufferException {
+    ColumnDataSet dataSet = ColumnDataSet.parseFrom(anyBytes);
+    for (int c = 0; c < dataSet.getColumnsCount(); c++) {
+      ColumnData column = dataSet.getColumns(c);
+      for (int r = 0; r < column.getValuesCount(); r++) {
+        Any any = column.getValues(r);
+        switch (c % 3) {
+          case 0:
+            bh.consume(any.unpack(Int64Value.class).getValue());
+            break;
+          case 1:
+            bh.consume(any.unpack(DoubleValue.class).getValue());
+            break;
+          default:
+            bh.consume(any.unpack(StringValue.class).getValue());
+            break;
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void deserializeTyped(Blackhole bh) throws InvalidProtocolBufferException {
+    ColumnDataSet dataSet = ColumnDataSet.parseFrom(typedBytes);
+    for (int c = 0; c < dataSet.getColumnsCount(); c++) {
+      ColumnData column = dataSet.getColumns(c);
+      int rowCount = ColumnVectors.rowCount(column);
+      for (int r = 0; r < rowCount; r++) {
+        bh.consume(ColumnVectors.get(column, r));
+      }
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.benchmark;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.jdbc.ColumnData;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of a {@link ColumnDataSet} of typed vectors, cycling
+ * through the common column types, at varying widths and row counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnDataSetSerDeBenchmark {
+
+  private static final TypeId[] TYPES = {
+    TypeId.INT, TypeId.LONG, TypeId.DOUBLE, TypeId.STRING, TypeId.TIMESTAMP, TypeId.BOOLEAN};
+
+  @Param({"1", "10", "100"})
+  public int columns;
+
+  @Param({"100", "10000"})
+  public int rows;
+
+  private List<List<Object>> table;
+  private ColumnDataSet dataSet;
+  private byte[] bytes;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    long now = System.currentTimeMillis();
+    table = new ArrayList<>(columns);
+    for (int c = 0; c < columns; c++) {
+      List<Object> column = new ArrayList<>(rows);
+      for (int r = 0; r < rows; r++) {
+        if (random.nextInt(20) == 0) {
+          column.add(null);
+          continue;
+        }
+        switch (TYPES[c % TYPES.length]) {
+          case INT:
+            column.add(random.nextInt());
+            break;
+          case LONG:
+            column.add(random.nextLong());
+            break;
+          case DOUBLE:
+            column.add(random.nextDouble());
+            break;
+          case STRING:
+            column.add("value-" + random.nextInt(100000));
+            break;
+          case TIMESTAMP:
+            column.add(new Timestamp(now - random.nextInt(1000000)));
+            break;
+          default:
+            column.add(random.nextBoolean());
+            break;
+        }
+      }
+      table.add(column);
+    }
+    dataSet = encode();
+    bytes = dataSet.toByteArray();
+  }
+
+  @TearDown
+  public void report() {
+    System.out.printf("%n[columns=%d, rows=%d] serialized size: %d bytes%n", columns, rows, bytes.length);
+  }
+
+  @Benchmark
+  public ColumnDataSet encode() {
+    ColumnDataSet.Builder builder = ColumnDataSet.newBuilder();
+    for (int c = 0; c < table.size(); c++) {
+      builder.addColumns(ColumnVectors.encode(TYPES[c % TYPES.length], table.get(c)));
+    }
+    return builder.build();
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return dataSet.toByteArray();
+  }
+
+  @Benchmark
+  public ColumnDataSet deserialize() throws InvalidProtocolBufferException {
+    return ColumnDataSet.parseFrom(bytes);
+  }
+
+  @Benchmark
+  public void deserializeAndRead(Blackhole bh) throws InvalidProtocolBufferException {
+    ColumnDataSet parsed = ColumnDataSet.parseFrom(bytes);
+    for (ColumnData column : parsed.getColumnsList()) {
+      int rowCount = ColumnVectors.rowCount(column);
+      for (int r = 0; r < rowCount; r++) {
+        bh.consume(ColumnVectors.get(column, r));
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.benchmark;
+
+import io.grpc.Codec;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.compression.Compression;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU cost of compressing a {@link ColumnDataSet} batch with each codec negotiable through
+ * {@link ConnectionConfigs#COMPRESSION}, against the bytes it saves on the wire. The compression
+ * ratio of every shape and codec is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+  /**
+   * text: low cardinality strings, e.g. names and status columns; numeric: ids, counters and
+   * measures; mixed: a fact table row with all of them.
+   */
+  @Param({"text", "numeric", "mixed"})
+  public String shape;
+
+  @Param({ConnectionConfigs.COMPRESSION_IDENTITY, ConnectionConfigs.COMPRESSION_GZIP, ConnectionConfigs.COMPRESSION_LZ4})
+  public String codec;
+
+  @Param({"10000"})
+  public int rows;
+
+  private Codec compressor;
+  private byte[] serialized;
+  private byte[] compressed;
+
+  @Setup
+  public void setUp() throws IOException {
+    compressor = ConnectionConfigs.COMPRESSION_IDENTITY.equals(codec)
+      ? Codec.Identity.NONE
+      : (Codec) Compression.compressorRegistry().lookupCompressor(codec);
+    serialized = batch().toByteArray();
+    compressed = compress();
+  }
+
+  @TearDown
+  public void report() {
+    System.out.printf("%n[shape=%s, codec=%s, rows=%d] %d -> %d bytes, ratio %.2f%n",
+      shape, codec, rows, serialized.length, compressed.length, (double) serialized.length / compressed.length);
+  }
+
+  private ColumnDataSet batch() {
+    Random random = new Random(42);
+    String[] statuses = {"CREATED", "PENDING", "RUNNING", "FINISHED", "FAILED"};
+    List<TypeId> types = new ArrayList<>();
+    switch (shape) {
+      case "text":
+        types.add(TypeId.STRING);
+        types.add(TypeId.STRING);
+        types.add(TypeId.VARCHAR);
+        break;
+      case "numeric":
+        types.add(TypeId.LONG);
+        types.add(TypeId.INT);
+        types.add(TypeId.DOUBLE);
+        break;
+      default:
+        types.add(TypeId.LONG);
+        types.add(TypeId.STRING);
+        types.add(TypeId.TIMESTAMP);
+        types.add(TypeId.DOUBLE);
+        types.add(TypeId.VARCHAR);
+        break;
+    }
+    ColumnDataSet.Builder builder = ColumnDataSet.newBuilder();
+    for (int c = 0; c < types.size(); c++) {
+      ColumnVectors.Builder column = ColumnVectors.builder(types.get(c));
+      for (int r = 0; r < rows; r++) {
+        switch (types.get(c)) {
+          case LONG:
+            column.add(1_000_000L + r);
+            break;
+          case INT:
+            column.add(random.nextInt(1000));
+            break;
+          case DOUBLE:
+            column.add(Math.round(random.nextDouble() * 10000) / 100D);
+            break;
+          case TIMESTAMP:
+            column.add(1_686_000_000_000_000L + r * 1_000_000L + random.nextInt(1000));
+            break;
+          case VARCHAR:
+            column.add(statuses[random.nextInt(statuses.length)]);
+            break;
+          default:
+            column.add("user-" + random.nextInt(500) + "@kyuubi.apache.org");
+            break;
+        }
+      }
+      builder.addColumns(column.build());
+    }
+    return builder.build();
+  }
+
+  @Benchmark
+  public byte[] compress() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(serialized.length);
+    try (OutputStream os = compressor.compress(bytes)) {
+      os.write(serialized);
+    }
+    return bytes.toByteArray();
+  }
+
+  @Benchmark
+  public ColumnDataSet decompressAndParse() throws IOException {
+    try (InputStream is = compressor.decompress(new ByteArrayInputStream(compressed))) {
+      return ColumnDataSet.parseFrom(is);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.benchmark;
+
+import org.apache.kyuubi.grpc.HandleRegistry;
+import org.apache.kyuubi.grpc.common.ConnectionHandle;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention of the handle lookups of many concurrent sessions: a {@link HandleRegistry} keyed
+ * by the string ids vs a synchronized map keyed by the {@link ConnectionHandle} messages.
+ * Every 100th operation replaces a handle, like opening and closing statements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class HandleRegistryBenchmark {
+
+  @Param({"64", "1024"})
+  public int sessions;
+
+  private String[] ids;
+  private HandleRegistry<Object> registry;
+  private Map<ConnectionHandle, Object> synchronizedMap;
+
+  @Setup
+  public void setUp() {
+    ids = new String[sessions];
+    registry = new HandleRegistry<>();
+    synchronizedMap = Collections.synchronizedMap(new HashMap<>());
+    for (int i = 0; i < sessions; i++) {
+      ids[i] = "session-" + i;
+      registry.put(ids[i], new Object());
+      synchronizedMap.put(ConnectionHandle.newBuilder().setId(ids[i]).build(), new Object());
+    }
+  }
+
+  @Benchmark
+  public Object registry() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String id = ids[random.nextInt(sessions)];
+    if (random.nextInt(100) == 0) {
+      registry.remove(id);
+      return registry.put(id, new Object());
+    }
+    return registry.get(id);
+  }
+
+  @Benchmark
+  public Object synchronizedMap() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    // a fresh message per lookup, as parsed from each request
+    ConnectionHandle handle = ConnectionHandle.newBuilder().setId(ids[random.nextInt(sessions)]).build();
+    if (random.nextInt(100) == 0) {
+      synchronizedMap.remove(handle);
+      return synchronizedMap.put(handle, new Object());
+    }
+    return synchronizedMap.get(handle);
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.benchmark;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.apache.kyuubi.grpc.DummyJdbcService;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.TestConnectionService;
+import org.apache.kyuubi.grpc.TestStatementService;
+import org.apache.kyuubi.grpc.client.SimpleBlockingJdbcClient;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a blocking round trip through an in-process gRPC server backed by the test
+ * services, i.e. the cost of the RPC layer plus an embedded H2 database without any network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RpcRoundTripBenchmark {
+
+  private static final String OPERATION_ID = "benchmark-operation";
+
+  @Param({"1", "1000"})
+  public int fetchSize;
+
+  private TestConnectionService connectionService;
+  private DummyJdbcService jdbcService;
+  private Server server;
+  private ManagedChannel channel;
+  private SimpleBlockingJdbcClient client;
+  private String statementId;
+  private List<Long> rows;
+
+  @Setup
+  public void setUp() throws IOException {
+    connectionService = new TestConnectionService();
+    jdbcService = new DummyJdbcService();
+    String serverName = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(serverName)
+      .directExecutor()
+      .addService(connectionService)
+      .addService(new TestStatementService(connectionService))
+      .addService(jdbcService)
+      .build()
+      .start();
+    channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    client = new SimpleBlockingJdbcClient(channel);
+
+    String connectionId = check(client.openConnection(Collections.emptyMap(), Optional.empty())).getIdentifier();
+    statementId = check(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    rows = new ArrayList<>(fetchSize);
+    for (long i = 0; i < fetchSize; i++) {
+      rows.add(i);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+    connectionService.stop();
+  }
+
+  private static DirectStatusResp check(DirectStatusResp resp) {
+    if (resp.getStatus().getStatusCode() != StatusCode.OK) {
+      throw new IllegalStateException(resp.getStatus().getErrorMessage());
+    }
+    return resp;
+  }
+
+  @Benchmark
+  public DirectStatusResp openAndCloseConnection() {
+    String connectionId = check(client.openConnection(Collections.emptyMap(), Optional.empty())).getIdentifier();
+    return client.closeConnection(connectionId);
+  }
+
+  @Benchmark
+  public DirectStatusResp executeQuery() {
+    return check(client.executeQuery(statementId, "SELECT 1"));
+  }
+
+  @Benchmark
+  public GetNextColumnSetResp getNextResultSet() {
+    jdbcService.addResult(OPERATION_ID, rows);
+    return client.getNextResultSet(OPERATION_ID, fetchSize);
+  }
+}
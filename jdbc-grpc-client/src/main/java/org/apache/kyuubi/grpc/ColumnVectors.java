@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc;
+
+import com.google.protobuf.ByteString;
+import org.apache.kyuubi.grpc.jdbc.*;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Encodes and decodes the typed vectors of {@link ColumnData}.
+ *
+ * <p>The physical vector of each {@link TypeId}:
+ * <ul>
+ *   <li>BOOLEAN - bool_values</li>
+ *   <li>TINYINT, SMALLINT, INT - int32_values</li>
+ *   <li>DATE - int32_values, days since epoch</li>
+ *   <li>YEAR_MONTH_INTERVAL - int32_values, months</li>
+ *   <li>LONG - int64_values</li>
+ *   <li>TIME - int64_values, microseconds of the day</li>
+ *   <li>TIMESTAMP, TIMESTAMP_WITH_TIMEZONE, TIMESTAMP_LOCAL_TIMEZONE - int64_values,
+ *   microseconds since epoch</li>
+ *   <li>DAY_TIME_INTERVAL - int64_values, microseconds</li>
+ *   <li>FLOAT - float_values</li>
+ *   <li>DOUBLE - double_values</li>
+ *   <li>DECIMAL, CHAR, VARCHAR, STRING - string_values</li>
+ *   <li>BINARY - binary_values</li>
+ *   <li>NULL - no vector, every row is null</li>
+ * </ul>
+ * Nested and user defined types have no typed vector and still use the
+ * {@link com.google.protobuf.Any} values.
+ */
+public class ColumnVectors {
+
+  private ColumnVectors() {
+  }
+
+  public static boolean isSupported(TypeId typeId) {
+    switch (typeId) {
+      case ARRAY:
+      case MAP:
+      case STRUCT:
+      case UNION:
+      case USER_DEFINED_TYPE:
+      case UNRECOGNIZED:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  public static Builder builder(TypeId typeId) {
+    return new Builder(typeId);
+  }
+
+  public static ColumnData encode(TypeId typeId, List<?> values) {
+    Builder builder = builder(typeId);
+    for (Object value : values) {
+      builder.add(value);
+    }
+    return builder.build();
+  }
+
+  public static int rowCount(ColumnData column) {
+    if (column.getVectorCase() == ColumnData.VectorCase.VECTOR_NOT_SET && column.getRowCount() == 0) {
+      return column.getValuesCount();
+    }
+    return column.getRowCount();
+  }
+
+  public static boolean isNull(ColumnData column, int row) {
+    ByteString nulls = column.getNulls();
+    int index = row >>> 3;
+    return index < nulls.size() && ((nulls.byteAt(index) >>> (row & 7)) & 1) != 0;
+  }
+
+  /**
+   * Decode the value at the given row to its JDBC representation, e.g. DATE to
+   * {@link Date} and DECIMAL to {@link BigDecimal}. Columns without a typed
+   * vector return the raw {@link com.google.protobuf.Any}.
+   */
+  public static Object get(ColumnData column, int row) {
+    if (column.getVectorCase() == ColumnData.VectorCase.VECTOR_NOT_SET) {
+      if (column.getTypeId() == TypeId.NULL || isNull(column, row)) {
+        return null;
+      }
+      return column.getValues(row);
+    }
+    if (isNull(column, row)) {
+      return null;
+    }
+    switch (column.getTypeId()) {
+      case BOOLEAN:
+        return column.getBoolValues().getValues(row);
+      case TINYINT:
+        return (byte) column.getInt32Values().getValues(row);
+      case SMALLINT:
+        return (short) column.getInt32Values().getValues(row);
+      case INT:
+      case YEAR_MONTH_INTERVAL:
+        return column.getInt32Values().getValues(row);
+      case DATE:
+        return Date.valueOf(LocalDate.ofEpochDay(column.getInt32Values().getValues(row)));
+      case LONG:
+      case DAY_TIME_INTERVAL:
+        return column.getInt64Values().getValues(row);
+      case TIME:
+        return Time.valueOf(LocalTime.ofNanoOfDay(column.getInt64Values().getValues(row) * 1000L));
+      case TIMESTAMP:
+      case TIMESTAMP_WITH_TIMEZONE:
+      case TIMESTAMP_LOCAL_TIMEZONE:
+        return microsToTimestamp(column.getInt64Values().getValues(row));
+      case FLOAT:
+        return column.getFloatValues().getValues(row);
+      case DOUBLE:
+        return column.getDoubleValues().getValues(row);
+      case DECIMAL:
+        return new BigDecimal(getString(column.getStringValues(), row));
+      case CHAR:
+      case VARCHAR:
+      case STRING:
+        return getString(column.getStringValues(), row);
+      case BINARY:
+        return getBytes(column.getBinaryValues(), row).toByteArray();
+      default:
+        throw new IllegalArgumentException("Unsupported typed vector for " + column.getTypeId());
+    }
+  }
+
+  public static ByteString getBytes(BytesVector vector, int row) {
+    return vector.getData().substring(vector.getOffsets(row), vector.getOffsets(row + 1));
+  }
+
+  public static String getString(BytesVector vector, int row) {
+    return getBytes(vector, row).toStringUtf8();
+  }
+
+  static long toMicros(Timestamp ts) {
+    return Math.addExact(Math.multiplyExact(Math.floorDiv(ts.getTime(), 1000L), 1000000L), ts.getNanos() / 1000);
+  }
+
+  static Timestamp microsToTimestamp(long micros) {
+    Timestamp ts = new Timestamp(Math.floorDiv(micros, 1000000L) * 1000L);
+    ts.setNanos((int) Math.floorMod(micros, 1000000L) * 1000);
+    return ts;
+  }
+
+  /**
+   * Appends values row by row to a typed vector, e.g. while iterating a {@link java.sql.ResultSet}.
+   */
+  public static class Builder {
+    private final TypeId typeId;
+    private final BitSet nulls = new BitSet();
+    private int rowCount = 0;
+
+    private BoolVector.Builder bools;
+    private Int32Vector.Builder ints;
+    private Int64Vector.Builder longs;
+    private FloatVector.Builder floats;
+    private DoubleVector.Builder doubles;
+    private BytesVector.Builder bytes;
+    private ByteString.Output data;
+
+    Builder(TypeId typeId) {
+      if (!isSupported(typeId)) {
+        throw new IllegalArgumentException("Unsupported typed vector for " + typeId);
+      }
+      this.typeId = typeId;
+      switch (typeId) {
+        case BOOLEAN:
+          bools = BoolVector.newBuilder();
+          break;
+        case TINYINT:
+        case SMALLINT:
+        case INT:
+        case DATE:
+        case YEAR_MONTH_INTERVAL:
+          ints = Int32Vector.newBuilder();
+          break;
+        case LONG:
+        case TIME:
+        case TIMESTAMP:
+        case TIMESTAMP_WITH_TIMEZONE:
+        case TIMESTAMP_LOCAL_TIMEZONE:
+        case DAY_TIME_INTERVAL:
+          longs = Int64Vector.newBuilder();
+          break;
+        case FLOAT:
+          floats = FloatVector.newBuilder();
+          break;
+        case DOUBLE:
+          doubles = DoubleVector.newBuilder();
+          break;
+        case DECIMAL:
+        case CHAR:
+        case VARCHAR:
+        case STRING:
+        case BINARY:
+          bytes = BytesVector.newBuilder().addOffsets(0);
+          data = ByteString.newOutput();
+          break;
+        default:
+          break;
+      }
+    }
+
+    public int rowCount() {
+      return rowCount;
+    }
+
+    public Builder add(Object value) {
+      if (value == null || typeId == TypeId.NULL) {
+        nulls.set(rowCount);
+        addDefault();
+      } else {
+        addValue(value);
+      }
+      rowCount++;
+      return this;
+    }
+
+    private void addDefault() {
+      if (bools != null) {
+        bools.addValues(false);
+      } else if (ints != null) {
+        ints.addValues(0);
+      } else if (longs != null) {
+        longs.addValues(0L);
+      } else if (floats != null) {
+        floats.addValues(0F);
+      } else if (doubles != null) {
+        doubles.addValues(0D);
+      } else if (bytes != null) {
+        bytes.addOffsets(data.size());
+      }
+    }
+
+    private void addValue(Object value) {
+      switch (typeId) {
+        case BOOLEAN:
+          bools.addValues((Boolean) value);
+          break;
+        case TINYINT:
+        case SMALLINT:
+        case INT:
+        case YEAR_MONTH_INTERVAL:
+          ints.addValues(((Number) value).intValue());
+          break;
+        case DATE:
+          ints.addValues(Math.toIntExact(toLocalDate(value).toEpochDay()));
+          break;
+        case LONG:
+        case DAY_TIME_INTERVAL:
+          longs.addValues(((Number) value).longValue());
+          break;
+        case TIME:
+          longs.addValues(toLocalTime(value).toNanoOfDay() / 1000L);
+          break;
+        case TIMESTAMP:
+        case TIMESTAMP_WITH_TIMEZONE:
+        case TIMESTAMP_LOCAL_TIMEZONE:
+          longs.addValues(toMicros(value));
+          break;
+        case FLOAT:
+          floats.addValues(((Number) value).floatValue());
+          break;
+        case DOUBLE:
+          doubles.addValues(((Number) value).doubleValue());
+          break;
+        case DECIMAL:
+          appendBytes(((BigDecimal) value).toString().getBytes(StandardCharsets.UTF_8));
+          break;
+        case CHAR:
+        case VARCHAR:
+        case STRING:
+          appendBytes(value.toString().getBytes(StandardCharsets.UTF_8));
+          break;
+        case BINARY:
+          if (value instanceof ByteString) {
+            appendBytes(((ByteString) value).toByteArray());
+          } else {
+            appendBytes((byte[]) value);
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported typed vector for " + typeId);
+      }
+    }
+
+    private void appendBytes(byte[] value) {
+      data.write(value, 0, value.length);
+      bytes.addOffsets(data.size());
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+      if (value instanceof Date) {
+        return ((Date) value).toLocalDate();
+      } else if (value instanceof LocalDate) {
+        return (LocalDate) value;
+      }
+      return LocalDate.ofEpochDay(((Number) value).longValue());
+    }
+
+    private static LocalTime toLocalTime(Object value) {
+      if (value instanceof Time) {
+        return ((Time) value).toLocalTime();
+      } else if (value instanceof LocalTime) {
+        return (LocalTime) value;
+      }
+      return LocalTime.ofNanoOfDay(((Number) value).longValue() * 1000L);
+    }
+
+    private static long toMicros(Object value) {
+      if (value instanceof Timestamp) {
+        return ColumnVectors.toMicros((Timestamp) value);
+      } else if (value instanceof OffsetDateTime) {
+        return ColumnVectors.toMicros(Timestamp.from(((OffsetDateTime) value).toInstant()));
+      } else if (value instanceof Instant) {
+        return ColumnVectors.toMicros(Timestamp.from((Instant) value));
+      }
+      return ((Number) value).longValue();
+    }
+
+    public ColumnData build() {
+      ColumnData.Builder builder = ColumnData.newBuilder()
+        .setTypeId(typeId)
+        .setRowCount(rowCount);
+      if (!nulls.isEmpty()) {
+        builder.setNulls(ByteString.copyFrom(nulls.toByteArray()));
+      }
+      if (bools != null) {
+        builder.setBoolValues(bools);
+      } else if (ints != null) {
+        builder.setInt32Values(ints);
+      } else if (longs != null) {
+        builder.setInt64Values(longs);
+      } else if (floats != null) {
+        builder.setFloatValues(floats);
+      } else if (doubles != null) {
+        builder.setDoubleValues(doubles);
+      } else if (bytes != null) {
+        bytes.setData(data.toByteString());
+        if (typeId == TypeId.BINARY) {
+          builder.setBinaryValues(bytes);
+        } else {
+          builder.setStringValues(bytes);
+        }
+      }
+      return builder.build();
+    }
+  }
+}
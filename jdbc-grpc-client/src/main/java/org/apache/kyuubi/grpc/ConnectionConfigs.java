@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc;
+
+/**
+ * Well-known keys of {@code OpenConnectionReq.configs} and {@code DirectStatusResp.extraInfo}
+ * that the client and the server use to negotiate per-connection protocol features. The server
+ * echoes a key back in the extraInfo of the OpenConnection response with the value it accepted.
+ */
+public final class ConnectionConfigs {
+
+  private ConnectionConfigs() {
+  }
+
+  /**
+   * The encoding of fetched results, one of {@link #RESULT_FORMAT_COLUMNAR} or
+   * {@link #RESULT_FORMAT_ARROW}. Defaults to columnar if the server does not echo the key.
+   */
+  public static final String RESULT_FORMAT = "kyuubi.grpc.result.format";
+  /**
+   * Results are carried by {@code GetNextColumnSetResp.data}.
+   */
+  public static final String RESULT_FORMAT_COLUMNAR = "columnar";
+  /**
+   * Results are carried by {@code GetNextColumnSetResp.arrow_batch} as Arrow IPC record batches.
+   */
+  public static final String RESULT_FORMAT_ARROW = "arrow";
+
+  /**
+   * The codec compressing the messages of the connection, one of {@link #COMPRESSION_IDENTITY},
+   * {@link #COMPRESSION_GZIP} or {@link #COMPRESSION_LZ4}. The server echoes the codec it accepted,
+   * identity if it does not support the requested one. Defaults to identity. Messages smaller than
+   * a threshold are sent uncompressed, see {@link org.apache.kyuubi.grpc.compression.Compression}.
+   */
+  public static final String COMPRESSION = "kyuubi.grpc.compression";
+  public static final String COMPRESSION_IDENTITY = "identity";
+  public static final String COMPRESSION_GZIP = "gzip";
+  /**
+   * Much faster than gzip at a lower ratio, requires lz4-java on the classpath of both sides.
+   */
+  public static final String COMPRESSION_LZ4 = "lz4";
+
+  /**
+   * Client side only, whether the client caches the state of the connection, i.e. auto-commit,
+   * read-only, catalog, schema, transaction isolation, holdability, network timeout, type map and
+   * client info, and serves the getters locally. Defaults to true.
+   *
+   * <p>The cache is kept up to date by the setters of the client. Session state changed by SQL,
+   * e.g. {@code SET SCHEMA}, is not observed; invalidate the cache after such statements or turn
+   * it off.
+   */
+  public static final String CLIENT_STATE_CACHE_ENABLED = "kyuubi.grpc.client.state.cache.enabled";
+
+  /**
+   * Client side only, whether the client caches the results of the metadata calls of the
+   * connection, e.g. GetTables or GetColumns, see {@link org.apache.kyuubi.grpc.client.MetadataCache}.
+   * Defaults to false.
+   */
+  public static final String CLIENT_METADATA_CACHE_ENABLED = "kyuubi.grpc.client.metadata.cache.enabled";
+
+  /**
+   * Set by the server in the extraInfo of the response of a metadata call, for how long the
+   * client may cache its result: {@link #METADATA_CACHE_NO_STORE}, {@link #METADATA_CACHE_SESSION}
+   * or {@link #METADATA_CACHE_MAX_AGE} followed by seconds. Without it the client applies its own TTL.
+   */
+  public static final String METADATA_CACHE_CONTROL = "kyuubi.grpc.metadata.cacheControl";
+  public static final String METADATA_CACHE_NO_STORE = "no-store";
+  /**
+   * The result does not change as long as the connection is open, e.g. GetTypeInfo.
+   */
+  public static final String METADATA_CACHE_SESSION = "session";
+  public static final String METADATA_CACHE_MAX_AGE = "max-age=";
+
+  /*
+   * The initial connection state the server reports in the extraInfo of the OpenConnection
+   * response, each of them is optional.
+   */
+  public static final String STATE_AUTO_COMMIT = "kyuubi.grpc.state.autoCommit";
+  public static final String STATE_READ_ONLY = "kyuubi.grpc.state.readOnly";
+  public static final String STATE_CATALOG = "kyuubi.grpc.state.catalog";
+  public static final String STATE_SCHEMA = "kyuubi.grpc.state.schema";
+  public static final String STATE_TRANSACTION_ISOLATION = "kyuubi.grpc.state.transactionIsolation";
+  public static final String STATE_HOLDABILITY = "kyuubi.grpc.state.holdability";
+  public static final String STATE_NETWORK_TIMEOUT = "kyuubi.grpc.state.networkTimeout";
+
+  /**
+   * Whether the given config key is a protocol option rather than a session config that should
+   * be passed through to the engine.
+   */
+  public static boolean isProtocolConfig(String key) {
+    return key.startsWith("kyuubi.grpc.");
+  }
+}
@@ -6,7 +6,7 @@ import org.apache.kyuubi.grpc.jdbc.statement.ResultSetHoldability;
 import org.apache.kyuubi.grpc.jdbc.statement.ResultSetType;
 
 public class GrpcUtils {
-  final static Status OK = Status.newBuilder().setStatusCode(StatusCode.OK).setSqlState("00000").build();
+  public final static Status OK = Status.newBuilder().setStatusCode(StatusCode.OK).setSqlState("00000").build();
 
   public static int toJDBC(ResultSetType type) {
     switch (type) {
@@ -60,6 +60,30 @@ public class GrpcUtils {
     }
   }
 
+  /**
+   * Convert an exception to an error {@link Status}, keeping the SQL state and vendor code
+   * of {@link java.sql.SQLException}s.
+   *
+   * @param e the exception to convert
+   * @return the error {@link Status}
+   */
+  public static Status errorStatus(Throwable e) {
+    Status.Builder builder = Status.newBuilder()
+      .setStatusCode(StatusCode.ERROR)
+      .setSqlState("38808");
+    if (e instanceof java.sql.SQLException) {
+      java.sql.SQLException sqlException = (java.sql.SQLException) e;
+      if (sqlException.getSQLState() != null) {
+        builder.setSqlState(sqlException.getSQLState());
+      }
+      builder.setErrorCode(Math.max(sqlException.getErrorCode(), 0));
+    }
+    if (e.getMessage() != null) {
+      builder.setErrorMessage(e.getMessage());
+    }
+    return builder.build();
+  }
+
   /**
    * Convert a {@link java.sql.SQLWarning} to a {@link SQLWarning}.
    *
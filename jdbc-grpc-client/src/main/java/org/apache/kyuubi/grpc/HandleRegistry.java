@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * A concurrent registry of the objects behind the handles, e.g. the connections of the
+ * ConnectionHandles, keyed by the string id of the handle rather than the proto message,
+ * whose hash code walks every field.
+ *
+ * <p>Lookups are lock-free and updates only lock a bin of the underlying
+ * {@link ConcurrentHashMap}, so the calls of different sessions do not contend. Each entry
+ * tracks the last time it was accessed, for the owner to expire the idle ones.
+ */
+public class HandleRegistry<T> {
+
+  private final ConcurrentHashMap<String, Entry<T>> entries;
+  private final LongSupplier clock;
+
+  public HandleRegistry() {
+    this(System::currentTimeMillis);
+  }
+
+  /**
+   * @param clock the current time in milliseconds, e.g. for tests
+   */
+  public HandleRegistry(LongSupplier clock) {
+    this.entries = new ConcurrentHashMap<>();
+    this.clock = clock;
+  }
+
+  /**
+   * Register the value unless the id is taken.
+   *
+   * @return the value already registered with the id, null if the value is registered
+   */
+  public T putIfAbsent(String id, T value) {
+    Entry<T> existing = entries.putIfAbsent(id, new Entry<>(value, clock.getAsLong()));
+    if (existing == null) {
+      return null;
+    }
+    existing.touch(clock.getAsLong());
+    return existing.value;
+  }
+
+  /**
+   * Register the value, replacing the value of the id if any.
+   *
+   * @return the replaced value, null if none
+   */
+  public T put(String id, T value) {
+    Entry<T> previous = entries.put(id, new Entry<>(value, clock.getAsLong()));
+    return previous == null ? null : previous.value;
+  }
+
+  /**
+   * @return the value of the id, null if none, and mark it accessed
+   */
+  public T get(String id) {
+    Entry<T> entry = entries.get(id);
+    if (entry == null) {
+      return null;
+    }
+    entry.touch(clock.getAsLong());
+    return entry.value;
+  }
+
+  /**
+   * @return the value of the id without marking it accessed, null if none
+   */
+  public T peek(String id) {
+    Entry<T> entry = entries.get(id);
+    return entry == null ? null : entry.value;
+  }
+
+  public boolean contains(String id) {
+    return entries.containsKey(id);
+  }
+
+  /**
+   * Mark the id accessed.
+   *
+   * @return false if the id is not registered
+   */
+  public boolean touch(String id) {
+    Entry<T> entry = entries.get(id);
+    if (entry == null) {
+      return false;
+    }
+    entry.touch(clock.getAsLong());
+    return true;
+  }
+
+  /**
+   * @return the last access time of the id in milliseconds, -1 if the id is not registered
+   */
+  public long getLastAccessTime(String id) {
+    Entry<T> entry = entries.get(id);
+    return entry == null ? -1 : entry.lastAccessTime;
+  }
+
+  /**
+   * @return the removed value, null if none
+   */
+  public T remove(String id) {
+    Entry<T> entry = entries.remove(id);
+    return entry == null ? null : entry.value;
+  }
+
+  /**
+   * Remove the entries not accessed for longer than the idle timeout.
+   *
+   * @return the removed values
+   */
+  public List<T> expire(long now, long idleTimeoutMillis) {
+    List<T> expired = new ArrayList<>();
+    for (Map.Entry<String, Entry<T>> e : entries.entrySet()) {
+      Entry<T> entry = e.getValue();
+      // removing by value skips the entries replaced in the meantime
+      if (now - entry.lastAccessTime > idleTimeoutMillis && entries.remove(e.getKey(), entry)) {
+        expired.add(entry.value);
+      }
+    }
+    return expired;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /**
+   * @return a live view of the registered ids
+   */
+  public Set<String> ids() {
+    return entries.keySet();
+  }
+
+  /**
+   * @return a snapshot of the registered values
+   */
+  public Collection<T> values() {
+    List<T> values = new ArrayList<>(entries.size());
+    entries.values().forEach(entry -> values.add(entry.value));
+    return values;
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+  private static final class Entry<T> {
+    final T value;
+    volatile long lastAccessTime;
+
+    Entry(T value, long now) {
+      this.value = value;
+      this.lastAccessTime = now;
+    }
+
+    void touch(long now) {
+      // skip the volatile write within the same millisecond, the hot entries are read far more often
+      if (lastAccessTime != now) {
+        lastAccessTime = now;
+      }
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc;
+
+import org.apache.kyuubi.grpc.jdbc.ColumnData;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.apache.kyuubi.grpc.jdbc.statement.ParameterValue;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collections;
+
+/**
+ * Converts between JDBC parameter values and {@link ParameterValue}, using the same
+ * physical encoding of each {@link TypeId} as {@link ColumnVectors}.
+ */
+public class ParameterValues {
+
+  private ParameterValues() {
+  }
+
+  public static ParameterValue ofNull(TypeId typeId) {
+    return ParameterValue.newBuilder().setTypeId(typeId).build();
+  }
+
+  public static ParameterValue of(TypeId typeId, Object value) {
+    if (value == null) {
+      return ofNull(typeId);
+    }
+    ColumnData column = ColumnVectors.encode(typeId, Collections.singletonList(value));
+    ParameterValue.Builder builder = ParameterValue.newBuilder().setTypeId(typeId);
+    switch (column.getVectorCase()) {
+      case BOOL_VALUES:
+        return builder.setBoolValue(column.getBoolValues().getValues(0)).build();
+      case INT32_VALUES:
+        return builder.setInt32Value(column.getInt32Values().getValues(0)).build();
+      case INT64_VALUES:
+        return builder.setInt64Value(column.getInt64Values().getValues(0)).build();
+      case FLOAT_VALUES:
+        return builder.setFloatValue(column.getFloatValues().getValues(0)).build();
+      case DOUBLE_VALUES:
+        return builder.setDoubleValue(column.getDoubleValues().getValues(0)).build();
+      case STRING_VALUES:
+        return builder.setStringValue(ColumnVectors.getString(column.getStringValues(), 0)).build();
+      case BINARY_VALUES:
+        return builder.setBinaryValue(ColumnVectors.getBytes(column.getBinaryValues(), 0)).build();
+      default:
+        return ofNull(typeId);
+    }
+  }
+
+  /**
+   * Decode to the JDBC representation, e.g. DATE to {@link Date}, null for an unset value.
+   */
+  public static Object toJdbc(ParameterValue value) {
+    switch (value.getValueCase()) {
+      case VALUE_NOT_SET:
+        return null;
+      case BOOL_VALUE:
+        return value.getBoolValue();
+      case FLOAT_VALUE:
+        return value.getFloatValue();
+      case DOUBLE_VALUE:
+        return value.getDoubleValue();
+      case BINARY_VALUE:
+        return value.getBinaryValue().toByteArray();
+      default:
+        break;
+    }
+    switch (value.getTypeId()) {
+      case TINYINT:
+        return (byte) value.getInt32Value();
+      case SMALLINT:
+        return (short) value.getInt32Value();
+      case DATE:
+        return Date.valueOf(LocalDate.ofEpochDay(value.getInt32Value()));
+      case TIME:
+        return Time.valueOf(LocalTime.ofNanoOfDay(value.getInt64Value() * 1000L));
+      case TIMESTAMP:
+      case TIMESTAMP_WITH_TIMEZONE:
+      case TIMESTAMP_LOCAL_TIMEZONE:
+        return ColumnVectors.microsToTimestamp(value.getInt64Value());
+      case DECIMAL:
+        return new BigDecimal(value.getStringValue());
+      default:
+        switch (value.getValueCase()) {
+          case INT32_VALUE:
+            return value.getInt32Value();
+          case INT64_VALUE:
+            return value.getInt64Value();
+          default:
+            return value.getStringValue();
+        }
+    }
+  }
+
+  /**
+   * @return the {@link Types} constant of the type
+   */
+  public static int toSqlType(TypeId typeId) {
+    switch (typeId) {
+      case BOOLEAN:
+        return Types.BOOLEAN;
+      case TINYINT:
+        return Types.TINYINT;
+      case SMALLINT:
+        return Types.SMALLINT;
+      case INT:
+        return Types.INTEGER;
+      case LONG:
+        return Types.BIGINT;
+      case FLOAT:
+        return Types.REAL;
+      case DOUBLE:
+        return Types.DOUBLE;
+      case DECIMAL:
+        return Types.DECIMAL;
+      case DATE:
+        return Types.DATE;
+      case TIME:
+        return Types.TIME;
+      case TIMESTAMP:
+      case TIMESTAMP_LOCAL_TIMEZONE:
+        return Types.TIMESTAMP;
+      case TIMESTAMP_WITH_TIMEZONE:
+        return Types.TIMESTAMP_WITH_TIMEZONE;
+      case CHAR:
+        return Types.CHAR;
+      case VARCHAR:
+      case STRING:
+        return Types.VARCHAR;
+      case BINARY:
+        return Types.VARBINARY;
+      case ARRAY:
+        return Types.ARRAY;
+      case STRUCT:
+        return Types.STRUCT;
+      case NULL:
+        return Types.NULL;
+      default:
+        return Types.OTHER;
+    }
+  }
+
+  /**
+   * @return the type of a {@link Types} constant, e.g. from {@link ParameterMetaData#getParameterType}
+   */
+  public static TypeId fromSqlType(int sqlType) {
+    switch (sqlType) {
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return TypeId.BOOLEAN;
+      case Types.TINYINT:
+        return TypeId.TINYINT;
+      case Types.SMALLINT:
+        return TypeId.SMALLINT;
+      case Types.INTEGER:
+        return TypeId.INT;
+      case Types.BIGINT:
+        return TypeId.LONG;
+      case Types.REAL:
+      case Types.FLOAT:
+        return TypeId.FLOAT;
+      case Types.DOUBLE:
+        return TypeId.DOUBLE;
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        return TypeId.DECIMAL;
+      case Types.DATE:
+        return TypeId.DATE;
+      case Types.TIME:
+      case Types.TIME_WITH_TIMEZONE:
+        return TypeId.TIME;
+      case Types.TIMESTAMP:
+        return TypeId.TIMESTAMP;
+      case Types.TIMESTAMP_WITH_TIMEZONE:
+        return TypeId.TIMESTAMP_WITH_TIMEZONE;
+      case Types.CHAR:
+      case Types.NCHAR:
+        return TypeId.CHAR;
+      case Types.VARCHAR:
+      case Types.NVARCHAR:
+        return TypeId.VARCHAR;
+      case Types.LONGVARCHAR:
+      case Types.LONGNVARCHAR:
+      case Types.CLOB:
+      case Types.NCLOB:
+        return TypeId.STRING;
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+        return TypeId.BINARY;
+      case Types.ARRAY:
+        return TypeId.ARRAY;
+      case Types.STRUCT:
+        return TypeId.STRUCT;
+      case Types.NULL:
+        return TypeId.NULL;
+      default:
+        return TypeId.USER_DEFINED_TYPE;
+    }
+  }
+
+  /**
+   * Bind the value at the row of a typed column vector to the 1-based parameter index of the statement.
+   */
+  public static void bind(PreparedStatement statement, int index, ColumnData column, int row) throws SQLException {
+    int sqlType = toSqlType(column.getTypeId());
+    Object jdbcValue = ColumnVectors.get(column, row);
+    if (jdbcValue == null) {
+      statement.setNull(index, sqlType);
+    } else {
+      statement.setObject(index, jdbcValue, sqlType);
+    }
+  }
+
+  /**
+   * Bind the value to the 1-based parameter index of the statement.
+   */
+  public static void bind(PreparedStatement statement, int index, ParameterValue value) throws SQLException {
+    int sqlType = toSqlType(value.getTypeId());
+    Object jdbcValue = toJdbc(value);
+    if (jdbcValue == null) {
+      statement.setNull(index, sqlType);
+    } else {
+      statement.setObject(index, jdbcValue, sqlType);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.arrow;
+
+import com.google.protobuf.ByteString;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorLoader;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ReadChannel;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.client.JdbcGrpcException;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.apache.kyuubi.grpc.jdbc.ResultSetSchema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.sql.SQLException;
+
+/**
+ * Loads the Arrow IPC record batches of fetch responses into a {@link VectorSchemaRoot}
+ * built from the {@link ResultSetSchema} of the operation.
+ *
+ * <p>The record batch is copied once, from the buffer of the response into the Arrow buffers
+ * of the allocator, no intermediate byte array or row object is materialized. The same root
+ * is reused for every batch, its content is replaced by the next {@link #load} call.
+ */
+public class ArrowBatchReader implements AutoCloseable {
+  private final BufferAllocator allocator;
+  private final boolean ownsAllocator;
+  private final VectorSchemaRoot root;
+  private final VectorLoader loader;
+
+  public ArrowBatchReader(ResultSetSchema schema) throws SQLException {
+    this(schema, new RootAllocator(), true);
+  }
+
+  public ArrowBatchReader(ResultSetSchema schema, BufferAllocator allocator) throws SQLException {
+    this(schema, allocator, false);
+  }
+
+  private ArrowBatchReader(ResultSetSchema schema, BufferAllocator allocator, boolean ownsAllocator)
+    throws SQLException {
+    this.allocator = allocator;
+    this.ownsAllocator = ownsAllocator;
+    this.root = VectorSchemaRoot.create(ArrowUtils.toArrowSchema(schema), allocator);
+    this.loader = new VectorLoader(root);
+  }
+
+  public VectorSchemaRoot getRoot() {
+    return root;
+  }
+
+  /**
+   * Load the record batch of a fetch response.
+   *
+   * @return the root holding the batch, empty if the response carries no arrow batch
+   */
+  public VectorSchemaRoot load(GetNextColumnSetResp resp) throws IOException {
+    if (resp.getStatus().getStatusCode() != StatusCode.OK) {
+      throw new JdbcGrpcException(resp.getStatus());
+    }
+    return load(resp.getArrowBatch());
+  }
+
+  public VectorSchemaRoot load(ByteString arrowBatch) throws IOException {
+    if (arrowBatch.isEmpty()) {
+      root.setRowCount(0);
+      return root;
+    }
+    ReadChannel in = new ReadChannel(new ByteBufferChannel(arrowBatch.asReadOnlyByteBuffer()));
+    try (ArrowRecordBatch batch = MessageSerializer.deserializeRecordBatch(in, allocator)) {
+      if (batch == null) {
+        throw new IOException("Unexpected end of the arrow record batch");
+      }
+      loader.load(batch);
+    }
+    return root;
+  }
+
+  @Override
+  public void close() {
+    root.close();
+    if (ownsAllocator) {
+      allocator.close();
+    }
+  }
+
+  private static class ByteBufferChannel implements ReadableByteChannel {
+    private final ByteBuffer buffer;
+
+    ByteBufferChannel(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int length = Math.min(dst.remaining(), buffer.remaining());
+      ByteBuffer slice = buffer.duplicate();
+      slice.limit(slice.position() + length);
+      dst.put(slice);
+      buffer.position(buffer.position() + length);
+      return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.arrow;
+
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.IntervalUnit;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.kyuubi.grpc.jdbc.ColumnInfo;
+import org.apache.kyuubi.grpc.jdbc.DataType;
+import org.apache.kyuubi.grpc.jdbc.ResultSetSchema;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ArrowUtils {
+
+  /**
+   * Convert a {@link ResultSetSchema} to the Arrow {@link Schema} of the record batches
+   * that carry its rows.
+   *
+   * @param schema the {@link ResultSetSchema} to convert
+   * @return the converted Arrow {@link Schema}
+   * @throws SQLException if a column type has no Arrow counterpart or lacks its element types
+   */
+  public static Schema toArrowSchema(ResultSetSchema schema) throws SQLException {
+    List<Field> fields = new ArrayList<>(schema.getColumnsCount());
+    for (ColumnInfo column : schema.getColumnsList()) {
+      fields.add(toArrowField(column));
+    }
+    return new Schema(fields);
+  }
+
+  public static Field toArrowField(ColumnInfo column) throws SQLException {
+    String name = column.getColumnLabel().isEmpty() ? column.getColumnName() : column.getColumnLabel();
+    // 0 - no nulls, 1 - nullable, 2 - unknown
+    return toArrowField(name, column.getType(), column.getNullable() != 0);
+  }
+
+  private static Field toArrowField(String name, DataType type, boolean nullable) throws SQLException {
+    List<Field> children = Collections.emptyList();
+    switch (type.getTypeId()) {
+      case ARRAY:
+      case STRUCT:
+        children = new ArrayList<>(type.getChildrenCount());
+        for (ColumnInfo child : type.getChildrenList()) {
+          children.add(toArrowField(child));
+        }
+        break;
+      case MAP:
+        if (type.getChildrenCount() != 2) {
+          throw new SQLException("MAP column " + name + " must have a key and a value type, found "
+            + type.getChildrenCount() + " child types", "HY004");
+        }
+        // arrow maps hold a non-null list of key/value entries
+        List<Field> entry = new ArrayList<>(2);
+        entry.add(toArrowField("key", type.getChildren(0).getType(), false));
+        entry.add(toArrowField(type.getChildren(1)));
+        Field entries = new Field("entries", FieldType.notNullable(ArrowType.Struct.INSTANCE), entry);
+        children = Collections.singletonList(entries);
+        break;
+      default:
+        break;
+    }
+    return new Field(name, new FieldType(nullable, toArrowType(type), null), children);
+  }
+
+  /**
+   * Convert a {@link DataType} to an {@link ArrowType}. Temporal values use microsecond
+   * precision, the same as the typed column vectors.
+   */
+  public static ArrowType toArrowType(DataType type) throws SQLException {
+    switch (type.getTypeId()) {
+      case BOOLEAN:
+        return ArrowType.Bool.INSTANCE;
+      case TINYINT:
+        return new ArrowType.Int(8, true);
+      case SMALLINT:
+        return new ArrowType.Int(16, true);
+      case INT:
+        return new ArrowType.Int(32, true);
+      case LONG:
+        return new ArrowType.Int(64, true);
+      case FLOAT:
+        return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+      case DOUBLE:
+        return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+      case DECIMAL:
+        return new ArrowType.Decimal(type.getPrecision(), type.getScale(), 128);
+      case DATE:
+        return new ArrowType.Date(DateUnit.DAY);
+      case TIME:
+        return new ArrowType.Time(TimeUnit.MICROSECOND, 64);
+      case TIMESTAMP:
+        return new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+      case TIMESTAMP_WITH_TIMEZONE:
+      case TIMESTAMP_LOCAL_TIMEZONE:
+        return new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+      case YEAR_MONTH_INTERVAL:
+        return new ArrowType.Interval(IntervalUnit.YEAR_MONTH);
+      case DAY_TIME_INTERVAL:
+        return new ArrowType.Duration(TimeUnit.MICROSECOND);
+      case CHAR:
+      case VARCHAR:
+      case STRING:
+        return ArrowType.Utf8.INSTANCE;
+      case BINARY:
+        return ArrowType.Binary.INSTANCE;
+      case ARRAY:
+        return ArrowType.List.INSTANCE;
+      case MAP:
+        return new ArrowType.Map(false);
+      case STRUCT:
+        return ArrowType.Struct.INSTANCE;
+      case NULL:
+        return ArrowType.Null.INSTANCE;
+      default:
+        throw new SQLException("Unsupported arrow type for " + type.getTypeId(), "HY004");
+    }
+  }
+}
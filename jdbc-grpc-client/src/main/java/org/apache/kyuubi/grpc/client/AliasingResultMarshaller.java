@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Detachable;
+import io.grpc.HasByteBuffer;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the responses of a fetch call in place: the bytes fields of the response, e.g. the
+ * strings and binaries of the batch, alias the buffers received by the transport instead of
+ * being copied. The buffers are detached from the transport and retained until the
+ * {@link RetainedBatch} of the response is closed.
+ *
+ * <p>Falls back to the copying parser when the transport can not expose its buffers, e.g. the
+ * in-process transport or a compressed message. A marshaller serves one call.
+ */
+final class AliasingResultMarshaller implements MethodDescriptor.Marshaller<GetNextColumnSetResp> {
+
+  private static final MethodDescriptor.Marshaller<GetNextColumnSetResp> DEFAULT =
+    ProtoUtils.marshaller(GetNextColumnSetResp.getDefaultInstance());
+
+  // the responses parsed but not handed out yet, with their buffers
+  private final Map<GetNextColumnSetResp, InputStream> retained = new IdentityHashMap<>();
+
+  MethodDescriptor<GetNextColumnSet, GetNextColumnSetResp> method(
+    MethodDescriptor<GetNextColumnSet, GetNextColumnSetResp> method) {
+    return method.toBuilder(method.getRequestMarshaller(), this).build();
+  }
+
+  @Override
+  public InputStream stream(GetNextColumnSetResp value) {
+    return DEFAULT.stream(value);
+  }
+
+  @Override
+  public GetNextColumnSetResp parse(InputStream stream) {
+    if (!(stream instanceof Detachable && stream instanceof HasByteBuffer)
+      || !((HasByteBuffer) stream).byteBufferSupported()) {
+      return DEFAULT.parse(stream);
+    }
+    InputStream detached = ((Detachable) stream).detach();
+    try {
+      ByteString bytes = ByteString.EMPTY;
+      while (detached.available() > 0) {
+        ByteBuffer buffer = ((HasByteBuffer) detached).getByteBuffer();
+        if (buffer == null) {
+          bytes = bytes.concat(ByteString.readFrom(detached));
+          break;
+        }
+        int size = buffer.remaining();
+        bytes = bytes.concat(UnsafeByteOperations.unsafeWrap(buffer));
+        skipFully(detached, size);
+      }
+      CodedInputStream input = bytes.newCodedInput();
+      input.enableAliasing(true);
+      input.setSizeLimit(Integer.MAX_VALUE);
+      GetNextColumnSetResp resp = GetNextColumnSetResp.parseFrom(input);
+      synchronized (this) {
+        retained.put(resp, detached);
+      }
+      return resp;
+    } catch (IOException e) {
+      close(detached);
+      throw Status.INTERNAL.withDescription("Invalid protobuf byte sequence").withCause(e).asRuntimeException();
+    }
+  }
+
+  private static void skipFully(InputStream stream, long size) throws IOException {
+    while (size > 0) {
+      long skipped = stream.skip(size);
+      if (skipped <= 0) {
+        throw new IOException("Unexpected end of the message");
+      }
+      size -= skipped;
+    }
+  }
+
+  /**
+   * Hand out the response with the buffers it aliases, if any.
+   */
+  synchronized RetainedBatch retain(GetNextColumnSetResp resp) {
+    return new RetainedBatch(resp, retained.remove(resp));
+  }
+
+  synchronized int getRetainedCount() {
+    return retained.size();
+  }
+
+  /**
+   * Release the buffers of the responses not handed out, e.g. received before a cancel.
+   */
+  void releaseAll() {
+    List<InputStream> streams;
+    synchronized (this) {
+      streams = new ArrayList<>(retained.values());
+      retained.clear();
+    }
+    streams.forEach(AliasingResultMarshaller::close);
+  }
+
+  static void close(InputStream stream) {
+    try {
+      stream.close();
+    } catch (IOException e) {
+      // do nothing
+    }
+  }
+}
@@ -0,0 +1,554 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.*;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.GetWarningsResp;
+import org.apache.kyuubi.grpc.common.ConnectionHandle;
+import org.apache.kyuubi.grpc.jdbc.*;
+import org.apache.kyuubi.grpc.jdbc.JdbcGrpc.JdbcStub;
+import org.apache.kyuubi.grpc.jdbc.connection.*;
+import org.apache.kyuubi.grpc.jdbc.connection.ConnectionGrpc.ConnectionStub;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link AsyncJdbcGrpcClient} built on the async stubs. No thread is parked while an RPC is in
+ * flight, so a single client can multiplex many sessions over one channel.
+ *
+ * <p>Responses are delivered and the returned futures are completed on the executor supplied
+ * by the caller, so dependent stages without an explicit executor run there too.
+ */
+public class AsyncJdbcClient implements AsyncJdbcGrpcClient {
+  private final JdbcStub jdbcStub;
+  private final ConnectionStub connectionStub;
+
+  public AsyncJdbcClient(Channel channel, Executor executor) {
+    jdbcStub = JdbcGrpc.newStub(channel).withExecutor(executor);
+    connectionStub = ConnectionGrpc.newStub(channel).withExecutor(executor);
+  }
+
+  public AsyncJdbcClient(ManagedChannelBuilder<?> builder, Executor executor) {
+    this(builder.build(), executor);
+  }
+
+  public AsyncJdbcClient(String host, int port, ChannelCredentials creds, Executor executor) {
+    this(Grpc.newChannelBuilderForAddress(host, port, creds), executor);
+  }
+
+  public AsyncJdbcClient(String host, int port, Executor executor) {
+    this(host, port, InsecureChannelCredentials.create(), executor);
+  }
+
+  private static <ReqT, RespT> CompletableFuture<RespT> call(
+    BiConsumer<ReqT, StreamObserver<RespT>> method,
+    ReqT req) {
+    FutureObserver<ReqT, RespT> observer = new FutureObserver<>();
+    method.accept(req, observer);
+    return observer.future;
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> openConnection(
+    Map<String, String> configs,
+    Optional<String> connectionId) {
+    ConnectionHandle.Builder builder = ConnectionHandle.newBuilder();
+    connectionId.ifPresent(builder::setId);
+    OpenConnectionReq req = OpenConnectionReq.newBuilder()
+      .setConnectionId(builder.build())
+      .putAllConfigs(configs)
+      .build();
+    return call(connectionStub::openConnection, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> closeConnection(String connectionId) {
+    ConnectionHandle.Builder builder = ConnectionHandle.newBuilder();
+    ConnectionHandle req = builder
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::closeConnection, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> abortConnection(String connectionId) {
+    ConnectionHandle.Builder builder = ConnectionHandle.newBuilder();
+    ConnectionHandle req = builder
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::abortConnection, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setClientInfo(String connectionId, Map<String, String> info) {
+    SetClientInfoReq.Builder builder = SetClientInfoReq.newBuilder();
+    SetClientInfoReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .putAllConfigs(info)
+      .build();
+    return call(connectionStub::setClientInfo, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setClientInfo(String connectionId, String name, String value) {
+    SetClientInfoReq.Builder builder = SetClientInfoReq.newBuilder();
+    SetClientInfoReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .putConfigs(name, value)
+      .build();
+    return call(connectionStub::setClientInfo, req);
+  }
+
+  @Override
+  public CompletableFuture<GetClientInfoResp> getClientInfo(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getClientInfo, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setTypeMap(String connectionId, Map<String, String> map) {
+    SetTypeMapReq.Builder builder = SetTypeMapReq.newBuilder();
+    SetTypeMapReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .putAllTypeToClass(map)
+      .build();
+    return call(connectionStub::setTypeMap, req);
+  }
+
+  @Override
+  public CompletableFuture<GetTypeMapResp> getTypeMap(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getTypeMap, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setHoldability(String connectionId, int holdability) {
+    SetHoldabilityReq.Builder builder = SetHoldabilityReq.newBuilder();
+    SetHoldabilityReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setHoldability(holdability)
+      .build();
+    return call(connectionStub::setHoldability, req);
+  }
+
+  @Override
+  public CompletableFuture<GetHoldabilityResp> getHoldability(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getHoldability, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setSchema(String connectionId, String schema) {
+    SetSchemaReq.Builder builder = SetSchemaReq.newBuilder();
+    SetSchemaReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSchema(schema)
+      .build();
+    return call(connectionStub::setSchema, req);
+  }
+
+  @Override
+  public CompletableFuture<GetSchemaResp> getSchema(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getSchema, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setNetworkTimeout(String connectionId, int milliseconds) {
+    SetNetworkTimeoutReq.Builder builder = SetNetworkTimeoutReq.newBuilder();
+    SetNetworkTimeoutReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setMilliseconds(milliseconds)
+      .build();
+    return call(connectionStub::setNetworkTimeout, req);
+  }
+
+  @Override
+  public CompletableFuture<GetNetworkTimeoutResp> getNetworkTimeout(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getNetworkTimeout, req);
+  }
+
+  @Override
+  public CompletableFuture<SetSavepointResp> setSavepoint(String connectionId) {
+    SetSavepointReq.Builder builder = SetSavepointReq.newBuilder();
+    SetSavepointReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .build();
+    return call(connectionStub::setSavepoint, req);
+  }
+
+  @Override
+  public CompletableFuture<SetSavepointResp> setSavepoint(String connectionId, String name) {
+    SetSavepointReq.Builder builder = SetSavepointReq.newBuilder();
+    SetSavepointReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSavepointName(name)
+      .build();
+    return call(connectionStub::setSavepoint, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> releaseSavepoint(String connectionId, Savepoint savepoint) {
+    ReleaseSavepointReq.Builder builder = ReleaseSavepointReq.newBuilder();
+    ReleaseSavepointReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSavepoint(savepoint)
+      .build();
+    return call(connectionStub::releaseSavepoint, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setSchema(String connectionId, String schema, String catalog) {
+    SetSchemaReq.Builder builder = SetSchemaReq.newBuilder();
+    SetSchemaReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSchema(schema)
+      .build();
+    return call(connectionStub::setSchema, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> applyConnectionState(String connectionId, ConnectionState state) {
+    ApplyConnectionStateReq req = ApplyConnectionStateReq.newBuilder()
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setState(state)
+      .build();
+    return call(connectionStub::applyConnectionState, req);
+  }
+
+  @Override
+  public CompletableFuture<IsValidResp> isValid(String connectionId, int timeout) {
+    IsValidReq.Builder builder = IsValidReq.newBuilder();
+    IsValidReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setTimeout(timeout)
+      .build();
+    return call(connectionStub::isValid, req);
+  }
+
+  @Override
+  public CompletableFuture<NativeSQLResp> nativeSQL(String connectionId, String sql) {
+    NativeSQLReq.Builder builder = NativeSQLReq.newBuilder();
+    NativeSQLReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSql(sql)
+      .build();
+    return call(connectionStub::nativeSQL, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setAutoCommit(String connectionId, boolean autoCommit) {
+    SetAutoCommitReq.Builder builder = SetAutoCommitReq.newBuilder();
+    SetAutoCommitReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setAutoCommit(autoCommit)
+      .build();
+    return call(connectionStub::setAutoCommit, req);
+  }
+
+  @Override
+  public CompletableFuture<GetAutoCommitResp> getAutoCommit(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getAutoCommit, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> commit(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::commit, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> rollback(String connectionId) {
+    RollbackReq.Builder builder = RollbackReq.newBuilder();
+    RollbackReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .build();
+    return call(connectionStub::rollback, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> rollback(String connectionId, int savepointId) {
+    Savepoint sp = Savepoint.newBuilder()
+      .setSavepointId(savepointId)
+      .build();
+    RollbackReq req = RollbackReq.newBuilder()
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSavepoint(sp)
+      .build();
+    return call(connectionStub::rollback, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> rollback(String connectionId, int savepointId, String savepointName) {
+    Savepoint sp = Savepoint.newBuilder()
+      .setSavepointId(savepointId)
+      .setSavepointName(savepointName)
+      .build();
+    RollbackReq req = RollbackReq.newBuilder()
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSavepoint(sp)
+      .build();
+    return call(connectionStub::rollback, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> rollback(String connectionId, String savepointName) {
+    Savepoint sp = Savepoint.newBuilder()
+      .setSavepointName(savepointName)
+      .build();
+    RollbackReq req = RollbackReq.newBuilder()
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSavepoint(sp)
+      .build();
+    return call(connectionStub::rollback, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setReadOnly(String connectionId, boolean readOnly) {
+    SetReadOnlyReq.Builder builder = SetReadOnlyReq.newBuilder();
+    SetReadOnlyReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setReadOnly(readOnly)
+      .build();
+    return call(connectionStub::setReadOnly, req);
+  }
+
+  @Override
+  public CompletableFuture<IsReadOnlyResp> isReadOnly(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::isReadOnly, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setCatalog(String connectionId, String catalog) {
+    SetCatalogReq.Builder builder = SetCatalogReq.newBuilder();
+    SetCatalogReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setCatalog(catalog)
+      .build();
+    return call(connectionStub::setCatalog, req);
+  }
+
+  @Override
+  public CompletableFuture<GetCatalogResp> getCatalog(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getCatalog, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> setTransactionIsolation(String connectionId, int level) {
+    SetTransactionIsolationReq.Builder builder = SetTransactionIsolationReq.newBuilder();
+    SetTransactionIsolationReq req = builder
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setLevel(level)
+      .build();
+    return call(connectionStub::setTransactionIsolation, req);
+  }
+
+  @Override
+  public CompletableFuture<GetTransactionIsolationResp> getTransactionIsolation(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getTransactionIsolation, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> clearWarnings(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::clearWarnings, req);
+  }
+
+  @Override
+  public CompletableFuture<GetWarningsResp> getWarnings(String connectionId) {
+    ConnectionHandle req = ConnectionHandle.newBuilder()
+      .setId(connectionId)
+      .build();
+    return call(connectionStub::getWarnings, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> getCatalogs(String connectionId) {
+    GetCatalogsReq.Builder builder = GetCatalogsReq.newBuilder();
+    GetCatalogsReq req = builder
+      .setConnectionId(connectionId)
+      .build();
+    return call(jdbcStub::getCatalogs, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> getSchemas(String connectionId, String catalog, String schemaPattern) {
+    GetSchemasReq req = GetSchemasReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchemaPattern(nullToEmpty(schemaPattern))
+      .build();
+    return call(jdbcStub::getSchemas, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> getTables(
+    String connectionId, String catalog, String schemaPattern, String tableNamePattern, List<String> types) {
+    GetTablesReq.Builder builder = GetTablesReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchemaPattern(nullToEmpty(schemaPattern))
+      .setTableNamePattern(nullToEmpty(tableNamePattern));
+    if (types != null) {
+      builder.addAllTableTypes(types);
+    }
+    return call(jdbcStub::getTables, builder.build());
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> getTableTypes(String connectionId) {
+    GetTableTypesReq req = GetTableTypesReq.newBuilder()
+      .setConnectionId(connectionId)
+      .build();
+    return call(jdbcStub::getTableTypes, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> getColumns(
+    String connectionId, String catalog, String schemaPattern, String tablePattern, String columnNamePattern) {
+    GetColumnsReq req = GetColumnsReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchemaPattern(nullToEmpty(schemaPattern))
+      .setTablePattern(nullToEmpty(tablePattern))
+      .setColumnNamePattern(nullToEmpty(columnNamePattern))
+      .build();
+    return call(jdbcStub::getColumns, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> getPrimaryKeys(
+    String connectionId, String catalog, String schema, String table) {
+    GetPrimaryKeysReq req = GetPrimaryKeysReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchema(nullToEmpty(schema))
+      .setTable(nullToEmpty(table))
+      .build();
+    return call(jdbcStub::getPrimaryKeys, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> getFunctions(
+    String connectionId, String catalog, String schemaPattern, String functionNamePattern) {
+    GetFunctionsReq req = GetFunctionsReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchemaPattern(nullToEmpty(schemaPattern))
+      .setFunctionNamePattern(nullToEmpty(functionNamePattern))
+      .build();
+    return call(jdbcStub::getFunctions, req);
+  }
+
+  @Override
+  public CompletableFuture<DirectStatusResp> getTypeInfo(String connectionId) {
+    GetTypeInfoReq req = GetTypeInfoReq.newBuilder()
+      .setConnectionId(connectionId)
+      .build();
+    return call(jdbcStub::getTypeInfo, req);
+  }
+
+  @Override
+  public CompletableFuture<GetDatabaseMetaDataResp> getDatabaseMetaData(
+    String connectionId, Collection<DatabaseMetaData> keys) {
+    GetDatabaseMetaDataReq req = GetDatabaseMetaDataReq.newBuilder()
+      .setConnectionId(connectionId)
+      .addAllKeys(keys)
+      .build();
+    return call(jdbcStub::getDatabaseMetaData, req);
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  /**
+   * Completes a future with the single response of an unary call, and cancels the call
+   * if the future is cancelled.
+   */
+  private static class FutureObserver<ReqT, RespT> implements ClientResponseObserver<ReqT, RespT> {
+    private final CompletableFuture<RespT> future = new CompletableFuture<RespT>() {
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && call != null) {
+          call.cancel("Cancelled by client", null);
+        }
+        return cancelled;
+      }
+    };
+    private volatile ClientCallStreamObserver<ReqT> call;
+    private RespT value;
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+      call = requestStream;
+    }
+
+    @Override
+    public void onNext(RespT value) {
+      this.value = value;
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      future.completeExceptionally(t);
+    }
+
+    @Override
+    public void onCompleted() {
+      future.complete(value);
+    }
+  }
+}
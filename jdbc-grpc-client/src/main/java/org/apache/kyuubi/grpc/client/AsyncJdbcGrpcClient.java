@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kyuubi.grpc.GetWarningsResp;
+import org.apache.kyuubi.grpc.jdbc.DatabaseMetaData;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.GetDatabaseMetaDataResp;
+import org.apache.kyuubi.grpc.jdbc.connection.*;
+
+/**
+ * Non-blocking counterpart of {@link JdbcGrpcClient}, every call returns immediately with a
+ * {@link CompletableFuture} of the response. Cancelling the future cancels the RPC.
+ */
+public interface AsyncJdbcGrpcClient {
+  CompletableFuture<DirectStatusResp> openConnection(Map<String, String> configs, Optional<String> connectionId);
+
+  CompletableFuture<DirectStatusResp> closeConnection(String connectionId);
+
+  CompletableFuture<DirectStatusResp> abortConnection(String connectionId);
+
+  CompletableFuture<DirectStatusResp> setAutoCommit(String connectionId, boolean autoCommit);
+
+  CompletableFuture<GetAutoCommitResp> getAutoCommit(String connectionId);
+
+  CompletableFuture<NativeSQLResp> nativeSQL(String connectionId, String sql);
+
+  CompletableFuture<DirectStatusResp> commit(String connectionId);
+
+  CompletableFuture<DirectStatusResp> rollback(String connectionId);
+
+  CompletableFuture<DirectStatusResp> rollback(String connectionId, int savepointId);
+
+  CompletableFuture<DirectStatusResp> rollback(String connectionId, String savepointName);
+
+  CompletableFuture<DirectStatusResp> rollback(String connectionId, int savepointId, String savepointName);
+
+  CompletableFuture<DirectStatusResp> setReadOnly(String connectionId, boolean readOnly);
+
+  CompletableFuture<IsReadOnlyResp> isReadOnly(String connectionId);
+
+  CompletableFuture<DirectStatusResp> setCatalog(String connectionId, String catalog);
+
+  CompletableFuture<GetCatalogResp> getCatalog(String connectionId);
+
+  CompletableFuture<DirectStatusResp> setTransactionIsolation(String connectionId, int level);
+
+  CompletableFuture<GetTransactionIsolationResp> getTransactionIsolation(String connectionId);
+
+  CompletableFuture<GetWarningsResp> getWarnings(String connectionId);
+
+  CompletableFuture<DirectStatusResp> clearWarnings(String connectionId);
+
+  CompletableFuture<DirectStatusResp> setClientInfo(String connectionId, Map<String, String> info);
+
+  CompletableFuture<DirectStatusResp> setClientInfo(String connectionId, String name, String value);
+
+  CompletableFuture<GetClientInfoResp> getClientInfo(String connectionId);
+
+  CompletableFuture<DirectStatusResp> setTypeMap(String connectionId, Map<String, String> map);
+
+  CompletableFuture<GetTypeMapResp> getTypeMap(String connectionId);
+
+  CompletableFuture<DirectStatusResp> setHoldability(String connectionId, int holdability);
+
+  CompletableFuture<GetHoldabilityResp> getHoldability(String connectionId);
+
+  CompletableFuture<DirectStatusResp> setSchema(String connectionId, String schema);
+
+  CompletableFuture<GetSchemaResp> getSchema(String connectionId);
+
+  CompletableFuture<DirectStatusResp> setNetworkTimeout(String connectionId, int milliseconds);
+
+  CompletableFuture<GetNetworkTimeoutResp> getNetworkTimeout(String connectionId);
+
+  CompletableFuture<SetSavepointResp> setSavepoint(String connectionId);
+
+  CompletableFuture<SetSavepointResp> setSavepoint(String connectionId, String name);
+
+  CompletableFuture<DirectStatusResp> releaseSavepoint(String connectionId, Savepoint savepoint);
+
+  CompletableFuture<DirectStatusResp> setSchema(String connectionId, String schema, String catalog);
+
+  CompletableFuture<DirectStatusResp> applyConnectionState(String connectionId, ConnectionState state);
+
+  CompletableFuture<IsValidResp> isValid(String connectionId, int timeout);
+
+  CompletableFuture<DirectStatusResp> getCatalogs(String connectionId);
+
+  CompletableFuture<DirectStatusResp> getSchemas(String connectionId, String catalog, String schemaPattern);
+
+  CompletableFuture<DirectStatusResp> getTables(
+    String connectionId, String catalog, String schemaPattern, String tableNamePattern, List<String> types);
+
+  CompletableFuture<DirectStatusResp> getTableTypes(String connectionId);
+
+  CompletableFuture<DirectStatusResp> getColumns(
+    String connectionId, String catalog, String schemaPattern, String tablePattern, String columnNamePattern);
+
+  CompletableFuture<DirectStatusResp> getPrimaryKeys(String connectionId, String catalog, String schema, String table);
+
+  CompletableFuture<DirectStatusResp> getFunctions(
+    String connectionId, String catalog, String schemaPattern, String functionNamePattern);
+
+  CompletableFuture<DirectStatusResp> getTypeInfo(String connectionId);
+
+  /**
+   * Get the DatabaseMetaData values in one call, all of them if no key is given.
+   */
+  CompletableFuture<GetDatabaseMetaDataResp> getDatabaseMetaData(
+    String connectionId, Collection<DatabaseMetaData> keys);
+}
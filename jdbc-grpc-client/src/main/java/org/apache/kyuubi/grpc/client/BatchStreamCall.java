@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.jdbc.statement.ExecuteBatchResp;
+import org.apache.kyuubi.grpc.jdbc.statement.ExecuteBatchStreamReq;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+
+/**
+ * The client side of a Statement.ExecuteBatchStream call for a blocking caller. The caller sends
+ * the parameter blocks with {@link #send}, which waits for the flow control window instead of
+ * buffering the whole batch in memory, and collects the update counts with {@link #finish}.
+ */
+class BatchStreamCall implements ClientResponseObserver<ExecuteBatchStreamReq, ExecuteBatchResp> {
+  private final ExecuteBatchResp.Builder result = ExecuteBatchResp.newBuilder();
+  private ClientCallStreamObserver<ExecuteBatchStreamReq> requestStream;
+  private Throwable failure = null;
+  private boolean done = false;
+
+  @Override
+  public void beforeStart(ClientCallStreamObserver<ExecuteBatchStreamReq> requestStream) {
+    this.requestStream = requestStream;
+    requestStream.setOnReadyHandler(() -> {
+      synchronized (this) {
+        notifyAll();
+      }
+    });
+  }
+
+  /**
+   * @return false if the server already failed the batch, the remaining blocks should not be sent
+   */
+  boolean send(ExecuteBatchStreamReq block) {
+    synchronized (this) {
+      while (!done && !isFailed() && !requestStream.isReady()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          requestStream.cancel("Interrupted", e);
+          throw Status.CANCELLED.withCause(e).asRuntimeException();
+        }
+      }
+      if (done || isFailed()) {
+        return false;
+      }
+    }
+    requestStream.onNext(block);
+    return true;
+  }
+
+  /**
+   * Half close the call and wait for the update counts of all the sent blocks.
+   */
+  ExecuteBatchResp finish() {
+    requestStream.onCompleted();
+    synchronized (this) {
+      while (!done) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          requestStream.cancel("Interrupted", e);
+          throw Status.CANCELLED.withCause(e).asRuntimeException();
+        }
+      }
+      if (failure != null) {
+        throw Status.fromThrowable(failure).asRuntimeException();
+      }
+      if (!result.hasStatus()) {
+        result.setStatus(OK);
+      }
+      return result.build();
+    }
+  }
+
+  private boolean isFailed() {
+    return result.hasStatus() && result.getStatus().getStatusCode() != StatusCode.OK;
+  }
+
+  @Override
+  public synchronized void onNext(ExecuteBatchResp resp) {
+    if (resp.getStatus().getStatusCode() != StatusCode.OK) {
+      result.setStatus(resp.getStatus());
+      notifyAll();
+    }
+    result.addAllUpdateCounts(resp.getUpdateCountsList());
+  }
+
+  @Override
+  public synchronized void onError(Throwable t) {
+    failure = t;
+    done = true;
+    notifyAll();
+  }
+
+  @Override
+  public synchronized void onCompleted() {
+    done = true;
+    notifyAll();
+  }
+}
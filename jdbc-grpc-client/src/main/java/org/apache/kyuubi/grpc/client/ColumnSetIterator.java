@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.Context;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the batches pushed by the Jdbc.StreamResultSet RPC. A batch is requested from the
+ * server only when the previous one is consumed. Close it to cancel the stream when the
+ * result is abandoned before being exhausted.
+ */
+public class ColumnSetIterator implements Iterator<ColumnDataSet>, AutoCloseable {
+  private final Iterator<GetNextColumnSetResp> responses;
+  private final Context.CancellableContext context;
+
+  ColumnSetIterator(Iterator<GetNextColumnSetResp> responses, Context.CancellableContext context) {
+    this.responses = responses;
+    this.context = context;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return responses.hasNext();
+  }
+
+  @Override
+  public ColumnDataSet next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    GetNextColumnSetResp resp = responses.next();
+    if (resp.getStatus().getStatusCode() != StatusCode.OK) {
+      close();
+      throw new JdbcGrpcException(resp.getStatus());
+    }
+    return resp.getData();
+  }
+
+  @Override
+  public void close() {
+    context.cancel(null);
+  }
+}
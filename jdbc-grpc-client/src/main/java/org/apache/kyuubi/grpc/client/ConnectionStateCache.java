@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.jdbc.connection.ConnectionState;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client side copy of the state of the connections opened by a client. A field is unknown
+ * (null) until it is reported by the server, either in the OpenConnection response or by
+ * the first getter round trip, and it is updated by the setters that succeed.
+ */
+public class ConnectionStateCache {
+  private final Map<String, State> states = new ConcurrentHashMap<>();
+
+  /**
+   * Start tracking a connection, seeded with the state reported in the OpenConnection response.
+   */
+  void register(String connectionId, Map<String, String> extraInfo) {
+    State state = new State();
+    state.autoCommit = parseBoolean(extraInfo.get(ConnectionConfigs.STATE_AUTO_COMMIT));
+    state.readOnly = parseBoolean(extraInfo.get(ConnectionConfigs.STATE_READ_ONLY));
+    state.catalog = extraInfo.get(ConnectionConfigs.STATE_CATALOG);
+    state.schema = extraInfo.get(ConnectionConfigs.STATE_SCHEMA);
+    state.transactionIsolation = parseInteger(extraInfo.get(ConnectionConfigs.STATE_TRANSACTION_ISOLATION));
+    state.holdability = parseInteger(extraInfo.get(ConnectionConfigs.STATE_HOLDABILITY));
+    state.networkTimeout = parseInteger(extraInfo.get(ConnectionConfigs.STATE_NETWORK_TIMEOUT));
+    states.put(connectionId, state);
+  }
+
+  /**
+   * Update the tracked connection with the fields of a successfully applied {@link ConnectionState}.
+   */
+  void apply(String connectionId, ConnectionState applied) {
+    State state = states.get(connectionId);
+    if (state == null) {
+      return;
+    }
+    if (applied.hasAutoCommit()) {
+      state.autoCommit = applied.getAutoCommit();
+    }
+    if (applied.hasReadOnly()) {
+      state.readOnly = applied.getReadOnly();
+    }
+    if (applied.hasCatalog()) {
+      state.catalog = applied.getCatalog();
+    }
+    if (applied.hasSchema()) {
+      state.schema = applied.getSchema();
+    }
+    if (applied.hasTransactionIsolation()) {
+      state.transactionIsolation = applied.getTransactionIsolation();
+    }
+    if (applied.hasHoldability()) {
+      state.holdability = applied.getHoldability();
+    }
+    if (applied.hasNetworkTimeout()) {
+      state.networkTimeout = applied.getNetworkTimeout();
+    }
+  }
+
+  /**
+   * @return the cached state of the connection, null if the connection is not tracked
+   */
+  State get(String connectionId) {
+    return states.get(connectionId);
+  }
+
+  /**
+   * Forget all the cached values of a connection, the next getters go to the server.
+   */
+  public void invalidate(String connectionId) {
+    State state = states.get(connectionId);
+    if (state != null) {
+      state.clear();
+    }
+  }
+
+  public void invalidateAll() {
+    states.values().forEach(State::clear);
+  }
+
+  void remove(String connectionId) {
+    states.remove(connectionId);
+  }
+
+  public boolean isTracked(String connectionId) {
+    return states.containsKey(connectionId);
+  }
+
+  private static Boolean parseBoolean(String value) {
+    return value == null ? null : Boolean.valueOf(value);
+  }
+
+  private static Integer parseInteger(String value) {
+    return value == null ? null : Integer.valueOf(value);
+  }
+
+  static class State {
+    volatile Boolean autoCommit;
+    volatile Boolean readOnly;
+    volatile String catalog;
+    volatile String schema;
+    volatile Integer transactionIsolation;
+    volatile Integer holdability;
+    volatile Integer networkTimeout;
+    volatile Map<String, String> typeMap;
+    volatile Map<String, String> clientInfo;
+
+    void setTypeMap(Map<String, String> typeMap) {
+      this.typeMap = Collections.unmodifiableMap(new HashMap<>(typeMap));
+    }
+
+    void setClientInfo(Map<String, String> clientInfo) {
+      this.clientInfo = Collections.unmodifiableMap(new HashMap<>(clientInfo));
+    }
+
+    void clear() {
+      autoCommit = null;
+      readOnly = null;
+      catalog = null;
+      schema = null;
+      transactionIsolation = null;
+      holdability = null;
+      networkTimeout = null;
+      typeMap = null;
+      clientInfo = null;
+    }
+  }
+}
@@ -1,10 +1,14 @@
 package org.apache.kyuubi.grpc.client;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import org.apache.kyuubi.grpc.GetWarningsResp;
+import org.apache.kyuubi.grpc.jdbc.DatabaseMetaData;
 import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.GetDatabaseMetaDataResp;
 import org.apache.kyuubi.grpc.jdbc.connection.*;
 
 public interface JdbcGrpcClient {
@@ -76,7 +80,27 @@ public interface JdbcGrpcClient {
 
   DirectStatusResp setSchema(String connectionId, String schema, String catalog);
 
+  DirectStatusResp applyConnectionState(String connectionId, ConnectionState state);
+
   IsValidResp isValid(String connectionId, int timeout);
 
   DirectStatusResp getCatalogs(String connectionId);
+
+  DirectStatusResp getSchemas(String connectionId, String catalog, String schemaPattern);
+
+  DirectStatusResp getTables(
+    String connectionId, String catalog, String schemaPattern, String tableNamePattern, List<String> types);
+
+  DirectStatusResp getTableTypes(String connectionId);
+
+  DirectStatusResp getColumns(
+    String connectionId, String catalog, String schemaPattern, String tablePattern, String columnNamePattern);
+
+  DirectStatusResp getPrimaryKeys(String connectionId, String catalog, String schema, String table);
+
+  DirectStatusResp getFunctions(String connectionId, String catalog, String schemaPattern, String functionNamePattern);
+
+  DirectStatusResp getTypeInfo(String connectionId);
+
+  GetDatabaseMetaDataResp getDatabaseMetaData(String connectionId, Collection<DatabaseMetaData> keys);
 }
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import com.google.protobuf.Message;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.jdbc.DatabaseMetaData;
+import org.apache.kyuubi.grpc.jdbc.DatabaseMetaDataEntry;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.apache.kyuubi.grpc.jdbc.GetResultSetSchemaResp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Client side cache of the results of the metadata calls, e.g. GetTables or GetColumns, keyed by
+ * the request message. It holds at most {@code maxEntries} results of {@code maxBytes} in total,
+ * the least recently used are evicted first, and a result larger than {@code maxBytes} is not
+ * cached but fetched from the server. A result expires after the TTL unless the server sent a
+ * {@link ConnectionConfigs#METADATA_CACHE_CONTROL} hint with the response. The results of a
+ * connection are dropped when it is closed, or explicitly by {@link #invalidate(String)}, e.g.
+ * after a DDL statement. The DatabaseMetaData values are kept for the lifetime of the connection.
+ */
+public class MetadataCache {
+  public static final int DEFAULT_MAX_ENTRIES = 1024;
+  public static final long DEFAULT_MAX_BYTES = 32L << 20;
+  public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long ttlMillis;
+  private final LongSupplier clock;
+  private final LinkedHashMap<Message, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes = 0;
+  // the DatabaseMetaData values of the connections, they do not change while connected
+  private final Map<String, Map<DatabaseMetaData, DatabaseMetaDataEntry>> databaseMetaData = new HashMap<>();
+
+  public MetadataCache() {
+    this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  public MetadataCache(int maxEntries, long ttl, TimeUnit unit) {
+    this(maxEntries, DEFAULT_MAX_BYTES, ttl, unit);
+  }
+
+  public MetadataCache(int maxEntries, long maxBytes, long ttl, TimeUnit unit) {
+    this(maxEntries, maxBytes, unit.toMillis(ttl), System::currentTimeMillis);
+  }
+
+  MetadataCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+    this(maxEntries, DEFAULT_MAX_BYTES, ttlMillis, clock);
+  }
+
+  MetadataCache(int maxEntries, long maxBytes, long ttlMillis, LongSupplier clock) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+    }
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+    }
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * @return whether a result of the size can be cached, the larger ones are fetched from the server
+   */
+  boolean fits(long resultBytes) {
+    return resultBytes <= maxBytes;
+  }
+
+  /**
+   * @return the cached result of the request, null if absent or expired
+   */
+  synchronized Result get(Message req) {
+    Entry entry = entries.get(req);
+    if (entry == null) {
+      return null;
+    }
+    if (clock.getAsLong() >= entry.expireTime) {
+      entries.remove(req);
+      bytes -= entry.result.bytes;
+      return null;
+    }
+    return entry.result;
+  }
+
+  /**
+   * Cache the result of the request of the connection for as long as the cache control allows.
+   *
+   * @param cacheControl the hint of the server, or the default of the call, null for the TTL
+   */
+  synchronized void put(String connectionId, Message req, Result result, String cacheControl) {
+    long expireTime;
+    if (cacheControl == null) {
+      expireTime = clock.getAsLong() + ttlMillis;
+    } else if (cacheControl.equals(ConnectionConfigs.METADATA_CACHE_SESSION)) {
+      expireTime = Long.MAX_VALUE;
+    } else if (cacheControl.startsWith(ConnectionConfigs.METADATA_CACHE_MAX_AGE)) {
+      try {
+        long maxAge = Long.parseLong(cacheControl.substring(ConnectionConfigs.METADATA_CACHE_MAX_AGE.length()));
+        expireTime = clock.getAsLong() + TimeUnit.SECONDS.toMillis(maxAge);
+      } catch (NumberFormatException e) {
+        expireTime = clock.getAsLong() + ttlMillis;
+      }
+    } else {
+      // no-store, or a hint this client does not know
+      return;
+    }
+    if (expireTime <= clock.getAsLong() || !fits(result.bytes)) {
+      return;
+    }
+    Entry previous = entries.put(req, new Entry(connectionId, result, expireTime));
+    bytes += result.bytes - (previous == null ? 0 : previous.result.bytes);
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (entries.size() > maxEntries || bytes > maxBytes) {
+      bytes -= eldest.next().result.bytes;
+      eldest.remove();
+    }
+  }
+
+  /**
+   * @return the cached DatabaseMetaData values of the connection
+   */
+  synchronized Map<DatabaseMetaData, DatabaseMetaDataEntry> getDatabaseMetaData(String connectionId) {
+    Map<DatabaseMetaData, DatabaseMetaDataEntry> values = databaseMetaData.get(connectionId);
+    return values == null ? Collections.emptyMap() : new EnumMap<>(values);
+  }
+
+  /**
+   * Cache DatabaseMetaData values for the lifetime of the connection.
+   */
+  synchronized void putDatabaseMetaData(String connectionId, List<DatabaseMetaDataEntry> values) {
+    Map<DatabaseMetaData, DatabaseMetaDataEntry> cached =
+      databaseMetaData.computeIfAbsent(connectionId, id -> new EnumMap<>(DatabaseMetaData.class));
+    for (DatabaseMetaDataEntry value : values) {
+      cached.put(value.getKey(), value);
+    }
+  }
+
+  /**
+   * Drop the cached results of the connection.
+   */
+  public synchronized void invalidate(String connectionId) {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.connectionId.equals(connectionId)) {
+        bytes -= entry.result.bytes;
+        iterator.remove();
+      }
+    }
+    databaseMetaData.remove(connectionId);
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+    bytes = 0;
+    databaseMetaData.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the serialized size of the cached results
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  private static final class Entry {
+    final String connectionId;
+    final Result result;
+    final long expireTime;
+
+    Entry(String connectionId, Result result, long expireTime) {
+      this.connectionId = connectionId;
+      this.result = result;
+      this.expireTime = expireTime;
+    }
+  }
+
+  /**
+   * A fully fetched result, replayed by the client to the callers of the metadata call.
+   */
+  static final class Result {
+    final GetResultSetSchemaResp schema;
+    final List<GetNextColumnSetResp> batches;
+    final long bytes;
+
+    Result(GetResultSetSchemaResp schema, List<GetNextColumnSetResp> batches) {
+      this.schema = schema;
+      this.batches = Collections.unmodifiableList(new ArrayList<>(batches));
+      long bytes = schema.getSerializedSize();
+      for (GetNextColumnSetResp batch : batches) {
+        bytes += batch.getSerializedSize();
+      }
+      this.bytes = bytes;
+    }
+  }
+}
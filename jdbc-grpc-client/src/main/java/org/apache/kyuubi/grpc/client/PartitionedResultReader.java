@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.Context;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.GrpcUtils;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads the partitions of a result, see {@link SimpleBlockingJdbcClient#executeSql}, each on
+ * its own stream. The partitions can be handed out to be read independently, or read on an
+ * executor and merged back in the order of the rows.
+ *
+ * <p>The batches are decoded on the threads reading the partitions.
+ */
+public class PartitionedResultReader {
+
+  // the batches of a partition received ahead of the merged result
+  private static final int MAX_PENDING = 2;
+
+  private final SimpleBlockingJdbcClient client;
+  private final List<String> partitionIds;
+  private final int fetchSize;
+
+  /**
+   * @param partitionIds the partitions listed in the response of ExecuteSql
+   * @param fetchSize    the maximum number of rows of the batches, 0 for the server default
+   */
+  public PartitionedResultReader(SimpleBlockingJdbcClient client, List<String> partitionIds, int fetchSize) {
+    this.client = client;
+    this.partitionIds = Collections.unmodifiableList(partitionIds);
+    this.fetchSize = fetchSize;
+  }
+
+  public List<String> getPartitionIds() {
+    return partitionIds;
+  }
+
+  /**
+   * Stream the batches of a partition, in the order of the rows but with the batches of the
+   * other partitions missing.
+   */
+  public ColumnSetIterator partition(int index) {
+    return client.streamResultSet(partitionIds.get(index), fetchSize);
+  }
+
+  /**
+   * Read all the partitions at once on the executor, one task each, and merge their batches
+   * in the order of the rows. Close the iterator to cancel the streams left.
+   */
+  public ColumnSetIterator merge(Executor executor) {
+    Context.CancellableContext context = Context.current().withCancellation();
+    Merger merger = new Merger(partitionIds.size());
+    context.addListener(ctx -> merger.cancel(), Runnable::run);
+    for (int i = 0; i < partitionIds.size(); i++) {
+      int index = i;
+      executor.execute(context.wrap(() -> merger.read(index)));
+    }
+    return new ColumnSetIterator(merger, context);
+  }
+
+  private final class Merger implements Iterator<GetNextColumnSetResp> {
+    // the batches received and their partition, by their first row
+    private final Map<Long, GetNextColumnSetResp> received = new HashMap<>();
+    private final Map<Long, Integer> partitionOf = new HashMap<>();
+    private final int[] pending;
+    private int running;
+    private long nextRow = 1;
+    private GetNextColumnSetResp error = null;
+    private boolean cancelled = false;
+
+    Merger(int partitions) {
+      this.pending = new int[partitions];
+      this.running = partitions;
+    }
+
+    void read(int index) {
+      try {
+        Iterator<GetNextColumnSetResp> responses = client.streamResponses(partitionIds.get(index), fetchSize);
+        while (responses.hasNext()) {
+          GetNextColumnSetResp resp = responses.next();
+          synchronized (this) {
+            if (resp.getStatus().getStatusCode() != StatusCode.OK) {
+              fail(resp);
+              return;
+            }
+            received.put(resp.getStartRow(), resp);
+            partitionOf.put(resp.getStartRow(), index);
+            pending[index]++;
+            notifyAll();
+            // the partition holding the next row never waits, its previous batches are consumed
+            while (pending[index] >= MAX_PENDING && !cancelled) {
+              wait();
+            }
+            if (cancelled) {
+              return;
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failed(e);
+      } catch (RuntimeException e) {
+        failed(e);
+      } finally {
+        synchronized (this) {
+          running--;
+          notifyAll();
+        }
+      }
+    }
+
+    private void failed(Exception e) {
+      fail(GetNextColumnSetResp.newBuilder().setStatus(GrpcUtils.errorStatus(e)).build());
+    }
+
+    private synchronized void fail(GetNextColumnSetResp resp) {
+      if (error == null && !cancelled) {
+        error = resp;
+      }
+      notifyAll();
+    }
+
+    synchronized void cancel() {
+      cancelled = true;
+      notifyAll();
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+      while (error == null && !received.containsKey(nextRow) && running > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while merging the partitions", e);
+        }
+      }
+      return error != null || received.containsKey(nextRow);
+    }
+
+    @Override
+    public synchronized GetNextColumnSetResp next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      if (error != null) {
+        return error;
+      }
+      GetNextColumnSetResp resp = received.remove(nextRow);
+      pending[partitionOf.remove(nextRow)]--;
+      nextRow += ColumnVectors.rowCount(resp.getData().getColumns(0));
+      notifyAll();
+      return resp;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.jdbc.ColumnData;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.apache.kyuubi.grpc.jdbc.GetResultSetSchemaResp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A metadata result served by the client from the batches it already fetched: the whole result
+ * kept by the {@link MetadataCache}, or the first batches of a result too large to be cached,
+ * the rest then being fetched from the server operation still open.
+ *
+ * <p>The batches are cut or merged to the fetch size of the caller, unless they hold values
+ * without a typed vector or Arrow batches, which are replayed as fetched.
+ */
+final class ReplayedResult {
+  final String connectionId;
+  final GetResultSetSchemaResp schema;
+  // the operation holding the rest of the result, null if the batches hold the whole result
+  final String operationId;
+  // without the empty batch ending the result
+  private final List<GetNextColumnSetResp> batches;
+  private final boolean resizable;
+  // the batch and the row in it to replay next
+  private int batch = 0;
+  private int row = 0;
+  private volatile long lastAccessTime;
+
+  ReplayedResult(String connectionId, GetResultSetSchemaResp schema, List<GetNextColumnSetResp> batches,
+                 String operationId, long now) {
+    this.connectionId = connectionId;
+    this.schema = schema;
+    this.operationId = operationId;
+    this.batches = new ArrayList<>();
+    boolean resizable = true;
+    for (GetNextColumnSetResp batch : batches) {
+      if (!batch.getArrowBatch().isEmpty()) {
+        resizable = false;
+      } else if (rowCount(batch.getData()) == 0) {
+        continue;
+      }
+      for (ColumnData column : batch.getData().getColumnsList()) {
+        resizable &= column.getVectorCase() != ColumnData.VectorCase.VECTOR_NOT_SET
+          || column.getValuesCount() == 0;
+      }
+      this.batches.add(batch);
+    }
+    this.resizable = resizable;
+    this.lastAccessTime = now;
+  }
+
+  boolean isIdle(long now, long timeoutMillis) {
+    return now - lastAccessTime >= timeoutMillis;
+  }
+
+  /**
+   * @param fetchSize the rows of the batch, 0 for the batches as fetched from the server
+   * @return the next batch, null once all of them are replayed
+   */
+  synchronized GetNextColumnSetResp next(int fetchSize, long now) {
+    lastAccessTime = now;
+    if (batch >= batches.size()) {
+      return null;
+    }
+    GetNextColumnSetResp current = batches.get(batch);
+    int rows = rowCount(current.getData());
+    if (!resizable || fetchSize <= 0 || row == 0 && rows == fetchSize) {
+      batch++;
+      row = 0;
+      return current;
+    }
+    long startRow = current.getStartRow() + row;
+    ColumnVectors.Builder[] columns = new ColumnVectors.Builder[current.getData().getColumnsCount()];
+    for (int c = 0; c < columns.length; c++) {
+      columns[c] = ColumnVectors.builder(current.getData().getColumns(c).getTypeId());
+    }
+    int wanted = fetchSize;
+    while (wanted > 0 && batch < batches.size()) {
+      ColumnDataSet data = batches.get(batch).getData();
+      int end = Math.min(rowCount(data), row + wanted);
+      for (int r = row; r < end; r++) {
+        for (int c = 0; c < columns.length; c++) {
+          columns[c].add(ColumnVectors.get(data.getColumns(c), r));
+        }
+      }
+      wanted -= end - row;
+      row = end;
+      if (row == rowCount(data)) {
+        batch++;
+        row = 0;
+      }
+    }
+    ColumnDataSet.Builder data = ColumnDataSet.newBuilder();
+    for (ColumnVectors.Builder column : columns) {
+      data.addColumns(column.build());
+    }
+    return current.toBuilder().setData(data).setStartRow(startRow).build();
+  }
+
+  /**
+   * @return the batches not replayed yet
+   */
+  synchronized List<GetNextColumnSetResp> remaining(int fetchSize, long now) {
+    List<GetNextColumnSetResp> remaining = new ArrayList<>();
+    for (GetNextColumnSetResp next = next(fetchSize, now); next != null; next = next(fetchSize, now)) {
+      remaining.add(next);
+    }
+    return remaining;
+  }
+
+  /**
+   * @return the batches not replayed yet, then the responses of the server operation holding the rest
+   */
+  Iterator<GetNextColumnSetResp> followedBy(int fetchSize, Iterator<GetNextColumnSetResp> responses) {
+    Iterator<GetNextColumnSetResp> head = remaining(fetchSize, System.currentTimeMillis()).iterator();
+    return new Iterator<GetNextColumnSetResp>() {
+      @Override
+      public boolean hasNext() {
+        return head.hasNext() || responses.hasNext();
+      }
+
+      @Override
+      public GetNextColumnSetResp next() {
+        return head.hasNext() ? head.next() : responses.next();
+      }
+    };
+  }
+
+  private static int rowCount(ColumnDataSet data) {
+    return data.getColumnsCount() == 0 ? 0 : ColumnVectors.rowCount(data.getColumns(0));
+  }
+}
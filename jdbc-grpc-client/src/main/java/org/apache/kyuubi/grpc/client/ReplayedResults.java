@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import org.apache.kyuubi.grpc.client.pool.ChannelPool;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metadata results a client replays itself, by the identifier handed to the caller in place
+ * of an operation id. A result not fetched for {@link #IDLE_TIMEOUT_MILLIS} is dropped when the
+ * next one is registered, the server operation still open for its rest is left to the reaper.
+ */
+final class ReplayedResults {
+  static final String PREFIX = "kyuubi-replayed-";
+  static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private final ChannelPool pool;
+  private final Map<String, ReplayedResult> results = new ConcurrentHashMap<>();
+
+  ReplayedResults(ChannelPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * @return the identifier of the result
+   */
+  String register(ReplayedResult result) {
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, ReplayedResult> entry : results.entrySet()) {
+      if (entry.getValue().isIdle(now, IDLE_TIMEOUT_MILLIS)) {
+        drop(entry.getKey());
+      }
+    }
+    String id = PREFIX + UUID.randomUUID();
+    results.put(id, result);
+    return id;
+  }
+
+  boolean contains(String id) {
+    return results.containsKey(id);
+  }
+
+  ReplayedResult get(String id) {
+    return results.get(id);
+  }
+
+  /**
+   * Hand the result over to the caller, e.g. to stream it, the server operation stays bound.
+   */
+  ReplayedResult remove(String id) {
+    return results.remove(id);
+  }
+
+  /**
+   * Drop the result once replayed, unbinding the server operation of its rest if any.
+   */
+  void drop(String id) {
+    ReplayedResult result = results.remove(id);
+    if (result != null && result.operationId != null) {
+      pool.unbind(result.operationId);
+    }
+  }
+
+  void dropConnection(String connectionId) {
+    results.values().removeIf(result -> result.connectionId.equals(connectionId));
+  }
+}
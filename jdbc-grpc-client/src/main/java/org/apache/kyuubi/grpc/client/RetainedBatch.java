@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import com.google.protobuf.ByteString;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.jdbc.ColumnData;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+
+import java.io.InputStream;
+
+/**
+ * A fetched batch whose bytes are views over the buffers received by the transport, see
+ * {@link SimpleBlockingJdbcClient#getNextResultSetRetained}. The batch must not be used once
+ * closed, closing it releases the buffers.
+ */
+public class RetainedBatch implements AutoCloseable {
+
+  private final GetNextColumnSetResp response;
+  // the buffers aliased by the response, null if it was copied
+  private InputStream buffers;
+  private final boolean aliased;
+  private boolean closed = false;
+
+  RetainedBatch(GetNextColumnSetResp response, InputStream buffers) {
+    this.response = response;
+    this.buffers = buffers;
+    this.aliased = buffers != null;
+  }
+
+  public synchronized GetNextColumnSetResp getResponse() {
+    checkOpen();
+    return response;
+  }
+
+  public synchronized ColumnDataSet getData() {
+    checkOpen();
+    return response.getData();
+  }
+
+  /**
+   * @return true if the batch aliases the received buffers, false if its bytes were copied
+   */
+  public boolean isAliased() {
+    return aliased;
+  }
+
+  /**
+   * @return a view of the string or binary value of the row, null if the value is null
+   */
+  public synchronized ByteString getBytes(int column, int row) {
+    checkOpen();
+    ColumnData data = response.getData().getColumns(column);
+    if (ColumnVectors.isNull(data, row)) {
+      return null;
+    }
+    if (data.hasStringValues()) {
+      return ColumnVectors.getBytes(data.getStringValues(), row);
+    }
+    if (data.hasBinaryValues()) {
+      return ColumnVectors.getBytes(data.getBinaryValues(), row);
+    }
+    throw new IllegalArgumentException("Column " + column + " is not a bytes vector");
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("The batch is closed");
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (buffers != null) {
+      AliasingResultMarshaller.close(buffers);
+      buffers = null;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.Context;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the batches pushed by the Jdbc.StreamResultSet RPC like {@link ColumnSetIterator},
+ * as {@link RetainedBatch}es to be closed by the caller. Closing the iterator cancels the
+ * stream and releases the batches received but not handed out.
+ */
+public class RetainedBatchIterator implements Iterator<RetainedBatch>, AutoCloseable {
+  private final Iterator<GetNextColumnSetResp> responses;
+  private final AliasingResultMarshaller marshaller;
+  private final Context.CancellableContext context;
+
+  RetainedBatchIterator(
+    Iterator<GetNextColumnSetResp> responses,
+    AliasingResultMarshaller marshaller,
+    Context.CancellableContext context) {
+    this.responses = responses;
+    this.marshaller = marshaller;
+    this.context = context;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return responses.hasNext();
+  }
+
+  @Override
+  public RetainedBatch next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    RetainedBatch batch = marshaller.retain(responses.next());
+    org.apache.kyuubi.grpc.Status status = batch.getResponse().getStatus();
+    if (status.getStatusCode() != StatusCode.OK) {
+      batch.close();
+      close();
+      throw new JdbcGrpcException(status);
+    }
+    return batch;
+  }
+
+  @Override
+  public void close() {
+    context.cancel(null);
+    marshaller.releaseAll();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.Context;
+import io.grpc.stub.ClientCalls;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.apache.kyuubi.grpc.jdbc.JdbcGrpc;
+import org.apache.kyuubi.grpc.jdbc.JdbcGrpc.JdbcBlockingStub;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * The fetch calls whose responses are parsed in place from the buffers of the transport by an
+ * {@link AliasingResultMarshaller}, see {@link SimpleBlockingJdbcClient#getNextResultSetRetained}.
+ */
+final class RetainedCalls {
+
+  private RetainedCalls() {
+  }
+
+  static RetainedBatch getNextResultSet(JdbcBlockingStub stub, GetNextColumnSet req) {
+    AliasingResultMarshaller marshaller = new AliasingResultMarshaller();
+    try {
+      GetNextColumnSetResp resp = ClientCalls.blockingUnaryCall(
+        stub.getChannel(), marshaller.method(JdbcGrpc.getGetNextResultSetMethod()), stub.getCallOptions(), req);
+      return marshaller.retain(resp);
+    } catch (RuntimeException e) {
+      marshaller.releaseAll();
+      throw e;
+    }
+  }
+
+  /**
+   * @param stub     the stub of the operation, null if the replayed batches hold the whole result
+   * @param replayed the batches to hand out before the responses of the server, may be null
+   */
+  static RetainedBatchIterator streamResultSet(
+    JdbcBlockingStub stub, GetNextColumnSet req, ReplayedResult replayed) {
+    AliasingResultMarshaller marshaller = new AliasingResultMarshaller();
+    Context.CancellableContext context = Context.current().withCancellation();
+    Context previous = context.attach();
+    try {
+      Iterator<GetNextColumnSetResp> responses = Collections.emptyIterator();
+      if (stub != null) {
+        responses = ClientCalls.blockingServerStreamingCall(
+          stub.getChannel(), marshaller.method(JdbcGrpc.getStreamResultSetMethod()), stub.getCallOptions(), req);
+      }
+      if (replayed != null) {
+        responses = replayed.followedBy(req.getFetchSize(), responses);
+      }
+      return new RetainedBatchIterator(responses, marshaller, context);
+    } finally {
+      context.detach(previous);
+    }
+  }
+}
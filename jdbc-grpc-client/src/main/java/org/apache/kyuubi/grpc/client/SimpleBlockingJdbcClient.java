@@ -1,30 +1,109 @@
 package org.apache.kyuubi.grpc.client;
 
+import com.google.protobuf.Message;
 import io.grpc.*;
+import io.grpc.stub.AbstractStub;
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
 import org.apache.kyuubi.grpc.GetWarningsResp;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.client.metrics.MetricsClientInterceptor;
+import org.apache.kyuubi.grpc.client.pool.ChannelPool;
 import org.apache.kyuubi.grpc.common.ConnectionHandle;
+import org.apache.kyuubi.grpc.common.OperationHandle;
+import org.apache.kyuubi.grpc.common.PreparedStatementHandle;
 import org.apache.kyuubi.grpc.common.StatementHandle;
+import org.apache.kyuubi.grpc.compression.Compression;
+import org.apache.kyuubi.grpc.compression.CompressionClientInterceptor;
 import org.apache.kyuubi.grpc.jdbc.*;
 import org.apache.kyuubi.grpc.jdbc.JdbcGrpc.JdbcBlockingStub;
 import org.apache.kyuubi.grpc.jdbc.connection.*;
+import org.apache.kyuubi.grpc.metrics.DefaultMetricsRegistry;
+import org.apache.kyuubi.grpc.metrics.MetricsRegistry;
 import org.apache.kyuubi.grpc.jdbc.statement.*;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
 
 public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
+  private final ChannelPool pool;
+  private final MetricsClientInterceptor metricsInterceptor;
+  private final CompressionClientInterceptor compressionInterceptor = new CompressionClientInterceptor();
   private JdbcBlockingStub blockingStub = null;
   private ConnectionGrpc.ConnectionBlockingStub connectionBlockingStub = null;
   private StatementGrpc.StatementBlockingStub statementBlockingStub = null;
+  private PreparedStatementGrpc.PreparedStatementBlockingStub preparedStatementBlockingStub = null;
+  private StatementGrpc.StatementStub statementAsyncStub = null;
+  private final ConnectionStateCache stateCache = new ConnectionStateCache();
+  private final MetadataCache metadataCache;
+  // the connections caching their metadata
+  private final Set<String> metadataCached = ConcurrentHashMap.newKeySet();
+  private final ReplayedResults replayed;
+  // the negotiated codec of the connections compressing their messages
+  private final Map<String, String> compressions = new ConcurrentHashMap<>();
+
+  /**
+   * Spread the connections over the sub-channels of the pool, each connection and its
+   * statements and operations stay on the sub-channel it was opened on.
+   */
+  public SimpleBlockingJdbcClient(ChannelPool pool) {
+    this(pool, new DefaultMetricsRegistry());
+  }
+
+  /**
+   * @param metricsRegistry records the per-method metrics of every call, see {@link MetricsClientInterceptor}
+   */
+  public SimpleBlockingJdbcClient(ChannelPool pool, MetricsRegistry metricsRegistry) {
+    this(pool, metricsRegistry, new MetadataCache());
+  }
+
+  /**
+   * @param metadataCache caches the metadata of the connections opened with
+   *                      {@link ConnectionConfigs#CLIENT_METADATA_CACHE_ENABLED}
+   */
+  public SimpleBlockingJdbcClient(ChannelPool pool, MetricsRegistry metricsRegistry, MetadataCache metadataCache) {
+    this.pool = pool;
+    this.metadataCache = metadataCache;
+    this.replayed = new ReplayedResults(pool);
+    this.metricsInterceptor = new MetricsClientInterceptor(metricsRegistry);
+    blockingStub = JdbcGrpc.newBlockingStub(pool)
+      .withInterceptors(compressionInterceptor, metricsInterceptor);
+    connectionBlockingStub = ConnectionGrpc.newBlockingStub(pool)
+      .withInterceptors(compressionInterceptor, metricsInterceptor);
+    statementBlockingStub = StatementGrpc.newBlockingStub(pool)
+      .withInterceptors(compressionInterceptor, metricsInterceptor);
+    preparedStatementBlockingStub = PreparedStatementGrpc.newBlockingStub(pool)
+      .withInterceptors(compressionInterceptor, metricsInterceptor);
+    statementAsyncStub = StatementGrpc.newStub(pool)
+      .withInterceptors(compressionInterceptor, metricsInterceptor);
+  }
 
+  /**
+   * The channel should be built with {@link Compression#configure(ManagedChannelBuilder)} for the
+   * connections to negotiate LZ4 compression, gzip is always available.
+   */
   public SimpleBlockingJdbcClient(Channel channel) {
-    blockingStub = JdbcGrpc.newBlockingStub(channel);
-    connectionBlockingStub = ConnectionGrpc.newBlockingStub(channel);
-    statementBlockingStub = StatementGrpc.newBlockingStub(channel);
+    this(ChannelPool.of(channel));
   }
 
+  /**
+   * The channel built from the builder is shut down with the client, see {@link #shutdown()}.
+   */
   public SimpleBlockingJdbcClient(ManagedChannelBuilder builder) {
-    this(builder.build());
+    this(ChannelPool.owning(Compression.configure(builder).build()));
   }
 
   public SimpleBlockingJdbcClient(String host, int port, ChannelCredentials creds) {
@@ -39,17 +118,134 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
     this("localhost", port);
   }
 
+  /**
+   * Route the call to the sub-channel of the id, compressed with the codec of its connection.
+   */
+  private <S extends AbstractStub<S>> S withSession(S stub, String id) {
+    S routed = stub.withOption(ChannelPool.AFFINITY_KEY, id);
+    if (compressions.isEmpty()) {
+      return routed;
+    }
+    String codec = compressions.get(pool.rootOf(id));
+    return codec == null ? routed : routed.withCompression(codec);
+  }
+
+  private JdbcBlockingStub jdbcStub(String id) {
+    return withSession(blockingStub, id);
+  }
+
+  private ConnectionGrpc.ConnectionBlockingStub connectionStub(String connectionId) {
+    return withSession(connectionBlockingStub, connectionId);
+  }
+
+  private StatementGrpc.StatementBlockingStub statementStub(String id) {
+    return withSession(statementBlockingStub, id);
+  }
+
+  private PreparedStatementGrpc.PreparedStatementBlockingStub preparedStub(String id) {
+    return withSession(preparedStatementBlockingStub, id);
+  }
+
+  public ChannelPool getChannelPool() {
+    return pool;
+  }
+
+  /**
+   * Shut down the channels of the pool, the ones passed in by the caller are left open.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  public void shutdownNow() {
+    pool.shutdownNow();
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return pool.awaitTermination(timeout, unit);
+  }
+
+  public MetricsRegistry getMetricsRegistry() {
+    return metricsInterceptor.getRegistry();
+  }
+
+  private static boolean isOk(org.apache.kyuubi.grpc.Status status) {
+    return status.getStatusCode() == StatusCode.OK;
+  }
+
+  /**
+   * The cached state of the connections opened by this client, see
+   * {@link ConnectionConfigs#CLIENT_STATE_CACHE_ENABLED}.
+   */
+  public ConnectionStateCache getConnectionStateCache() {
+    return stateCache;
+  }
+
+  /**
+   * Drop the cached state of a connection, e.g. after executing SQL that changes it.
+   */
+  public void invalidateConnectionState(String connectionId) {
+    stateCache.invalidate(connectionId);
+  }
+
+  /**
+   * @return the codec compressing the messages of the connection, see {@link ConnectionConfigs#COMPRESSION}
+   */
+  public String getCompression(String connectionId) {
+    return compressions.getOrDefault(connectionId, ConnectionConfigs.COMPRESSION_IDENTITY);
+  }
+
   @Override
   public DirectStatusResp openConnection(
     Map<String, String> configs,
     Optional<String> connectionId) {
+    boolean cacheState = true;
+    if (configs.containsKey(ConnectionConfigs.CLIENT_STATE_CACHE_ENABLED)) {
+      cacheState = Boolean.parseBoolean(configs.get(ConnectionConfigs.CLIENT_STATE_CACHE_ENABLED));
+      configs = new HashMap<>(configs);
+      configs.remove(ConnectionConfigs.CLIENT_STATE_CACHE_ENABLED);
+    }
+    boolean cacheMetadata = false;
+    if (configs.containsKey(ConnectionConfigs.CLIENT_METADATA_CACHE_ENABLED)) {
+      cacheMetadata = Boolean.parseBoolean(configs.get(ConnectionConfigs.CLIENT_METADATA_CACHE_ENABLED));
+      configs = new HashMap<>(configs);
+      configs.remove(ConnectionConfigs.CLIENT_METADATA_CACHE_ENABLED);
+    }
+    String requested = configs.get(ConnectionConfigs.COMPRESSION);
+    if (requested != null && !Compression.isSupported(requested)) {
+      // never ask for a codec this side can not decompress
+      configs = new HashMap<>(configs);
+      configs.put(ConnectionConfigs.COMPRESSION, ConnectionConfigs.COMPRESSION_IDENTITY);
+    }
     ConnectionHandle.Builder builder = ConnectionHandle.newBuilder();
     connectionId.ifPresent(builder::setId);
     OpenConnectionReq req = OpenConnectionReq.newBuilder()
       .setConnectionId(builder.build())
       .putAllConfigs(configs)
       .build();
-    return connectionBlockingStub.openConnection(req);
+    ChannelPool.SubChannel channel = pool.select(connectionId.orElse(null));
+    DirectStatusResp resp = connectionBlockingStub.withOption(ChannelPool.SUB_CHANNEL, channel).openConnection(req);
+    if (isOk(resp.getStatus())) {
+      pool.bind(resp.getIdentifier(), channel);
+      String codec = resp.getExtraInfoOrDefault(
+        ConnectionConfigs.COMPRESSION, ConnectionConfigs.COMPRESSION_IDENTITY);
+      if (Compression.isSupported(codec) && !ConnectionConfigs.COMPRESSION_IDENTITY.equals(codec)) {
+        compressions.put(resp.getIdentifier(), codec);
+      } else {
+        compressions.remove(resp.getIdentifier());
+      }
+      if (cacheState) {
+        stateCache.register(resp.getIdentifier(), resp.getExtraInfoMap());
+      } else {
+        stateCache.remove(resp.getIdentifier());
+      }
+      if (cacheMetadata) {
+        metadataCached.add(resp.getIdentifier());
+      } else {
+        metadataCached.remove(resp.getIdentifier());
+      }
+    }
+    return resp;
   }
 
   @Override
@@ -58,7 +254,13 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
     ConnectionHandle req = builder
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.closeConnection(req);
+    forget(connectionId);
+    try {
+      return connectionStub(connectionId).closeConnection(req);
+    } finally {
+      pool.unbind(connectionId);
+      compressions.remove(connectionId);
+    }
   }
 
   @Override
@@ -67,7 +269,23 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
     ConnectionHandle req = builder
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.abortConnection(req);
+    forget(connectionId);
+    try {
+      return connectionStub(connectionId).abortConnection(req);
+    } finally {
+      pool.unbind(connectionId);
+      compressions.remove(connectionId);
+    }
+  }
+
+  /**
+   * Drop what this client keeps of a connection being closed or aborted.
+   */
+  private void forget(String connectionId) {
+    stateCache.remove(connectionId);
+    metadataCached.remove(connectionId);
+    metadataCache.invalidate(connectionId);
+    replayed.dropConnection(connectionId);
   }
 
   @Override
@@ -77,7 +295,12 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .putAllConfigs(info)
       .build();
-    return connectionBlockingStub.setClientInfo(req);
+    DirectStatusResp resp = connectionStub(connectionId).setClientInfo(req);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.clientInfo = null;
+    }
+    return resp;
   }
 
   @Override
@@ -87,15 +310,28 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .putConfigs(name, value)
       .build();
-    return connectionBlockingStub.setClientInfo(req);
+    DirectStatusResp resp = connectionStub(connectionId).setClientInfo(req);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.clientInfo = null;
+    }
+    return resp;
   }
 
   @Override
   public GetClientInfoResp getClientInfo(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.clientInfo != null) {
+      return GetClientInfoResp.newBuilder().setStatus(OK).putAllConfigs(state.clientInfo).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getClientInfo(req);
+    GetClientInfoResp resp = connectionStub(connectionId).getClientInfo(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.setClientInfo(resp.getConfigsMap());
+    }
+    return resp;
   }
 
   @Override
@@ -105,15 +341,28 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .putAllTypeToClass(map)
       .build();
-    return connectionBlockingStub.setTypeMap(req);
+    DirectStatusResp resp = connectionStub(connectionId).setTypeMap(req);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.typeMap = null;
+    }
+    return resp;
   }
 
   @Override
   public GetTypeMapResp getTypeMap(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.typeMap != null) {
+      return GetTypeMapResp.newBuilder().setStatus(OK).putAllTypeToClass(state.typeMap).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getTypeMap(req);
+    GetTypeMapResp resp = connectionStub(connectionId).getTypeMap(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.setTypeMap(resp.getTypeToClassMap());
+    }
+    return resp;
   }
 
   @Override
@@ -123,15 +372,28 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setHoldability(holdability)
       .build();
-    return connectionBlockingStub.setHoldability(req);
+    DirectStatusResp resp = connectionStub(connectionId).setHoldability(req);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.holdability = isOk(resp.getStatus()) ? holdability : null;
+    }
+    return resp;
   }
 
   @Override
   public GetHoldabilityResp getHoldability(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.holdability != null) {
+      return GetHoldabilityResp.newBuilder().setStatus(OK).setHoldability(state.holdability).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getHoldability(req);
+    GetHoldabilityResp resp = connectionStub(connectionId).getHoldability(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.holdability = resp.getHoldability();
+    }
+    return resp;
   }
 
   @Override
@@ -141,15 +403,30 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setSchema(schema)
       .build();
-    return connectionBlockingStub.setSchema(req);
+    DirectStatusResp resp = connectionStub(connectionId).setSchema(req);
+    // the metadata calls without a schema pattern depend on the current schema
+    metadataCache.invalidate(connectionId);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.schema = isOk(resp.getStatus()) ? schema : null;
+    }
+    return resp;
   }
 
   @Override
   public GetSchemaResp getSchema(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.schema != null) {
+      return GetSchemaResp.newBuilder().setStatus(OK).setSchema(state.schema).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getSchema(req);
+    GetSchemaResp resp = connectionStub(connectionId).getSchema(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.schema = resp.getSchema();
+    }
+    return resp;
   }
 
   @Override
@@ -159,15 +436,28 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setMilliseconds(milliseconds)
       .build();
-    return connectionBlockingStub.setNetworkTimeout(req);
+    DirectStatusResp resp = connectionStub(connectionId).setNetworkTimeout(req);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.networkTimeout = isOk(resp.getStatus()) ? milliseconds : null;
+    }
+    return resp;
   }
 
   @Override
   public GetNetworkTimeoutResp getNetworkTimeout(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.networkTimeout != null) {
+      return GetNetworkTimeoutResp.newBuilder().setStatus(OK).setMilliseconds(state.networkTimeout).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getNetworkTimeout(req);
+    GetNetworkTimeoutResp resp = connectionStub(connectionId).getNetworkTimeout(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.networkTimeout = resp.getMilliseconds();
+    }
+    return resp;
   }
 
   @Override
@@ -176,7 +466,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
     SetSavepointReq req = builder
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .build();
-    return connectionBlockingStub.setSavepoint(req);
+    return connectionStub(connectionId).setSavepoint(req);
   }
 
   @Override
@@ -186,7 +476,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setSavepointName(name)
       .build();
-    return connectionBlockingStub.setSavepoint(req);
+    return connectionStub(connectionId).setSavepoint(req);
   }
 
   @Override
@@ -196,7 +486,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setSavepoint(savepoint)
       .build();
-    return connectionBlockingStub.releaseSavepoint(req);
+    return connectionStub(connectionId).releaseSavepoint(req);
   }
 
 
@@ -207,7 +497,30 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setSchema(schema)
       .build();
-    return connectionBlockingStub.setSchema(req);
+    DirectStatusResp resp = connectionStub(connectionId).setSchema(req);
+    // the metadata calls without a schema pattern depend on the current schema
+    metadataCache.invalidate(connectionId);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.schema = isOk(resp.getStatus()) ? schema : null;
+    }
+    return resp;
+  }
+
+  @Override
+  public DirectStatusResp applyConnectionState(String connectionId, ConnectionState state) {
+    ApplyConnectionStateReq req = ApplyConnectionStateReq.newBuilder()
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setState(state)
+      .build();
+    DirectStatusResp resp = connectionStub(connectionId).applyConnectionState(req);
+    metadataCache.invalidate(connectionId);
+    if (isOk(resp.getStatus())) {
+      stateCache.apply(connectionId, state);
+    } else {
+      stateCache.invalidate(connectionId);
+    }
+    return resp;
   }
 
   @Override
@@ -217,7 +530,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setTimeout(timeout)
       .build();
-    return connectionBlockingStub.isValid(req);
+    return connectionStub(connectionId).isValid(req);
   }
 
   @Override
@@ -227,7 +540,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setSql(sql)
       .build();
-    return connectionBlockingStub.nativeSQL(req);
+    return connectionStub(connectionId).nativeSQL(req);
   }
 
   @Override
@@ -237,15 +550,28 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setAutoCommit(autoCommit)
       .build();
-    return connectionBlockingStub.setAutoCommit(req);
+    DirectStatusResp resp = connectionStub(connectionId).setAutoCommit(req);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.autoCommit = isOk(resp.getStatus()) ? autoCommit : null;
+    }
+    return resp;
   }
 
   @Override
   public GetAutoCommitResp getAutoCommit(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.autoCommit != null) {
+      return GetAutoCommitResp.newBuilder().setStatus(OK).setAutoCommit(state.autoCommit).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getAutoCommit(req);
+    GetAutoCommitResp resp = connectionStub(connectionId).getAutoCommit(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.autoCommit = resp.getAutoCommit();
+    }
+    return resp;
   }
 
   @Override
@@ -253,7 +579,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.commit(req);
+    return connectionStub(connectionId).commit(req);
   }
 
   @Override
@@ -262,7 +588,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
     RollbackReq req = builder
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .build();
-    return connectionBlockingStub.rollback(req);
+    return connectionStub(connectionId).rollback(req);
   }
 
   @Override
@@ -274,7 +600,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setSavepoint(sp)
       .build();
-    return connectionBlockingStub.rollback(req);
+    return connectionStub(connectionId).rollback(req);
   }
 
   @Override
@@ -287,7 +613,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setSavepoint(sp)
       .build();
-    return connectionBlockingStub.rollback(req);
+    return connectionStub(connectionId).rollback(req);
   }
 
   @Override
@@ -299,7 +625,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setSavepoint(sp)
       .build();
-    return connectionBlockingStub.rollback(req);
+    return connectionStub(connectionId).rollback(req);
   }
 
   @Override
@@ -309,15 +635,28 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setReadOnly(readOnly)
       .build();
-    return connectionBlockingStub.setReadOnly(req);
+    DirectStatusResp resp = connectionStub(connectionId).setReadOnly(req);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.readOnly = isOk(resp.getStatus()) ? readOnly : null;
+    }
+    return resp;
   }
 
   @Override
   public IsReadOnlyResp isReadOnly(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.readOnly != null) {
+      return IsReadOnlyResp.newBuilder().setStatus(OK).setReadOnly(state.readOnly).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.isReadOnly(req);
+    IsReadOnlyResp resp = connectionStub(connectionId).isReadOnly(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.readOnly = resp.getReadOnly();
+    }
+    return resp;
   }
 
   @Override
@@ -327,15 +666,34 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setCatalog(catalog)
       .build();
-    return connectionBlockingStub.setCatalog(req);
+    DirectStatusResp resp = connectionStub(connectionId).setCatalog(req);
+    // the metadata calls without a catalog depend on the current catalog
+    metadataCache.invalidate(connectionId);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (!isOk(resp.getStatus())) {
+      stateCache.invalidate(connectionId);
+    } else if (state != null) {
+      state.catalog = catalog;
+      // the current schema of the new catalog is fetched again
+      state.schema = null;
+    }
+    return resp;
   }
 
   @Override
   public GetCatalogResp getCatalog(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.catalog != null) {
+      return GetCatalogResp.newBuilder().setStatus(OK).setCatalog(state.catalog).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getCatalog(req);
+    GetCatalogResp resp = connectionStub(connectionId).getCatalog(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.catalog = resp.getCatalog();
+    }
+    return resp;
   }
 
 
@@ -346,15 +704,28 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
       .setLevel(level)
       .build();
-    return connectionBlockingStub.setTransactionIsolation(req);
+    DirectStatusResp resp = connectionStub(connectionId).setTransactionIsolation(req);
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null) {
+      state.transactionIsolation = isOk(resp.getStatus()) ? level : null;
+    }
+    return resp;
   }
 
   @Override
   public GetTransactionIsolationResp getTransactionIsolation(String connectionId) {
+    ConnectionStateCache.State state = stateCache.get(connectionId);
+    if (state != null && state.transactionIsolation != null) {
+      return GetTransactionIsolationResp.newBuilder().setStatus(OK).setLevel(state.transactionIsolation).build();
+    }
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getTransactionIsolation(req);
+    GetTransactionIsolationResp resp = connectionStub(connectionId).getTransactionIsolation(req);
+    if (state != null && isOk(resp.getStatus())) {
+      state.transactionIsolation = resp.getLevel();
+    }
+    return resp;
   }
 
   @Override
@@ -362,7 +733,7 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.clearWarnings(req);
+    return connectionStub(connectionId).clearWarnings(req);
   }
 
   @Override
@@ -370,26 +741,44 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
     ConnectionHandle req = ConnectionHandle.newBuilder()
       .setId(connectionId)
       .build();
-    return connectionBlockingStub.getWarnings(req);
+    return connectionStub(connectionId).getWarnings(req);
   }
 
   public DirectStatusResp createStatement(String connectionId, Optional<String> statementId) {
+    return createStatement(connectionId, statementId, ResultSetType.TYPE_FORWARD_ONLY);
+  }
+
+  /**
+   * Create a statement whose result sets have the type, a scrollable result set can be fetched
+   * from any row with {@link #getNextResultSet(String, int, long, FetchDirection)}.
+   */
+  public DirectStatusResp createStatement(
+    String connectionId, Optional<String> statementId, ResultSetType resultSetType) {
     CreateStatementReq.Builder builder = CreateStatementReq.newBuilder();
     builder.setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build());
+    builder.setResultSetType(resultSetType);
     if (statementId.isPresent()) {
       StatementHandle handle = StatementHandle.newBuilder()
         .setId(statementId.get())
         .build();
       builder.setStatementId(handle);
     }
-    return statementBlockingStub.createStatement(builder.build());
+    DirectStatusResp resp = statementStub(connectionId).createStatement(builder.build());
+    if (isOk(resp.getStatus())) {
+      pool.bind(resp.getIdentifier(), connectionId);
+    }
+    return resp;
   }
 
   public DirectStatusResp closeStatement(String statementId) {
     StatementHandle req = StatementHandle.newBuilder()
       .setId(statementId)
       .build();
-    return statementBlockingStub.closeStatement(req);
+    try {
+      return statementStub(statementId).closeStatement(req);
+    } finally {
+      pool.unbind(statementId);
+    }
   }
 
   public DirectStatusResp executeQuery(String statementId, String sql) {
@@ -400,15 +789,584 @@ public class SimpleBlockingJdbcClient implements JdbcGrpcClient {
       .setStatementId(handle)
       .setSql(sql)
       .build();
-    return statementBlockingStub.executeQuery(req);
+    DirectStatusResp resp = statementStub(statementId).executeQuery(req);
+    if (isOk(resp.getStatus())) {
+      pool.bind(resp.getIdentifier(), statementId);
+    }
+    return resp;
+  }
+
+  /**
+   * Create a statement, or reuse the existing one of the id, execute the SQL and fetch the schema
+   * and the first batch of its result in one call. The remaining rows, if any, are fetched from
+   * {@link ExecuteAndFetchResp#getOperationId()} with {@link #getNextResultSet(String, int)}.
+   *
+   * @param maxRows   the maximum number of rows of this result, 0 to keep the limit of the statement
+   * @param fetchSize the maximum number of rows of the first batch, 0 for the server default
+   */
+  public ExecuteAndFetchResp executeAndFetch(
+    String connectionId, Optional<String> statementId, String sql, int maxRows, int fetchSize) {
+    CreateStatementReq.Builder statement = CreateStatementReq.newBuilder()
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build());
+    statementId.ifPresent(id -> statement.setStatementId(StatementHandle.newBuilder().setId(id).build()));
+    ExecuteAndFetchReq req = ExecuteAndFetchReq.newBuilder()
+      .setStatement(statement)
+      .setSql(sql)
+      .setMaxRows(maxRows)
+      .setFetchSize(fetchSize)
+      .build();
+    ExecuteAndFetchResp resp = statementStub(connectionId).executeAndFetch(req);
+    if (resp.hasStatementId()) {
+      pool.bind(resp.getStatementId().getId(), connectionId);
+    }
+    if (!resp.getOperationId().isEmpty()) {
+      pool.bind(resp.getOperationId(), resp.getStatementId().getId());
+    }
+    return resp;
+  }
+
+  /**
+   * Submit the SQL to run in the background on the server, the returned operation id polls its
+   * state and, once SUCCEEDED, fetches its result set with {@link #getNextResultSet(String, int)}.
+   */
+  public OperationStatusResp executeAsync(String statementId, String sql) {
+    ExecuteQueryReq req = ExecuteQueryReq.newBuilder()
+      .setStatementId(StatementHandle.newBuilder().setId(statementId).build())
+      .setSql(sql)
+      .build();
+    OperationStatusResp resp = statementStub(statementId).executeAsync(req);
+    if (isOk(resp.getStatus())) {
+      pool.bind(resp.getOperationId().getId(), statementId);
+    }
+    return resp;
+  }
+
+  public OperationStatusResp getOperationStatus(String operationId) {
+    OperationHandle req = OperationHandle.newBuilder()
+      .setId(operationId)
+      .build();
+    return statementStub(operationId).getOperationStatus(req);
+  }
+
+  /**
+   * Wait until the state of the operation differs from the last one seen, at most for the
+   * timeout, 0 for the server default.
+   */
+  public OperationStatusResp waitOperation(String operationId, OperationState lastState, int timeoutMillis) {
+    WaitOperationReq req = WaitOperationReq.newBuilder()
+      .setOperationId(OperationHandle.newBuilder().setId(operationId).build())
+      .setLastState(lastState)
+      .setTimeoutMs(timeoutMillis)
+      .build();
+    return statementStub(operationId).waitOperation(req);
+  }
+
+  /**
+   * @return the status of the operation on every change of its state, ending once it terminates
+   */
+  public Iterator<OperationStatusResp> watchOperation(String operationId) {
+    OperationHandle req = OperationHandle.newBuilder()
+      .setId(operationId)
+      .build();
+    return statementStub(operationId).watchOperation(req);
+  }
+
+  public OperationStatusResp cancelOperation(String operationId) {
+    OperationHandle req = OperationHandle.newBuilder()
+      .setId(operationId)
+      .build();
+    return statementStub(operationId).cancelOperation(req);
+  }
+
+  public static final int DEFAULT_BATCH_BLOCK_SIZE = 1024;
+
+  /**
+   * Execute the SQL template for every parameter row in one streaming call, see
+   * {@link #executeBatch(String, String, List, Iterable, int)}.
+   */
+  public ExecuteBatchResp executeBatch(
+    String statementId,
+    String sql,
+    List<TypeId> parameterTypes,
+    Iterable<? extends List<?>> rows) {
+    return executeBatch(statementId, sql, parameterTypes, rows, DEFAULT_BATCH_BLOCK_SIZE);
+  }
+
+  /**
+   * Execute the SQL template for every parameter row in one streaming call. The rows are sent in
+   * columnar blocks of at most blockSize rows, while the server executes the previous blocks.
+   *
+   * @param parameterTypes the types of the parameter markers
+   * @param rows           the parameter rows, each one with a value per parameter marker
+   * @return the update counts of all the rows, or the error status of the first failed block
+   * together with the update counts of the blocks before it
+   */
+  public ExecuteBatchResp executeBatch(
+    String statementId,
+    String sql,
+    List<TypeId> parameterTypes,
+    Iterable<? extends List<?>> rows,
+    int blockSize) {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+    }
+    BatchStreamCall call = new BatchStreamCall();
+    StreamObserver<ExecuteBatchStreamReq> requestStream =
+      withSession(statementAsyncStub, statementId).executeBatchStream(call);
+    ExecuteBatchStreamReq.Builder first = ExecuteBatchStreamReq.newBuilder()
+      .setStatementId(StatementHandle.newBuilder().setId(statementId).build())
+      .setSql(sql);
+    try {
+      ColumnVectors.Builder[] columns = newBlock(parameterTypes);
+      // counted apart from the columns, a template without parameter marker has none
+      int blockRows = 0;
+      boolean sending = true;
+      for (List<?> row : rows) {
+        if (row.size() != columns.length) {
+          throw new IllegalArgumentException(
+            "Expect " + columns.length + " parameters but got " + row.size() + ": " + row);
+        }
+        for (int i = 0; i < columns.length; i++) {
+          columns[i].add(row.get(i));
+        }
+        if (++blockRows == blockSize) {
+          sending = call.send(first.setParameters(buildBlock(columns)).setRowCount(blockRows).build());
+          first.clear();
+          if (!sending) {
+            break;
+          }
+          columns = newBlock(parameterTypes);
+          blockRows = 0;
+        }
+      }
+      if (sending && (blockRows > 0 || first.hasStatementId())) {
+        call.send(first.setParameters(buildBlock(columns)).setRowCount(blockRows).build());
+      }
+    } catch (RuntimeException e) {
+      requestStream.onError(e);
+      throw e;
+    }
+    return call.finish();
+  }
+
+  private static ColumnVectors.Builder[] newBlock(List<TypeId> parameterTypes) {
+    ColumnVectors.Builder[] columns = new ColumnVectors.Builder[parameterTypes.size()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = ColumnVectors.builder(parameterTypes.get(i));
+    }
+    return columns;
+  }
+
+  private static ColumnDataSet buildBlock(ColumnVectors.Builder[] columns) {
+    ColumnDataSet.Builder block = ColumnDataSet.newBuilder();
+    for (ColumnVectors.Builder column : columns) {
+      block.addColumns(column.build());
+    }
+    return block.build();
+  }
+
+  /**
+   * Prepare a parameterized SQL on the connection. The server caches the plans per connection,
+   * preparing the same SQL again returns the same handle while the plan is cached.
+   */
+  public PrepareResp prepare(String connectionId, String sql) {
+    PrepareReq req = PrepareReq.newBuilder()
+      .setConnectionId(ConnectionHandle.newBuilder().setId(connectionId).build())
+      .setSql(sql)
+      .build();
+    PrepareResp resp = preparedStub(connectionId).prepare(req);
+    if (isOk(resp.getStatus())) {
+      // unbound together with the connection, the handle is shared by all the Prepare calls of the SQL
+      pool.bind(resp.getPreparedId().getId(), connectionId);
+    }
+    return resp;
+  }
+
+  /**
+   * Execute a prepared statement with the parameters, see {@link org.apache.kyuubi.grpc.ParameterValues}.
+   */
+  public BindAndExecuteResp bindAndExecute(String preparedId, List<ParameterValue> parameters) {
+    BindAndExecuteReq req = BindAndExecuteReq.newBuilder()
+      .setPreparedId(PreparedStatementHandle.newBuilder().setId(preparedId).build())
+      .addAllParameters(parameters)
+      .build();
+    BindAndExecuteResp resp = preparedStub(preparedId).bindAndExecute(req);
+    if (isOk(resp.getStatus()) && resp.getHasResultSet()) {
+      pool.bind(resp.getOperationId(), preparedId);
+    }
+    return resp;
+  }
+
+  public DirectStatusResp closePrepared(String preparedId) {
+    PreparedStatementHandle req = PreparedStatementHandle.newBuilder()
+      .setId(preparedId)
+      .build();
+    return preparedStub(preparedId).closePrepared(req);
+  }
+
+  /**
+   * Fetch the next batch like {@link #getNextResultSet(String, int)}, parsed in place from the
+   * buffers of the transport. Close the batch to release the buffers.
+   */
+  public RetainedBatch getNextResultSetRetained(String operationId, int fetchSize) {
+    if (replayed.contains(operationId)) {
+      return new RetainedBatch(getNextResultSet(operationId, fetchSize), null);
+    }
+    GetNextColumnSet req = GetNextColumnSet.newBuilder()
+      .setOperationId(operationId)
+      .setFetchSize(fetchSize)
+      .build();
+    return RetainedCalls.getNextResultSet(jdbcStub(operationId), req);
+  }
+
+  /**
+   * Stream the remaining result of an operation like {@link #streamResultSet(String, int)},
+   * parsed in place from the buffers of the transport. Close every batch to release its
+   * buffers, and the iterator if the result is abandoned before being exhausted.
+   */
+  public RetainedBatchIterator streamResultSetRetained(String operationId, int fetchSize) {
+    ReplayedResult result = replayed.remove(operationId);
+    String live = result == null ? operationId : result.operationId;
+    GetNextColumnSet req = GetNextColumnSet.newBuilder()
+      .setOperationId(nullToEmpty(live))
+      .setFetchSize(fetchSize)
+      .build();
+    return RetainedCalls.streamResultSet(live == null ? null : jdbcStub(live), req, result);
+  }
+
+  /**
+   * Execute any SQL on the connection. The identifier is the operation of the result set, if
+   * any, and its partitions are listed when more than one is requested, to be read with a
+   * {@link PartitionedResultReader}.
+   *
+   * @param maxRows    the maximum number of rows of the result, 0 for no limit
+   * @param partitions the number of partitions of the result, 0 or 1 for none
+   */
+  public DirectStatusResp executeSql(String connectionId, String sql, int maxRows, int partitions) {
+    ExecuteSqlReq req = ExecuteSqlReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setSql(sql)
+      .setMaxRows(maxRows)
+      .setPartitions(partitions)
+      .build();
+    DirectStatusResp resp = jdbcStub(connectionId).executeSql(req);
+    if (isOk(resp.getStatus()) && !resp.getIdentifier().isEmpty()) {
+      pool.bind(resp.getIdentifier(), connectionId);
+      resp.getPartitionsList().forEach(partition -> pool.bind(partition, connectionId));
+    }
+    return resp;
+  }
+
+  public GetResultSetSchemaResp getResultSetSchema(String operationId) {
+    ReplayedResult result = replayed.get(operationId);
+    if (result != null) {
+      return result.schema;
+    }
+    GetResultSetSchemaReq req = GetResultSetSchemaReq.newBuilder()
+      .setOperationId(operationId)
+      .build();
+    return jdbcStub(operationId).getResultSetSchema(req);
+  }
+
+  public GetNextColumnSetResp getNextResultSet(String operationId, int fetchSize) {
+    return getNextResultSet(operationId, fetchSize, 0, FetchDirection.FETCH_FORWARD);
+  }
+
+  /**
+   * Fetch at most fetchSize rows from the start row, e.g. to retry a fetch whose response was
+   * lost with the {@link GetNextColumnSetResp#getStartRow()} of the batch.
+   *
+   * @param startRow  the 1-based number of the first row, 0 to continue from the cursor
+   * @param direction FETCH_REVERSE to fetch backwards, scrollable result sets only
+   */
+  public GetNextColumnSetResp getNextResultSet(
+    String operationId, int fetchSize, long startRow, FetchDirection direction) {
+    ReplayedResult result = startRow == 0 && direction == FetchDirection.FETCH_FORWARD
+      ? replayed.get(operationId) : null;
+    if (result != null) {
+      GetNextColumnSetResp batch = result.next(fetchSize, System.currentTimeMillis());
+      if (batch == null) {
+        // the end of a cached result, or the rest of a result too large to be cached
+        batch = result.operationId == null
+          ? GetNextColumnSetResp.newBuilder().setStatus(OK).build()
+          : getNextResultSet(result.operationId, fetchSize);
+      }
+      if (!isOk(batch.getStatus()) || isEnd(batch)) {
+        replayed.drop(operationId);
+      }
+      return batch;
+    }
+    GetNextColumnSet req = GetNextColumnSet.newBuilder()
+      .setOperationId(operationId)
+      .setFetchSize(fetchSize)
+      .setStartRow(startRow)
+      .setDirection(direction)
+      .build();
+    return jdbcStub(operationId).getNextResultSet(req);
+  }
+
+  /**
+   * Stream the remaining result of an operation in batches of at most fetchSize rows.
+   */
+  public ColumnSetIterator streamResultSet(String operationId, int fetchSize) {
+    return streamResultSet(operationId, fetchSize, 0);
+  }
+
+  /**
+   * Stream the result of an operation from the start row, e.g. to resume a cancelled stream
+   * from the row after the last batch received.
+   *
+   * @param startRow the 1-based number of the first row, 0 to continue from the cursor
+   */
+  public ColumnSetIterator streamResultSet(String operationId, int fetchSize, long startRow) {
+    ReplayedResult result = startRow == 0 ? replayed.remove(operationId) : null;
+    String live = result == null ? operationId : result.operationId;
+    Context.CancellableContext context = Context.current().withCancellation();
+    Context previous = context.attach();
+    try {
+      Iterator<GetNextColumnSetResp> responses = Collections.emptyIterator();
+      if (live != null) {
+        GetNextColumnSet req = GetNextColumnSet.newBuilder()
+          .setOperationId(live)
+          .setFetchSize(fetchSize)
+          .setStartRow(startRow)
+          .build();
+        responses = jdbcStub(live).streamResultSet(req);
+      }
+      if (result != null) {
+        responses = result.followedBy(fetchSize, responses);
+      }
+      return new ColumnSetIterator(responses, context);
+    } finally {
+      context.detach(previous);
+    }
+  }
+
+  /**
+   * Stream the responses of an operation with their row numbers, cancelled with the current
+   * context.
+   */
+  Iterator<GetNextColumnSetResp> streamResponses(String operationId, int fetchSize) {
+    GetNextColumnSet req = GetNextColumnSet.newBuilder()
+      .setOperationId(operationId)
+      .setFetchSize(fetchSize)
+      .build();
+    return jdbcStub(operationId).streamResultSet(req);
+  }
+
+  /**
+   * Call the metadata RPC, and replay its result from the {@link MetadataCache} if the connection
+   * caches its metadata, see {@link ConnectionConfigs#CLIENT_METADATA_CACHE_ENABLED}.
+   *
+   * @param cacheControl how long to cache the result unless the server sends a hint, null for the TTL
+   */
+  private DirectStatusResp metadata(
+    String connectionId, Message req, Function<JdbcBlockingStub, DirectStatusResp> call, String cacheControl) {
+    MetadataCache.Result cached = metadataCached.contains(connectionId) ? metadataCache.get(req) : null;
+    if (cached == null) {
+      DirectStatusResp resp = call.apply(jdbcStub(connectionId));
+      if (!isOk(resp.getStatus()) || resp.getIdentifier().isEmpty()) {
+        return resp;
+      }
+      pool.bind(resp.getIdentifier(), connectionId);
+      if (!metadataCached.contains(connectionId)) {
+        return resp;
+      }
+      GetResultSetSchemaResp schema = getResultSetSchema(resp.getIdentifier());
+      if (!isOk(schema.getStatus())) {
+        // the server reaps the operation, not returned to the caller
+        pool.unbind(resp.getIdentifier());
+        return DirectStatusResp.newBuilder().setStatus(schema.getStatus()).build();
+      }
+      List<GetNextColumnSetResp> batches = new ArrayList<>();
+      long bytes = schema.getSerializedSize();
+      while (true) {
+        GetNextColumnSetResp batch = getNextResultSet(resp.getIdentifier(), 0);
+        if (!isOk(batch.getStatus())) {
+          pool.unbind(resp.getIdentifier());
+          return DirectStatusResp.newBuilder().setStatus(batch.getStatus()).build();
+        }
+        batches.add(batch);
+        if (isEnd(batch)) {
+          break;
+        }
+        bytes += batch.getSerializedSize();
+        if (!metadataCache.fits(bytes)) {
+          // too large to be cached, the rest is fetched from the operation still open
+          return replay(new ReplayedResult(
+            connectionId, schema, batches, resp.getIdentifier(), System.currentTimeMillis()));
+        }
+      }
+      // the server closed the operation when it sent the empty batch
+      pool.unbind(resp.getIdentifier());
+      cached = new MetadataCache.Result(schema, batches);
+      metadataCache.put(connectionId, req, cached,
+        resp.getExtraInfoOrDefault(ConnectionConfigs.METADATA_CACHE_CONTROL, cacheControl));
+    }
+    return replay(
+      new ReplayedResult(connectionId, cached.schema, cached.batches, null, System.currentTimeMillis()));
+  }
+
+  private DirectStatusResp replay(ReplayedResult result) {
+    return DirectStatusResp.newBuilder().setIdentifier(replayed.register(result)).setStatus(OK).build();
+  }
+
+  private static boolean isEnd(GetNextColumnSetResp batch) {
+    if (!batch.getArrowBatch().isEmpty()) {
+      return false;
+    }
+    ColumnDataSet data = batch.getData();
+    return data.getColumnsCount() == 0 || ColumnVectors.rowCount(data.getColumns(0)) == 0;
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+
+  /**
+   * The cached metadata of the connections opened by this client with
+   * {@link ConnectionConfigs#CLIENT_METADATA_CACHE_ENABLED}.
+   */
+  public MetadataCache getMetadataCache() {
+    return metadataCache;
+  }
+
+  /**
+   * Drop the cached metadata of a connection, e.g. after executing DDL.
+   */
+  public void invalidateMetadata(String connectionId) {
+    metadataCache.invalidate(connectionId);
   }
 
   @Override
   public DirectStatusResp getCatalogs(String connectionId) {
-    GetCatalogsReq.Builder builder = GetCatalogsReq.newBuilder();
-    GetCatalogsReq req = builder
+    GetCatalogsReq req = GetCatalogsReq.newBuilder()
+      .setConnectionId(connectionId)
+      .build();
+    return metadata(connectionId, req, stub -> stub.getCatalogs(req), null);
+  }
+
+  @Override
+  public DirectStatusResp getSchemas(String connectionId, String catalog, String schemaPattern) {
+    GetSchemasReq req = GetSchemasReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchemaPattern(nullToEmpty(schemaPattern))
+      .build();
+    return metadata(connectionId, req, stub -> stub.getSchemas(req), null);
+  }
+
+  @Override
+  public DirectStatusResp getTables(
+    String connectionId, String catalog, String schemaPattern, String tableNamePattern, List<String> types) {
+    GetTablesReq.Builder builder = GetTablesReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchemaPattern(nullToEmpty(schemaPattern))
+      .setTableNamePattern(nullToEmpty(tableNamePattern));
+    if (types != null) {
+      builder.addAllTableTypes(types);
+    }
+    GetTablesReq req = builder.build();
+    return metadata(connectionId, req, stub -> stub.getTables(req), null);
+  }
+
+  @Override
+  public DirectStatusResp getTableTypes(String connectionId) {
+    GetTableTypesReq req = GetTableTypesReq.newBuilder()
       .setConnectionId(connectionId)
       .build();
-    return blockingStub.getCatalogs(req);
+    return metadata(connectionId, req, stub -> stub.getTableTypes(req), null);
+  }
+
+  @Override
+  public DirectStatusResp getColumns(
+    String connectionId, String catalog, String schemaPattern, String tablePattern, String columnNamePattern) {
+    GetColumnsReq req = GetColumnsReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchemaPattern(nullToEmpty(schemaPattern))
+      .setTablePattern(nullToEmpty(tablePattern))
+      .setColumnNamePattern(nullToEmpty(columnNamePattern))
+      .build();
+    return metadata(connectionId, req, stub -> stub.getColumns(req), null);
+  }
+
+  @Override
+  public DirectStatusResp getPrimaryKeys(String connectionId, String catalog, String schema, String table) {
+    GetPrimaryKeysReq req = GetPrimaryKeysReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchema(nullToEmpty(schema))
+      .setTable(nullToEmpty(table))
+      .build();
+    return metadata(connectionId, req, stub -> stub.getPrimaryKeys(req), null);
+  }
+
+  @Override
+  public DirectStatusResp getFunctions(
+    String connectionId, String catalog, String schemaPattern, String functionNamePattern) {
+    GetFunctionsReq req = GetFunctionsReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setCatalog(nullToEmpty(catalog))
+      .setSchemaPattern(nullToEmpty(schemaPattern))
+      .setFunctionNamePattern(nullToEmpty(functionNamePattern))
+      .build();
+    return metadata(connectionId, req, stub -> stub.getFunctions(req), null);
+  }
+
+  /**
+   * The supported types do not change while the connection is open, so the result is cached
+   * for the lifetime of the connection.
+   */
+  @Override
+  public DirectStatusResp getTypeInfo(String connectionId) {
+    GetTypeInfoReq req = GetTypeInfoReq.newBuilder()
+      .setConnectionId(connectionId)
+      .build();
+    return metadata(connectionId, req, stub -> stub.getTypeInfo(req), ConnectionConfigs.METADATA_CACHE_SESSION);
+  }
+
+  /**
+   * Get the DatabaseMetaData values in one call, all of them if no key is given. The connections
+   * caching their metadata keep the values for their lifetime and only ask for the missing ones.
+   */
+  @Override
+  public GetDatabaseMetaDataResp getDatabaseMetaData(String connectionId, Collection<DatabaseMetaData> keys) {
+    boolean cached = metadataCached.contains(connectionId);
+    Map<DatabaseMetaData, DatabaseMetaDataEntry> known =
+      cached ? metadataCache.getDatabaseMetaData(connectionId) : Collections.emptyMap();
+    List<DatabaseMetaData> requested = new ArrayList<>(keys);
+    if (requested.isEmpty()) {
+      for (DatabaseMetaData key : DatabaseMetaData.values()) {
+        if (key != DatabaseMetaData.UNRECOGNIZED) {
+          requested.add(key);
+        }
+      }
+    }
+    List<DatabaseMetaData> missing = new ArrayList<>();
+    for (DatabaseMetaData key : requested) {
+      if (!known.containsKey(key)) {
+        missing.add(key);
+      }
+    }
+    if (!missing.isEmpty()) {
+      GetDatabaseMetaDataReq req = GetDatabaseMetaDataReq.newBuilder()
+        .setConnectionId(connectionId)
+        .addAllKeys(missing)
+        .build();
+      GetDatabaseMetaDataResp resp = jdbcStub(connectionId).getDatabaseMetaData(req);
+      if (!isOk(resp.getStatus()) || !cached) {
+        return resp;
+      }
+      metadataCache.putDatabaseMetaData(connectionId, resp.getEntriesList());
+      known = metadataCache.getDatabaseMetaData(connectionId);
+    }
+    GetDatabaseMetaDataResp.Builder builder = GetDatabaseMetaDataResp.newBuilder().setStatus(OK);
+    for (DatabaseMetaData key : requested) {
+      DatabaseMetaDataEntry entry = known.get(key);
+      builder.addEntries(entry == null ? DatabaseMetaDataEntry.newBuilder().setKey(key).build() : entry);
+    }
+    return builder.build();
   }
 }
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.metrics;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageLite;
+import io.grpc.*;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.metrics.Counter;
+import org.apache.kyuubi.grpc.metrics.Histogram;
+import org.apache.kyuubi.grpc.metrics.MetricsRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the metrics of every call, named {@code rpc.client.<Service>/<Method>.<metric>}:
+ * <ul>
+ *   <li>latency - histogram of the call duration in nanoseconds</li>
+ *   <li>inflight - counter of the started but not yet closed calls</li>
+ *   <li>request.bytes, response.bytes - histograms of the serialized message sizes</li>
+ *   <li>status.&lt;Code&gt; - counters of the gRPC status codes of the closed calls</li>
+ *   <li>result.&lt;StatusCode&gt; - counters of the {@link org.apache.kyuubi.grpc.Status}
+ *   carried by the responses, which report the SQL errors</li>
+ * </ul>
+ * The per-method metrics are resolved once, recording only touches lock-free counters.
+ */
+public class MetricsClientInterceptor implements ClientInterceptor {
+  public static final String PREFIX = "rpc.client.";
+  public static final String LATENCY = "latency";
+  public static final String IN_FLIGHT = "inflight";
+  public static final String REQUEST_BYTES = "request.bytes";
+  public static final String RESPONSE_BYTES = "response.bytes";
+  public static final String STATUS = "status";
+  public static final String RESULT = "result";
+
+  private final MetricsRegistry registry;
+  private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+  public MetricsClientInterceptor(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  public MetricsRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * @param fullMethodName e.g. org.apache.kyuubi.grpc.jdbc.connection.Connection/GetAutoCommit
+   */
+  public static String metricName(String fullMethodName, String metric) {
+    String serviceName = MethodDescriptor.extractFullServiceName(fullMethodName);
+    String bareService = serviceName == null ? "" : serviceName.substring(serviceName.lastIndexOf('.') + 1);
+    return PREFIX + bareService + "/" + MethodDescriptor.extractBareMethodName(fullMethodName) + "." + metric;
+  }
+
+  private MethodMetrics metrics(String fullMethodName) {
+    MethodMetrics metrics = methods.get(fullMethodName);
+    return metrics != null ? metrics : methods.computeIfAbsent(fullMethodName, MethodMetrics::new);
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+    MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+    MethodMetrics metrics = metrics(method.getFullMethodName());
+    return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+      @Override
+      public void start(Listener<RespT> responseListener, Metadata headers) {
+        long startNanos = System.nanoTime();
+        metrics.inFlight.inc();
+        try {
+          super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+            @Override
+            public void onMessage(RespT message) {
+              metrics.onResponse(message);
+              super.onMessage(message);
+            }
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+              metrics.onClose(status, System.nanoTime() - startNanos);
+              super.onClose(status, trailers);
+            }
+          }, headers);
+        } catch (RuntimeException e) {
+          metrics.onClose(Status.fromThrowable(e), System.nanoTime() - startNanos);
+          throw e;
+        }
+      }
+
+      @Override
+      public void sendMessage(ReqT message) {
+        if (message instanceof MessageLite) {
+          metrics.requestBytes.update(((MessageLite) message).getSerializedSize());
+        }
+        super.sendMessage(message);
+      }
+    };
+  }
+
+  private class MethodMetrics {
+    private final String fullMethodName;
+    private final Histogram latency;
+    private final Counter inFlight;
+    private final Histogram requestBytes;
+    private final Histogram responseBytes;
+    private final Counter[] statusCounters = new Counter[Status.Code.values().length];
+    private final Counter[] resultCounters = new Counter[StatusCode.values().length];
+    // the field of the response carrying the Kyuubi status, resolved from the first response
+    private volatile FieldDescriptor statusField;
+    private volatile boolean statusFieldResolved = false;
+
+    MethodMetrics(String fullMethodName) {
+      this.fullMethodName = fullMethodName;
+      this.latency = registry.histogram(metricName(fullMethodName, LATENCY));
+      this.inFlight = registry.counter(metricName(fullMethodName, IN_FLIGHT));
+      this.requestBytes = registry.histogram(metricName(fullMethodName, REQUEST_BYTES));
+      this.responseBytes = registry.histogram(metricName(fullMethodName, RESPONSE_BYTES));
+    }
+
+    void onClose(Status status, long elapsedNanos) {
+      inFlight.dec();
+      latency.update(elapsedNanos);
+      int code = status.getCode().ordinal();
+      Counter counter = statusCounters[code];
+      if (counter == null) {
+        counter = registry.counter(metricName(fullMethodName, STATUS + "." + status.getCode().name()));
+        statusCounters[code] = counter;
+      }
+      counter.inc();
+    }
+
+    void onResponse(Object message) {
+      if (!(message instanceof Message)) {
+        return;
+      }
+      Message response = (Message) message;
+      responseBytes.update(response.getSerializedSize());
+      if (!statusFieldResolved) {
+        FieldDescriptor field = response.getDescriptorForType().findFieldByName(STATUS);
+        if (field != null && field.getJavaType() == FieldDescriptor.JavaType.MESSAGE
+          && field.getMessageType().equals(org.apache.kyuubi.grpc.Status.getDescriptor())) {
+          statusField = field;
+        }
+        statusFieldResolved = true;
+      }
+      FieldDescriptor field = statusField;
+      if (field != null && response.hasField(field)) {
+        StatusCode code = ((org.apache.kyuubi.grpc.Status) response.getField(field)).getStatusCode();
+        if (code == StatusCode.UNRECOGNIZED) {
+          return;
+        }
+        Counter counter = resultCounters[code.ordinal()];
+        if (counter == null) {
+          counter = registry.counter(metricName(fullMethodName, RESULT + "." + code.name()));
+          resultCounters[code.ordinal()] = counter;
+        }
+        counter.inc();
+      }
+    }
+  }
+}
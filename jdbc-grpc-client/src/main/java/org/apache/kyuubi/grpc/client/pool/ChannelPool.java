@@ -0,0 +1,515 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.pool;
+
+import io.grpc.*;
+import org.apache.kyuubi.grpc.compression.Compression;
+import org.apache.kyuubi.grpc.health.HealthStatus;
+import org.apache.kyuubi.grpc.jdbc.connection.ConnectionGrpc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A {@link Channel} spreading calls over several sub-channels, each one with its own
+ * HTTP/2 connection, and over several Kyuubi servers.
+ *
+ * <p>A call carrying an {@link #AFFINITY_KEY} bound with {@link #bind} always goes to the
+ * sub-channel of that key, so every call of a session reaches the server owning it. Other
+ * calls, e.g. opening a new connection, go to the sub-channel chosen by the
+ * {@link LoadBalancePolicy}. {@link org.apache.kyuubi.grpc.client.SimpleBlockingJdbcClient}
+ * maintains the bindings of the connections, statements and operations it creates.
+ *
+ * <p>With {@link Builder#watchHealth}, the pool follows the health the servers report for the
+ * Connection service and stops opening new sessions on the UNHEALTHY ones, e.g. while they are
+ * drained for a deployment, the existing sessions stay where they are.
+ */
+public class ChannelPool extends Channel {
+
+  /**
+   * The connection, statement or operation id a call belongs to.
+   */
+  public static final CallOptions.Key<String> AFFINITY_KEY = CallOptions.Key.create("kyuubi.grpc.affinity");
+
+  /**
+   * The sub-channel to send a call to, e.g. the one chosen to open a connection on.
+   */
+  public static final CallOptions.Key<SubChannel> SUB_CHANNEL = CallOptions.Key.create("kyuubi.grpc.subChannel");
+
+  private final AddressResolver resolver;
+  private final int channelsPerAddress;
+  private final Function<InetSocketAddress, ManagedChannel> channelFactory;
+  private final LoadBalancePolicy policy;
+  private final HealthWatcher healthWatcher;
+  private final Map<String, Binding> bindings = new ConcurrentHashMap<>();
+  // the keys bound with each owner, unbound together with it
+  private final Map<String, Set<String>> owned = new ConcurrentHashMap<>();
+  // sub-channels accepting new sessions
+  private volatile List<SubChannel> active = Collections.emptyList();
+  // sub-channels of removed addresses, kept until their sessions are gone
+  private final List<SubChannel> retired = new ArrayList<>();
+
+  private ChannelPool(
+    AddressResolver resolver,
+    int channelsPerAddress,
+    Function<InetSocketAddress, ManagedChannel> channelFactory,
+    LoadBalancePolicy policy,
+    HealthWatcher healthWatcher) {
+    this.resolver = resolver;
+    this.channelsPerAddress = channelsPerAddress;
+    this.channelFactory = channelFactory;
+    this.policy = policy;
+    this.healthWatcher = healthWatcher;
+  }
+
+  /**
+   * A pool over existing channels, they are not shut down by the pool.
+   */
+  public static ChannelPool of(Channel... channels) {
+    ChannelPool pool = new ChannelPool(null, 1, null, LoadBalancePolicy.roundRobin(), null);
+    List<SubChannel> subChannels = new ArrayList<>();
+    for (Channel channel : channels) {
+      subChannels.add(new SubChannel(null, channel, false));
+    }
+    pool.active = Collections.unmodifiableList(subChannels);
+    return pool;
+  }
+
+  /**
+   * A pool over channels built for it, they are shut down with the pool.
+   */
+  public static ChannelPool owning(ManagedChannel... channels) {
+    ChannelPool pool = new ChannelPool(null, 1, null, LoadBalancePolicy.roundRobin(), null);
+    List<SubChannel> subChannels = new ArrayList<>();
+    for (ManagedChannel channel : channels) {
+      subChannels.add(new SubChannel(null, channel, true));
+    }
+    pool.active = Collections.unmodifiableList(subChannels);
+    return pool;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the sub-channel of the key, or a new one chosen by the policy if the key is not bound
+   */
+  public SubChannel select(String key) {
+    if (key != null) {
+      Binding binding = bindings.get(key);
+      if (binding != null) {
+        return binding.channel;
+      }
+    }
+    List<SubChannel> candidates = active;
+    if (candidates.isEmpty()) {
+      throw Status.UNAVAILABLE.withDescription("No Kyuubi server address available").asRuntimeException();
+    }
+    return policy.pick(candidates);
+  }
+
+  public void bind(String key, SubChannel channel) {
+    put(key, new Binding(channel, null));
+  }
+
+  /**
+   * Bind the key to the sub-channel of its owner, e.g. a statement to its connection. The key
+   * is unbound together with the owner.
+   */
+  public void bind(String key, String owner) {
+    Binding binding = bindings.get(owner);
+    if (binding != null && !key.equals(owner)) {
+      owned.computeIfAbsent(owner, k -> ConcurrentHashMap.newKeySet()).add(key);
+      put(key, new Binding(binding.channel, owner));
+    }
+  }
+
+  private void put(String key, Binding binding) {
+    binding.channel.bound.incrementAndGet();
+    Binding previous = bindings.put(key, binding);
+    if (previous != null) {
+      if (previous.owner != null && !previous.owner.equals(binding.owner)) {
+        disown(previous.owner, key);
+      }
+      release(previous.channel);
+    }
+  }
+
+  /**
+   * Unbind the key and all the keys it owns.
+   */
+  public void unbind(String key) {
+    Binding binding = bindings.remove(key);
+    if (binding != null) {
+      if (binding.owner != null) {
+        disown(binding.owner, key);
+      }
+      release(binding.channel);
+      Set<String> keys = owned.remove(key);
+      if (keys != null) {
+        keys.forEach(this::unbind);
+      }
+    }
+  }
+
+  private void disown(String owner, String key) {
+    Set<String> keys = owned.get(owner);
+    if (keys != null) {
+      keys.remove(key);
+    }
+  }
+
+  private void release(SubChannel channel) {
+    if (channel.bound.decrementAndGet() == 0) {
+      drained(channel);
+    }
+  }
+
+  /**
+   * Shut a retired sub-channel down once no key is bound to it anymore.
+   */
+  private synchronized void drained(SubChannel channel) {
+    if (channel.bound.get() == 0 && retired.remove(channel)) {
+      channel.shutdown();
+    }
+  }
+
+  /**
+   * @return the key owning the given one transitively, e.g. the connection of an operation, or
+   * the key itself if it has no owner
+   */
+  public String rootOf(String key) {
+    String root = key;
+    Binding binding = bindings.get(root);
+    while (binding != null && binding.owner != null) {
+      root = binding.owner;
+      binding = bindings.get(root);
+    }
+    return root;
+  }
+
+  public boolean isBound(String key) {
+    return bindings.containsKey(key);
+  }
+
+  /**
+   * @return the sub-channels accepting new sessions
+   */
+  public List<SubChannel> getSubChannels() {
+    return active;
+  }
+
+  /**
+   * Resolve the server addresses again. Sub-channels are created for new addresses, the ones of
+   * removed addresses stop accepting new sessions and are shut down once no session is bound to them.
+   */
+  public synchronized void refresh() throws IOException {
+    if (resolver == null) {
+      return;
+    }
+    Set<InetSocketAddress> addresses = new LinkedHashSet<>(resolver.resolve());
+    List<SubChannel> next = new ArrayList<>();
+    Set<InetSocketAddress> existing = new HashSet<>();
+    for (SubChannel channel : active) {
+      if (addresses.contains(channel.address)) {
+        next.add(channel);
+        existing.add(channel.address);
+      } else {
+        retired.add(channel);
+        if (healthWatcher != null) {
+          healthWatcher.stop(channel);
+        }
+      }
+    }
+    addresses.removeAll(existing);
+    // interleave the servers so that consecutive picks of round robin go to different servers
+    for (int i = 0; i < channelsPerAddress; i++) {
+      for (InetSocketAddress address : addresses) {
+        SubChannel channel = new SubChannel(address, channelFactory.apply(address), true);
+        next.add(channel);
+        if (healthWatcher != null) {
+          healthWatcher.watch(channel);
+        }
+      }
+    }
+    active = Collections.unmodifiableList(next);
+
+    Iterator<SubChannel> it = retired.iterator();
+    while (it.hasNext()) {
+      SubChannel channel = it.next();
+      if (channel.bound.get() == 0) {
+        channel.shutdown();
+        it.remove();
+      }
+    }
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+    MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+    SubChannel channel = callOptions.getOption(SUB_CHANNEL);
+    if (channel == null) {
+      channel = select(callOptions.getOption(AFFINITY_KEY));
+    }
+    return channel.newCall(methodDescriptor, callOptions);
+  }
+
+  @Override
+  public String authority() {
+    List<SubChannel> channels = active;
+    return channels.isEmpty() ? null : channels.get(0).authority();
+  }
+
+  private synchronized List<SubChannel> allSubChannels() {
+    List<SubChannel> channels = new ArrayList<>(active);
+    channels.addAll(retired);
+    return channels;
+  }
+
+  public void shutdown() {
+    if (healthWatcher != null) {
+      healthWatcher.shutdown();
+    }
+    allSubChannels().forEach(SubChannel::shutdown);
+  }
+
+  public void shutdownNow() {
+    if (healthWatcher != null) {
+      healthWatcher.shutdown();
+    }
+    allSubChannels().forEach(SubChannel::shutdownNow);
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (SubChannel channel : allSubChannels()) {
+      if (!channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static class Binding {
+    final SubChannel channel;
+    final String owner;
+
+    Binding(SubChannel channel, String owner) {
+      this.channel = channel;
+      this.owner = owner;
+    }
+  }
+
+  /**
+   * One channel of the pool, counting its in-flight calls.
+   */
+  public static class SubChannel extends Channel {
+    private final InetSocketAddress address;
+    private final Channel channel;
+    private final boolean owned;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // the keys bound to the sub-channel
+    private final AtomicInteger bound = new AtomicInteger();
+    private volatile HealthStatus healthStatus = HealthStatus.UNKNOWN;
+
+    SubChannel(InetSocketAddress address, Channel channel, boolean owned) {
+      this.address = address;
+      this.channel = channel;
+      this.owned = owned;
+    }
+
+    /**
+     * @return the server address, null if the pool was created over existing channels
+     */
+    public InetSocketAddress getAddress() {
+      return address;
+    }
+
+    public int getOutstandingRequests() {
+      return outstanding.get();
+    }
+
+    /**
+     * @return the health last reported by the server, UNKNOWN if it is not watched
+     */
+    public HealthStatus getHealthStatus() {
+      return healthStatus;
+    }
+
+    void setHealthStatus(HealthStatus healthStatus) {
+      this.healthStatus = healthStatus;
+    }
+
+    Channel delegate() {
+      return channel;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+      MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+      return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(
+        channel.newCall(methodDescriptor, callOptions)) {
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+          outstanding.incrementAndGet();
+          try {
+            super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+              @Override
+              public void onClose(Status status, Metadata trailers) {
+                outstanding.decrementAndGet();
+                super.onClose(status, trailers);
+              }
+            }, headers);
+          } catch (RuntimeException e) {
+            outstanding.decrementAndGet();
+            throw e;
+          }
+        }
+      };
+    }
+
+    @Override
+    public String authority() {
+      return channel.authority();
+    }
+
+    void shutdown() {
+      if (owned) {
+        ((ManagedChannel) channel).shutdown();
+      }
+    }
+
+    void shutdownNow() {
+      if (owned) {
+        ((ManagedChannel) channel).shutdownNow();
+      }
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return !owned || ((ManagedChannel) channel).awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+      return "SubChannel(" + (address == null ? channel.authority() : address) + ")";
+    }
+  }
+
+  public static class Builder {
+    private AddressResolver resolver;
+    private int channelsPerAddress = 1;
+    private LoadBalancePolicy policy = LoadBalancePolicy.roundRobin();
+    private ChannelCredentials credentials = InsecureChannelCredentials.create();
+    private Function<InetSocketAddress, ManagedChannel> channelFactory;
+    private boolean watchHealth = false;
+    private long healthRetryDelayMillis = TimeUnit.SECONDS.toMillis(5);
+
+    private Builder() {
+    }
+
+    public Builder addressResolver(AddressResolver resolver) {
+      this.resolver = resolver;
+      return this;
+    }
+
+    /**
+     * @param addresses comma separated host:port pairs
+     */
+    public Builder addresses(String addresses) {
+      return addressResolver(StaticAddressResolver.parse(addresses));
+    }
+
+    /**
+     * The number of sub-channels, i.e. HTTP/2 connections, opened to each server.
+     */
+    public Builder channelsPerAddress(int channelsPerAddress) {
+      if (channelsPerAddress <= 0) {
+        throw new IllegalArgumentException("channelsPerAddress must be positive: " + channelsPerAddress);
+      }
+      this.channelsPerAddress = channelsPerAddress;
+      return this;
+    }
+
+    public Builder policy(LoadBalancePolicy policy) {
+      this.policy = policy;
+      return this;
+    }
+
+    public Builder credentials(ChannelCredentials credentials) {
+      this.credentials = credentials;
+      return this;
+    }
+
+    /**
+     * Customize how the sub-channels are created, the credentials are ignored if set.
+     */
+    public Builder channelFactory(Function<InetSocketAddress, ManagedChannel> channelFactory) {
+      this.channelFactory = channelFactory;
+      return this;
+    }
+
+    /**
+     * Watch the health of the servers and only open new sessions on the ones not UNHEALTHY, see
+     * {@link HealthAwarePolicy}.
+     */
+    public Builder watchHealth(boolean watchHealth) {
+      this.watchHealth = watchHealth;
+      return this;
+    }
+
+    /**
+     * How long to wait before watching the health of a server again once its watch ended.
+     */
+    public Builder healthRetryDelay(long delay, TimeUnit unit) {
+      this.healthRetryDelayMillis = unit.toMillis(delay);
+      return this;
+    }
+
+    public ChannelPool build() {
+      if (resolver == null) {
+        throw new IllegalStateException("The address resolver is not set");
+      }
+      Function<InetSocketAddress, ManagedChannel> factory = channelFactory;
+      if (factory == null) {
+        ChannelCredentials creds = credentials;
+        factory = address -> Compression.configure(
+          Grpc.newChannelBuilderForAddress(address.getHostString(), address.getPort(), creds)).build();
+      }
+      ChannelPool pool;
+      if (watchHealth) {
+        HealthWatcher healthWatcher = new HealthWatcher(ConnectionGrpc.SERVICE_NAME, healthRetryDelayMillis);
+        pool = new ChannelPool(resolver, channelsPerAddress, factory, new HealthAwarePolicy(policy), healthWatcher);
+      } else {
+        pool = new ChannelPool(resolver, channelsPerAddress, factory, policy, null);
+      }
+      try {
+        pool.refresh();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return pool;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.pool;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the server addresses from a local file, one host:port per line. Blank lines and
+ * lines starting with '#' are ignored. The file is read again on every
+ * {@link ChannelPool#refresh()}, so it can be updated while the pool is running.
+ */
+public class FileAddressResolver implements AddressResolver {
+  private final Path path;
+
+  public FileAddressResolver(Path path) {
+    this.path = path;
+  }
+
+  @Override
+  public List<InetSocketAddress> resolve() throws IOException {
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+      String trimmed = line.trim();
+      if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+        addresses.add(StaticAddressResolver.parseAddress(trimmed));
+      }
+    }
+    return addresses;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.pool;
+
+import org.apache.kyuubi.grpc.health.HealthStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the new sessions away from the sub-channels whose server reports itself UNHEALTHY,
+ * see {@link HealthWatcher}, and lets the delegate pick among the others. The sessions already
+ * bound to an UNHEALTHY server stay there. If every server is UNHEALTHY the delegate picks
+ * among all of them rather than failing.
+ */
+public class HealthAwarePolicy implements LoadBalancePolicy {
+  private final LoadBalancePolicy delegate;
+
+  public HealthAwarePolicy(LoadBalancePolicy delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public ChannelPool.SubChannel pick(List<ChannelPool.SubChannel> candidates) {
+    List<ChannelPool.SubChannel> healthy = null;
+    for (int i = 0; i < candidates.size(); i++) {
+      ChannelPool.SubChannel candidate = candidates.get(i);
+      if (candidate.getHealthStatus() == HealthStatus.UNHEALTHY) {
+        if (healthy == null) {
+          healthy = new ArrayList<>(candidates.subList(0, i));
+        }
+      } else if (healthy != null) {
+        healthy.add(candidate);
+      }
+    }
+    if (healthy == null) {
+      return delegate.pick(candidates);
+    }
+    return delegate.pick(healthy.isEmpty() ? candidates : healthy);
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.pool;
+
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.apache.kyuubi.grpc.health.HealthCheckReq;
+import org.apache.kyuubi.grpc.health.HealthCheckResponse;
+import org.apache.kyuubi.grpc.health.HealthGrpc;
+import org.apache.kyuubi.grpc.health.HealthStatus;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the health of the servers of a {@link ChannelPool} through a Health.Watch call per
+ * server address, and records the status of the watched service on every sub-channel of the
+ * address for the {@link HealthAwarePolicy}.
+ *
+ * <p>A watch ending is retried after a delay. The status stays as last reported meanwhile, an
+ * unreachable server is UNHEALTHY, and a server without the Health service stays UNKNOWN and is
+ * not watched again.
+ */
+class HealthWatcher {
+
+  private final String serviceName;
+  private final long retryDelayMillis;
+  private final ScheduledExecutorService scheduler;
+  private final Map<InetSocketAddress, Watch> watches = new ConcurrentHashMap<>();
+
+  HealthWatcher(String serviceName, long retryDelayMillis) {
+    this.serviceName = serviceName;
+    this.retryDelayMillis = retryDelayMillis;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "kyuubi-grpc-health-watcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  synchronized void watch(ChannelPool.SubChannel channel) {
+    Watch watch = watches.get(channel.getAddress());
+    if (watch == null) {
+      watch = new Watch(channel.getAddress());
+      watches.put(channel.getAddress(), watch);
+      watch.channels.add(channel);
+      watch.start();
+    } else {
+      // the status the server last reported on the other sub-channels
+      watch.channels.add(channel);
+      channel.setHealthStatus(watch.status);
+    }
+  }
+
+  synchronized void stop(ChannelPool.SubChannel channel) {
+    Watch watch = watches.get(channel.getAddress());
+    if (watch != null && watch.channels.remove(channel) && watch.channels.isEmpty()) {
+      watches.remove(channel.getAddress());
+      watch.cancel();
+    }
+  }
+
+  synchronized void shutdown() {
+    scheduler.shutdownNow();
+    watches.values().forEach(Watch::cancel);
+    watches.clear();
+  }
+
+  private final class Watch implements ClientResponseObserver<HealthCheckReq, HealthCheckResponse> {
+    private final InetSocketAddress address;
+    private final List<ChannelPool.SubChannel> channels = new CopyOnWriteArrayList<>();
+    private volatile HealthStatus status = HealthStatus.UNKNOWN;
+    private volatile ClientCallStreamObserver<HealthCheckReq> call;
+
+    Watch(InetSocketAddress address) {
+      this.address = address;
+    }
+
+    void start() {
+      Iterator<ChannelPool.SubChannel> it = channels.iterator();
+      if (!it.hasNext()) {
+        return;
+      }
+      // on the underlying channel so the watch is not counted as an outstanding request
+      HealthGrpc.newStub(it.next().delegate()).watch(
+        HealthCheckReq.newBuilder().addServices(serviceName).build(), this);
+    }
+
+    void cancel() {
+      ClientCallStreamObserver<HealthCheckReq> current = call;
+      if (current != null) {
+        current.cancel("The server is no longer watched", null);
+      }
+    }
+
+    private boolean isWatched() {
+      return watches.get(address) == this;
+    }
+
+    private void setStatus(HealthStatus status) {
+      this.status = status;
+      channels.forEach(channel -> channel.setHealthStatus(status));
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<HealthCheckReq> requestStream) {
+      this.call = requestStream;
+    }
+
+    @Override
+    public void onNext(HealthCheckResponse resp) {
+      if (isWatched()) {
+        setStatus(resp.getStatusesOrDefault(serviceName, HealthStatus.UNKNOWN));
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      if (!isWatched()) {
+        return;
+      }
+      Status.Code code = Status.fromThrowable(t).getCode();
+      if (code == Status.Code.UNIMPLEMENTED) {
+        setStatus(HealthStatus.UNKNOWN);
+        watches.remove(address, this);
+        return;
+      }
+      if (code == Status.Code.UNAVAILABLE) {
+        setStatus(HealthStatus.UNHEALTHY);
+      }
+      retry();
+    }
+
+    @Override
+    public void onCompleted() {
+      if (isWatched()) {
+        retry();
+      }
+    }
+
+    private void retry() {
+      try {
+        scheduler.schedule(() -> {
+          if (isWatched()) {
+            start();
+          }
+        }, retryDelayMillis, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // shut down
+      }
+    }
+  }
+}
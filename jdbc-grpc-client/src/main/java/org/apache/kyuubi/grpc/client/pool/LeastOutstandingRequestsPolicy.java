@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.pool;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the sub-channel with the fewest in-flight calls. The scan starts at a rotating
+ * offset so ties are spread evenly instead of always landing on the first sub-channel.
+ */
+public class LeastOutstandingRequestsPolicy implements LoadBalancePolicy {
+  private final AtomicInteger offset = new AtomicInteger();
+
+  @Override
+  public ChannelPool.SubChannel pick(List<ChannelPool.SubChannel> candidates) {
+    int size = candidates.size();
+    int start = Math.floorMod(offset.getAndIncrement(), size);
+    ChannelPool.SubChannel best = null;
+    int bestOutstanding = Integer.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      ChannelPool.SubChannel candidate = candidates.get((start + i) % size);
+      int outstanding = candidate.getOutstandingRequests();
+      if (outstanding < bestOutstanding) {
+        best = candidate;
+        bestOutstanding = outstanding;
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.pool;
+
+import java.util.List;
+
+/**
+ * Chooses the sub-channel a new session is opened on. Calls of an existing session always
+ * go to the sub-channel the session is bound to.
+ */
+public interface LoadBalancePolicy {
+
+  /**
+   * @param candidates the sub-channels accepting new sessions, never empty
+   */
+  ChannelPool.SubChannel pick(List<ChannelPool.SubChannel> candidates);
+
+  static LoadBalancePolicy roundRobin() {
+    return new RoundRobinPolicy();
+  }
+
+  static LoadBalancePolicy leastOutstandingRequests() {
+    return new LeastOutstandingRequestsPolicy();
+  }
+
+  static LoadBalancePolicy healthAware(LoadBalancePolicy delegate) {
+    return new HealthAwarePolicy(delegate);
+  }
+}
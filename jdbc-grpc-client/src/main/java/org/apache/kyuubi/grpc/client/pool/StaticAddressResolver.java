@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.pool;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A fixed list of server addresses.
+ */
+public class StaticAddressResolver implements AddressResolver {
+  private final List<InetSocketAddress> addresses;
+
+  public StaticAddressResolver(List<InetSocketAddress> addresses) {
+    this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+  }
+
+  public StaticAddressResolver(InetSocketAddress... addresses) {
+    this(Arrays.asList(addresses));
+  }
+
+  /**
+   * @param addresses comma separated host:port pairs, e.g. "kyuubi-1:10009,kyuubi-2:10009"
+   */
+  public static StaticAddressResolver parse(String addresses) {
+    List<InetSocketAddress> list = new ArrayList<>();
+    for (String address : addresses.split(",")) {
+      if (!address.trim().isEmpty()) {
+        list.add(parseAddress(address));
+      }
+    }
+    return new StaticAddressResolver(list);
+  }
+
+  static InetSocketAddress parseAddress(String address) {
+    String trimmed = address.trim();
+    int index = trimmed.lastIndexOf(':');
+    if (index <= 0 || index == trimmed.length() - 1) {
+      throw new IllegalArgumentException("Invalid address, expect host:port but got " + address);
+    }
+    String host = trimmed.substring(0, index);
+    if (host.startsWith("[") && host.endsWith("]")) {
+      host = host.substring(1, host.length() - 1);
+    }
+    return InetSocketAddress.createUnresolved(host, Integer.parseInt(trimmed.substring(index + 1)));
+  }
+
+  @Override
+  public List<InetSocketAddress> resolve() {
+    return addresses;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.compression;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.*;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+
+/**
+ * Message compression negotiated per connection with {@link ConnectionConfigs#COMPRESSION}.
+ *
+ * <p>Both sides register the codecs with {@link #configure(ManagedChannelBuilder)} and
+ * {@link #configure(ServerBuilder)}. The client compresses the calls of a connection with the
+ * codec the server accepted, and asks the server to compress the responses of those calls with
+ * the {@link #RESPONSE_ENCODING} header, see {@link CompressionClientInterceptor} and
+ * {@link CompressionServerInterceptor}. Messages smaller than {@link #DEFAULT_MIN_MESSAGE_SIZE}
+ * are sent uncompressed on both sides, compressing them costs more CPU than it saves bytes.
+ */
+public final class Compression {
+
+  public static final int DEFAULT_MIN_MESSAGE_SIZE = 1024;
+
+  /**
+   * The codec the client asks the server to compress the responses of a call with.
+   */
+  public static final Metadata.Key<String> RESPONSE_ENCODING =
+    Metadata.Key.of("kyuubi-response-encoding", Metadata.ASCII_STRING_MARSHALLER);
+
+  private static final boolean LZ4_AVAILABLE = isClassPresent("net.jpountz.lz4.LZ4FrameOutputStream");
+  private static final CompressorRegistry COMPRESSORS = CompressorRegistry.newEmptyInstance();
+  private static final DecompressorRegistry DECOMPRESSORS;
+
+  static {
+    COMPRESSORS.register(new Codec.Gzip());
+    DecompressorRegistry decompressors = DecompressorRegistry.getDefaultInstance();
+    if (LZ4_AVAILABLE) {
+      Lz4Codec lz4 = new Lz4Codec();
+      COMPRESSORS.register(lz4);
+      decompressors = decompressors.with(lz4, true);
+    }
+    DECOMPRESSORS = decompressors;
+  }
+
+  private Compression() {
+  }
+
+  private static boolean isClassPresent(String className) {
+    try {
+      Class.forName(className, false, Compression.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  public static boolean isLz4Available() {
+    return LZ4_AVAILABLE;
+  }
+
+  public static CompressorRegistry compressorRegistry() {
+    return COMPRESSORS;
+  }
+
+  public static DecompressorRegistry decompressorRegistry() {
+    return DECOMPRESSORS;
+  }
+
+  /**
+   * @return whether the codec is registered on this side, identity is always supported
+   */
+  public static boolean isSupported(String codec) {
+    return ConnectionConfigs.COMPRESSION_IDENTITY.equals(codec) || COMPRESSORS.lookupCompressor(codec) != null;
+  }
+
+  /**
+   * @param requested the codec requested by the client, may be null
+   * @return the requested codec if supported, otherwise identity
+   */
+  public static String negotiate(String requested) {
+    if (requested == null || !isSupported(requested)) {
+      return ConnectionConfigs.COMPRESSION_IDENTITY;
+    }
+    return requested;
+  }
+
+  public static <T extends ManagedChannelBuilder<T>> T configure(ManagedChannelBuilder<T> builder) {
+    return builder
+      .compressorRegistry(COMPRESSORS)
+      .decompressorRegistry(DECOMPRESSORS);
+  }
+
+  public static <T extends ServerBuilder<T>> T configure(ServerBuilder<T> builder) {
+    return builder
+      .compressorRegistry(COMPRESSORS)
+      .decompressorRegistry(DECOMPRESSORS);
+  }
+
+  static int serializedSize(Object message) {
+    return message instanceof MessageLite
+      ? ((MessageLite) message).getSerializedSize()
+      : Integer.MAX_VALUE;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.compression;
+
+import io.grpc.*;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+
+/**
+ * Applies to the calls made with a compressor, e.g. {@code stub.withCompression("lz4")}: asks the
+ * server to compress the responses with the same codec, and sends the requests smaller than the
+ * threshold uncompressed.
+ */
+public class CompressionClientInterceptor implements ClientInterceptor {
+
+  private final int minMessageSize;
+
+  public CompressionClientInterceptor() {
+    this(Compression.DEFAULT_MIN_MESSAGE_SIZE);
+  }
+
+  /**
+   * @param minMessageSize the serialized size in bytes from which the requests are compressed
+   */
+  public CompressionClientInterceptor(int minMessageSize) {
+    this.minMessageSize = minMessageSize;
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+    MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+    String codec = callOptions.getCompressor();
+    ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+    if (codec == null || ConnectionConfigs.COMPRESSION_IDENTITY.equals(codec)) {
+      return call;
+    }
+    return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(call) {
+      @Override
+      public void start(Listener<RespT> responseListener, Metadata headers) {
+        headers.put(Compression.RESPONSE_ENCODING, codec);
+        super.start(responseListener, headers);
+      }
+
+      @Override
+      public void sendMessage(ReqT message) {
+        setMessageCompression(Compression.serializedSize(message) >= minMessageSize);
+        super.sendMessage(message);
+      }
+    };
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.compression;
+
+import io.grpc.*;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+
+/**
+ * Compresses the responses of a call with the codec the client asked for in the
+ * {@link Compression#RESPONSE_ENCODING} header, except the ones smaller than the threshold.
+ * Calls without the header, or asking for a codec unknown to the server, are not compressed.
+ * The server must be configured with {@link Compression#configure(ServerBuilder)}.
+ */
+public class CompressionServerInterceptor implements ServerInterceptor {
+
+  private final int minMessageSize;
+
+  public CompressionServerInterceptor() {
+    this(Compression.DEFAULT_MIN_MESSAGE_SIZE);
+  }
+
+  /**
+   * @param minMessageSize the serialized size in bytes from which the responses are compressed
+   */
+  public CompressionServerInterceptor(int minMessageSize) {
+    this.minMessageSize = minMessageSize;
+  }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+    ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+    String codec = headers.get(Compression.RESPONSE_ENCODING);
+    if (codec == null
+      || ConnectionConfigs.COMPRESSION_IDENTITY.equals(codec)
+      || !Compression.isSupported(codec)) {
+      return next.startCall(call, headers);
+    }
+    try {
+      call.setCompression(codec);
+    } catch (IllegalArgumentException e) {
+      // the server is not configured with the codec
+      return next.startCall(call, headers);
+    }
+    return next.startCall(new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+      @Override
+      public void sendMessage(RespT message) {
+        setMessageCompression(Compression.serializedSize(message) >= minMessageSize);
+        super.sendMessage(message);
+      }
+    }, headers);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-memory registry of {@link LongAdder} counters and {@link LogLinearHistogram}s.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+  private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+  private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+  @Override
+  public Counter counter(String name) {
+    Counter counter = counters.get(name);
+    return counter != null ? counter : counters.computeIfAbsent(name, k -> new AdderCounter());
+  }
+
+  @Override
+  public Histogram histogram(String name) {
+    Histogram histogram = histograms.get(name);
+    return histogram != null ? histogram : histograms.computeIfAbsent(name, k -> new LogLinearHistogram());
+  }
+
+  public SortedMap<String, Counter> getCounters() {
+    return Collections.unmodifiableSortedMap(new TreeMap<>(counters));
+  }
+
+  public SortedMap<String, Histogram> getHistograms() {
+    return Collections.unmodifiableSortedMap(new TreeMap<>(histograms));
+  }
+
+  private static class AdderCounter implements Counter {
+    private final LongAdder adder = new LongAdder();
+
+    @Override
+    public void add(long delta) {
+      adder.add(delta);
+    }
+
+    @Override
+    public long getCount() {
+      return adder.sum();
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(getCount());
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.metrics;
+
+/**
+ * The distribution of recorded non-negative values, e.g. latencies in nanoseconds or
+ * message sizes in bytes.
+ */
+public interface Histogram {
+
+  void update(long value);
+
+  long getCount();
+
+  long getSum();
+
+  long getMax();
+
+  default double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double) getSum() / count;
+  }
+
+  /**
+   * @param percentile in [0, 100]
+   * @return an upper bound of the value at the percentile
+   */
+  long getValueAtPercentile(double percentile);
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.StringValue;
+import org.apache.kyuubi.grpc.jdbc.ColumnData;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ColumnVectorsTest {
+
+  @Test
+  public void testPrimitiveVectors() throws Exception {
+    ColumnData ints = ColumnVectors.encode(TypeId.INT, Arrays.asList(1, null, 3));
+    assertEquals(ColumnData.VectorCase.INT32_VALUES, ints.getVectorCase());
+    assertEquals(3, ColumnVectors.rowCount(ints));
+    assertEquals(1, ColumnVectors.get(ints, 0));
+    assertTrue(ColumnVectors.isNull(ints, 1));
+    assertNull(ColumnVectors.get(ints, 1));
+    assertEquals(3, ColumnVectors.get(ints, 2));
+
+    ColumnData longs = ColumnVectors.encode(TypeId.LONG, Arrays.asList(Long.MAX_VALUE, -1L));
+    assertEquals(Long.MAX_VALUE, ColumnVectors.get(longs, 0));
+    assertEquals(-1L, ColumnVectors.get(longs, 1));
+    assertTrue(longs.getNulls().isEmpty());
+
+    ColumnData bools = ColumnVectors.encode(TypeId.BOOLEAN, Arrays.asList(true, false));
+    assertEquals(true, ColumnVectors.get(bools, 0));
+    assertEquals(false, ColumnVectors.get(bools, 1));
+
+    ColumnData doubles = ColumnVectors.encode(TypeId.DOUBLE, Arrays.asList(1.5D, null));
+    assertEquals(1.5D, ColumnVectors.get(doubles, 0));
+    assertNull(ColumnVectors.get(doubles, 1));
+
+    ColumnData reparsed = ColumnData.parseFrom(ints.toByteArray());
+    assertEquals(ints, reparsed);
+  }
+
+  @Test
+  public void testVariableWidthVectors() {
+    ColumnData strings = ColumnVectors.encode(TypeId.STRING, Arrays.asList("kyuubi", null, "", "阿帕奇"));
+    assertEquals(ColumnData.VectorCase.STRING_VALUES, strings.getVectorCase());
+    assertEquals(5, strings.getStringValues().getOffsetsCount());
+    assertEquals("kyuubi", ColumnVectors.get(strings, 0));
+    assertNull(ColumnVectors.get(strings, 1));
+    assertEquals("", ColumnVectors.get(strings, 2));
+    assertEquals("阿帕奇", ColumnVectors.get(strings, 3));
+
+    ColumnData binaries = ColumnVectors.encode(TypeId.BINARY, Arrays.asList(new byte[] {1, 2}, null));
+    assertEquals(ColumnData.VectorCase.BINARY_VALUES, binaries.getVectorCase());
+    assertArrayEquals(new byte[] {1, 2}, (byte[]) ColumnVectors.get(binaries, 0));
+    assertNull(ColumnVectors.get(binaries, 1));
+
+    ColumnData decimals = ColumnVectors.encode(TypeId.DECIMAL, Arrays.asList(new BigDecimal("12.345")));
+    assertEquals(new BigDecimal("12.345"), ColumnVectors.get(decimals, 0));
+  }
+
+  @Test
+  public void testDateTimeVectors() {
+    Date date = Date.valueOf("2023-06-01");
+    Time time = Time.valueOf("12:34:56");
+    Timestamp ts = Timestamp.valueOf("1969-12-31 23:59:59.123456");
+    assertEquals(date, ColumnVectors.get(ColumnVectors.encode(TypeId.DATE, Arrays.asList(date)), 0));
+    assertEquals(time, ColumnVectors.get(ColumnVectors.encode(TypeId.TIME, Arrays.asList(time)), 0));
+    assertEquals(ts, ColumnVectors.get(ColumnVectors.encode(TypeId.TIMESTAMP, Arrays.asList(ts)), 0));
+  }
+
+  @Test
+  public void testNullAndAnyColumns() {
+    ColumnData nulls = ColumnVectors.encode(TypeId.NULL, Arrays.asList(null, null));
+    assertEquals(ColumnData.VectorCase.VECTOR_NOT_SET, nulls.getVectorCase());
+    assertEquals(2, ColumnVectors.rowCount(nulls));
+    assertNull(ColumnVectors.get(nulls, 1));
+
+    Any any = Any.pack(StringValue.of("kyuubi"));
+    ColumnData legacy = ColumnData.newBuilder().addValues(any).build();
+    assertEquals(1, ColumnVectors.rowCount(legacy));
+    assertEquals(any, ColumnVectors.get(legacy, 0));
+
+    assertFalse(ColumnVectors.isSupported(TypeId.STRUCT));
+    assertThrows(IllegalArgumentException.class, () -> ColumnVectors.builder(TypeId.ARRAY));
+  }
+}
@@ -1,16 +1,53 @@
 package org.apache.kyuubi.grpc;
 
 import io.grpc.stub.StreamObserver;
-import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
-import org.apache.kyuubi.grpc.jdbc.GetCatalogsReq;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.kyuubi.grpc.arrow.ArrowBatchWriter;
+import org.apache.kyuubi.grpc.arrow.ArrowUtils;
+import org.apache.kyuubi.grpc.jdbc.*;
 import org.apache.kyuubi.grpc.jdbc.JdbcGrpc.JdbcImplBase;
 
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.kyuubi.grpc.GrpcUtils.OK;
 
 public class DummyJdbcService extends JdbcImplBase {
 
+  /**
+   * The schema of the registered results
+   */
+  public static final ResultSetSchema SCHEMA = ResultSetSchema.newBuilder()
+    .addColumns(ColumnInfo.newBuilder()
+      .setColumnName("id")
+      .setType(DataType.newBuilder().setTypeId(TypeId.LONG)))
+    .build();
+
+  private final Map<String, List<Long>> results = new ConcurrentHashMap<>();
+  private final Map<String, String> resultFormats = new ConcurrentHashMap<>();
+  private final Map<String, Integer> offsets = new ConcurrentHashMap<>();
+
+  /**
+   * Register a single LONG column result that can be fetched by the operation id
+   */
+  public void addResult(String operationId, List<Long> rows) {
+    addResult(operationId, rows, ConnectionConfigs.RESULT_FORMAT_COLUMNAR);
+  }
+
+  /**
+   * Register a result fetched in the result format negotiated by the connection
+   */
+  public void addResult(String operationId, List<Long> rows, String resultFormat) {
+    offsets.remove(operationId);
+    resultFormats.put(operationId, resultFormat);
+    results.put(operationId, rows);
+  }
 
   public DummyJdbcService() throws IOException {
   }
@@ -35,4 +72,128 @@ public class DummyJdbcService extends JdbcImplBase {
     respOb.onNext(builder.build());
     respOb.onCompleted();
   }
+
+  @Override
+  public void getSchemas(GetSchemasReq req, StreamObserver<DirectStatusResp> respOb) {
+    describe(respOb, "schemas", req.getCatalog(), req.getSchemaPattern());
+  }
+
+  @Override
+  public void getTables(GetTablesReq req, StreamObserver<DirectStatusResp> respOb) {
+    describe(respOb, "tables", req.getCatalog(), req.getSchemaPattern(), req.getTableNamePattern(),
+      String.join(",", req.getTableTypesList()));
+  }
+
+  @Override
+  public void getTableTypes(GetTableTypesReq req, StreamObserver<DirectStatusResp> respOb) {
+    describe(respOb, "tableTypes");
+  }
+
+  @Override
+  public void getColumns(GetColumnsReq req, StreamObserver<DirectStatusResp> respOb) {
+    describe(respOb, "columns", req.getCatalog(), req.getSchemaPattern(), req.getTablePattern(),
+      req.getColumnNamePattern());
+  }
+
+  @Override
+  public void getPrimaryKeys(GetPrimaryKeysReq req, StreamObserver<DirectStatusResp> respOb) {
+    describe(respOb, "primaryKeys", req.getCatalog(), req.getSchema(), req.getTable());
+  }
+
+  @Override
+  public void getFunctions(GetFunctionsReq req, StreamObserver<DirectStatusResp> respOb) {
+    describe(respOb, "functions", req.getCatalog(), req.getSchemaPattern(), req.getFunctionNamePattern());
+  }
+
+  @Override
+  public void getTypeInfo(GetTypeInfoReq req, StreamObserver<DirectStatusResp> respOb) {
+    describe(respOb, "typeInfo");
+  }
+
+  @Override
+  public void getDatabaseMetaData(GetDatabaseMetaDataReq req, StreamObserver<GetDatabaseMetaDataResp> respOb) {
+    GetDatabaseMetaDataResp.Builder builder = GetDatabaseMetaDataResp.newBuilder().setStatus(OK);
+    for (DatabaseMetaData key : req.getKeysList()) {
+      builder.addEntries(DatabaseMetaDataEntry.newBuilder().setKey(key).setStringValue(key.name()));
+    }
+    respOb.onNext(builder.build());
+    respOb.onCompleted();
+  }
+
+  /**
+   * Answer a metadata call with an identifier made of the call name and its arguments
+   */
+  private static void describe(StreamObserver<DirectStatusResp> respOb, String call, String... args) {
+    StringBuilder identifier = new StringBuilder(call);
+    for (String arg : args) {
+      identifier.append(':').append(arg);
+    }
+    respOb.onNext(DirectStatusResp.newBuilder().setIdentifier(identifier.toString()).setStatus(OK).build());
+    respOb.onCompleted();
+  }
+
+  @Override
+  public void getNextResultSet(GetNextColumnSet req, StreamObserver<GetNextColumnSetResp> respOb) {
+    List<Long> rows = results.get(req.getOperationId());
+    if (rows == null) {
+      respOb.onNext(GetNextColumnSetResp.newBuilder().setStatus(notFound(req.getOperationId())).build());
+      respOb.onCompleted();
+      return;
+    }
+    int fetchSize = req.getFetchSize() == 0 ? 1000 : req.getFetchSize();
+    int offset = offsets.getOrDefault(req.getOperationId(), 0);
+    int end = Math.min(offset + fetchSize, rows.size());
+    offsets.put(req.getOperationId(), end);
+    respOb.onNext(batch(rows.subList(offset, end), resultFormats.get(req.getOperationId())));
+    respOb.onCompleted();
+  }
+
+  private static GetNextColumnSetResp batch(List<Long> rows, String resultFormat) {
+    GetNextColumnSetResp.Builder builder = GetNextColumnSetResp.newBuilder().setStatus(OK);
+    if (!ConnectionConfigs.RESULT_FORMAT_ARROW.equals(resultFormat)) {
+      ColumnData column = ColumnVectors.encode(TypeId.LONG, rows);
+      return builder.setData(ColumnDataSet.newBuilder().addColumns(column)).build();
+    }
+    if (rows.isEmpty()) {
+      // the end of the result, neither data nor an arrow batch
+      return builder.build();
+    }
+    try (BufferAllocator allocator = new RootAllocator();
+         VectorSchemaRoot root = VectorSchemaRoot.create(ArrowUtils.toArrowSchema(SCHEMA), allocator)) {
+      BigIntVector ids = (BigIntVector) root.getVector(0);
+      ids.allocateNew(rows.size());
+      for (int i = 0; i < rows.size(); i++) {
+        ids.set(i, rows.get(i));
+      }
+      root.setRowCount(rows.size());
+      return builder.setArrowBatch(ArrowBatchWriter.write(root)).build();
+    } catch (IOException | SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Status notFound(String operationId) {
+    return Status.newBuilder()
+      .setStatusCode(StatusCode.ERROR)
+      .setSqlState("24000")
+      .setErrorMessage("Operation Id " + operationId + " not found")
+      .build();
+  }
+
+  @Override
+  public void streamResultSet(GetNextColumnSet req, StreamObserver<GetNextColumnSetResp> respOb) {
+    List<Long> rows = results.remove(req.getOperationId());
+    String resultFormat = resultFormats.remove(req.getOperationId());
+    if (rows == null) {
+      respOb.onNext(GetNextColumnSetResp.newBuilder().setStatus(notFound(req.getOperationId())).build());
+      respOb.onCompleted();
+      return;
+    }
+    int fetchSize = req.getFetchSize() == 0 ? 1000 : req.getFetchSize();
+    for (int offset = 0; offset < rows.size(); offset += fetchSize) {
+      int end = Math.min(offset + fetchSize, rows.size());
+      respOb.onNext(batch(rows.subList(offset, end), resultFormat));
+    }
+    respOb.onCompleted();
+  }
 }
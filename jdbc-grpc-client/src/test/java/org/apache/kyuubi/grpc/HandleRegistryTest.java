@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class HandleRegistryTest {
+
+  @Test
+  public void testLastAccessTime() {
+    AtomicLong clock = new AtomicLong(1000);
+    HandleRegistry<String> registry = new HandleRegistry<>(clock::get);
+    assertNull(registry.putIfAbsent("a", "A"));
+    assertNull(registry.putIfAbsent("b", "B"));
+    assertEquals("A", registry.putIfAbsent("a", "A2"));
+    assertEquals(1000, registry.getLastAccessTime("a"));
+
+    clock.set(2000);
+    assertEquals("A", registry.get("a"));
+    assertEquals("B", registry.peek("b"));
+    assertEquals(2000, registry.getLastAccessTime("a"));
+    assertEquals(1000, registry.getLastAccessTime("b"));
+    assertEquals(-1, registry.getLastAccessTime("c"));
+
+    assertEquals(Collections.singletonList("B"), registry.expire(2500, 1000));
+    assertFalse(registry.contains("b"));
+    assertFalse(registry.touch("b"));
+    assertEquals(Collections.emptyList(), registry.expire(2500, 1000));
+    assertEquals("A", registry.remove("a"));
+    assertTrue(registry.isEmpty());
+  }
+
+  @Test
+  public void testConcurrentRegistration() throws Exception {
+    HandleRegistry<Integer> registry = new HandleRegistry<>();
+    int threads = 64;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<Integer>> winners = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int thread = t;
+        winners.add(executor.submit(() -> {
+          start.await();
+          int won = 0;
+          for (int i = 0; i < 1000; i++) {
+            // all the threads race for the same ids
+            if (registry.putIfAbsent("id-" + i, thread) == null) {
+              won++;
+            }
+            assertNotNull(registry.get("id-" + i));
+          }
+          return won;
+        }));
+      }
+      start.countDown();
+      int total = 0;
+      for (Future<Integer> winner : winners) {
+        total += winner.get(30, TimeUnit.SECONDS);
+      }
+      assertEquals(1000, total);
+      assertEquals(1000, registry.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -3,6 +3,7 @@ package org.apache.kyuubi.grpc;
 
 import io.grpc.stub.StreamObserver;
 import org.apache.kyuubi.grpc.common.ConnectionHandle;
+import org.apache.kyuubi.grpc.compression.Compression;
 import org.apache.kyuubi.grpc.jdbc.*;
 import org.apache.kyuubi.grpc.jdbc.connection.ConnectionGrpc;
 import org.apache.kyuubi.grpc.jdbc.connection.*;
@@ -13,40 +14,45 @@ import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.kyuubi.grpc.GrpcUtils.OK;
 
 public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
+  public final AtomicInteger getterCalls = new AtomicInteger();
   private final Path _tempDir = Files.createTempDirectory(getClass().getSimpleName());
   public String defaultCatalogName = _tempDir.getFileName().toString().toUpperCase();
   private final String jdbcUrl = "jdbc:h2:" + _tempDir + ";MODE=DB2;user=testUser;password=testPass";
-  private Map<ConnectionHandle, Connection> connections = new HashMap<>();
+  private final HandleRegistry<Connection> connections = new HandleRegistry<>();
   private Executor executor = Executors.newSingleThreadExecutor();
-  private final Map<Savepoint, java.sql.Savepoint> savepoints = new HashMap<>();
+  // savepoints by name, or by id for the unnamed ones
+  private final HandleRegistry<java.sql.Savepoint> savepoints = new HandleRegistry<>();
+
   public Connection getConnection(ConnectionHandle connectionId, Properties properties) throws SQLException {
-    if (connections.containsKey(connectionId)) {
-      return connections.get(connectionId);
-    } else {
-      Connection conn = DriverManager.getConnection(jdbcUrl, properties);
-      connections.put(connectionId, conn);
+    Connection conn = connections.get(connectionId.getId());
+    if (conn != null) {
       return conn;
     }
+    conn = DriverManager.getConnection(jdbcUrl, properties);
+    Connection existing = connections.putIfAbsent(connectionId.getId(), conn);
+    if (existing != null) {
+      // opened concurrently with the same id
+      conn.close();
+      return existing;
+    }
+    return conn;
   }
 
   public Connection getConnection(ConnectionHandle connectionId) throws SQLException {
-    if (connections.containsKey(connectionId)) {
-      return connections.get(connectionId);
-    } else {
-      Connection conn = DriverManager.getConnection(jdbcUrl, new Properties());
-      connections.put(connectionId, conn);
-      return conn;
-    }
+    return getConnection(connectionId, new Properties());
   }
 
   public TestConnectionService() throws IOException {
@@ -61,7 +67,6 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
       }
     }
     connections.clear();
-    connections = null;
     executor = null;
   }
 
@@ -94,18 +99,36 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
     try {
       ConnectionHandle connectionId = null;
       Properties properties = new Properties();
-      properties.putAll(req.getConfigsMap());
-      if (req.getConnectionId() == ConnectionHandle.getDefaultInstance()) {
+      for (Map.Entry<String, String> config : req.getConfigsMap().entrySet()) {
+        if (!ConnectionConfigs.isProtocolConfig(config.getKey())) {
+          properties.put(config.getKey(), config.getValue());
+        }
+      }
+      if (req.getConnectionId().getId().isEmpty()) {
         connectionId = ConnectionHandle.newBuilder()
           .setId(UUID.randomUUID().toString())
           .build();
       } else {
         connectionId = req.getConnectionId();
       }
-      getConnection(connectionId, properties);
+      Connection conn = getConnection(connectionId, properties);
       builder.setIdentifier(connectionId.getId());
+      builder.putExtraInfo(ConnectionConfigs.STATE_AUTO_COMMIT, String.valueOf(conn.getAutoCommit()));
+      builder.putExtraInfo(ConnectionConfigs.STATE_READ_ONLY, String.valueOf(conn.isReadOnly()));
+      builder.putExtraInfo(ConnectionConfigs.STATE_CATALOG, conn.getCatalog());
+      builder.putExtraInfo(ConnectionConfigs.STATE_TRANSACTION_ISOLATION,
+        String.valueOf(conn.getTransactionIsolation()));
       builder.putExtraInfo("apache", "kyuubi");
       builder.putExtraInfo("Kyuubi", "Serverless SQL on Lakehouse");
+      String resultFormat = req.getConfigsOrDefault(
+        ConnectionConfigs.RESULT_FORMAT, ConnectionConfigs.RESULT_FORMAT_COLUMNAR);
+      if (ConnectionConfigs.RESULT_FORMAT_ARROW.equals(resultFormat)) {
+        builder.putExtraInfo(ConnectionConfigs.RESULT_FORMAT, ConnectionConfigs.RESULT_FORMAT_ARROW);
+      }
+      if (req.containsConfigs(ConnectionConfigs.COMPRESSION)) {
+        builder.putExtraInfo(ConnectionConfigs.COMPRESSION,
+          Compression.negotiate(req.getConfigsOrThrow(ConnectionConfigs.COMPRESSION)));
+      }
       builder.setStatus(OK);
       respOb.onNext(builder.build());
     } catch (SQLException e) {
@@ -126,10 +149,11 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
   public void closeConnection(ConnectionHandle req, StreamObserver<DirectStatusResp> respOb) {
     DirectStatusResp.Builder builder = DirectStatusResp.newBuilder();
     try {
-      if (!connections.containsKey(req)) {
+      Connection conn = connections.remove(req.getId());
+      if (conn == null) {
         throw new IllegalArgumentException("invalid connection id " + req.getId());
       } else {
-        getConnection(req).close();
+        conn.close();
         builder.setIdentifier(req.getId());
       }
       builder.setStatus(OK);
@@ -180,6 +204,7 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
 
   @Override
   public void getAutoCommit(ConnectionHandle request, StreamObserver<GetAutoCommitResp> responseObserver) {
+    getterCalls.incrementAndGet();
     GetAutoCommitResp.Builder builder = GetAutoCommitResp.newBuilder();
     try {
       boolean autoCommit = getConnection(request).getAutoCommit();
@@ -210,10 +235,13 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
     try {
       Connection conn = getConnection(request.getConnectionId());
       Savepoint savepoint = request.getSavepoint();
-      if (savepoint == Savepoint.getDefaultInstance()) {
+      if (!request.hasSavepoint()) {
         conn.rollback();
       } else {
-        conn.rollback(savepoints.get(savepoint));
+        String key = savepoint.getSavepointName().isEmpty()
+          ? "#" + savepoint.getSavepointId()
+          : savepoint.getSavepointName();
+        conn.rollback(savepoints.get(key));
       }
       responseObserver.onNext(ok(request.getConnectionId().getId()));
     } catch (SQLException e) {
@@ -235,6 +263,7 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
 
   @Override
   public void isReadOnly(ConnectionHandle request, StreamObserver<IsReadOnlyResp> responseObserver) {
+    getterCalls.incrementAndGet();
     IsReadOnlyResp.Builder builder = IsReadOnlyResp.newBuilder();
     try {
       IsReadOnlyResp resp = builder
@@ -264,6 +293,7 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
 
   @Override
   public void getCatalog(ConnectionHandle request, StreamObserver<GetCatalogResp> responseObserver) {
+    getterCalls.incrementAndGet();
     GetCatalogResp.Builder builder = GetCatalogResp.newBuilder();
     try {
       String catalog = getConnection(request).getCatalog();
@@ -294,6 +324,7 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
 
   @Override
   public void getTransactionIsolation(ConnectionHandle request, StreamObserver<GetTransactionIsolationResp> responseObserver) {
+    getterCalls.incrementAndGet();
     GetTransactionIsolationResp.Builder builder = GetTransactionIsolationResp.newBuilder();
     try {
       int level = getConnection(request).getTransactionIsolation();
@@ -356,6 +387,7 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
 
   @Override
   public void getTypeMap(ConnectionHandle request, StreamObserver<GetTypeMapResp> responseObserver) {
+    getterCalls.incrementAndGet();
     GetTypeMapResp.Builder builder = GetTypeMapResp.newBuilder();
     try {
       Map<String, Class<?>> typeMap = getConnection(request).getTypeMap();
@@ -387,6 +419,7 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
 
   @Override
   public void getSchema(ConnectionHandle request, StreamObserver<GetSchemaResp> responseObserver) {
+    getterCalls.incrementAndGet();
     GetSchemaResp.Builder builder = GetSchemaResp.newBuilder();
     try {
       String schema = getConnection(request).getSchema();
@@ -418,6 +451,7 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
 
   @Override
   public void getNetworkTimeout(ConnectionHandle request, StreamObserver<GetNetworkTimeoutResp> responseObserver) {
+    getterCalls.incrementAndGet();
     GetNetworkTimeoutResp.Builder builder = GetNetworkTimeoutResp.newBuilder();
     try {
       int timeout = getConnection(request).getNetworkTimeout();
@@ -479,6 +513,7 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
 
   @Override
   public void getClientInfo(ConnectionHandle request, StreamObserver<GetClientInfoResp> responseObserver) {
+    getterCalls.incrementAndGet();
     GetClientInfoResp.Builder builder = GetClientInfoResp.newBuilder();
     try {
       Properties properties = getConnection(request).getClientInfo();
@@ -492,4 +527,62 @@ public class TestConnectionService extends ConnectionGrpc.ConnectionImplBase {
     }
     responseObserver.onCompleted();
   }
+
+  private interface Action {
+    void run() throws SQLException;
+  }
+
+  @Override
+  public void applyConnectionState(ApplyConnectionStateReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    ConnectionState state = request.getState();
+    Deque<Action> undo = new ArrayDeque<>();
+    try {
+      Connection conn = getConnection(request.getConnectionId());
+      if (state.hasCatalog()) {
+        String catalog = conn.getCatalog();
+        conn.setCatalog(state.getCatalog());
+        undo.push(() -> conn.setCatalog(catalog));
+      }
+      if (state.hasSchema()) {
+        String schema = conn.getSchema();
+        conn.setSchema(state.getSchema());
+        undo.push(() -> conn.setSchema(schema));
+      }
+      if (state.hasReadOnly()) {
+        boolean readOnly = conn.isReadOnly();
+        conn.setReadOnly(state.getReadOnly());
+        undo.push(() -> conn.setReadOnly(readOnly));
+      }
+      if (state.hasTransactionIsolation()) {
+        int level = conn.getTransactionIsolation();
+        conn.setTransactionIsolation(state.getTransactionIsolation());
+        undo.push(() -> conn.setTransactionIsolation(level));
+      }
+      if (state.hasHoldability()) {
+        int holdability = conn.getHoldability();
+        conn.setHoldability(state.getHoldability());
+        undo.push(() -> conn.setHoldability(holdability));
+      }
+      if (state.hasNetworkTimeout()) {
+        int timeout = conn.getNetworkTimeout();
+        conn.setNetworkTimeout(executor, state.getNetworkTimeout());
+        undo.push(() -> conn.setNetworkTimeout(executor, timeout));
+      }
+      // last, switching auto commit on commits the running transaction and can not be undone
+      if (state.hasAutoCommit()) {
+        conn.setAutoCommit(state.getAutoCommit());
+      }
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (SQLException e) {
+      while (!undo.isEmpty()) {
+        try {
+          undo.pop().run();
+        } catch (SQLException ignored) {
+          // restore as much as possible
+        }
+      }
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
 }
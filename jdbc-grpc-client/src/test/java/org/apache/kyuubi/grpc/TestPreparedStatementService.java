@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc;
+
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.common.ConnectionHandle;
+import org.apache.kyuubi.grpc.common.PreparedStatementHandle;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.statement.*;
+
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+
+public class TestPreparedStatementService extends PreparedStatementGrpc.PreparedStatementImplBase {
+
+  private final TestConnectionService connectionService;
+  private final int cacheCapacity;
+  private final Map<String, PlanCache> caches = new ConcurrentHashMap<>();
+  // prepared statement id -> connection id
+  private final Map<String, String> owners = new ConcurrentHashMap<>();
+  /**
+   * The result sets of the executions by operation id.
+   */
+  public final Map<String, ResultSet> results = new ConcurrentHashMap<>();
+
+  public TestPreparedStatementService(TestConnectionService connectionService, int cacheCapacity) {
+    this.connectionService = connectionService;
+    this.cacheCapacity = cacheCapacity;
+  }
+
+  public PlanCache getCache(String connectionId) {
+    return caches.get(connectionId);
+  }
+
+  private static Status notFound(String preparedId) {
+    return Status.newBuilder()
+      .setStatusCode(StatusCode.ERROR)
+      .setSqlState("26000")
+      .setErrorMessage("Prepared statement " + preparedId + " not found, it may have been evicted")
+      .build();
+  }
+
+  @Override
+  public void prepare(PrepareReq request, StreamObserver<PrepareResp> responseObserver) {
+    PrepareResp.Builder builder = PrepareResp.newBuilder();
+    try {
+      ConnectionHandle connectionId = request.getConnectionId();
+      Connection conn = connectionService.getConnection(connectionId);
+      PlanCache cache = caches.computeIfAbsent(connectionId.getId(), k -> new PlanCache(conn, cacheCapacity));
+      PlanCache.Entry entry = cache.prepare(request.getSql());
+      owners.put(entry.id, connectionId.getId());
+      try {
+        ParameterMetaData metaData = entry.statement.getParameterMetaData();
+        for (int i = 1; i <= metaData.getParameterCount(); i++) {
+          builder.addParameterTypes(ParameterValues.fromSqlType(metaData.getParameterType(i)));
+        }
+      } catch (SQLException e) {
+        builder.clearParameterTypes();
+      }
+      builder.setStatus(OK)
+        .setPreparedId(PreparedStatementHandle.newBuilder().setId(entry.id))
+        .setCached(entry.cached);
+    } catch (SQLException e) {
+      builder.setStatus(connectionService.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void bindAndExecute(BindAndExecuteReq request, StreamObserver<BindAndExecuteResp> responseObserver) {
+    BindAndExecuteResp.Builder builder = BindAndExecuteResp.newBuilder();
+    String preparedId = request.getPreparedId().getId();
+    String connectionId = owners.get(preparedId);
+    PlanCache cache = connectionId == null ? null : caches.get(connectionId);
+    PreparedStatement statement = cache == null ? null : cache.get(preparedId);
+    if (statement == null) {
+      owners.remove(preparedId);
+      builder.setStatus(notFound(preparedId));
+    } else {
+      try {
+        synchronized (statement) {
+          statement.clearParameters();
+          for (int i = 0; i < request.getParametersCount(); i++) {
+            ParameterValues.bind(statement, i + 1, request.getParameters(i));
+          }
+          if (statement.execute()) {
+            String operationId = UUID.randomUUID().toString();
+            results.put(operationId, statement.getResultSet());
+            builder.setHasResultSet(true).setOperationId(operationId);
+          } else {
+            builder.setUpdateCount(statement.getUpdateCount());
+          }
+        }
+        builder.setStatus(OK);
+      } catch (Exception e) {
+        builder.setStatus(connectionService.errorStatus(e));
+      }
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void closePrepared(PreparedStatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    // the plan stays cached for later Prepare calls of the same SQL until it is evicted
+    if (owners.containsKey(request.getId())) {
+      responseObserver.onNext(connectionService.ok(request.getId()));
+    } else {
+      responseObserver.onNext(DirectStatusResp.newBuilder().setStatus(notFound(request.getId())).build());
+    }
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * A bounded LRU of the prepared statements of a connection keyed by SQL, closing the evicted
+   * ones at once.
+   */
+  public static class PlanCache {
+    private final Connection connection;
+    private final Map<String, Entry> bySql;
+    private final Map<String, Entry> byId = new HashMap<>();
+    private long hits = 0;
+
+    PlanCache(Connection connection, int capacity) {
+      this.connection = connection;
+      this.bySql = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          if (size() > capacity) {
+            byId.remove(eldest.getValue().id);
+            try {
+              eldest.getValue().statement.close();
+            } catch (SQLException e) {
+              // do nothing
+            }
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    synchronized Entry prepare(String sql) throws SQLException {
+      Entry entry = bySql.get(sql);
+      if (entry != null) {
+        hits++;
+        return new Entry(entry.id, sql, entry.statement, true);
+      }
+      entry = new Entry(UUID.randomUUID().toString(), sql, connection.prepareStatement(sql), false);
+      bySql.put(sql, entry);
+      byId.put(entry.id, entry);
+      return entry;
+    }
+
+    synchronized PreparedStatement get(String id) {
+      Entry entry = byId.get(id);
+      if (entry == null) {
+        return null;
+      }
+      // touch it in the access order
+      bySql.get(entry.sql);
+      return entry.statement;
+    }
+
+    public synchronized int size() {
+      return bySql.size();
+    }
+
+    public synchronized long getHits() {
+      return hits;
+    }
+
+    static final class Entry {
+      final String id;
+      final String sql;
+      final PreparedStatement statement;
+      final boolean cached;
+
+      Entry(String id, String sql, PreparedStatement statement, boolean cached) {
+        this.id = id;
+        this.sql = sql;
+        this.statement = statement;
+        this.cached = cached;
+      }
+    }
+  }
+}
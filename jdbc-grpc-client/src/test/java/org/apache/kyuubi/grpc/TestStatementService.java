@@ -21,12 +21,16 @@ import com.google.protobuf.ProtocolStringList;
 import io.grpc.stub.StreamObserver;
 import org.apache.kyuubi.grpc.common.ConnectionHandle;
 import org.apache.kyuubi.grpc.common.StatementHandle;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
 import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
 import org.apache.kyuubi.grpc.jdbc.statement.*;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.kyuubi.grpc.GrpcUtils.OK;
 
@@ -34,10 +38,14 @@ public class TestStatementService extends StatementGrpc.StatementImplBase {
 
   private final TestConnectionService connectionService;
 
-  private final Map<StatementHandle, Statement> statements = new HashMap<>();
+  private final HandleRegistry<Statement> statements = new HandleRegistry<>();
+  /**
+   * The number of parameter rows executed by ExecuteBatchStream.
+   */
+  public final AtomicLong batchedRows = new AtomicLong();
 
   private Statement getStatement(StatementHandle statementId) {
-    Statement statement = statements.get(statementId);
+    Statement statement = statements.get(statementId.getId());
     if (statement == null) {
       throw new IllegalArgumentException("Statement Id " + statementId.getId() + " not found");
     }
@@ -57,16 +65,19 @@ public class TestStatementService extends StatementGrpc.StatementImplBase {
       int resultSetConcurrency = GrpcUtils.toJDBC(request.getResultSetConcurrency());
       int resultSetHoldability = GrpcUtils.toJDBC(request.getResultSetHoldability());
       StatementHandle statementId = request.getStatementId();
-      if (statementId == StatementHandle.getDefaultInstance()) {
+      if (statementId.getId().isEmpty()) {
         statementId = StatementHandle.newBuilder()
           .setId(UUID.randomUUID().toString())
           .build();
       }
 
-      if (!statements.containsKey(statementId)) {
+      if (!statements.contains(statementId.getId())) {
         Connection connection = connectionService.getConnection(connectionId);
         Statement statement = connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
-        statements.put(statementId, statement);
+        Statement existing = statements.putIfAbsent(statementId.getId(), statement);
+        if (existing != null) {
+          statement.close();
+        }
       }
 
       DirectStatusResp resp = builder
@@ -84,7 +95,7 @@ public class TestStatementService extends StatementGrpc.StatementImplBase {
   @Override
   public void closeStatement(StatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
     try {
-      Statement stmt = statements.remove(request);
+      Statement stmt = statements.remove(request.getId());
       if (stmt == null) {
         throw new IllegalArgumentException("Statement Id " + request.getId() + " not found");
       }
@@ -302,4 +313,70 @@ public class TestStatementService extends StatementGrpc.StatementImplBase {
     }
     responseObserver.onCompleted();
   }
+
+  @Override
+  public StreamObserver<ExecuteBatchStreamReq> executeBatchStream(StreamObserver<ExecuteBatchResp> responseObserver) {
+    return new StreamObserver<ExecuteBatchStreamReq>() {
+      private PreparedStatement statement = null;
+      private boolean failed = false;
+
+      @Override
+      public void onNext(ExecuteBatchStreamReq request) {
+        if (failed) {
+          return;
+        }
+        try {
+          if (statement == null) {
+            Connection conn = getStatement(request.getStatementId()).getConnection();
+            statement = conn.prepareStatement(request.getSql());
+          }
+          ColumnDataSet block = request.getParameters();
+          int rows = block.getColumnsCount() == 0
+            ? request.getRowCount()
+            : ColumnVectors.rowCount(block.getColumns(0));
+          for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < block.getColumnsCount(); c++) {
+              ParameterValues.bind(statement, c + 1, block.getColumns(c), r);
+            }
+            statement.addBatch();
+          }
+          ExecuteBatchResp.Builder builder = ExecuteBatchResp.newBuilder().setStatus(OK);
+          for (int count : statement.executeBatch()) {
+            builder.addUpdateCounts(count);
+          }
+          batchedRows.addAndGet(rows);
+          responseObserver.onNext(builder.build());
+        } catch (Exception e) {
+          failed = true;
+          close();
+          responseObserver.onNext(ExecuteBatchResp.newBuilder().setStatus(connectionService.errorStatus(e)).build());
+          responseObserver.onCompleted();
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        close();
+      }
+
+      @Override
+      public void onCompleted() {
+        close();
+        if (!failed) {
+          responseObserver.onCompleted();
+        }
+      }
+
+      private void close() {
+        if (statement != null) {
+          try {
+            statement.close();
+          } catch (SQLException e) {
+            // do nothing
+          }
+          statement = null;
+        }
+      }
+    };
+  }
 }
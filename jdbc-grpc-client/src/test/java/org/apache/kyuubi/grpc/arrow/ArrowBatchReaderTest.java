@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.kyuubi.grpc.Status;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.client.JdbcGrpcException;
+import org.apache.kyuubi.grpc.jdbc.*;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class ArrowBatchReaderTest {
+
+  private static ColumnInfo column(String name, TypeId typeId) {
+    return ColumnInfo.newBuilder()
+      .setColumnName(name)
+      .setNullable(1)
+      .setType(DataType.newBuilder().setTypeId(typeId).build())
+      .build();
+  }
+
+  private final ResultSetSchema schema = ResultSetSchema.newBuilder()
+    .addColumns(column("id", TypeId.LONG))
+    .addColumns(column("name", TypeId.STRING))
+    .build();
+
+  @Test
+  public void testToArrowSchema() throws SQLException {
+    Schema arrowSchema = ArrowUtils.toArrowSchema(schema);
+    assertEquals(2, arrowSchema.getFields().size());
+    assertEquals("id", arrowSchema.getFields().get(0).getName());
+    assertEquals(new ArrowType.Int(64, true), arrowSchema.getFields().get(0).getType());
+    assertEquals(ArrowType.Utf8.INSTANCE, arrowSchema.getFields().get(1).getType());
+    assertTrue(arrowSchema.getFields().get(1).isNullable());
+  }
+
+  @Test
+  public void testMapWithoutValueType() {
+    ResultSetSchema malformed = ResultSetSchema.newBuilder()
+      .addColumns(ColumnInfo.newBuilder()
+        .setColumnName("m")
+        .setType(DataType.newBuilder()
+          .setTypeId(TypeId.MAP)
+          .addChildren(column("key", TypeId.STRING)))
+        .build())
+      .build();
+    SQLException e = assertThrows(SQLException.class, () -> ArrowUtils.toArrowSchema(malformed));
+    assertEquals("HY004", e.getSQLState());
+    assertTrue(e.getMessage(), e.getMessage().contains("MAP column m"));
+  }
+
+  @Test
+  public void testReadBatches() throws Exception {
+    try (BufferAllocator allocator = new RootAllocator();
+         VectorSchemaRoot source = VectorSchemaRoot.create(ArrowUtils.toArrowSchema(schema), allocator);
+         ArrowBatchReader reader = new ArrowBatchReader(schema, allocator)) {
+      for (int batch = 0; batch < 2; batch++) {
+        BigIntVector ids = (BigIntVector) source.getVector("id");
+        VarCharVector names = (VarCharVector) source.getVector("name");
+        source.allocateNew();
+        for (int i = 0; i < 3; i++) {
+          ids.setSafe(i, batch * 3 + i);
+          if (i == 1) {
+            names.setNull(i);
+          } else {
+            names.setSafe(i, ("kyuubi-" + i).getBytes(StandardCharsets.UTF_8));
+          }
+        }
+        source.setRowCount(3);
+        GetNextColumnSetResp resp = GetNextColumnSetResp.newBuilder()
+          .setArrowBatch(ArrowBatchWriter.write(source))
+          .build();
+        // go through the wire format
+        GetNextColumnSetResp received = GetNextColumnSetResp.parseFrom(resp.toByteString());
+        VectorSchemaRoot root = reader.load(received);
+        assertEquals(3, root.getRowCount());
+        assertEquals(batch * 3 + 2, ((BigIntVector) root.getVector("id")).get(2));
+        assertTrue(root.getVector("name").isNull(1));
+        assertEquals("kyuubi-2", root.getVector("name").getObject(2).toString());
+      }
+    }
+  }
+
+  @Test
+  public void testErrorResponse() throws SQLException {
+    Status status = Status.newBuilder()
+      .setStatusCode(StatusCode.ERROR)
+      .setSqlState("24000")
+      .build();
+    try (ArrowBatchReader reader = new ArrowBatchReader(schema)) {
+      GetNextColumnSetResp resp = GetNextColumnSetResp.newBuilder().setStatus(status).build();
+      assertThrows(JdbcGrpcException.class, () -> reader.load(resp));
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.arrow;
+
+import com.google.protobuf.ByteString;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.ipc.WriteChannel;
+import org.apache.arrow.vector.ipc.message.ArrowRecordBatch;
+import org.apache.arrow.vector.ipc.message.MessageSerializer;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+/**
+ * Test counterpart of {@link ArrowBatchReader} for the services answering the arrow result
+ * format, serializes the current content of a {@link VectorSchemaRoot} to the Arrow IPC
+ * record batch message carried by {@code GetNextColumnSetResp.arrow_batch}.
+ */
+public class ArrowBatchWriter {
+
+  private ArrowBatchWriter() {
+  }
+
+  public static ByteString write(VectorSchemaRoot root) throws IOException {
+    ByteString.Output out = ByteString.newOutput();
+    try (ArrowRecordBatch batch = new VectorUnloader(root).getRecordBatch()) {
+      MessageSerializer.serialize(new WriteChannel(Channels.newChannel(out)), batch);
+    }
+    return out.toByteString();
+  }
+}
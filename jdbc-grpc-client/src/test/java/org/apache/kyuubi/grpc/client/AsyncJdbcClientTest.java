@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.apache.kyuubi.grpc.DummyJdbcService;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.TestConnectionService;
+import org.apache.kyuubi.grpc.jdbc.DatabaseMetaData;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.GetDatabaseMetaDataResp;
+import org.apache.kyuubi.grpc.jdbc.connection.GetAutoCommitResp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncJdbcClientTest {
+  private final String serverName = InProcessServerBuilder.generateName();
+  private final TestConnectionService connectionService = new TestConnectionService();
+  private Server server;
+  private ManagedChannel channel;
+  private ExecutorService executor;
+  private final AtomicInteger executed = new AtomicInteger();
+  private AsyncJdbcClient client;
+
+  public AsyncJdbcClientTest() throws IOException {
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    server = InProcessServerBuilder.forName(serverName)
+      .addService(connectionService)
+      .addService(new DummyJdbcService())
+      .build()
+      .start();
+    channel = InProcessChannelBuilder.forName(serverName).build();
+    executor = Executors.newFixedThreadPool(2);
+    client = new AsyncJdbcClient(channel, command -> {
+      executed.incrementAndGet();
+      executor.execute(command);
+    });
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    channel.shutdownNow();
+    server.shutdownNow();
+    executor.shutdownNow();
+    connectionService.stop();
+  }
+
+  @Test
+  public void testOpenConnection() throws Exception {
+    CompletableFuture<DirectStatusResp> future = client.openConnection(Collections.emptyMap(), Optional.empty());
+    DirectStatusResp resp = future.get(10, TimeUnit.SECONDS);
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    assertFalse(resp.getIdentifier().isEmpty());
+    // the response is delivered on the executor of the caller
+    assertTrue(executed.get() > 0);
+  }
+
+  @Test
+  public void testConcurrentCalls() throws Exception {
+    List<CompletableFuture<GetAutoCommitResp>> futures = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      String connectionId = "kyuubi-" + i;
+      futures.add(client.setAutoCommit(connectionId, i % 2 == 0)
+        .thenCompose(resp -> client.getAutoCommit(connectionId)));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i % 2 == 0, futures.get(i).get().getAutoCommit());
+    }
+  }
+
+  @Test
+  public void testCatalogsAndErrors() throws Exception {
+    DirectStatusResp resp = client.getCatalogs("").get(10, TimeUnit.SECONDS);
+    assertEquals(StatusCode.ERROR, resp.getStatus().getStatusCode());
+    channel.shutdownNow();
+    ExecutionException e = assertThrows(ExecutionException.class,
+      () -> client.getCatalogs("kyuubi").get(10, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof io.grpc.StatusRuntimeException);
+  }
+
+  @Test
+  public void testMetadataCalls() throws Exception {
+    assertEquals("schemas:cat:s%", identifier(client.getSchemas("kyuubi", "cat", "s%")));
+    assertEquals("tables:cat::t%:TABLE,VIEW",
+      identifier(client.getTables("kyuubi", "cat", null, "t%", Arrays.asList("TABLE", "VIEW"))));
+    assertEquals("tables::::", identifier(client.getTables("kyuubi", null, null, null, null)));
+    assertEquals("tableTypes", identifier(client.getTableTypes("kyuubi")));
+    assertEquals("columns:cat:s:t:c%", identifier(client.getColumns("kyuubi", "cat", "s", "t", "c%")));
+    assertEquals("primaryKeys::s:t", identifier(client.getPrimaryKeys("kyuubi", null, "s", "t")));
+    assertEquals("functions:cat:s:f%", identifier(client.getFunctions("kyuubi", "cat", "s", "f%")));
+    assertEquals("typeInfo", identifier(client.getTypeInfo("kyuubi")));
+  }
+
+  @Test
+  public void testDatabaseMetaData() throws Exception {
+    GetDatabaseMetaDataResp resp = client.getDatabaseMetaData(
+      "kyuubi", Arrays.asList(DatabaseMetaData.URL, DatabaseMetaData.USERNAME)).get(10, TimeUnit.SECONDS);
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    assertEquals(2, resp.getEntriesCount());
+    assertEquals(DatabaseMetaData.URL, resp.getEntries(0).getKey());
+    assertEquals("USERNAME", resp.getEntries(1).getStringValue());
+  }
+
+  private static String identifier(CompletableFuture<DirectStatusResp> future) throws Exception {
+    DirectStatusResp resp = future.get(10, TimeUnit.SECONDS);
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    return resp.getIdentifier();
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.*;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.DummyJdbcService;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.TestConnectionService;
+import org.apache.kyuubi.grpc.compression.Compression;
+import org.apache.kyuubi.grpc.compression.CompressionServerInterceptor;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.*;
+
+public class CompressionTest {
+  private final TestConnectionService connectionService = new TestConnectionService();
+  private final DummyJdbcService jdbcService = new DummyJdbcService();
+  private final AtomicLong inboundWireBytes = new AtomicLong();
+  private final AtomicLong inboundUncompressedBytes = new AtomicLong();
+  private Server server;
+  private ManagedChannel channel;
+  private SimpleBlockingJdbcClient client;
+
+  public CompressionTest() throws IOException {
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    // the in-process transport never compresses, so go through the wire
+    server = Compression.configure(NettyServerBuilder.forAddress(new InetSocketAddress("localhost", 0)))
+      .addService(ServerInterceptors.intercept(connectionService, new CompressionServerInterceptor()))
+      .addService(ServerInterceptors.intercept(jdbcService, new CompressionServerInterceptor()))
+      .build()
+      .start();
+    channel = Compression.configure(NettyChannelBuilder.forAddress("localhost", server.getPort()))
+      .usePlaintext()
+      .build();
+    client = new SimpleBlockingJdbcClient(ClientInterceptors.intercept(channel, new ClientInterceptor() {
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+        MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        return next.newCall(method, callOptions.withStreamTracerFactory(new ClientStreamTracer.Factory() {
+          @Override
+          public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+            return new ClientStreamTracer() {
+              @Override
+              public void inboundWireSize(long bytes) {
+                inboundWireBytes.addAndGet(bytes);
+              }
+
+              @Override
+              public void inboundUncompressedSize(long bytes) {
+                inboundUncompressedBytes.addAndGet(bytes);
+              }
+            };
+          }
+        }));
+      }
+    }));
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+    connectionService.stop();
+  }
+
+  private String openConnection(String codec) {
+    DirectStatusResp resp = client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.COMPRESSION, codec), Optional.empty());
+    assertEquals(resp.getStatus().getErrorMessage(), StatusCode.OK, resp.getStatus().getStatusCode());
+    return resp.getIdentifier();
+  }
+
+  /**
+   * Fetch a result of the connection, returning the received bytes on the wire.
+   */
+  private long fetch(String connectionId, List<Long> rows) {
+    String operationId = connectionId + "-op";
+    jdbcService.addResult(operationId, rows);
+    // as if the operation was created on the connection
+    client.getChannelPool().bind(operationId, connectionId);
+    inboundWireBytes.set(0);
+    inboundUncompressedBytes.set(0);
+    GetNextColumnSetResp resp = client.getNextResultSet(operationId, rows.size());
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    assertEquals(rows.size(), ColumnVectors.rowCount(resp.getData().getColumns(0)));
+    assertEquals(rows.get(rows.size() - 1), ColumnVectors.get(resp.getData().getColumns(0), rows.size() - 1));
+    assertEquals(resp.getSerializedSize(), inboundUncompressedBytes.get());
+    return inboundWireBytes.get();
+  }
+
+  private static List<Long> rows(int count) {
+    return LongStream.range(0, count).map(i -> i % 100).boxed().collect(Collectors.toList());
+  }
+
+  @Test
+  public void testNegotiatedCodecs() {
+    assertTrue(Compression.isLz4Available());
+    for (String codec : new String[] {ConnectionConfigs.COMPRESSION_GZIP, ConnectionConfigs.COMPRESSION_LZ4}) {
+      String connectionId = openConnection(codec);
+      assertEquals(codec, client.getCompression(connectionId));
+      long wireBytes = fetch(connectionId, rows(10000));
+      assertTrue(codec + " sent " + wireBytes + " bytes", wireBytes * 4 < inboundUncompressedBytes.get());
+
+      // small responses are not worth compressing
+      wireBytes = fetch(connectionId, rows(10));
+      assertEquals(inboundUncompressedBytes.get(), wireBytes);
+
+      assertEquals(StatusCode.OK, client.closeConnection(connectionId).getStatus().getStatusCode());
+      assertEquals(ConnectionConfigs.COMPRESSION_IDENTITY, client.getCompression(connectionId));
+    }
+  }
+
+  @Test
+  public void testUnsupportedCodec() {
+    String connectionId = openConnection("zstd");
+    assertEquals(ConnectionConfigs.COMPRESSION_IDENTITY, client.getCompression(connectionId));
+    long wireBytes = fetch(connectionId, rows(10000));
+    assertEquals(inboundUncompressedBytes.get(), wireBytes);
+
+    String plain = openConnection(ConnectionConfigs.COMPRESSION_IDENTITY);
+    wireBytes = fetch(plain, rows(10000));
+    assertEquals(inboundUncompressedBytes.get(), wireBytes);
+  }
+
+  @Test
+  public void testConnectionsNegotiateIndependently() {
+    String compressed = openConnection(ConnectionConfigs.COMPRESSION_LZ4);
+    String plain = client.openConnection(Collections.emptyMap(), Optional.empty()).getIdentifier();
+    assertEquals(ConnectionConfigs.COMPRESSION_IDENTITY, client.getCompression(plain));
+    long plainBytes = fetch(plain, rows(10000));
+    long compressedBytes = fetch(compressed, rows(10000));
+    assertTrue(compressedBytes * 4 < plainBytes);
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.TestConnectionService;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.connection.ConnectionState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class ConnectionStateCacheTest {
+  private final TestConnectionService connectionService = new TestConnectionService();
+  private Server server;
+  private ManagedChannel channel;
+  private SimpleBlockingJdbcClient client;
+
+  public ConnectionStateCacheTest() throws IOException {
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    String serverName = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(serverName)
+      .addService(connectionService)
+      .build()
+      .start();
+    channel = InProcessChannelBuilder.forName(serverName).build();
+    client = new SimpleBlockingJdbcClient(channel);
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+    connectionService.stop();
+  }
+
+  private String open(boolean cacheEnabled) {
+    DirectStatusResp resp = client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.CLIENT_STATE_CACHE_ENABLED, String.valueOf(cacheEnabled)),
+      Optional.empty());
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    return resp.getIdentifier();
+  }
+
+  @Test
+  public void testGettersServedFromOpenConnection() {
+    String connectionId = open(true);
+    assertTrue(client.getAutoCommit(connectionId).getAutoCommit());
+    assertFalse(client.isReadOnly(connectionId).getReadOnly());
+    assertEquals(connectionService.defaultCatalogName, client.getCatalog(connectionId).getCatalog());
+    assertEquals(Connection.TRANSACTION_READ_COMMITTED,
+      client.getTransactionIsolation(connectionId).getLevel());
+    assertEquals(0, connectionService.getterCalls.get());
+  }
+
+  @Test
+  public void testSettersUpdateCache() {
+    String connectionId = open(true);
+    client.setAutoCommit(connectionId, false);
+    client.setTransactionIsolation(connectionId, Connection.TRANSACTION_SERIALIZABLE);
+    assertFalse(client.getAutoCommit(connectionId).getAutoCommit());
+    assertEquals(Connection.TRANSACTION_SERIALIZABLE, client.getTransactionIsolation(connectionId).getLevel());
+    assertEquals(0, connectionService.getterCalls.get());
+
+    // not reported on open, cached after the first round trip
+    assertEquals("PUBLIC", client.getSchema(connectionId).getSchema());
+    assertEquals("PUBLIC", client.getSchema(connectionId).getSchema());
+    assertEquals(1, connectionService.getterCalls.get());
+
+    // a failed setter leaves the state unknown
+    assertEquals(StatusCode.ERROR, client.setSchema(connectionId, "kyuubi").getStatus().getStatusCode());
+    assertEquals("PUBLIC", client.getSchema(connectionId).getSchema());
+    assertEquals(2, connectionService.getterCalls.get());
+  }
+
+  @Test
+  public void testSetCatalogClearsSchema() {
+    String connectionId = open(true);
+    assertEquals("PUBLIC", client.getSchema(connectionId).getSchema());
+    assertEquals(1, connectionService.getterCalls.get());
+
+    assertEquals(StatusCode.OK,
+      client.setCatalog(connectionId, connectionService.defaultCatalogName).getStatus().getStatusCode());
+    assertEquals(connectionService.defaultCatalogName, client.getCatalog(connectionId).getCatalog());
+    assertEquals(1, connectionService.getterCalls.get());
+    assertEquals("PUBLIC", client.getSchema(connectionId).getSchema());
+    assertEquals(2, connectionService.getterCalls.get());
+  }
+
+  @Test
+  public void testInvalidate() {
+    String connectionId = open(true);
+    client.invalidateConnectionState(connectionId);
+    assertTrue(client.getAutoCommit(connectionId).getAutoCommit());
+    assertTrue(client.getAutoCommit(connectionId).getAutoCommit());
+    assertEquals(1, connectionService.getterCalls.get());
+
+    client.closeConnection(connectionId);
+    assertFalse(client.getConnectionStateCache().isTracked(connectionId));
+  }
+
+  @Test
+  public void testCacheDisabled() {
+    String connectionId = open(false);
+    assertFalse(client.getConnectionStateCache().isTracked(connectionId));
+    client.getAutoCommit(connectionId);
+    client.getAutoCommit(connectionId);
+    assertEquals(2, connectionService.getterCalls.get());
+  }
+
+  @Test
+  public void testApplyConnectionState() {
+    String connectionId = open(true);
+    ConnectionState state = ConnectionState.newBuilder()
+      .setAutoCommit(false)
+      .setReadOnly(true)
+      .setSchema("INFORMATION_SCHEMA")
+      .setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE)
+      .build();
+    assertEquals(StatusCode.OK, client.applyConnectionState(connectionId, state).getStatus().getStatusCode());
+    assertFalse(client.getAutoCommit(connectionId).getAutoCommit());
+    assertTrue(client.isReadOnly(connectionId).getReadOnly());
+    assertEquals("INFORMATION_SCHEMA", client.getSchema(connectionId).getSchema());
+    assertEquals(Connection.TRANSACTION_SERIALIZABLE, client.getTransactionIsolation(connectionId).getLevel());
+    assertEquals(0, connectionService.getterCalls.get());
+
+    // the server really applied it
+    client.invalidateConnectionState(connectionId);
+    assertEquals("INFORMATION_SCHEMA", client.getSchema(connectionId).getSchema());
+    assertEquals(Connection.TRANSACTION_SERIALIZABLE, client.getTransactionIsolation(connectionId).getLevel());
+  }
+
+  @Test
+  public void testApplyConnectionStateIsAtomic() {
+    String connectionId = open(false);
+    ConnectionState state = ConnectionState.newBuilder()
+      .setSchema("INFORMATION_SCHEMA")
+      .setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE)
+      .setHoldability(42)
+      .setAutoCommit(false)
+      .build();
+    assertEquals(StatusCode.ERROR, client.applyConnectionState(connectionId, state).getStatus().getStatusCode());
+    assertTrue(client.getAutoCommit(connectionId).getAutoCommit());
+    assertEquals(Connection.TRANSACTION_READ_COMMITTED, client.getTransactionIsolation(connectionId).getLevel());
+    assertEquals("PUBLIC", client.getSchema(connectionId).getSchema());
+  }
+}
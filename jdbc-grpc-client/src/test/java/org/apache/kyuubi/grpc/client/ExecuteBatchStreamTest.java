@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.TestConnectionService;
+import org.apache.kyuubi.grpc.TestStatementService;
+import org.apache.kyuubi.grpc.common.ConnectionHandle;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.apache.kyuubi.grpc.jdbc.statement.ExecuteBatchResp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExecuteBatchStreamTest {
+  private final TestConnectionService connectionService = new TestConnectionService();
+  private final TestStatementService statementService = new TestStatementService(connectionService);
+  private Server server;
+  private ManagedChannel channel;
+  private SimpleBlockingJdbcClient client;
+  private Connection connection;
+  private String statementId;
+
+  public ExecuteBatchStreamTest() throws IOException {
+  }
+
+  @Before
+  public void setUp() throws IOException, SQLException {
+    String serverName = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(serverName)
+      .addService(connectionService)
+      .addService(statementService)
+      .build()
+      .start();
+    channel = InProcessChannelBuilder.forName(serverName).build();
+    client = new SimpleBlockingJdbcClient(channel);
+    String connectionId = client.openConnection(Collections.emptyMap(), Optional.empty()).getIdentifier();
+    statementId = client.createStatement(connectionId, Optional.empty()).getIdentifier();
+    connection = connectionService.getConnection(ConnectionHandle.newBuilder().setId(connectionId).build());
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE events(id BIGINT PRIMARY KEY, name VARCHAR(32), score DOUBLE)");
+    }
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+    connectionService.stop();
+  }
+
+  private long count() throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM events")) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  private static List<List<Object>> rows(long from, long to) {
+    List<List<Object>> rows = new ArrayList<>();
+    for (long i = from; i < to; i++) {
+      rows.add(Arrays.asList(i, i % 10 == 0 ? null : "event-" + i, i * 0.5));
+    }
+    return rows;
+  }
+
+  @Test
+  public void testExecuteBatch() throws SQLException {
+    ExecuteBatchResp resp = client.executeBatch(statementId, "INSERT INTO events VALUES (?, ?, ?)",
+      Arrays.asList(TypeId.LONG, TypeId.VARCHAR, TypeId.DOUBLE), rows(0, 10000), 1000);
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    assertEquals(10000, resp.getUpdateCountsCount());
+    assertTrue(resp.getUpdateCountsList().stream().allMatch(count -> count == 1));
+    assertEquals(10000, count());
+    assertEquals(10000, statementService.batchedRows.get());
+
+    try (Statement statement = connection.createStatement();
+         ResultSet rs = statement.executeQuery("SELECT name, score FROM events WHERE id IN (10, 11) ORDER BY id")) {
+      assertTrue(rs.next());
+      assertNull(rs.getString(1));
+      assertTrue(rs.next());
+      assertEquals("event-11", rs.getString(1));
+      assertEquals(5.5D, rs.getDouble(2), 0);
+    }
+
+    // a partial last block and no rows at all
+    assertEquals(5, client.executeBatch(statementId, "INSERT INTO events VALUES (?, ?, ?)",
+      Arrays.asList(TypeId.LONG, TypeId.VARCHAR, TypeId.DOUBLE), rows(10000, 10005), 2).getUpdateCountsCount());
+    ExecuteBatchResp empty = client.executeBatch(statementId, "INSERT INTO events VALUES (?, ?, ?)",
+      Arrays.asList(TypeId.LONG, TypeId.VARCHAR, TypeId.DOUBLE), Collections.emptyList());
+    assertEquals(StatusCode.OK, empty.getStatus().getStatusCode());
+    assertEquals(0, empty.getUpdateCountsCount());
+  }
+
+  @Test
+  public void testExecuteBatchWithoutParameters() throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE SEQUENCE ids");
+    }
+    List<List<Object>> rows = Collections.nCopies(5, Collections.emptyList());
+    ExecuteBatchResp resp = client.executeBatch(statementId,
+      "INSERT INTO events VALUES (NEXT VALUE FOR ids, 'constant', 1)", Collections.emptyList(), rows, 2);
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    assertEquals(5, resp.getUpdateCountsCount());
+    assertEquals(5, count());
+  }
+
+  @Test
+  public void testFailedBlock() throws SQLException {
+    List<List<Object>> rows = rows(0, 100);
+    // the duplicated key fails the third block
+    rows.set(25, Arrays.asList(3L, "duplicated", 0D));
+    ExecuteBatchResp resp = client.executeBatch(statementId, "INSERT INTO events VALUES (?, ?, ?)",
+      Arrays.asList(TypeId.LONG, TypeId.VARCHAR, TypeId.DOUBLE), rows, 10);
+    assertEquals(StatusCode.ERROR, resp.getStatus().getStatusCode());
+    assertEquals(20, resp.getUpdateCountsCount());
+    assertTrue(statementService.batchedRows.get() < 100);
+
+    ExecuteBatchResp unknown = client.executeBatch("unknown", "INSERT INTO events VALUES (?, ?, ?)",
+      Arrays.asList(TypeId.LONG, TypeId.VARCHAR, TypeId.DOUBLE), rows(1000, 1001));
+    assertEquals(StatusCode.ERROR, unknown.getStatus().getStatusCode());
+  }
+}
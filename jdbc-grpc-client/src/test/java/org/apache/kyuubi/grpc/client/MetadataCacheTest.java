@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.jdbc.GetCatalogsReq;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.apache.kyuubi.grpc.jdbc.GetResultSetSchemaResp;
+import org.apache.kyuubi.grpc.jdbc.GetTypeInfoReq;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MetadataCacheTest {
+  private final AtomicLong now = new AtomicLong(1000);
+  private final MetadataCache cache = new MetadataCache(2, 100, now::get);
+  private final MetadataCache.Result result = new MetadataCache.Result(
+    GetResultSetSchemaResp.getDefaultInstance(), Collections.singletonList(GetNextColumnSetResp.getDefaultInstance()));
+
+  private static GetCatalogsReq catalogs(String connectionId) {
+    return GetCatalogsReq.newBuilder().setConnectionId(connectionId).build();
+  }
+
+  @Test
+  public void testExpiration() {
+    GetTypeInfoReq typeInfo = GetTypeInfoReq.newBuilder().setConnectionId("c1").build();
+    cache.put("c1", catalogs("c1"), result, null);
+    cache.put("c1", typeInfo, result, ConnectionConfigs.METADATA_CACHE_SESSION);
+    cache.put("c2", catalogs("c2"), result, ConnectionConfigs.METADATA_CACHE_NO_STORE);
+    assertEquals(2, cache.size());
+    // keyed by the whole request
+    assertSame(result, cache.get(catalogs("c1")));
+    assertNull(cache.get(catalogs("c2")));
+
+    now.addAndGet(100);
+    assertNull(cache.get(catalogs("c1")));
+    cache.put("c2", catalogs("c2"), result, ConnectionConfigs.METADATA_CACHE_MAX_AGE + "1");
+    now.addAndGet(999);
+    assertSame(result, cache.get(catalogs("c2")));
+    now.addAndGet(1);
+    assertNull(cache.get(catalogs("c2")));
+
+    // until the connection is invalidated
+    assertSame(result, cache.get(typeInfo));
+    cache.invalidate("c1");
+    assertNull(cache.get(typeInfo));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() {
+    cache.put("c1", catalogs("c1"), result, null);
+    cache.put("c2", catalogs("c2"), result, null);
+    cache.get(catalogs("c1"));
+    cache.put("c3", catalogs("c3"), result, null);
+    assertEquals(2, cache.size());
+    assertNull(cache.get(catalogs("c2")));
+    assertSame(result, cache.get(catalogs("c1")));
+    assertSame(result, cache.get(catalogs("c3")));
+  }
+
+  @Test
+  public void testEvictBeyondMaxBytes() {
+    MetadataCache.Result large = new MetadataCache.Result(GetResultSetSchemaResp.getDefaultInstance(),
+      Collections.singletonList(GetNextColumnSetResp.newBuilder().setStartRow(1).build()));
+    MetadataCache bounded = new MetadataCache(10, 2 * large.bytes, 100, now::get);
+    bounded.put("c1", catalogs("c1"), large, null);
+    bounded.put("c2", catalogs("c2"), large, null);
+    bounded.put("c3", catalogs("c3"), large, null);
+    assertEquals(2, bounded.size());
+    assertEquals(2 * large.bytes, bounded.getBytes());
+    assertNull(bounded.get(catalogs("c1")));
+    bounded.invalidate("c2");
+    assertEquals(large.bytes, bounded.getBytes());
+
+    // too large to be cached at all
+    MetadataCache small = new MetadataCache(10, large.bytes - 1, 100, now::get);
+    assertFalse(small.fits(large.bytes));
+    small.put("c1", catalogs("c1"), large, null);
+    assertEquals(0, small.size());
+    assertEquals(0, small.getBytes());
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.apache.kyuubi.grpc.ParameterValues;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.TestConnectionService;
+import org.apache.kyuubi.grpc.TestPreparedStatementService;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.apache.kyuubi.grpc.jdbc.statement.BindAndExecuteResp;
+import org.apache.kyuubi.grpc.jdbc.statement.ParameterValue;
+import org.apache.kyuubi.grpc.jdbc.statement.PrepareResp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class PreparedStatementTest {
+  private final TestConnectionService connectionService = new TestConnectionService();
+  private final TestPreparedStatementService preparedService = new TestPreparedStatementService(connectionService, 2);
+  private Server server;
+  private ManagedChannel channel;
+  private SimpleBlockingJdbcClient client;
+  private String connectionId;
+
+  public PreparedStatementTest() throws IOException {
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    String serverName = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(serverName)
+      .addService(connectionService)
+      .addService(preparedService)
+      .build()
+      .start();
+    channel = InProcessChannelBuilder.forName(serverName).build();
+    client = new SimpleBlockingJdbcClient(channel);
+    connectionId = client.openConnection(Collections.emptyMap(), Optional.empty()).getIdentifier();
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+    connectionService.stop();
+  }
+
+  private PrepareResp prepare(String sql) {
+    PrepareResp resp = client.prepare(connectionId, sql);
+    assertEquals(resp.getStatus().getErrorMessage(), StatusCode.OK, resp.getStatus().getStatusCode());
+    return resp;
+  }
+
+  private BindAndExecuteResp execute(PrepareResp prepared, ParameterValue... parameters) {
+    BindAndExecuteResp resp = client.bindAndExecute(prepared.getPreparedId().getId(), Arrays.asList(parameters));
+    assertEquals(resp.getStatus().getErrorMessage(), StatusCode.OK, resp.getStatus().getStatusCode());
+    return resp;
+  }
+
+  @Test
+  public void testBindAndExecute() throws SQLException {
+    execute(prepare("CREATE TABLE orders(id INT, customer VARCHAR(32), order_day DATE, amount DECIMAL(10, 2))"));
+    PrepareResp insert = prepare("INSERT INTO orders VALUES (?, ?, ?, ?)");
+    assertFalse(insert.getCached());
+    assertEquals(Arrays.asList(TypeId.INT, TypeId.VARCHAR, TypeId.DATE, TypeId.DECIMAL), insert.getParameterTypesList());
+    for (int i = 1; i <= 3; i++) {
+      BindAndExecuteResp resp = execute(insert,
+        ParameterValues.of(TypeId.INT, i),
+        i == 2 ? ParameterValues.ofNull(TypeId.VARCHAR) : ParameterValues.of(TypeId.VARCHAR, "customer-" + i),
+        ParameterValues.of(TypeId.DATE, Date.valueOf("2023-06-0" + i)),
+        ParameterValues.of(TypeId.DECIMAL, new BigDecimal(i + ".25")));
+      assertFalse(resp.getHasResultSet());
+      assertEquals(1, resp.getUpdateCount());
+    }
+
+    BindAndExecuteResp select = execute(prepare("SELECT * FROM orders WHERE id >= ? ORDER BY id"),
+      ParameterValues.of(TypeId.INT, 2));
+    assertTrue(select.getHasResultSet());
+    ResultSet rs = preparedService.results.get(select.getOperationId());
+    assertTrue(rs.next());
+    assertEquals(2, rs.getInt(1));
+    assertNull(rs.getString(2));
+    assertEquals(Date.valueOf("2023-06-02"), rs.getDate(3));
+    assertEquals(new BigDecimal("2.25"), rs.getBigDecimal(4));
+    assertTrue(rs.next());
+    assertEquals("customer-3", rs.getString(2));
+    assertFalse(rs.next());
+  }
+
+  @Test
+  public void testPlanCache() {
+    PrepareResp first = prepare("SELECT 1");
+    assertEquals(StatusCode.OK, client.closePrepared(first.getPreparedId().getId()).getStatus().getStatusCode());
+    PrepareResp second = prepare("SELECT 1");
+    assertTrue(second.getCached());
+    assertEquals(first.getPreparedId(), second.getPreparedId());
+    execute(second);
+    assertEquals(1, preparedService.getCache(connectionId).getHits());
+
+    // the cache holds 2 plans, the least recently used one is evicted
+    PrepareResp third = prepare("SELECT 2");
+    execute(second);
+    prepare("SELECT 3");
+    assertEquals(2, preparedService.getCache(connectionId).size());
+    execute(second);
+    BindAndExecuteResp evicted = client.bindAndExecute(third.getPreparedId().getId(), Collections.emptyList());
+    assertEquals(StatusCode.ERROR, evicted.getStatus().getStatusCode());
+    assertEquals("26000", evicted.getStatus().getSqlState());
+  }
+
+  @Test
+  public void testParameterValues() {
+    Timestamp ts = Timestamp.valueOf("2023-06-01 12:34:56.123456");
+    assertEquals(ts, ParameterValues.toJdbc(ParameterValues.of(TypeId.TIMESTAMP, ts)));
+    assertEquals((short) 7, ParameterValues.toJdbc(ParameterValues.of(TypeId.SMALLINT, 7)));
+    assertEquals(1.5D, ParameterValues.toJdbc(ParameterValues.of(TypeId.DOUBLE, 1.5D)));
+    assertArrayEquals(new byte[] {1, 2},
+      (byte[]) ParameterValues.toJdbc(ParameterValues.of(TypeId.BINARY, new byte[] {1, 2})));
+    assertNull(ParameterValues.toJdbc(ParameterValues.of(TypeId.STRING, null)));
+  }
+}
@@ -1,9 +1,13 @@
 package org.apache.kyuubi.grpc.client;
 
 import io.grpc.*;
+import org.apache.arrow.vector.BigIntVector;
 import org.apache.kyuubi.grpc.*;
 import org.apache.kyuubi.grpc.Status;
+import org.apache.kyuubi.grpc.arrow.ArrowBatchReader;
+import org.apache.kyuubi.grpc.jdbc.ColumnData;
 import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
 import org.apache.kyuubi.grpc.jdbc.connection.*;
 import org.junit.After;
 import org.junit.Before;
@@ -42,6 +46,7 @@ public class SimpleBlockingJdbcServiceClientTest {
 
   @After
   public void tearDown() {
+    client.shutdownNow();
     dummyConnectionService.stop();
     if (server != null) {
       try {
@@ -77,6 +82,19 @@ public class SimpleBlockingJdbcServiceClientTest {
     assertEquals("kyuubi", resp1.getExtraInfoOrThrow("apache"));
   }
 
+  @Test
+  public void testNegotiateResultFormat() {
+    Map<String, String> configs = new HashMap<>();
+    DirectStatusResp resp = client.openConnection(configs, Optional.empty());
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    assertFalse(resp.containsExtraInfo(ConnectionConfigs.RESULT_FORMAT));
+
+    configs.put(ConnectionConfigs.RESULT_FORMAT, ConnectionConfigs.RESULT_FORMAT_ARROW);
+    DirectStatusResp resp1 = client.openConnection(configs, Optional.empty());
+    assertEquals(StatusCode.OK, resp1.getStatus().getStatusCode());
+    assertEquals(ConnectionConfigs.RESULT_FORMAT_ARROW, resp1.getExtraInfoOrThrow(ConnectionConfigs.RESULT_FORMAT));
+  }
+
   @Test
   public void testCloseConnection() {
     String connectionId = UUID.randomUUID().toString();
@@ -274,4 +292,60 @@ public class SimpleBlockingJdbcServiceClientTest {
     assertEquals(StatusCode.OK, resp2.getStatus().getStatusCode());
     client.closeStatement(statementId);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testStreamResultSet() {
+    List<Long> rows = new ArrayList<>();
+    for (long i = 0; i < 2500; i++) {
+      rows.add(i);
+    }
+    dummyFrontendService.addResult("op1", rows);
+    List<Long> fetched = new ArrayList<>();
+    int batches = 0;
+    try (ColumnSetIterator iter = client.streamResultSet("op1", 1000)) {
+      while (iter.hasNext()) {
+        ColumnData column = iter.next().getColumns(0);
+        for (int i = 0; i < ColumnVectors.rowCount(column); i++) {
+          fetched.add((Long) ColumnVectors.get(column, i));
+        }
+        batches++;
+      }
+    }
+    assertEquals(3, batches);
+    assertEquals(rows, fetched);
+
+    ColumnSetIterator missing = client.streamResultSet("op2", 1000);
+    assertTrue(missing.hasNext());
+    JdbcGrpcException e = assertThrows(JdbcGrpcException.class, missing::next);
+    assertEquals("24000", e.getStatus().getSqlState());
+  }
+
+  @Test
+  public void testArrowFetch() throws Exception {
+    Map<String, String> configs = new HashMap<>();
+    configs.put(ConnectionConfigs.RESULT_FORMAT, ConnectionConfigs.RESULT_FORMAT_ARROW);
+    DirectStatusResp resp = client.openConnection(configs, Optional.empty());
+    String resultFormat = resp.getExtraInfoOrDefault(
+      ConnectionConfigs.RESULT_FORMAT, ConnectionConfigs.RESULT_FORMAT_COLUMNAR);
+    assertEquals(ConnectionConfigs.RESULT_FORMAT_ARROW, resultFormat);
+
+    List<Long> rows = Arrays.asList(1L, 2L, 3L, 4L, 5L);
+    dummyFrontendService.addResult("op1", rows, resultFormat);
+    List<Long> fetched = new ArrayList<>();
+    try (ArrowBatchReader reader = new ArrowBatchReader(DummyJdbcService.SCHEMA)) {
+      while (true) {
+        GetNextColumnSetResp batch = client.getNextResultSet("op1", 2);
+        assertEquals(StatusCode.OK, batch.getStatus().getStatusCode());
+        assertEquals(0, batch.getData().getColumnsCount());
+        if (batch.getArrowBatch().isEmpty()) {
+          break;
+        }
+        BigIntVector ids = (BigIntVector) reader.load(batch).getVector("id");
+        for (int i = 0; i < ids.getValueCount(); i++) {
+          fetched.add(ids.get(i));
+        }
+      }
+    }
+    assertEquals(rows, fetched);
+  }
+}
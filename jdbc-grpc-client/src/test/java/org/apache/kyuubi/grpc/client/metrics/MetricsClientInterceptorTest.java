@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.metrics;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.TestConnectionService;
+import org.apache.kyuubi.grpc.client.SimpleBlockingJdbcClient;
+import org.apache.kyuubi.grpc.client.pool.ChannelPool;
+import org.apache.kyuubi.grpc.metrics.DefaultMetricsRegistry;
+import org.apache.kyuubi.grpc.metrics.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.apache.kyuubi.grpc.client.metrics.MetricsClientInterceptor.*;
+import static org.junit.Assert.*;
+
+public class MetricsClientInterceptorTest {
+  private static final String GET_AUTO_COMMIT = "org.apache.kyuubi.grpc.jdbc.connection.Connection/GetAutoCommit";
+  private static final String SET_SCHEMA = "org.apache.kyuubi.grpc.jdbc.connection.Connection/SetSchema";
+
+  private final TestConnectionService connectionService = new TestConnectionService();
+  private final DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+  private Server server;
+  private ManagedChannel channel;
+  private SimpleBlockingJdbcClient client;
+
+  public MetricsClientInterceptorTest() throws IOException {
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    String serverName = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(serverName)
+      .addService(connectionService)
+      .build()
+      .start();
+    channel = InProcessChannelBuilder.forName(serverName).build();
+    client = new SimpleBlockingJdbcClient(ChannelPool.of(channel), registry);
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+    connectionService.stop();
+  }
+
+  @Test
+  public void testRecordCalls() {
+    String connectionId = client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.CLIENT_STATE_CACHE_ENABLED, "false"),
+      Optional.empty()).getIdentifier();
+    for (int i = 0; i < 3; i++) {
+      client.getAutoCommit(connectionId);
+    }
+    assertEquals(StatusCode.ERROR, client.setSchema(connectionId, "kyuubi").getStatus().getStatusCode());
+
+    Histogram latency = registry.histogram(metricName(GET_AUTO_COMMIT, LATENCY));
+    assertEquals(3, latency.getCount());
+    assertTrue(latency.getMax() > 0);
+    assertEquals(0, registry.counter(metricName(GET_AUTO_COMMIT, IN_FLIGHT)).getCount());
+    assertEquals(3, registry.counter(metricName(GET_AUTO_COMMIT, STATUS + ".OK")).getCount());
+    assertEquals(3, registry.counter(metricName(GET_AUTO_COMMIT, RESULT + ".OK")).getCount());
+    assertEquals(3, registry.histogram(metricName(GET_AUTO_COMMIT, REQUEST_BYTES)).getCount());
+    assertTrue(registry.histogram(metricName(GET_AUTO_COMMIT, RESPONSE_BYTES)).getMax() > 0);
+
+    // SQL errors are reported in the response, the call itself succeeds
+    assertEquals(1, registry.counter(metricName(SET_SCHEMA, STATUS + ".OK")).getCount());
+    assertEquals(1, registry.counter(metricName(SET_SCHEMA, RESULT + ".ERROR")).getCount());
+    assertTrue(registry.getCounters().containsKey("rpc.client.Connection/OpenConnection.status.OK"));
+  }
+
+  @Test
+  public void testFailedCall() {
+    server.shutdownNow();
+    assertThrows(io.grpc.StatusRuntimeException.class, () -> client.getAutoCommit("unknown"));
+    assertEquals(1, registry.counter(metricName(GET_AUTO_COMMIT, STATUS + ".UNAVAILABLE")).getCount());
+    assertEquals(0, registry.counter(metricName(GET_AUTO_COMMIT, IN_FLIGHT)).getCount());
+  }
+}
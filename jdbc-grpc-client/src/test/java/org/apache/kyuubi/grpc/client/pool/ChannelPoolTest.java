@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.client.pool;
+
+import io.grpc.*;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.TestConnectionService;
+import org.apache.kyuubi.grpc.TestStatementService;
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.client.SimpleBlockingJdbcClient;
+import org.apache.kyuubi.grpc.health.HealthCheckReq;
+import org.apache.kyuubi.grpc.health.HealthCheckResponse;
+import org.apache.kyuubi.grpc.health.HealthGrpc;
+import org.apache.kyuubi.grpc.health.HealthStatus;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.connection.ConnectionGrpc;
+import org.apache.kyuubi.grpc.jdbc.connection.GetAutoCommitResp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ChannelPoolTest {
+  private final String[] serverNames = {
+    InProcessServerBuilder.generateName(), InProcessServerBuilder.generateName()};
+  private final List<Server> servers = new ArrayList<>();
+  private final List<TestConnectionService> connectionServices = new ArrayList<>();
+  private final List<TestHealthService> healthServices = new ArrayList<>();
+  private final Map<String, AtomicInteger> calls = new HashMap<>();
+  private ChannelPool pool;
+
+  @Before
+  public void setUp() throws IOException {
+    for (String name : serverNames) {
+      AtomicInteger counter = new AtomicInteger();
+      calls.put(name, counter);
+      TestConnectionService connectionService = new TestConnectionService();
+      connectionServices.add(connectionService);
+      TestHealthService healthService = new TestHealthService();
+      healthServices.add(healthService);
+      ServerInterceptor counting = new ServerInterceptor() {
+        @Override
+        public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+          ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+          counter.incrementAndGet();
+          return next.startCall(call, headers);
+        }
+      };
+      servers.add(InProcessServerBuilder.forName(name)
+        .addService(ServerInterceptors.intercept(connectionService, counting))
+        .addService(ServerInterceptors.intercept(new TestStatementService(connectionService), counting))
+        .addService(healthService)
+        .build()
+        .start());
+    }
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+    servers.forEach(Server::shutdownNow);
+    connectionServices.forEach(TestConnectionService::stop);
+  }
+
+  private static class TestHealthService extends HealthGrpc.HealthImplBase {
+    private final List<StreamObserver<HealthCheckResponse>> watchers = new CopyOnWriteArrayList<>();
+    private volatile HealthStatus status = HealthStatus.HEALTHY;
+
+    @Override
+    public void watch(HealthCheckReq req, StreamObserver<HealthCheckResponse> respOb) {
+      watchers.add(respOb);
+      respOb.onNext(response());
+    }
+
+    void setStatus(HealthStatus status) {
+      this.status = status;
+      watchers.forEach(watcher -> watcher.onNext(response()));
+    }
+
+    private HealthCheckResponse response() {
+      return HealthCheckResponse.newBuilder().putStatuses(ConnectionGrpc.SERVICE_NAME, status).build();
+    }
+  }
+
+  private static void awaitHealth(ChannelPool.SubChannel channel, HealthStatus expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (channel.getHealthStatus() != expected) {
+      assertTrue("Still " + channel.getHealthStatus(), System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private ChannelPool.Builder builder(AddressResolver resolver) {
+    return ChannelPool.newBuilder()
+      .addressResolver(resolver)
+      .channelFactory(address -> InProcessChannelBuilder.forName(address.getHostString()).build());
+  }
+
+  private String open(SimpleBlockingJdbcClient client) {
+    DirectStatusResp resp = client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.CLIENT_STATE_CACHE_ENABLED, "false"), Optional.empty());
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    return resp.getIdentifier();
+  }
+
+  @Test
+  public void testChannelOwnership() {
+    ManagedChannel given = InProcessChannelBuilder.forName(serverNames[0]).build();
+    ManagedChannel built = InProcessChannelBuilder.forName(serverNames[0]).build();
+    try {
+      ChannelPool.of(given).shutdownNow();
+      assertFalse(given.isShutdown());
+      ChannelPool.owning(built).shutdownNow();
+      assertTrue(built.isShutdown());
+    } finally {
+      given.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSessionAffinity() {
+    pool = builder(StaticAddressResolver.parse(serverNames[0] + ":1," + serverNames[1] + ":1"))
+      .channelsPerAddress(2)
+      .build();
+    assertEquals(4, pool.getSubChannels().size());
+    SimpleBlockingJdbcClient client = new SimpleBlockingJdbcClient(pool);
+
+    String first = open(client);
+    String second = open(client);
+    String firstServer = pool.select(first).getAddress().getHostString();
+    String secondServer = pool.select(second).getAddress().getHostString();
+    assertNotEquals(firstServer, secondServer);
+    assertEquals(1, calls.get(firstServer).get());
+    assertEquals(1, calls.get(secondServer).get());
+
+    for (int i = 0; i < 3; i++) {
+      assertTrue(client.getAutoCommit(first).getAutoCommit());
+    }
+    DirectStatusResp statement = client.createStatement(first, Optional.empty());
+    assertEquals(StatusCode.OK, statement.getStatus().getStatusCode());
+    String statementId = statement.getIdentifier();
+    assertSame(pool.select(first), pool.select(statementId));
+    assertEquals(StatusCode.OK, client.executeQuery(statementId, "SELECT 1").getStatus().getStatusCode());
+    assertEquals(6, calls.get(firstServer).get());
+    assertEquals(1, calls.get(secondServer).get());
+
+    client.closeConnection(first);
+    assertFalse(pool.isBound(first));
+    assertFalse(pool.isBound(statementId));
+    assertTrue(pool.isBound(second));
+  }
+
+  @Test
+  public void testLeastOutstandingRequests() {
+    ClientCall<?, ?> pending = new ClientCall<Object, Object>() {
+      @Override
+      public void start(Listener<Object> responseListener, Metadata headers) {
+      }
+
+      @Override
+      public void request(int numMessages) {
+      }
+
+      @Override
+      public void cancel(String message, Throwable cause) {
+      }
+
+      @Override
+      public void halfClose() {
+      }
+
+      @Override
+      public void sendMessage(Object message) {
+      }
+    };
+    Channel never = new Channel() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method, CallOptions options) {
+        return (ClientCall<ReqT, RespT>) pending;
+      }
+
+      @Override
+      public String authority() {
+        return "never";
+      }
+    };
+    pool = ChannelPool.of(never, never, never);
+    List<ChannelPool.SubChannel> subChannels = pool.getSubChannels();
+    for (int i = 0; i < 3; i++) {
+      subChannels.get(0).newCall(ConnectionGrpc.getGetAutoCommitMethod(), CallOptions.DEFAULT)
+        .start(new ClientCall.Listener<GetAutoCommitResp>() {}, new Metadata());
+    }
+    subChannels.get(2).newCall(ConnectionGrpc.getGetAutoCommitMethod(), CallOptions.DEFAULT)
+      .start(new ClientCall.Listener<GetAutoCommitResp>() {}, new Metadata());
+    assertEquals(3, subChannels.get(0).getOutstandingRequests());
+
+    LoadBalancePolicy policy = LoadBalancePolicy.leastOutstandingRequests();
+    for (int i = 0; i < 5; i++) {
+      assertSame(subChannels.get(1), policy.pick(subChannels));
+    }
+  }
+
+  @Test
+  public void testFileAddressResolver() throws IOException {
+    Path file = Files.createTempFile("kyuubi-servers", ".txt");
+    try {
+      Files.write(file, Arrays.asList("# kyuubi servers", serverNames[0] + ":1", ""), StandardCharsets.UTF_8);
+      pool = builder(new FileAddressResolver(file)).build();
+      assertEquals(1, pool.getSubChannels().size());
+      SimpleBlockingJdbcClient client = new SimpleBlockingJdbcClient(pool);
+      String connectionId = open(client);
+
+      Files.write(file, Collections.singletonList(serverNames[1] + ":1"), StandardCharsets.UTF_8);
+      pool.refresh();
+      assertEquals(1, pool.getSubChannels().size());
+      assertEquals(serverNames[1], pool.getSubChannels().get(0).getAddress().getHostString());
+      // the existing session stays on the removed server
+      assertEquals(serverNames[0], pool.select(connectionId).getAddress().getHostString());
+      assertTrue(client.getAutoCommit(connectionId).getAutoCommit());
+      assertEquals(2, calls.get(serverNames[0]).get());
+
+      String newConnectionId = open(client);
+      assertEquals(serverNames[1], pool.select(newConnectionId).getAddress().getHostString());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testRetiredChannelShutDownOnceDrained() throws IOException {
+    List<ManagedChannel> channels = new ArrayList<>();
+    List<InetSocketAddress> addresses = new ArrayList<>(StaticAddressResolver.parse(serverNames[0] + ":1").resolve());
+    pool = ChannelPool.newBuilder()
+      .addressResolver(() -> addresses)
+      .channelFactory(address -> {
+        ManagedChannel channel = InProcessChannelBuilder.forName(address.getHostString()).build();
+        channels.add(channel);
+        return channel;
+      })
+      .build();
+    SimpleBlockingJdbcClient client = new SimpleBlockingJdbcClient(pool);
+    String connectionId = open(client);
+    String statementId = client.createStatement(connectionId, Optional.empty()).getIdentifier();
+
+    addresses.clear();
+    addresses.addAll(StaticAddressResolver.parse(serverNames[1] + ":1").resolve());
+    pool.refresh();
+    assertFalse(channels.get(0).isShutdown());
+    pool.unbind(statementId);
+    assertFalse(channels.get(0).isShutdown());
+    // without waiting for the next refresh
+    client.closeConnection(connectionId);
+    assertTrue(channels.get(0).isShutdown());
+    assertFalse(channels.get(1).isShutdown());
+  }
+
+  @Test
+  public void testHealthAwareRouting() throws InterruptedException {
+    pool = builder(StaticAddressResolver.parse(serverNames[0] + ":1," + serverNames[1] + ":1"))
+      .watchHealth(true)
+      .build();
+    List<ChannelPool.SubChannel> subChannels = pool.getSubChannels();
+    for (ChannelPool.SubChannel channel : subChannels) {
+      awaitHealth(channel, HealthStatus.HEALTHY);
+      assertEquals(0, channel.getOutstandingRequests());
+    }
+    SimpleBlockingJdbcClient client = new SimpleBlockingJdbcClient(pool);
+    String pinned = open(client);
+    String drained = pool.select(pinned).getAddress().getHostString();
+    healthServices.get(Arrays.asList(serverNames).indexOf(drained)).setStatus(HealthStatus.UNHEALTHY);
+    awaitHealth(pool.select(pinned), HealthStatus.UNHEALTHY);
+
+    for (int i = 0; i < 4; i++) {
+      assertNotEquals(drained, pool.select(open(client)).getAddress().getHostString());
+    }
+    // the existing session stays on the UNHEALTHY server
+    assertTrue(client.getAutoCommit(pinned).getAutoCommit());
+    assertEquals(drained, pool.select(pinned).getAddress().getHostString());
+
+    healthServices.forEach(healthService -> healthService.setStatus(HealthStatus.UNHEALTHY));
+    for (ChannelPool.SubChannel channel : subChannels) {
+      awaitHealth(channel, HealthStatus.UNHEALTHY);
+    }
+    // rather than failing when all of them are
+    open(client);
+  }
+
+  @Test
+  public void testOneWatchPerAddress() throws InterruptedException {
+    pool = builder(StaticAddressResolver.parse(serverNames[0] + ":1," + serverNames[1] + ":1"))
+      .channelsPerAddress(3)
+      .watchHealth(true)
+      .build();
+    for (ChannelPool.SubChannel channel : pool.getSubChannels()) {
+      awaitHealth(channel, HealthStatus.HEALTHY);
+    }
+    healthServices.forEach(healthService -> assertEquals(1, healthService.watchers.size()));
+    // the status is fanned out to every sub-channel of the server
+    healthServices.get(0).setStatus(HealthStatus.UNHEALTHY);
+    for (ChannelPool.SubChannel channel : pool.getSubChannels()) {
+      boolean drained = channel.getAddress().getHostString().equals(serverNames[0]);
+      awaitHealth(channel, drained ? HealthStatus.UNHEALTHY : HealthStatus.HEALTHY);
+    }
+  }
+
+  @Test
+  public void testNoAddress() {
+    pool = builder(new StaticAddressResolver()).build();
+    SimpleBlockingJdbcClient client = new SimpleBlockingJdbcClient(pool);
+    StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+      () -> client.openConnection(Collections.emptyMap(), Optional.empty()));
+    assertEquals(io.grpc.Status.Code.UNAVAILABLE, e.getStatus().getCode());
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LogLinearHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    for (long value : new long[] {0, 1, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE}) {
+      int index = LogLinearHistogram.bucketIndex(value);
+      assertTrue(value <= LogLinearHistogram.bucketUpperBound(index));
+      if (index > 0) {
+        assertTrue(value > LogLinearHistogram.bucketUpperBound(index - 1));
+      }
+    }
+
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    Random random = new Random(42);
+    for (int i = 1; i <= 100000; i++) {
+      histogram.update(random.nextInt(1000000));
+    }
+    assertEquals(100000, histogram.getCount());
+    long p50 = histogram.getValueAtPercentile(50);
+    long p99 = histogram.getValueAtPercentile(99);
+    assertEquals(500000, p50, 500000 * 0.13);
+    assertEquals(990000, p99, 990000 * 0.13);
+    assertTrue(histogram.getValueAtPercentile(100) <= histogram.getMax());
+  }
+}
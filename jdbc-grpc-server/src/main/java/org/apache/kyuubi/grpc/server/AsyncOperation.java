@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.GrpcUtils;
+import org.apache.kyuubi.grpc.Status;
+import org.apache.kyuubi.grpc.common.OperationHandle;
+import org.apache.kyuubi.grpc.jdbc.OperationState;
+import org.apache.kyuubi.grpc.jdbc.statement.OperationStatusResp;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+
+/**
+ * A SQL executed in the background on a statement, SUBMITTED until a thread picks it up, then
+ * RUNNING until it SUCCEEDED, failed, was CANCELED or CLOSED. The result set of a SUCCEEDED
+ * operation is registered as an {@link Operation} of the same id.
+ *
+ * <p>The listeners are notified of every change of state, under the lock of the operation so
+ * they see the changes in order.
+ */
+public class AsyncOperation {
+
+  private final String id;
+  private final SessionStatement statement;
+  private final long submitTime = System.currentTimeMillis();
+  private final List<Consumer<OperationStatusResp>> listeners = new CopyOnWriteArrayList<>();
+  private OperationState state = OperationState.SUBMITTED;
+  private Status error = null;
+  private boolean hasResultSet = false;
+  private long updateCount = -1;
+  private long startTime = 0;
+  private long endTime = 0;
+  private boolean canceling = false;
+  private Future<?> future = null;
+
+  AsyncOperation(String id, SessionStatement statement) {
+    this.id = id;
+    this.statement = statement;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public SessionStatement getStatement() {
+    return statement;
+  }
+
+  public static boolean isTerminal(OperationState state) {
+    switch (state) {
+      case SUCCEEDED:
+      case RUNNING_FAILED:
+      case CANCELED:
+      case CLOSED:
+      case TIMEOUT:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  public synchronized OperationState getState() {
+    return state;
+  }
+
+  public synchronized boolean isTerminated() {
+    return isTerminal(state);
+  }
+
+  public synchronized OperationStatusResp getStatus() {
+    OperationStatusResp.Builder builder = OperationStatusResp.newBuilder()
+      .setStatus(OK)
+      .setOperationId(OperationHandle.newBuilder().setId(id))
+      .setState(state)
+      .setHasResultSet(hasResultSet)
+      .setUpdateCount(updateCount)
+      .setSubmitTime(submitTime)
+      .setStartTime(startTime)
+      .setEndTime(endTime);
+    if (error != null) {
+      builder.setOperationError(error);
+    }
+    return builder.build();
+  }
+
+  synchronized void setFuture(Future<?> future) {
+    this.future = future;
+  }
+
+  /**
+   * Notify the listener of the current status, then of every change until the operation
+   * terminates.
+   */
+  public synchronized void addListener(Consumer<OperationStatusResp> listener) {
+    listener.accept(getStatus());
+    if (!isTerminal(state)) {
+      listeners.add(listener);
+    }
+  }
+
+  public void removeListener(Consumer<OperationStatusResp> listener) {
+    listeners.remove(listener);
+  }
+
+  // with the lock held
+  private void transition(OperationState next) {
+    state = next;
+    if (isTerminal(next)) {
+      endTime = System.currentTimeMillis();
+    }
+    OperationStatusResp status = getStatus();
+    for (Consumer<OperationStatusResp> listener : listeners) {
+      listener.accept(status);
+    }
+    if (isTerminal(next)) {
+      listeners.clear();
+    }
+  }
+
+  /**
+   * @return false if the operation was canceled or closed before it started
+   */
+  synchronized boolean start() {
+    if (state != OperationState.SUBMITTED) {
+      return false;
+    }
+    startTime = System.currentTimeMillis();
+    transition(OperationState.RUNNING);
+    return true;
+  }
+
+  /**
+   * A cancellation arriving once the SQL completed does not undo it.
+   *
+   * @return false if the operation was closed in the meantime
+   */
+  synchronized boolean succeed(boolean hasResultSet, long updateCount) {
+    if (state != OperationState.RUNNING) {
+      return false;
+    }
+    this.hasResultSet = hasResultSet;
+    this.updateCount = updateCount;
+    transition(OperationState.SUCCEEDED);
+    return true;
+  }
+
+  synchronized void fail(Exception e) {
+    if (state != OperationState.RUNNING) {
+      return;
+    }
+    if (canceling) {
+      transition(OperationState.CANCELED);
+    } else {
+      error = GrpcUtils.errorStatus(e);
+      transition(e instanceof SQLTimeoutException ? OperationState.TIMEOUT : OperationState.RUNNING_FAILED);
+    }
+  }
+
+  /**
+   * Cancel the operation if it did not terminate yet, a running SQL is canceled through its
+   * statement and turns CANCELED once the driver gives up.
+   */
+  public void cancel() throws SQLException {
+    synchronized (this) {
+      if (state == OperationState.SUBMITTED) {
+        if (future != null) {
+          future.cancel(false);
+        }
+        transition(OperationState.CANCELED);
+        return;
+      }
+      if (state != OperationState.RUNNING) {
+        return;
+      }
+      canceling = true;
+    }
+    statement.getStatement().cancel();
+  }
+
+  /**
+   * Cancel the operation and release its listeners, e.g. when its session is closed.
+   */
+  void close() {
+    try {
+      cancel();
+    } catch (SQLException e) {
+      // do nothing
+    }
+    synchronized (this) {
+      if (state != OperationState.CLOSED) {
+        transition(OperationState.CLOSED);
+      }
+    }
+  }
+}
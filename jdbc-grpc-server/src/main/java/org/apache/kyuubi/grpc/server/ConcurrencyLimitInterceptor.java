@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import org.apache.kyuubi.grpc.jdbc.statement.StatementGrpc;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rejects the calls beyond a limit of concurrent calls with RESOURCE_EXHAUSTED, so a burst
+ * fails fast instead of queueing up on the workers.
+ *
+ * <p>The streaming and long polling calls, e.g. WatchOperation or WaitOperation, have a budget
+ * of their own, so the clients watching long operations can not starve the short calls.
+ */
+class ConcurrencyLimitInterceptor implements ServerInterceptor {
+
+  // the unary methods that may wait for long
+  private static final Set<String> LONG_POLLS =
+    Collections.singleton(StatementGrpc.getWaitOperationMethod().getFullMethodName());
+
+  private final Semaphore permits;
+  private final Semaphore streamPermits;
+
+  ConcurrencyLimitInterceptor(int maxConcurrentCalls, int maxConcurrentStreams) {
+    this.permits = new Semaphore(maxConcurrentCalls);
+    this.streamPermits = new Semaphore(maxConcurrentStreams);
+  }
+
+  static boolean isLongLived(MethodDescriptor<?, ?> method) {
+    return method.getType() != MethodDescriptor.MethodType.UNARY || LONG_POLLS.contains(method.getFullMethodName());
+  }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+    ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+    Semaphore permits = isLongLived(call.getMethodDescriptor()) ? streamPermits : this.permits;
+    if (!permits.tryAcquire()) {
+      call.close(Status.RESOURCE_EXHAUSTED.withDescription("Too many concurrent calls"), new Metadata());
+      return new ServerCall.Listener<ReqT>() {
+      };
+    }
+    AtomicBoolean released = new AtomicBoolean(false);
+    Runnable release = () -> {
+      if (released.compareAndSet(false, true)) {
+        permits.release();
+      }
+    };
+    // released before the status is sent, so the next call of the client finds the permit
+    ServerCall<ReqT, RespT> releasing = new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+      @Override
+      public void close(Status status, Metadata trailers) {
+        release.run();
+        super.close(status, trailers);
+      }
+    };
+    ServerCall.Listener<ReqT> delegate;
+    try {
+      delegate = next.startCall(releasing, headers);
+    } catch (RuntimeException e) {
+      release.run();
+      throw e;
+    }
+    return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(delegate) {
+      @Override
+      public void onComplete() {
+        try {
+          super.onComplete();
+        } finally {
+          release.run();
+        }
+      }
+
+      @Override
+      public void onCancel() {
+        try {
+          super.onCancel();
+        } finally {
+          release.run();
+        }
+      }
+    };
+  }
+}
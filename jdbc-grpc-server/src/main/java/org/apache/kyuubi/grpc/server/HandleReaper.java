@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.metrics.DefaultMetricsRegistry;
+import org.apache.kyuubi.grpc.metrics.MetricsRegistry;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expires the handles idle for longer than the timeout of their type, e.g. the sessions of the
+ * clients that crashed without closing them. The handles are kept on a {@link TimingWheel} by
+ * their deadline; accessing a handle does not touch the wheel, a due handle accessed in the
+ * meantime is rescheduled instead.
+ *
+ * <p>Metrics:
+ * <ul>
+ *   <li>server.reaper.reaped.{operation,statement,session} - the handles closed by the reaper</li>
+ *   <li>server.reaper.scheduled - the handles on the wheel, including the ones closed since</li>
+ * </ul>
+ */
+public class HandleReaper {
+
+  public static final String PREFIX = "server.reaper.";
+  public static final String SCHEDULED = PREFIX + "scheduled";
+
+  /**
+   * The types of handles, in the order they are reaped so the leaked statements are closed
+   * before their connection.
+   */
+  public enum HandleType {
+    OPERATION,
+    STATEMENT,
+    SESSION
+  }
+
+  static final class Handle {
+    final HandleType type;
+    final String id;
+
+    Handle(HandleType type, String id) {
+      this.type = type;
+      this.id = id;
+    }
+  }
+
+  private static final int WHEEL_SIZE = 64;
+
+  private final TimingWheel<Handle> wheel;
+  private final Map<HandleType, Long> idleTimeouts = new EnumMap<>(HandleType.class);
+  private final MetricsRegistry metrics;
+
+  /**
+   * @param tickMillis the precision of the timeouts
+   * @param metrics    where to report the reaped handles, null for a private registry
+   */
+  public HandleReaper(long tickMillis, MetricsRegistry metrics) {
+    this.wheel = new TimingWheel<>(tickMillis, WHEEL_SIZE, System.currentTimeMillis());
+    this.metrics = metrics == null ? new DefaultMetricsRegistry() : metrics;
+    for (HandleType type : HandleType.values()) {
+      idleTimeouts.put(type, 0L);
+    }
+  }
+
+  /**
+   * Set the idle timeout of a type of handles, 0 to never expire them.
+   */
+  public HandleReaper idleTimeout(HandleType type, long timeout, TimeUnit unit) {
+    idleTimeouts.put(type, unit.toMillis(timeout));
+    return this;
+  }
+
+  public long getIdleTimeout(HandleType type) {
+    return idleTimeouts.get(type);
+  }
+
+  public MetricsRegistry getMetrics() {
+    return metrics;
+  }
+
+  public static String metricName(HandleType type) {
+    return PREFIX + "reaped." + type.name().toLowerCase();
+  }
+
+  /**
+   * Schedule the handle to be checked once it may have been idle for the timeout.
+   */
+  void schedule(HandleType type, String id, long lastAccessTime) {
+    long timeout = idleTimeouts.get(type);
+    if (timeout > 0) {
+      wheel.schedule(new Handle(type, id), lastAccessTime + timeout);
+      metrics.counter(SCHEDULED).inc();
+    }
+  }
+
+  /**
+   * @return the handles that may have been idle for their timeout at the time, by type
+   */
+  List<Handle> due(long now) {
+    List<Handle> due = wheel.advance(now);
+    metrics.counter(SCHEDULED).add(-due.size());
+    due.sort((a, b) -> a.type.compareTo(b.type));
+    return due;
+  }
+
+  void reaped(HandleType type) {
+    metrics.counter(metricName(type)).inc();
+  }
+
+  public long getReapedCount(HandleType type) {
+    return metrics.counter(metricName(type)).getCount();
+  }
+}
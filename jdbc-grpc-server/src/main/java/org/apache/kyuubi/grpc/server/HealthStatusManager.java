@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.BindableService;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.health.GetServicesReq;
+import org.apache.kyuubi.grpc.health.GetServicesResp;
+import org.apache.kyuubi.grpc.health.HealthCheckReq;
+import org.apache.kyuubi.grpc.health.HealthCheckResponse;
+import org.apache.kyuubi.grpc.health.HealthGrpc;
+import org.apache.kyuubi.grpc.health.HealthStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the health status of the services of a server and serves them through the Health
+ * service. The empty service name stands for the whole server.
+ *
+ * <p>A Watch call gets the statuses of the services it asked for, all of them if none, at once
+ * and again whenever one of them changes.
+ */
+public class HealthStatusManager {
+
+  public static final String SERVER = "";
+
+  private final Map<String, HealthStatus> statuses = new TreeMap<>();
+  private final Set<Watcher> watchers = ConcurrentHashMap.newKeySet();
+  private final HealthService service = new HealthService();
+  private boolean terminal = false;
+
+  public HealthStatusManager() {
+    statuses.put(SERVER, HealthStatus.HEALTHY);
+  }
+
+  public BindableService getHealthService() {
+    return service;
+  }
+
+  /**
+   * Update the status of the service, registering it the first time. Ignored once the server
+   * entered the terminal state.
+   */
+  public void setStatus(String serviceName, HealthStatus status) {
+    synchronized (statuses) {
+      if (terminal || status == statuses.put(serviceName, status)) {
+        return;
+      }
+    }
+    notifyWatchers(serviceName);
+  }
+
+  public void clearStatus(String serviceName) {
+    synchronized (statuses) {
+      if (terminal || statuses.remove(serviceName) == null) {
+        return;
+      }
+    }
+    notifyWatchers(serviceName);
+  }
+
+  /**
+   * @return the status of the service, NOT_FOUND if it is not registered
+   */
+  public HealthStatus getStatus(String serviceName) {
+    synchronized (statuses) {
+      return statuses.getOrDefault(serviceName, HealthStatus.NOT_FOUND);
+    }
+  }
+
+  /**
+   * Mark all the services UNHEALTHY for good and end the Watch calls once notified, e.g. when the
+   * server shuts down so the clients move away before the calls are refused.
+   */
+  public void enterTerminalState() {
+    List<String> changed = new ArrayList<>();
+    synchronized (statuses) {
+      if (terminal) {
+        return;
+      }
+      for (Map.Entry<String, HealthStatus> entry : statuses.entrySet()) {
+        if (entry.getValue() != HealthStatus.UNHEALTHY) {
+          entry.setValue(HealthStatus.UNHEALTHY);
+          changed.add(entry.getKey());
+        }
+      }
+      terminal = true;
+    }
+    for (String serviceName : changed) {
+      notifyWatchers(serviceName);
+    }
+    for (Watcher watcher : watchers) {
+      watcher.complete();
+    }
+  }
+
+  private HealthCheckResponse snapshot(Collection<String> serviceNames) {
+    HealthCheckResponse.Builder builder = HealthCheckResponse.newBuilder();
+    synchronized (statuses) {
+      if (serviceNames.isEmpty()) {
+        builder.putAllStatuses(statuses);
+      } else {
+        for (String serviceName : serviceNames) {
+          builder.putStatuses(serviceName, statuses.getOrDefault(serviceName, HealthStatus.NOT_FOUND));
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  private void notifyWatchers(String serviceName) {
+    for (Watcher watcher : watchers) {
+      if (watcher.services.isEmpty() || watcher.services.contains(serviceName)) {
+        watcher.send();
+      }
+    }
+  }
+
+  private final class Watcher {
+    final List<String> services;
+    final ServerCallStreamObserver<HealthCheckResponse> observer;
+    private HealthCheckResponse last;
+
+    Watcher(List<String> services, ServerCallStreamObserver<HealthCheckResponse> observer) {
+      this.services = services;
+      this.observer = observer;
+    }
+
+    synchronized void send() {
+      HealthCheckResponse resp = snapshot(services);
+      if (resp.equals(last) || observer.isCancelled()) {
+        return;
+      }
+      last = resp;
+      try {
+        observer.onNext(resp);
+      } catch (RuntimeException e) {
+        // the call is gone
+        watchers.remove(this);
+      }
+    }
+
+    synchronized void complete() {
+      watchers.remove(this);
+      try {
+        observer.onCompleted();
+      } catch (RuntimeException e) {
+        // the call is gone
+      }
+    }
+  }
+
+  private final class HealthService extends HealthGrpc.HealthImplBase {
+
+    @Override
+    public void getServices(GetServicesReq req, StreamObserver<GetServicesResp> respOb) {
+      GetServicesResp.Builder builder = GetServicesResp.newBuilder();
+      synchronized (statuses) {
+        builder.addAllServices(statuses.keySet());
+      }
+      respOb.onNext(builder.build());
+      respOb.onCompleted();
+    }
+
+    @Override
+    public void check(HealthCheckReq req, StreamObserver<HealthCheckResponse> respOb) {
+      respOb.onNext(snapshot(req.getServicesList()));
+      respOb.onCompleted();
+    }
+
+    @Override
+    public void watch(HealthCheckReq req, StreamObserver<HealthCheckResponse> respOb) {
+      ServerCallStreamObserver<HealthCheckResponse> observer =
+        (ServerCallStreamObserver<HealthCheckResponse>) respOb;
+      Watcher watcher = new Watcher(new ArrayList<>(req.getServicesList()), observer);
+      observer.setOnCancelHandler(() -> watchers.remove(watcher));
+      watchers.add(watcher);
+      watcher.send();
+    }
+  }
+}
@@ -0,0 +1,553 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.GetWarningsResp;
+import org.apache.kyuubi.grpc.GrpcUtils;
+import org.apache.kyuubi.grpc.SQLWarning;
+import org.apache.kyuubi.grpc.common.ConnectionHandle;
+import org.apache.kyuubi.grpc.compression.Compression;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.connection.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+import static org.apache.kyuubi.grpc.server.Responses.error;
+import static org.apache.kyuubi.grpc.server.Responses.ok;
+
+/**
+ * The Connection service over the sessions of a {@link SessionManager}.
+ *
+ * <p>OpenConnection connects as the {@code user} and {@code password} configs if present,
+ * otherwise with the defaults of the data source. The other session configs are ignored.
+ */
+public class JdbcConnectionService extends ConnectionGrpc.ConnectionImplBase {
+
+  public static final String USER = "user";
+  public static final String PASSWORD = "password";
+
+  private final SessionManager sessionManager;
+  private final Executor executor;
+
+  /**
+   * @param executor runs the JDBC abort and network timeout tasks
+   */
+  public JdbcConnectionService(SessionManager sessionManager, Executor executor) {
+    this.sessionManager = sessionManager;
+    this.executor = executor;
+  }
+
+  private Connection getConnection(ConnectionHandle handle) throws SQLException {
+    return sessionManager.getSession(handle.getId()).getConnection();
+  }
+
+  @Override
+  public void openConnection(OpenConnectionReq req, StreamObserver<DirectStatusResp> respOb) {
+    DirectStatusResp.Builder builder = DirectStatusResp.newBuilder();
+    try {
+      Map<String, String> configs = req.getConfigsMap();
+      Session session = sessionManager.openSession(
+        req.getConnectionId().getId(), configs.get(USER), configs.get(PASSWORD));
+      Connection conn = session.getConnection();
+      builder.setIdentifier(session.getId());
+      builder.putExtraInfo(ConnectionConfigs.STATE_AUTO_COMMIT, String.valueOf(conn.getAutoCommit()));
+      builder.putExtraInfo(ConnectionConfigs.STATE_READ_ONLY, String.valueOf(conn.isReadOnly()));
+      builder.putExtraInfo(ConnectionConfigs.STATE_TRANSACTION_ISOLATION,
+        String.valueOf(conn.getTransactionIsolation()));
+      builder.putExtraInfo(ConnectionConfigs.STATE_HOLDABILITY, String.valueOf(conn.getHoldability()));
+      builder.putExtraInfo(ConnectionConfigs.STATE_NETWORK_TIMEOUT, String.valueOf(conn.getNetworkTimeout()));
+      if (conn.getCatalog() != null) {
+        builder.putExtraInfo(ConnectionConfigs.STATE_CATALOG, conn.getCatalog());
+      }
+      if (conn.getSchema() != null) {
+        builder.putExtraInfo(ConnectionConfigs.STATE_SCHEMA, conn.getSchema());
+      }
+      if (configs.containsKey(ConnectionConfigs.RESULT_FORMAT)) {
+        // the arrow result format is not supported yet
+        builder.putExtraInfo(ConnectionConfigs.RESULT_FORMAT, ConnectionConfigs.RESULT_FORMAT_COLUMNAR);
+      }
+      if (configs.containsKey(ConnectionConfigs.COMPRESSION)) {
+        builder.putExtraInfo(ConnectionConfigs.COMPRESSION,
+          Compression.negotiate(configs.get(ConnectionConfigs.COMPRESSION)));
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    respOb.onNext(builder.build());
+    respOb.onCompleted();
+  }
+
+  @Override
+  public void closeConnection(ConnectionHandle req, StreamObserver<DirectStatusResp> respOb) {
+    try {
+      if (!sessionManager.closeSession(req.getId())) {
+        throw new SQLException("Connection " + req.getId() + " not found", "08003");
+      }
+      respOb.onNext(ok(req.getId()));
+    } catch (Exception e) {
+      respOb.onNext(error(e));
+    }
+    respOb.onCompleted();
+  }
+
+  @Override
+  public void abortConnection(ConnectionHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      Session session = sessionManager.removeSession(request.getId());
+      session.getConnection().abort(executor);
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void nativeSQL(NativeSQLReq request, StreamObserver<NativeSQLResp> responseObserver) {
+    NativeSQLResp.Builder builder = NativeSQLResp.newBuilder();
+    try {
+      String sql = getConnection(request.getConnectionId()).nativeSQL(request.getSql());
+      builder.setStatus(OK).setSql(sql);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setAutoCommit(SetAutoCommitReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request.getConnectionId()).setAutoCommit(request.getAutoCommit());
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getAutoCommit(ConnectionHandle request, StreamObserver<GetAutoCommitResp> responseObserver) {
+    GetAutoCommitResp.Builder builder = GetAutoCommitResp.newBuilder();
+    try {
+      builder.setStatus(OK).setAutoCommit(getConnection(request).getAutoCommit());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void commit(ConnectionHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request).commit();
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  private static String savepointKey(Savepoint savepoint) {
+    return savepoint.getSavepointName().isEmpty()
+      ? "#" + savepoint.getSavepointId()
+      : savepoint.getSavepointName();
+  }
+
+  private static java.sql.Savepoint getSavepoint(Session session, Savepoint savepoint) throws SQLException {
+    java.sql.Savepoint jdbcSavepoint = session.savepoints.get(savepointKey(savepoint));
+    if (jdbcSavepoint == null) {
+      throw new SQLException("Savepoint " + savepointKey(savepoint) + " not found", "3B001");
+    }
+    return jdbcSavepoint;
+  }
+
+  @Override
+  public void rollback(RollbackReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      Session session = sessionManager.getSession(request.getConnectionId().getId());
+      if (request.hasSavepoint()) {
+        session.getConnection().rollback(getSavepoint(session, request.getSavepoint()));
+      } else {
+        session.getConnection().rollback();
+      }
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setSavepoint(SetSavepointReq request, StreamObserver<SetSavepointResp> responseObserver) {
+    SetSavepointResp.Builder builder = SetSavepointResp.newBuilder();
+    try {
+      Session session = sessionManager.getSession(request.getConnectionId().getId());
+      Savepoint savepoint;
+      if (request.getSavepointName().isEmpty()) {
+        java.sql.Savepoint jdbcSavepoint = session.getConnection().setSavepoint();
+        savepoint = Savepoint.newBuilder().setSavepointId(jdbcSavepoint.getSavepointId()).build();
+        session.savepoints.put(savepointKey(savepoint), jdbcSavepoint);
+      } else {
+        java.sql.Savepoint jdbcSavepoint = session.getConnection().setSavepoint(request.getSavepointName());
+        savepoint = Savepoint.newBuilder().setSavepointName(request.getSavepointName()).build();
+        session.savepoints.put(savepointKey(savepoint), jdbcSavepoint);
+      }
+      builder.setStatus(OK).setSavepoint(savepoint);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void releaseSavepoint(ReleaseSavepointReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      Session session = sessionManager.getSession(request.getConnectionId().getId());
+      session.getConnection().releaseSavepoint(getSavepoint(session, request.getSavepoint()));
+      session.savepoints.remove(savepointKey(request.getSavepoint()));
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setReadOnly(SetReadOnlyReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request.getConnectionId()).setReadOnly(request.getReadOnly());
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void isReadOnly(ConnectionHandle request, StreamObserver<IsReadOnlyResp> responseObserver) {
+    IsReadOnlyResp.Builder builder = IsReadOnlyResp.newBuilder();
+    try {
+      builder.setStatus(OK).setReadOnly(getConnection(request).isReadOnly());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setCatalog(SetCatalogReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request.getConnectionId()).setCatalog(request.getCatalog());
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getCatalog(ConnectionHandle request, StreamObserver<GetCatalogResp> responseObserver) {
+    GetCatalogResp.Builder builder = GetCatalogResp.newBuilder();
+    try {
+      String catalog = getConnection(request).getCatalog();
+      if (catalog != null) {
+        builder.setCatalog(catalog);
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setTransactionIsolation(
+    SetTransactionIsolationReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request.getConnectionId()).setTransactionIsolation(request.getLevel());
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getTransactionIsolation(
+    ConnectionHandle request, StreamObserver<GetTransactionIsolationResp> responseObserver) {
+    GetTransactionIsolationResp.Builder builder = GetTransactionIsolationResp.newBuilder();
+    try {
+      builder.setStatus(OK).setLevel(getConnection(request).getTransactionIsolation());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getWarnings(ConnectionHandle request, StreamObserver<GetWarningsResp> responseObserver) {
+    GetWarningsResp.Builder builder = GetWarningsResp.newBuilder();
+    try {
+      SQLWarning warnings = GrpcUtils.toProto(getConnection(request).getWarnings());
+      if (warnings != null) {
+        builder.setWarnings(warnings);
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void clearWarnings(ConnectionHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request).clearWarnings();
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setTypeMap(SetTypeMapReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      Map<String, Class<?>> typeMap = new HashMap<>();
+      for (Map.Entry<String, String> entry : request.getTypeToClassMap().entrySet()) {
+        typeMap.put(entry.getKey(), Class.forName(entry.getValue()));
+      }
+      getConnection(request.getConnectionId()).setTypeMap(typeMap);
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getTypeMap(ConnectionHandle request, StreamObserver<GetTypeMapResp> responseObserver) {
+    GetTypeMapResp.Builder builder = GetTypeMapResp.newBuilder();
+    try {
+      Map<String, Class<?>> typeMap = getConnection(request).getTypeMap();
+      if (typeMap != null) {
+        for (Map.Entry<String, Class<?>> entry : typeMap.entrySet()) {
+          builder.putTypeToClass(entry.getKey(), entry.getValue().getName());
+        }
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setSchema(SetSchemaReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request.getConnectionId()).setSchema(request.getSchema());
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getSchema(ConnectionHandle request, StreamObserver<GetSchemaResp> responseObserver) {
+    GetSchemaResp.Builder builder = GetSchemaResp.newBuilder();
+    try {
+      String schema = getConnection(request).getSchema();
+      if (schema != null) {
+        builder.setSchema(schema);
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setNetworkTimeout(SetNetworkTimeoutReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request.getConnectionId()).setNetworkTimeout(executor, request.getMilliseconds());
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getNetworkTimeout(ConnectionHandle request, StreamObserver<GetNetworkTimeoutResp> responseObserver) {
+    GetNetworkTimeoutResp.Builder builder = GetNetworkTimeoutResp.newBuilder();
+    try {
+      builder.setStatus(OK).setMilliseconds(getConnection(request).getNetworkTimeout());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setHoldability(SetHoldabilityReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getConnection(request.getConnectionId()).setHoldability(request.getHoldability());
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getHoldability(ConnectionHandle request, StreamObserver<GetHoldabilityResp> responseObserver) {
+    GetHoldabilityResp.Builder builder = GetHoldabilityResp.newBuilder();
+    try {
+      builder.setStatus(OK).setHoldability(getConnection(request).getHoldability());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void isValid(IsValidReq request, StreamObserver<IsValidResp> responseObserver) {
+    IsValidResp.Builder builder = IsValidResp.newBuilder();
+    try {
+      builder.setStatus(OK).setValid(getConnection(request.getConnectionId()).isValid(request.getTimeout()));
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setClientInfo(SetClientInfoReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      Properties properties = new Properties();
+      properties.putAll(request.getConfigsMap());
+      getConnection(request.getConnectionId()).setClientInfo(properties);
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getClientInfo(ConnectionHandle request, StreamObserver<GetClientInfoResp> responseObserver) {
+    GetClientInfoResp.Builder builder = GetClientInfoResp.newBuilder();
+    try {
+      Properties properties = getConnection(request).getClientInfo();
+      if (properties != null) {
+        for (String name : properties.stringPropertyNames()) {
+          builder.putConfigs(name, properties.getProperty(name));
+        }
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  private interface Action {
+    void run() throws SQLException;
+  }
+
+  @Override
+  public void applyConnectionState(
+    ApplyConnectionStateReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    ConnectionState state = request.getState();
+    Deque<Action> undo = new ArrayDeque<>();
+    try {
+      Connection conn = getConnection(request.getConnectionId());
+      if (state.hasCatalog()) {
+        String catalog = conn.getCatalog();
+        conn.setCatalog(state.getCatalog());
+        undo.push(() -> conn.setCatalog(catalog));
+      }
+      if (state.hasSchema()) {
+        String schema = conn.getSchema();
+        conn.setSchema(state.getSchema());
+        undo.push(() -> conn.setSchema(schema));
+      }
+      if (state.hasReadOnly()) {
+        boolean readOnly = conn.isReadOnly();
+        conn.setReadOnly(state.getReadOnly());
+        undo.push(() -> conn.setReadOnly(readOnly));
+      }
+      if (state.hasTransactionIsolation()) {
+        int level = conn.getTransactionIsolation();
+        conn.setTransactionIsolation(state.getTransactionIsolation());
+        undo.push(() -> conn.setTransactionIsolation(level));
+      }
+      if (state.hasHoldability()) {
+        int holdability = conn.getHoldability();
+        conn.setHoldability(state.getHoldability());
+        undo.push(() -> conn.setHoldability(holdability));
+      }
+      if (state.hasNetworkTimeout()) {
+        int timeout = conn.getNetworkTimeout();
+        conn.setNetworkTimeout(executor, state.getNetworkTimeout());
+        undo.push(() -> conn.setNetworkTimeout(executor, timeout));
+      }
+      // last, switching auto commit on commits the running transaction and can not be undone
+      if (state.hasAutoCommit()) {
+        conn.setAutoCommit(state.getAutoCommit());
+      }
+      responseObserver.onNext(ok(request.getConnectionId().getId()));
+    } catch (Exception e) {
+      while (!undo.isEmpty()) {
+        try {
+          undo.pop().run();
+        } catch (SQLException ignored) {
+          // restore as much as possible
+        }
+      }
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+}
@@ -0,0 +1,424 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.BindableService;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.kyuubi.grpc.compression.Compression;
+import org.apache.kyuubi.grpc.compression.CompressionServerInterceptor;
+import org.apache.kyuubi.grpc.health.HealthStatus;
+import org.apache.kyuubi.grpc.metrics.MetricsRegistry;
+import org.apache.kyuubi.grpc.server.HandleReaper.HandleType;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference JDBC gRPC server exposing the connections of any {@link DataSource}, e.g. a
+ * connection pool, through the Connection, Statement, PreparedStatement and Jdbc services.
+ *
+ * <p>The blocking JDBC calls run on a bounded pool of workers instead of the Netty event loop,
+ * and the calls beyond {@link Builder#maxConcurrentCalls} are rejected with RESOURCE_EXHAUSTED.
+ * The streaming and long polling calls count against {@link Builder#maxConcurrentStreams}
+ * instead.
+ * The sessions, statements and operations idle for longer than their timeout are closed by a
+ * {@link HandleReaper} every {@link Builder#reapInterval}.
+ *
+ * <p>The Health service reports the status of each service, derived from the load of the server
+ * every {@link Builder#healthCheckInterval}, see {@link LoadMonitor}. It answers even when the
+ * server is saturated.
+ *
+ * <p>The SQL submitted with ExecuteAsync runs on a separate pool of
+ * {@link Builder#asyncThreads}, the queries beyond it wait SUBMITTED.
+ */
+public class JdbcGrpcServer {
+
+  private final Server server;
+  private final SessionManager sessionManager;
+  private final ThreadPoolExecutor workers;
+  private final ExecutorService asyncWorkers;
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup workerGroup;
+  private final ScheduledExecutorService scheduler;
+  private final long reapIntervalMillis;
+  private final HealthStatusManager health;
+  private final LoadMonitor loadMonitor;
+  private final long healthCheckIntervalMillis;
+
+  private JdbcGrpcServer(Builder builder) {
+    HandleReaper handleReaper = new HandleReaper(Math.max(builder.reapIntervalMillis, 1), builder.metrics);
+    if (builder.reapIntervalMillis > 0) {
+      // nothing advances the wheel without reaping, the handles are not scheduled on it then
+      handleReaper
+        .idleTimeout(HandleType.SESSION, builder.sessionIdleTimeoutMillis, TimeUnit.MILLISECONDS)
+        .idleTimeout(HandleType.STATEMENT, builder.statementIdleTimeoutMillis, TimeUnit.MILLISECONDS)
+        .idleTimeout(HandleType.OPERATION, builder.operationIdleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    this.sessionManager = new SessionManager(builder.dataSource, handleReaper, builder.preparedStatementCacheSize)
+      .resultSpool(builder.resultSpool);
+    this.workers = new ThreadPoolExecutor(builder.workerThreads, builder.workerThreads, 0L, TimeUnit.MILLISECONDS,
+      new LinkedBlockingQueue<>(), daemonThreads("kyuubi-grpc-worker"));
+    this.asyncWorkers = Executors.newFixedThreadPool(builder.asyncThreads, daemonThreads("kyuubi-grpc-async"));
+    this.bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("kyuubi-grpc-boss", true));
+    this.workerGroup = new NioEventLoopGroup(0, new DefaultThreadFactory("kyuubi-grpc-event-loop", true));
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("kyuubi-grpc-scheduler"));
+    this.reapIntervalMillis = builder.reapIntervalMillis;
+    this.health = new HealthStatusManager();
+    this.healthCheckIntervalMillis = builder.healthCheckIntervalMillis;
+
+    CompressionServerInterceptor compression = new CompressionServerInterceptor();
+    ConcurrencyLimitInterceptor limit = new ConcurrencyLimitInterceptor(builder.maxConcurrentCalls, builder.maxConcurrentStreams);
+    NettyServerBuilder serverBuilder = NettyServerBuilder.forAddress(builder.address)
+      .bossEventLoopGroup(bossGroup)
+      .workerEventLoopGroup(workerGroup)
+      .channelType(NioServerSocketChannel.class)
+      .executor(workers);
+    List<String> serviceNames = new ArrayList<>();
+    List<BindableService> services = services(sessionManager, workers, builder.fetchSize,
+      builder.metadataMaxAgeSeconds, asyncWorkers, scheduler);
+    for (BindableService service : services) {
+      ServerServiceDefinition definition = service.bindService();
+      serviceNames.add(definition.getServiceDescriptor().getName());
+      health.setStatus(definition.getServiceDescriptor().getName(), HealthStatus.HEALTHY);
+      serverBuilder.addService(ServerInterceptors.intercept(definition, compression, limit));
+    }
+    serverBuilder.addService(ServerInterceptors.intercept(health.getHealthService(), compression));
+    this.server = Compression.configure(serverBuilder).build();
+    this.loadMonitor = new LoadMonitor(health, serviceNames, workers, workerGroup, sessionManager,
+      builder.maxQueuedCalls, builder.maxEventLoopLagMillis, builder.maxSessions);
+  }
+
+  /**
+   * The services over the sessions, to be hosted by another server.
+   */
+  public static List<BindableService> services(SessionManager sessionManager, ExecutorService executor,
+                                               int fetchSize) {
+    return services(sessionManager, executor, fetchSize, 0);
+  }
+
+  public static List<BindableService> services(SessionManager sessionManager, ExecutorService executor,
+                                               int fetchSize, long metadataMaxAgeSeconds) {
+    return services(sessionManager, executor, fetchSize, metadataMaxAgeSeconds, null, null);
+  }
+
+  /**
+   * @param asyncExecutor runs the SQL submitted with ExecuteAsync, null to not support it
+   * @param scheduler     ends the WaitOperation calls at their timeout
+   */
+  public static List<BindableService> services(SessionManager sessionManager, ExecutorService executor,
+                                               int fetchSize, long metadataMaxAgeSeconds,
+                                               ExecutorService asyncExecutor, ScheduledExecutorService scheduler) {
+    return Arrays.asList(
+      new JdbcConnectionService(sessionManager, executor),
+      new JdbcStatementService(sessionManager, fetchSize, asyncExecutor, scheduler),
+      new JdbcPreparedStatementService(sessionManager),
+      new JdbcService(sessionManager, fetchSize, metadataMaxAgeSeconds));
+  }
+
+  private static ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public JdbcGrpcServer start() throws IOException {
+    server.start();
+    if (healthCheckIntervalMillis > 0) {
+      scheduler.scheduleWithFixedDelay(loadMonitor,
+        healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    if (reapIntervalMillis > 0) {
+      scheduler.scheduleWithFixedDelay(() -> sessionManager.reapIdleHandles(System.currentTimeMillis()),
+        reapIntervalMillis, reapIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    return this;
+  }
+
+  public int getPort() {
+    return server.getPort();
+  }
+
+  public SessionManager getSessionManager() {
+    return sessionManager;
+  }
+
+  public HealthStatusManager getHealthStatusManager() {
+    return health;
+  }
+
+  /**
+   * Stop accepting calls, close all the sessions and release their connections.
+   */
+  public void shutdown() {
+    health.enterTerminalState();
+    server.shutdown();
+    // ends the WaitOperation and WatchOperation calls
+    sessionManager.closeAsyncOperations();
+    scheduler.shutdownNow();
+    try {
+      server.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    server.shutdownNow();
+    sessionManager.closeAll();
+    if (sessionManager.getResultSpool() != null) {
+      sessionManager.getResultSpool().close();
+    }
+    asyncWorkers.shutdownNow();
+    workers.shutdown();
+    bossGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+    workerGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+  }
+
+  public void awaitTermination() throws InterruptedException {
+    server.awaitTermination();
+  }
+
+  public static class Builder {
+    private DataSource dataSource;
+    private InetSocketAddress address = new InetSocketAddress(0);
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 2;
+    private int asyncThreads = Runtime.getRuntime().availableProcessors() * 2;
+    private int maxConcurrentCalls = 1024;
+    private int maxConcurrentStreams = 1024;
+    private long sessionIdleTimeoutMillis = TimeUnit.MINUTES.toMillis(30);
+    private long statementIdleTimeoutMillis = 0;
+    private long operationIdleTimeoutMillis = TimeUnit.MINUTES.toMillis(30);
+    private long reapIntervalMillis = TimeUnit.MINUTES.toMillis(1);
+    private MetricsRegistry metrics;
+    private int fetchSize = 1000;
+    private int preparedStatementCacheSize = PreparedStatementCache.DEFAULT_CAPACITY;
+    private long metadataMaxAgeSeconds = 0;
+    private long healthCheckIntervalMillis = TimeUnit.SECONDS.toMillis(1);
+    private int maxQueuedCalls = -1;
+    private long maxEventLoopLagMillis = 500;
+    private int maxSessions = Integer.MAX_VALUE;
+    private ResultSpool resultSpool;
+
+    private Builder() {
+    }
+
+    public Builder dataSource(DataSource dataSource) {
+      this.dataSource = dataSource;
+      return this;
+    }
+
+    /**
+     * Listen on all the interfaces, 0 for an ephemeral port.
+     */
+    public Builder port(int port) {
+      this.address = new InetSocketAddress(port);
+      return this;
+    }
+
+    public Builder address(InetSocketAddress address) {
+      this.address = address;
+      return this;
+    }
+
+    public Builder workerThreads(int workerThreads) {
+      if (workerThreads <= 0) {
+        throw new IllegalArgumentException("workerThreads must be positive: " + workerThreads);
+      }
+      this.workerThreads = workerThreads;
+      return this;
+    }
+
+    /**
+     * The SQL submitted with ExecuteAsync running at once, twice the processors by default.
+     */
+    public Builder asyncThreads(int asyncThreads) {
+      if (asyncThreads <= 0) {
+        throw new IllegalArgumentException("asyncThreads must be positive: " + asyncThreads);
+      }
+      this.asyncThreads = asyncThreads;
+      return this;
+    }
+
+    public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+      if (maxConcurrentCalls <= 0) {
+        throw new IllegalArgumentException("maxConcurrentCalls must be positive: " + maxConcurrentCalls);
+      }
+      this.maxConcurrentCalls = maxConcurrentCalls;
+      return this;
+    }
+
+    /**
+     * The limit of the concurrent streaming and long polling calls, e.g. StreamResultSet,
+     * WatchOperation or WaitOperation, which do not count against maxConcurrentCalls.
+     */
+    public Builder maxConcurrentStreams(int maxConcurrentStreams) {
+      if (maxConcurrentStreams <= 0) {
+        throw new IllegalArgumentException("maxConcurrentStreams must be positive: " + maxConcurrentStreams);
+      }
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      return this;
+    }
+
+    /**
+     * Close the sessions without any call for that long, 0 to keep them until closed.
+     */
+    public Builder sessionIdleTimeout(long timeout, TimeUnit unit) {
+      this.sessionIdleTimeoutMillis = unit.toMillis(timeout);
+      return this;
+    }
+
+    /**
+     * Close the statements without any call for that long, 0 to keep them until their session
+     * is closed. A statement is in use while its results are fetched.
+     */
+    public Builder statementIdleTimeout(long timeout, TimeUnit unit) {
+      this.statementIdleTimeoutMillis = unit.toMillis(timeout);
+      return this;
+    }
+
+    /**
+     * Close the result sets without any fetch for that long, e.g. the ones the clients stopped
+     * fetching before the empty batch ending them, 0 to keep them until their statement is closed.
+     */
+    public Builder operationIdleTimeout(long timeout, TimeUnit unit) {
+      this.operationIdleTimeoutMillis = unit.toMillis(timeout);
+      return this;
+    }
+
+    /**
+     * How often to look for the idle handles, also the precision of the idle timeouts, 0 to never
+     * expire the handles whatever their idle timeouts.
+     */
+    public Builder reapInterval(long interval, TimeUnit unit) {
+      this.reapIntervalMillis = unit.toMillis(interval);
+      return this;
+    }
+
+    /**
+     * The batch size of the fetches without a fetch size.
+     */
+    public Builder fetchSize(int fetchSize) {
+      if (fetchSize <= 0) {
+        throw new IllegalArgumentException("fetchSize must be positive: " + fetchSize);
+      }
+      this.fetchSize = fetchSize;
+      return this;
+    }
+
+    /**
+     * Where to report the metrics of the {@link HandleReaper}, a private registry by default.
+     */
+    public Builder metricsRegistry(MetricsRegistry metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * How long the clients may cache the results of the metadata calls, 0 to leave it to them.
+     * The result of GetTypeInfo may always be cached for the lifetime of the connection.
+     */
+    public Builder metadataMaxAge(long maxAge, TimeUnit unit) {
+      this.metadataMaxAgeSeconds = unit.toSeconds(maxAge);
+      return this;
+    }
+
+    /**
+     * Where to buffer the results of the SQL submitted with ExecuteAsync, none by default so the
+     * clients fetch them from the cursors of the engine. The server closes it at the shutdown.
+     */
+    public Builder resultSpool(ResultSpool resultSpool) {
+      this.resultSpool = resultSpool;
+      return this;
+    }
+
+    public Builder preparedStatementCacheSize(int preparedStatementCacheSize) {
+      this.preparedStatementCacheSize = preparedStatementCacheSize;
+      return this;
+    }
+
+    /**
+     * How often to sample the load of the server to update the health of its services, 0 to
+     * report them HEALTHY until the shutdown.
+     */
+    public Builder healthCheckInterval(long interval, TimeUnit unit) {
+      this.healthCheckIntervalMillis = unit.toMillis(interval);
+      return this;
+    }
+
+    /**
+     * Report the services UNHEALTHY while more calls wait for a worker, twice the workers by default.
+     */
+    public Builder maxQueuedCalls(int maxQueuedCalls) {
+      this.maxQueuedCalls = maxQueuedCalls;
+      return this;
+    }
+
+    /**
+     * Report the services UNHEALTHY while the event loops lag for longer.
+     */
+    public Builder maxEventLoopLag(long lag, TimeUnit unit) {
+      this.maxEventLoopLagMillis = unit.toMillis(lag);
+      return this;
+    }
+
+    /**
+     * Report the Connection service UNHEALTHY while that many sessions are open. The sessions
+     * are still accepted, it only steers the new ones to the other servers.
+     */
+    public Builder maxSessions(int maxSessions) {
+      if (maxSessions <= 0) {
+        throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+      }
+      this.maxSessions = maxSessions;
+      return this;
+    }
+
+    public JdbcGrpcServer build() {
+      if (dataSource == null) {
+        throw new IllegalStateException("The data source is not set");
+      }
+      if (maxQueuedCalls < 0) {
+        maxQueuedCalls = workerThreads * 2;
+      }
+      return new JdbcGrpcServer(this);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.GrpcUtils;
+import org.apache.kyuubi.grpc.ParameterValues;
+import org.apache.kyuubi.grpc.common.PreparedStatementHandle;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.statement.*;
+
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+import static org.apache.kyuubi.grpc.server.Responses.error;
+import static org.apache.kyuubi.grpc.server.Responses.ok;
+
+/**
+ * The PreparedStatement service over the plan caches of the sessions. A result set is
+ * registered as an operation owned by the prepared statement, so executing it again closes it.
+ */
+public class JdbcPreparedStatementService extends PreparedStatementGrpc.PreparedStatementImplBase {
+
+  private final SessionManager sessionManager;
+
+  public JdbcPreparedStatementService(SessionManager sessionManager) {
+    this.sessionManager = sessionManager;
+  }
+
+  private static SQLException notFound(String preparedId) {
+    return new SQLException("Prepared statement " + preparedId + " not found, it may have been evicted", "26000");
+  }
+
+  @Override
+  public void prepare(PrepareReq request, StreamObserver<PrepareResp> responseObserver) {
+    PrepareResp.Builder builder = PrepareResp.newBuilder();
+    try {
+      Session session = sessionManager.getSession(request.getConnectionId().getId());
+      PreparedStatementCache cache = session.getPreparedStatements();
+      PreparedStatementCache.Entry entry = cache.prepare(request.getSql());
+      sessionManager.registerPrepared(session, entry.getId());
+      try {
+        ParameterMetaData metaData = entry.getStatement().getParameterMetaData();
+        for (int i = 1; i <= metaData.getParameterCount(); i++) {
+          builder.addParameterTypes(ParameterValues.fromSqlType(metaData.getParameterType(i)));
+        }
+      } catch (SQLException e) {
+        // not every driver describes the parameters
+        builder.clearParameterTypes();
+      } finally {
+        cache.release(entry);
+      }
+      builder.setStatus(OK)
+        .setPreparedId(PreparedStatementHandle.newBuilder().setId(entry.getId()))
+        .setCached(entry.isCached());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void bindAndExecute(BindAndExecuteReq request, StreamObserver<BindAndExecuteResp> responseObserver) {
+    BindAndExecuteResp.Builder builder = BindAndExecuteResp.newBuilder();
+    String preparedId = request.getPreparedId().getId();
+    try {
+      Session session = sessionManager.getPreparedOwner(preparedId);
+      PreparedStatementCache cache = session.getPreparedStatements();
+      PreparedStatementCache.Entry entry = cache.acquire(preparedId);
+      if (entry == null) {
+        sessionManager.unregisterPrepared(preparedId);
+        throw notFound(preparedId);
+      }
+      // referenced until executed, or until the operation reading its result set is closed
+      boolean handedOver = false;
+      PreparedStatement statement = entry.getStatement();
+      try {
+        synchronized (statement) {
+          sessionManager.closeOperationsOf(session, preparedId);
+          statement.clearParameters();
+          for (int i = 0; i < request.getParametersCount(); i++) {
+            ParameterValues.bind(statement, i + 1, request.getParameters(i));
+          }
+          if (statement.execute()) {
+            Operation operation = sessionManager.newOperation(
+              session, preparedId, statement.getResultSet(), () -> cache.release(entry));
+            handedOver = true;
+            builder.setHasResultSet(true).setOperationId(operation.getId());
+          } else {
+            builder.setUpdateCount(statement.getUpdateCount());
+          }
+        }
+      } finally {
+        if (!handedOver) {
+          cache.release(entry);
+        }
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void closePrepared(PreparedStatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      Session session = sessionManager.getPreparedOwner(request.getId());
+      PreparedStatementCache cache = session.getPreparedStatements();
+      if (!cache.contains(request.getId())) {
+        sessionManager.unregisterPrepared(request.getId());
+        throw notFound(request.getId());
+      }
+      sessionManager.closeOperationsOf(session, request.getId());
+      // a cached plan stays for later Prepare calls of the same SQL until it is evicted
+      if (cache.discard(request.getId())) {
+        sessionManager.unregisterPrepared(request.getId());
+      }
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+}
@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.GrpcUtils;
+import org.apache.kyuubi.grpc.jdbc.*;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+import static org.apache.kyuubi.grpc.server.Responses.emptyToNull;
+import static org.apache.kyuubi.grpc.server.Responses.error;
+import static org.apache.kyuubi.grpc.server.Responses.ok;
+
+/**
+ * The Jdbc service over the sessions of a {@link SessionManager}. The DatabaseMetaData calls
+ * and ExecuteSql return the id of an operation to fetch the result set.
+ */
+public class JdbcService extends JdbcGrpc.JdbcImplBase {
+
+  public static final int MAX_PARTITIONS = 64;
+
+  private static final List<org.apache.kyuubi.grpc.jdbc.DatabaseMetaData> ALL_DATABASE_META_DATA =
+    Arrays.stream(org.apache.kyuubi.grpc.jdbc.DatabaseMetaData.values())
+      .filter(key -> key != org.apache.kyuubi.grpc.jdbc.DatabaseMetaData.UNRECOGNIZED)
+      .collect(Collectors.toList());
+
+  private final SessionManager sessionManager;
+  private final int defaultFetchSize;
+  private final String metadataCacheControl;
+
+  public JdbcService(SessionManager sessionManager, int defaultFetchSize) {
+    this(sessionManager, defaultFetchSize, 0);
+  }
+
+  /**
+   * @param defaultFetchSize      the batch size of the fetches without a fetch size
+   * @param metadataMaxAgeSeconds how long the clients may cache the results of the metadata calls,
+   *                              0 to leave it to them
+   */
+  public JdbcService(SessionManager sessionManager, int defaultFetchSize, long metadataMaxAgeSeconds) {
+    this.sessionManager = sessionManager;
+    this.defaultFetchSize = defaultFetchSize;
+    this.metadataCacheControl = metadataMaxAgeSeconds > 0
+      ? ConnectionConfigs.METADATA_CACHE_MAX_AGE + metadataMaxAgeSeconds
+      : null;
+  }
+
+  private interface MetaDataCall {
+    ResultSet apply(DatabaseMetaData metaData) throws SQLException;
+  }
+
+  private void metaData(String connectionId, MetaDataCall call, StreamObserver<DirectStatusResp> respOb) {
+    metaData(connectionId, call, metadataCacheControl, respOb);
+  }
+
+  /**
+   * @param cacheControl the {@link ConnectionConfigs#METADATA_CACHE_CONTROL} hint of the result, may be null
+   */
+  private void metaData(String connectionId, MetaDataCall call, String cacheControl,
+                        StreamObserver<DirectStatusResp> respOb) {
+    try {
+      Session session = sessionManager.getSession(connectionId);
+      ResultSet resultSet = call.apply(session.getConnection().getMetaData());
+      Operation operation = sessionManager.newOperation(session, null, resultSet, null);
+      DirectStatusResp.Builder builder = DirectStatusResp.newBuilder().setIdentifier(operation.getId()).setStatus(OK);
+      if (cacheControl != null) {
+        builder.putExtraInfo(ConnectionConfigs.METADATA_CACHE_CONTROL, cacheControl);
+      }
+      respOb.onNext(builder.build());
+    } catch (Exception e) {
+      respOb.onNext(error(e));
+    }
+    respOb.onCompleted();
+  }
+
+  private int fetchSize(GetNextColumnSet req) {
+    return req.getFetchSize() == 0 ? defaultFetchSize : req.getFetchSize();
+  }
+
+  @Override
+  public void getCatalogs(GetCatalogsReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), DatabaseMetaData::getCatalogs, respOb);
+  }
+
+  @Override
+  public void getSchemas(GetSchemasReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getSchemas(
+      emptyToNull(req.getCatalog()), emptyToNull(req.getSchemaPattern())), respOb);
+  }
+
+  @Override
+  public void getTables(GetTablesReq req, StreamObserver<DirectStatusResp> respOb) {
+    String[] types = req.getTableTypesCount() == 0 ? null : req.getTableTypesList().toArray(new String[0]);
+    metaData(req.getConnectionId(), md -> md.getTables(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchemaPattern()),
+      emptyToNull(req.getTableNamePattern()),
+      types), respOb);
+  }
+
+  @Override
+  public void getTableTypes(GetTableTypesReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), DatabaseMetaData::getTableTypes, respOb);
+  }
+
+  @Override
+  public void getTablePrivileges(GetTablePrivilegesReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getTablePrivileges(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchemaPattern()),
+      emptyToNull(req.getTableNamePattern())), respOb);
+  }
+
+  @Override
+  public void getColumns(GetColumnsReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getColumns(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchemaPattern()),
+      emptyToNull(req.getTablePattern()),
+      emptyToNull(req.getColumnNamePattern())), respOb);
+  }
+
+  @Override
+  public void getColumnPrivileges(GetColumnPrivilegesReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getColumnPrivileges(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchema()),
+      req.getTable(),
+      emptyToNull(req.getColumnNamePattern())), respOb);
+  }
+
+  @Override
+  public void getVersionColumns(GetVersionColumnsReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getVersionColumns(
+      emptyToNull(req.getCatalog()), emptyToNull(req.getSchema()), req.getTable()), respOb);
+  }
+
+  @Override
+  public void getPseudoColumns(GetPseudoColumnsReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getPseudoColumns(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchemaPattern()),
+      emptyToNull(req.getTableNamePattern()),
+      emptyToNull(req.getColumnNamePattern())), respOb);
+  }
+
+  @Override
+  public void getFunctions(GetFunctionsReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getFunctions(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchemaPattern()),
+      emptyToNull(req.getFunctionNamePattern())), respOb);
+  }
+
+  @Override
+  public void getPrimaryKeys(GetPrimaryKeysReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getPrimaryKeys(
+      emptyToNull(req.getCatalog()), emptyToNull(req.getSchema()), req.getTable()), respOb);
+  }
+
+  @Override
+  public void getImportedKeys(GetImportedKeysReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getImportedKeys(
+      emptyToNull(req.getCatalog()), emptyToNull(req.getSchema()), req.getTable()), respOb);
+  }
+
+  @Override
+  public void getExportedKeys(GetImportedKeysReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getExportedKeys(
+      emptyToNull(req.getCatalog()), emptyToNull(req.getSchema()), req.getTable()), respOb);
+  }
+
+  @Override
+  public void getCrossReference(GetCrossReferenceReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getCrossReference(
+      emptyToNull(req.getPrimaryCatalog()),
+      emptyToNull(req.getPrimarySchema()),
+      req.getPrimaryTable(),
+      emptyToNull(req.getForeignCatalog()),
+      emptyToNull(req.getForeignSchema()),
+      req.getForeignTable()), respOb);
+  }
+
+  @Override
+  public void getAttributes(GetAttributesReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getAttributes(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchemaPattern()),
+      emptyToNull(req.getTypeNamePattern()),
+      emptyToNull(req.getAttributeNamePattern())), respOb);
+  }
+
+  @Override
+  public void getBestRowIdentifier(GetBestRowIdentifierReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getBestRowIdentifier(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchema()),
+      req.getTable(),
+      req.getScope(),
+      req.getNullable()), respOb);
+  }
+
+  @Override
+  public void getTypeInfo(GetTypeInfoReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), DatabaseMetaData::getTypeInfo, ConnectionConfigs.METADATA_CACHE_SESSION, respOb);
+  }
+
+  @Override
+  public void getIndexInfo(GetIndexInfoReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getIndexInfo(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchema()),
+      req.getTable(),
+      req.getUnique(),
+      req.getApproximate()), respOb);
+  }
+
+  @Override
+  public void getUDTs(GetUDTsReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getUDTs(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchemaPattern()),
+      emptyToNull(req.getTypeNamePattern()),
+      null), respOb);
+  }
+
+  @Override
+  public void getSuperTypes(GetSuperTypesReq req, StreamObserver<DirectStatusResp> respOb) {
+    metaData(req.getConnectionId(), md -> md.getSuperTypes(
+      emptyToNull(req.getCatalog()),
+      emptyToNull(req.getSchemaPattern()),
+      emptyToNull(req.getTypeNamePattern())), respOb);
+  }
+
+  @Override
+  public void getDatabaseMetaData(GetDatabaseMetaDataReq req, StreamObserver<GetDatabaseMetaDataResp> respOb) {
+    GetDatabaseMetaDataResp.Builder builder = GetDatabaseMetaDataResp.newBuilder();
+    try {
+      DatabaseMetaData md = sessionManager.getSession(req.getConnectionId()).getConnection().getMetaData();
+      List<org.apache.kyuubi.grpc.jdbc.DatabaseMetaData> keys = req.getKeysList();
+      if (keys.isEmpty()) {
+        keys = ALL_DATABASE_META_DATA;
+      }
+      for (org.apache.kyuubi.grpc.jdbc.DatabaseMetaData key : keys) {
+        DatabaseMetaDataEntry.Builder entry = DatabaseMetaDataEntry.newBuilder().setKey(key);
+        try {
+          builder.addEntries(metaDataValue(md, key, entry));
+        } catch (SQLFeatureNotSupportedException e) {
+          builder.addEntries(entry);
+        }
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.clearEntries().setStatus(GrpcUtils.errorStatus(e));
+    }
+    respOb.onNext(builder.build());
+    respOb.onCompleted();
+  }
+
+  private static DatabaseMetaDataEntry.Builder stringValue(DatabaseMetaDataEntry.Builder entry, String value) {
+    return value == null ? entry : entry.setStringValue(value);
+  }
+
+  private static DatabaseMetaDataEntry.Builder metaDataValue(
+    DatabaseMetaData md, org.apache.kyuubi.grpc.jdbc.DatabaseMetaData key, DatabaseMetaDataEntry.Builder entry)
+    throws SQLException {
+    switch (key) {
+      case ALL_PROCEDURES_ARE_CALLABLE:
+        return entry.setBoolValue(md.allProceduresAreCallable());
+      case ALL_TABLES_ARE_SELECTABLE:
+        return entry.setBoolValue(md.allTablesAreSelectable());
+      case URL:
+        return stringValue(entry, md.getURL());
+      case USERNAME:
+        return stringValue(entry, md.getUserName());
+      case IS_READ_ONLY:
+        return entry.setBoolValue(md.isReadOnly());
+      case NULLS_ARE_SORTED_HIGH:
+        return entry.setBoolValue(md.nullsAreSortedHigh());
+      case NULLS_ARE_SORTED_LOW:
+        return entry.setBoolValue(md.nullsAreSortedLow());
+      case NULLS_ARE_SORTED_AT_START:
+        return entry.setBoolValue(md.nullsAreSortedAtStart());
+      case NULLS_ARE_SORTED_AT_END:
+        return entry.setBoolValue(md.nullsAreSortedAtEnd());
+      case DATABASE_PRODUCT_NAME:
+        return stringValue(entry, md.getDatabaseProductName());
+      case DATABASE_PRODUCT_VERSION:
+        return stringValue(entry, md.getDatabaseProductVersion());
+      case USES_LOCAL_FILES:
+        return entry.setBoolValue(md.usesLocalFiles());
+      case USES_LOCAL_FILE_PER_TABLE:
+        return entry.setBoolValue(md.usesLocalFilePerTable());
+      case SUPPORTS_MIXED_CASE_IDENTIFIERS:
+        return entry.setBoolValue(md.supportsMixedCaseIdentifiers());
+      case STORES_UPPER_CASE_IDENTIFIERS:
+        return entry.setBoolValue(md.storesUpperCaseIdentifiers());
+      case STORES_LOWER_CASE_IDENTIFIERS:
+        return entry.setBoolValue(md.storesLowerCaseIdentifiers());
+      case STORES_MIXED_CASE_IDENTIFIERS:
+        return entry.setBoolValue(md.storesMixedCaseIdentifiers());
+      case SUPPORTS_MIXED_CASE_QUOTED_IDENTIFIERS:
+        return entry.setBoolValue(md.supportsMixedCaseQuotedIdentifiers());
+      case STORES_UPPER_CASE_QUOTED_IDENTIFIERS:
+        return entry.setBoolValue(md.storesUpperCaseQuotedIdentifiers());
+      case STORES_LOWER_CASE_QUOTED_IDENTIFIERS:
+        return entry.setBoolValue(md.storesLowerCaseQuotedIdentifiers());
+      case STORES_MIXED_CASE_QUOTED_IDENTIFIERS:
+        return entry.setBoolValue(md.storesMixedCaseQuotedIdentifiers());
+      case IDENTIFIER_QUOTE_STRING:
+        return stringValue(entry, md.getIdentifierQuoteString());
+      case SQL_KEYWORDS:
+        return stringValue(entry, md.getSQLKeywords());
+      case NUMERIC_FUNCTIONS:
+        return stringValue(entry, md.getNumericFunctions());
+      case STRING_FUNCTIONS:
+        return stringValue(entry, md.getStringFunctions());
+      case SYSTEM_FUNCTIONS:
+        return stringValue(entry, md.getSystemFunctions());
+      case TIME_DATE_FUNCTIONS:
+        return stringValue(entry, md.getTimeDateFunctions());
+      case SEARCH_STRING_ESCAPE:
+        return stringValue(entry, md.getSearchStringEscape());
+      case EXTRA_NAME_CHARACTERS:
+        return stringValue(entry, md.getExtraNameCharacters());
+      case SUPPORTS_ALTER_TABLE_WITH_ADD_COLUMN:
+        return entry.setBoolValue(md.supportsAlterTableWithAddColumn());
+      case SUPPORTS_ALTER_TABLE_WITH_DROP_COLUMN:
+        return entry.setBoolValue(md.supportsAlterTableWithDropColumn());
+      case SUPPORTS_COLUMN_ALIASING:
+        return entry.setBoolValue(md.supportsColumnAliasing());
+      case NULL_PLUS_NON_NULL_IS_NULL:
+        return entry.setBoolValue(md.nullPlusNonNullIsNull());
+      case SUPPORTS_CONVERT:
+        return entry.setBoolValue(md.supportsConvert());
+      case SUPPORTS_TABLE_CORRELATION_NAMES:
+        return entry.setBoolValue(md.supportsTableCorrelationNames());
+      case SUPPORTS_DIFFERENT_TABLE_CORRELATION_NAMES:
+        return entry.setBoolValue(md.supportsDifferentTableCorrelationNames());
+      case SUPPORTS_EXPRESSIONS_IN_ORDER_BY:
+        return entry.setBoolValue(md.supportsExpressionsInOrderBy());
+      case SUPPORTS_ORDER_BY_UNRELATED:
+        return entry.setBoolValue(md.supportsOrderByUnrelated());
+      case SUPPORTS_GROUP_BY:
+        return entry.setBoolValue(md.supportsGroupBy());
+      case SUPPORTS_GROUP_BY_UNRELATED:
+        return entry.setBoolValue(md.supportsGroupByUnrelated());
+      case SUPPORTS_GROUP_BY_BEYOND_SELECT:
+        return entry.setBoolValue(md.supportsGroupByBeyondSelect());
+      case SUPPORTS_LIKE_ESCAPE_CLAUSE:
+        return entry.setBoolValue(md.supportsLikeEscapeClause());
+      case SUPPORTS_MULTIPLE_RESULT_SETS:
+        return entry.setBoolValue(md.supportsMultipleResultSets());
+      case SUPPORTS_MULTIPLE_TRANSACTIONS:
+        return entry.setBoolValue(md.supportsMultipleTransactions());
+      case SUPPORTS_NON_NULLABLE_COLUMNS:
+        return entry.setBoolValue(md.supportsNonNullableColumns());
+      default:
+        // a key added after this server was built
+        return entry;
+    }
+  }
+
+  /**
+   * Execute the SQL on a statement owned by the operation. The identifier is the operation id,
+   * or empty with the update count if the SQL returns no result set. The partitions of the
+   * result set are listed if requested.
+   */
+  @Override
+  public void executeSql(ExecuteSqlReq req, StreamObserver<DirectStatusResp> respOb) {
+    Statement statement = null;
+    try {
+      Session session = sessionManager.getSession(req.getConnectionId());
+      statement = session.getConnection().createStatement();
+      statement.setQueryTimeout(req.getQueryTimeout());
+      statement.setMaxRows(req.getMaxRows());
+      if (req.getPartitions() > MAX_PARTITIONS) {
+        throw new SQLException("At most " + MAX_PARTITIONS + " partitions, not " + req.getPartitions(), "22023");
+      }
+      if (statement.execute(req.getSql())) {
+        Operation operation = sessionManager.newOperation(session, null, statement.getResultSet(), statement);
+        DirectStatusResp.Builder builder = DirectStatusResp.newBuilder().setIdentifier(operation.getId()).setStatus(OK);
+        if (req.getPartitions() > 1) {
+          for (Operation partition : sessionManager.newPartitions(operation, req.getPartitions())) {
+            builder.addPartitions(partition.getId());
+          }
+        }
+        respOb.onNext(builder.build());
+      } else {
+        respOb.onNext(DirectStatusResp.newBuilder()
+          .setStatus(OK)
+          .putExtraInfo(JdbcStatementService.UPDATE_COUNT, String.valueOf(statement.getUpdateCount()))
+          .build());
+        statement.close();
+      }
+    } catch (Exception e) {
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException ignored) {
+          // do nothing
+        }
+      }
+      respOb.onNext(error(e));
+    }
+    respOb.onCompleted();
+  }
+
+  @Override
+  public void getResultSetSchema(GetResultSetSchemaReq req, StreamObserver<GetResultSetSchemaResp> respOb) {
+    GetResultSetSchemaResp.Builder builder = GetResultSetSchemaResp.newBuilder();
+    try {
+      builder.setSchema(sessionManager.getOperation(req.getOperationId()).getSchema()).setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    respOb.onNext(builder.build());
+    respOb.onCompleted();
+  }
+
+  @Override
+  public void getNextResultSet(GetNextColumnSet req, StreamObserver<GetNextColumnSetResp> respOb) {
+    GetNextColumnSetResp.Builder builder = GetNextColumnSetResp.newBuilder();
+    try {
+      Operation operation = sessionManager.getOperation(req.getOperationId());
+      builder = operation.fetch(req.getStartRow(), req.getDirection(), fetchSize(req)).setStatus(OK);
+      if (operation.isClosed() && ResultSets.rowCount(builder.getData()) == 0) {
+        // the empty batch ends the result, nothing is left to fetch again
+        sessionManager.closeOperation(operation.getId());
+      }
+      sessionManager.closeExhaustedParent(operation);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    respOb.onNext(builder.build());
+    respOb.onCompleted();
+  }
+
+  /**
+   * Stream the batches of the operation from the start row, the operation is closed once the
+   * stream completes or fails. A stream cancelled by the client leaves the operation open to be
+   * resumed from the row after the last batch received.
+   */
+  @Override
+  public void streamResultSet(GetNextColumnSet req, StreamObserver<GetNextColumnSetResp> respOb) {
+    Operation operation;
+    try {
+      operation = sessionManager.getOperation(req.getOperationId());
+    } catch (SQLException e) {
+      respOb.onNext(GetNextColumnSetResp.newBuilder().setStatus(GrpcUtils.errorStatus(e)).build());
+      respOb.onCompleted();
+      return;
+    }
+    ResultSetStreamer.streamResponses(
+      operation.responses(req.getStartRow(), req.getDirection(), fetchSize(req)),
+      () -> sessionManager.closeOperation(operation.getId()), false, respOb);
+  }
+}
@@ -0,0 +1,904 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.GetWarningsResp;
+import org.apache.kyuubi.grpc.GrpcUtils;
+import org.apache.kyuubi.grpc.ParameterValues;
+import org.apache.kyuubi.grpc.SQLWarning;
+import org.apache.kyuubi.grpc.common.OperationHandle;
+import org.apache.kyuubi.grpc.common.StatementHandle;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+import org.apache.kyuubi.grpc.jdbc.OperationState;
+import org.apache.kyuubi.grpc.jdbc.statement.*;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+import static org.apache.kyuubi.grpc.server.Responses.error;
+import static org.apache.kyuubi.grpc.server.Responses.ok;
+
+/**
+ * The Statement service over the sessions of a {@link SessionManager}.
+ *
+ * <p>A result set is registered as an operation owned by its statement, ExecuteQuery and
+ * GetResultSet return the operation id to fetch it. The update counts are returned in the
+ * {@link #UPDATE_COUNT} extra info, with the statement id as the identifier.
+ *
+ * <p>ExecuteAndFetch creates the statement, executes the SQL and returns the first batch of
+ * its result in a single call, for the short queries dominated by the round trips.
+ *
+ * <p>ExecuteAsync runs the SQL on a separate pool and returns its {@link AsyncOperation} at
+ * once, so a long query holds neither a call nor a worker. Its state is polled with
+ * GetOperationStatus, long-polled with WaitOperation or pushed by WatchOperation. With a
+ * {@link ResultSpool}, the result set is drained into the spool before the operation SUCCEEDED.
+ */
+public class JdbcStatementService extends StatementGrpc.StatementImplBase {
+
+  public static final String UPDATE_COUNT = "kyuubi.grpc.statement.updateCount";
+
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+  public static final long DEFAULT_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private final SessionManager sessionManager;
+  private final int defaultFetchSize;
+  private final Executor asyncExecutor;
+  private final ScheduledExecutorService scheduler;
+
+  public JdbcStatementService(SessionManager sessionManager) {
+    this(sessionManager, DEFAULT_FETCH_SIZE);
+  }
+
+  /**
+   * @param defaultFetchSize the rows of the first batch of ExecuteAndFetch if the request has none
+   */
+  public JdbcStatementService(SessionManager sessionManager, int defaultFetchSize) {
+    this(sessionManager, defaultFetchSize, null, null);
+  }
+
+  /**
+   * @param asyncExecutor runs the SQL of ExecuteAsync, null to not support it
+   * @param scheduler     ends the WaitOperation calls at their timeout
+   */
+  public JdbcStatementService(SessionManager sessionManager, int defaultFetchSize,
+                              Executor asyncExecutor, ScheduledExecutorService scheduler) {
+    this.sessionManager = sessionManager;
+    this.defaultFetchSize = defaultFetchSize;
+    this.asyncExecutor = asyncExecutor;
+    this.scheduler = scheduler;
+  }
+
+  private Statement getStatement(StatementHandle handle) throws SQLException {
+    return sessionManager.getStatement(handle.getId()).getStatement();
+  }
+
+  private DirectStatusResp register(SessionStatement statement, ResultSet resultSet) throws SQLException {
+    Operation operation = sessionManager.newOperation(
+      statement.getSession(), statement.getId(), resultSet, null);
+    statement.setCurrentOperationId(operation.getId());
+    return ok(operation.getId());
+  }
+
+  private static DirectStatusResp updateCount(SessionStatement statement, long count) {
+    return DirectStatusResp.newBuilder()
+      .setStatus(OK)
+      .setIdentifier(statement.getId())
+      .putExtraInfo(UPDATE_COUNT, String.valueOf(count))
+      .build();
+  }
+
+  private static int[] columnIndexes(ExecuteQueryReq request) {
+    return request.getColumnIndexes().getColumnIndexesList().stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private static String[] columnNames(ExecuteQueryReq request) {
+    List<String> names = request.getColumnNames().getColumnNamesList();
+    return names.toArray(new String[0]);
+  }
+
+  /**
+   * Execute the SQL with the generated keys option if any.
+   *
+   * @return true if the result is a result set
+   */
+  private static boolean execute(Statement statement, ExecuteQueryReq request) throws SQLException {
+    switch (request.getAutoGeneratedKeysCase()) {
+      case AUTOGENERATEDKEY:
+        return statement.execute(request.getSql(), GrpcUtils.toJDBC(request.getAutoGeneratedKey()));
+      case COLUMNINDEXES:
+        return statement.execute(request.getSql(), columnIndexes(request));
+      case COLUMNNAMES:
+        return statement.execute(request.getSql(), columnNames(request));
+      default:
+        return statement.execute(request.getSql());
+    }
+  }
+
+  /**
+   * Close the results of the previous execution, as the JDBC statement does.
+   */
+  private void reset(SessionStatement statement) {
+    sessionManager.closeOperationsOf(statement.getSession(), statement.getId());
+    statement.setCurrentOperationId(null);
+  }
+
+  /**
+   * @return the existing statement of the requested id, or a new one on the connection
+   */
+  private SessionStatement openStatement(CreateStatementReq request) throws SQLException {
+    String statementId = request.getStatementId().getId();
+    SessionStatement statement = sessionManager.findStatement(statementId);
+    if (statement == null) {
+      Session session = sessionManager.getSession(request.getConnectionId().getId());
+      Statement jdbcStatement = session.getConnection().createStatement(
+        GrpcUtils.toJDBC(request.getResultSetType()),
+        GrpcUtils.toJDBC(request.getResultSetConcurrency()),
+        GrpcUtils.toJDBC(request.getResultSetHoldability()));
+      statement = sessionManager.createStatement(session, statementId, jdbcStatement);
+    }
+    return statement;
+  }
+
+  @Override
+  public void createStatement(CreateStatementReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      responseObserver.onNext(ok(openStatement(request).getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void closeStatement(StatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      if (!sessionManager.closeStatement(request.getId())) {
+        throw new SQLException("Statement " + request.getId() + " not found", "26000");
+      }
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Execute the SQL, with the generated keys option if any. The identifier is the operation of
+   * the result set, or the statement id with the update count if the SQL returns none.
+   */
+  @Override
+  public void executeQuery(ExecuteQueryReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      SessionStatement statement = sessionManager.getStatement(request.getStatementId().getId());
+      Statement jdbcStatement = statement.getStatement();
+      reset(statement);
+      if (execute(jdbcStatement, request)) {
+        responseObserver.onNext(register(statement, jdbcStatement.getResultSet()));
+      } else {
+        responseObserver.onNext(updateCount(statement, jdbcStatement.getUpdateCount()));
+      }
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Execute the SQL on a new or reused statement and fetch the first batch of its result. The
+   * operation is closed at once if the first batch holds the whole result.
+   */
+  @Override
+  public void executeAndFetch(ExecuteAndFetchReq request, StreamObserver<ExecuteAndFetchResp> responseObserver) {
+    ExecuteAndFetchResp.Builder builder = ExecuteAndFetchResp.newBuilder();
+    SessionStatement statement = null;
+    try {
+      statement = openStatement(request.getStatement());
+      builder.setStatementId(StatementHandle.newBuilder().setId(statement.getId()));
+      // refresh the reused statement and its session
+      sessionManager.getStatement(statement.getId());
+      Statement jdbcStatement = statement.getStatement();
+      reset(statement);
+      // the limit only applies to this call, the reused statement keeps its own
+      int maxRows = jdbcStatement.getMaxRows();
+      if (request.getMaxRows() != 0) {
+        jdbcStatement.setMaxRows(request.getMaxRows());
+      }
+      try {
+        if (jdbcStatement.execute(request.getSql())) {
+          Operation operation = sessionManager.newOperation(
+            statement.getSession(), statement.getId(), jdbcStatement.getResultSet(), null);
+          int fetchSize = request.getFetchSize() == 0 ? defaultFetchSize : request.getFetchSize();
+          builder.setSchema(operation.getSchema()).setFirstBatch(operation.next(fetchSize));
+          if (operation.isClosed()) {
+            sessionManager.closeOperation(operation.getId());
+          } else {
+            statement.setCurrentOperationId(operation.getId());
+            builder.setOperationId(operation.getId()).setHasMoreRows(true);
+          }
+        } else {
+          builder.setUpdateCount(jdbcStatement.getLargeUpdateCount());
+        }
+      } finally {
+        if (request.getMaxRows() != 0) {
+          jdbcStatement.setMaxRows(maxRows);
+        }
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      if (statement != null) {
+        reset(statement);
+      }
+      builder.clearOperationId().clearSchema().clearFirstBatch().clearHasMoreRows()
+        .setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void executeAsync(ExecuteQueryReq request, StreamObserver<OperationStatusResp> responseObserver) {
+    try {
+      if (asyncExecutor == null) {
+        throw new SQLFeatureNotSupportedException("Asynchronous execution is not enabled", "0A000");
+      }
+      SessionStatement statement = sessionManager.getStatement(request.getStatementId().getId());
+      reset(statement);
+      AsyncOperation operation = sessionManager.newAsyncOperation(statement);
+      FutureTask<Void> task = new FutureTask<>(() -> run(operation, request), null);
+      operation.setFuture(task);
+      try {
+        asyncExecutor.execute(task);
+      } catch (RejectedExecutionException e) {
+        sessionManager.closeOperation(operation.getId());
+        throw new SQLException("The server is shutting down", "08006", e);
+      }
+      responseObserver.onNext(operation.getStatus());
+    } catch (Exception e) {
+      responseObserver.onNext(operationError(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  private void run(AsyncOperation operation, ExecuteQueryReq request) {
+    if (!operation.start()) {
+      return;
+    }
+    SessionStatement statement = operation.getStatement();
+    try {
+      Statement jdbcStatement = statement.getStatement();
+      if (execute(jdbcStatement, request)) {
+        Operation result = sessionManager.newOperation(
+          statement.getSession(), operation.getId(), statement.getId(), jdbcStatement.getResultSet(), null);
+        ResultSpool spool = sessionManager.getResultSpool();
+        if (spool != null) {
+          // SUCCEEDED once all the rows are fetched from the engine
+          result.spool(spool.create(), defaultFetchSize);
+        }
+        if (operation.succeed(true, -1)) {
+          statement.setCurrentOperationId(operation.getId());
+        } else {
+          sessionManager.closeOperation(operation.getId());
+        }
+      } else {
+        operation.succeed(false, jdbcStatement.getLargeUpdateCount());
+      }
+    } catch (Exception e) {
+      // a result partly spooled must not be fetched
+      sessionManager.closeResult(operation.getId());
+      operation.fail(e);
+    }
+  }
+
+  private static OperationStatusResp operationError(Exception e) {
+    return OperationStatusResp.newBuilder().setStatus(GrpcUtils.errorStatus(e)).build();
+  }
+
+  @Override
+  public void getOperationStatus(OperationHandle request, StreamObserver<OperationStatusResp> responseObserver) {
+    try {
+      responseObserver.onNext(sessionManager.getAsyncOperation(request.getId()).getStatus());
+    } catch (Exception e) {
+      responseObserver.onNext(operationError(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Completes a WaitOperation call with the first status in another state than the one the
+   * client saw, or the current status at the timeout.
+   */
+  private static final class Waiter implements Consumer<OperationStatusResp> {
+    private final AsyncOperation operation;
+    private final OperationState lastState;
+    private final StreamObserver<OperationStatusResp> observer;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private volatile ScheduledFuture<?> timeout = null;
+
+    Waiter(AsyncOperation operation, OperationState lastState, StreamObserver<OperationStatusResp> observer) {
+      this.operation = operation;
+      this.lastState = lastState;
+      this.observer = observer;
+    }
+
+    @Override
+    public void accept(OperationStatusResp status) {
+      if (status.getState() != lastState || AsyncOperation.isTerminal(status.getState())) {
+        complete(status);
+      }
+    }
+
+    void complete(OperationStatusResp status) {
+      if (!done.compareAndSet(false, true)) {
+        return;
+      }
+      operation.removeListener(this);
+      ScheduledFuture<?> pending = timeout;
+      if (pending != null) {
+        pending.cancel(false);
+      }
+      if (status != null) {
+        observer.onNext(status);
+        observer.onCompleted();
+      }
+    }
+  }
+
+  /**
+   * Long-poll the state of the operation without holding a thread while waiting.
+   */
+  @Override
+  public void waitOperation(WaitOperationReq request, StreamObserver<OperationStatusResp> responseObserver) {
+    AsyncOperation operation;
+    try {
+      operation = sessionManager.getAsyncOperation(request.getOperationId().getId());
+    } catch (Exception e) {
+      responseObserver.onNext(operationError(e));
+      responseObserver.onCompleted();
+      return;
+    }
+    Waiter waiter = new Waiter(operation, request.getLastState(), responseObserver);
+    ((ServerCallStreamObserver<OperationStatusResp>) responseObserver).setOnCancelHandler(() -> waiter.complete(null));
+    operation.addListener(waiter);
+    if (waiter.done.get()) {
+      operation.removeListener(waiter);
+      return;
+    }
+    long timeoutMillis = request.getTimeoutMs() == 0 ? DEFAULT_WAIT_MILLIS : request.getTimeoutMs();
+    waiter.timeout = scheduler.schedule(
+      () -> waiter.complete(operation.getStatus()), timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Push the status of the operation on every change of its state, the stream completes once
+   * the operation terminates.
+   */
+  @Override
+  public void watchOperation(OperationHandle request, StreamObserver<OperationStatusResp> responseObserver) {
+    AsyncOperation operation;
+    try {
+      operation = sessionManager.getAsyncOperation(request.getId());
+    } catch (Exception e) {
+      responseObserver.onNext(operationError(e));
+      responseObserver.onCompleted();
+      return;
+    }
+    Consumer<OperationStatusResp> watcher = status -> {
+      responseObserver.onNext(status);
+      if (AsyncOperation.isTerminal(status.getState())) {
+        responseObserver.onCompleted();
+      }
+    };
+    ((ServerCallStreamObserver<OperationStatusResp>) responseObserver)
+      .setOnCancelHandler(() -> operation.removeListener(watcher));
+    operation.addListener(watcher);
+  }
+
+  @Override
+  public void cancelOperation(OperationHandle request, StreamObserver<OperationStatusResp> responseObserver) {
+    try {
+      AsyncOperation operation = sessionManager.getAsyncOperation(request.getId());
+      operation.cancel();
+      responseObserver.onNext(operation.getStatus());
+    } catch (Exception e) {
+      responseObserver.onNext(operationError(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void executeUpdate(ExecuteQueryReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      SessionStatement statement = sessionManager.getStatement(request.getStatementId().getId());
+      Statement jdbcStatement = statement.getStatement();
+      reset(statement);
+      int count;
+      switch (request.getAutoGeneratedKeysCase()) {
+        case AUTOGENERATEDKEY:
+          count = jdbcStatement.executeUpdate(request.getSql(), GrpcUtils.toJDBC(request.getAutoGeneratedKey()));
+          break;
+        case COLUMNINDEXES:
+          count = jdbcStatement.executeUpdate(request.getSql(), columnIndexes(request));
+          break;
+        case COLUMNNAMES:
+          count = jdbcStatement.executeUpdate(request.getSql(), columnNames(request));
+          break;
+        default:
+          count = jdbcStatement.executeUpdate(request.getSql());
+          break;
+      }
+      responseObserver.onNext(updateCount(statement, count));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void executeLargeUpdate(ExecuteQueryReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      SessionStatement statement = sessionManager.getStatement(request.getStatementId().getId());
+      Statement jdbcStatement = statement.getStatement();
+      reset(statement);
+      long count;
+      switch (request.getAutoGeneratedKeysCase()) {
+        case AUTOGENERATEDKEY:
+          count = jdbcStatement.executeLargeUpdate(
+            request.getSql(), GrpcUtils.toJDBC(request.getAutoGeneratedKey()));
+          break;
+        case COLUMNINDEXES:
+          count = jdbcStatement.executeLargeUpdate(request.getSql(), columnIndexes(request));
+          break;
+        case COLUMNNAMES:
+          count = jdbcStatement.executeLargeUpdate(request.getSql(), columnNames(request));
+          break;
+        default:
+          count = jdbcStatement.executeLargeUpdate(request.getSql());
+          break;
+      }
+      responseObserver.onNext(updateCount(statement, count));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getMaxFieldSize(StatementHandle request, StreamObserver<GetMaxFieldSizeResp> responseObserver) {
+    GetMaxFieldSizeResp.Builder builder = GetMaxFieldSizeResp.newBuilder();
+    try {
+      builder.setStatus(OK).setMax(getStatement(request).getMaxFieldSize());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setMaxFieldSize(SetMaxFieldSizeReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId()).setMaxFieldSize(request.getMax());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getMaxRows(StatementHandle request, StreamObserver<GetMaxRowsResp> responseObserver) {
+    GetMaxRowsResp.Builder builder = GetMaxRowsResp.newBuilder();
+    try {
+      builder.setStatus(OK).setMax(getStatement(request).getMaxRows());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setMaxRows(SetMaxRowsReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId()).setMaxRows(request.getMax());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setEscapeProcessing(SetEscapeProcessingReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId()).setEscapeProcessing(request.getEnable());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getQueryTimeout(StatementHandle request, StreamObserver<GetQueryTimeoutResp> responseObserver) {
+    GetQueryTimeoutResp.Builder builder = GetQueryTimeoutResp.newBuilder();
+    try {
+      builder.setStatus(OK).setTimeout(getStatement(request).getQueryTimeout());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setQueryTimeout(SetQueryTimeoutReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId()).setQueryTimeout(request.getTimeout());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void cancelStatement(StatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request).cancel();
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getWarnings(StatementHandle request, StreamObserver<GetWarningsResp> responseObserver) {
+    GetWarningsResp.Builder builder = GetWarningsResp.newBuilder();
+    try {
+      SQLWarning warnings = GrpcUtils.toProto(getStatement(request).getWarnings());
+      if (warnings != null) {
+        builder.setWarnings(warnings);
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void clearWarnings(StatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request).clearWarnings();
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setCursorName(SetCursorNameReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId()).setCursorName(request.getName());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getMoreResults(GetMoreResultsReq request, StreamObserver<GetMoreResultsResp> responseObserver) {
+    GetMoreResultsResp.Builder builder = GetMoreResultsResp.newBuilder();
+    try {
+      SessionStatement statement = sessionManager.getStatement(request.getStatementId().getId());
+      switch (request.getCloseOperation()) {
+        case KEEP_CURRENT_RESULT:
+          break;
+        case CLOSE_ALL_RESULTS:
+          sessionManager.closeOperationsOf(statement.getSession(), statement.getId());
+          break;
+        default:
+          if (statement.getCurrentOperationId() != null) {
+            sessionManager.closeOperation(statement.getCurrentOperationId());
+          }
+          break;
+      }
+      statement.setCurrentOperationId(null);
+      boolean hasMore = statement.getStatement().getMoreResults(request.getCloseOperation().getNumber() + 1);
+      builder.setStatus(OK).setHasMoreResults(hasMore);
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getFetchDirection(StatementHandle request, StreamObserver<GetFetchDirectionResp> responseObserver) {
+    GetFetchDirectionResp.Builder builder = GetFetchDirectionResp.newBuilder();
+    try {
+      int direction = getStatement(request).getFetchDirection();
+      builder.setStatus(OK).setDirection(FetchDirection.forNumber(direction - ResultSet.FETCH_FORWARD));
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setFetchDirection(SetFetchDirectionReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId())
+        .setFetchDirection(ResultSet.FETCH_FORWARD + request.getDirection().getNumber());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getFetchSize(StatementHandle request, StreamObserver<GetFetchSizeResp> responseObserver) {
+    GetFetchSizeResp.Builder builder = GetFetchSizeResp.newBuilder();
+    try {
+      builder.setStatus(OK).setFetchSize(getStatement(request).getFetchSize());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setFetchSize(SetFetchSizeReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId()).setFetchSize(request.getFetchSize());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void addBatch(AddBatchReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId()).addBatch(request.getSql());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void clearBatch(StatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request).clearBatch();
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void executeBatch(StatementHandle request, StreamObserver<ExecuteBatchResp> responseObserver) {
+    ExecuteBatchResp.Builder builder = ExecuteBatchResp.newBuilder();
+    try {
+      SessionStatement statement = sessionManager.getStatement(request.getId());
+      reset(statement);
+      for (int count : statement.getStatement().executeBatch()) {
+        builder.addUpdateCounts(count);
+      }
+      builder.setStatus(OK);
+    } catch (Exception e) {
+      builder.clearUpdateCounts().setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  /**
+   * Execute the parameter blocks of a SQL template on a statement prepared for the stream, on
+   * the connection of the statement in the first request.
+   */
+  @Override
+  public StreamObserver<ExecuteBatchStreamReq> executeBatchStream(StreamObserver<ExecuteBatchResp> responseObserver) {
+    return new StreamObserver<ExecuteBatchStreamReq>() {
+      private PreparedStatement statement = null;
+      private boolean failed = false;
+
+      @Override
+      public void onNext(ExecuteBatchStreamReq request) {
+        if (failed) {
+          return;
+        }
+        try {
+          if (statement == null) {
+            Session session = sessionManager.getStatement(request.getStatementId().getId()).getSession();
+            statement = session.getConnection().prepareStatement(request.getSql());
+          }
+          ColumnDataSet block = request.getParameters();
+          int rows = block.getColumnsCount() == 0
+            ? request.getRowCount()
+            : ColumnVectors.rowCount(block.getColumns(0));
+          for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < block.getColumnsCount(); c++) {
+              ParameterValues.bind(statement, c + 1, block.getColumns(c), r);
+            }
+            statement.addBatch();
+          }
+          ExecuteBatchResp.Builder builder = ExecuteBatchResp.newBuilder().setStatus(OK);
+          for (int count : statement.executeBatch()) {
+            builder.addUpdateCounts(count);
+          }
+          responseObserver.onNext(builder.build());
+        } catch (Exception e) {
+          failed = true;
+          close();
+          responseObserver.onNext(ExecuteBatchResp.newBuilder().setStatus(GrpcUtils.errorStatus(e)).build());
+          responseObserver.onCompleted();
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        close();
+      }
+
+      @Override
+      public void onCompleted() {
+        close();
+        if (!failed) {
+          responseObserver.onCompleted();
+        }
+      }
+
+      private void close() {
+        if (statement != null) {
+          try {
+            statement.close();
+          } catch (SQLException e) {
+            // do nothing
+          }
+          statement = null;
+        }
+      }
+    };
+  }
+
+  /**
+   * @return the operation of the current result set, registered on the first call
+   */
+  @Override
+  public void getResultSet(StatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      SessionStatement statement = sessionManager.getStatement(request.getId());
+      String current = statement.getCurrentOperationId();
+      if (current != null) {
+        responseObserver.onNext(ok(current));
+      } else {
+        ResultSet resultSet = statement.getStatement().getResultSet();
+        if (resultSet == null) {
+          throw new SQLException("The current result is not a result set", "24000");
+        }
+        responseObserver.onNext(register(statement, resultSet));
+      }
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void getGeneratedKeys(StatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      SessionStatement statement = sessionManager.getStatement(request.getId());
+      ResultSet keys = statement.getStatement().getGeneratedKeys();
+      Operation operation = sessionManager.newOperation(statement.getSession(), statement.getId(), keys, null);
+      responseObserver.onNext(ok(operation.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void isClosed(StatementHandle request, StreamObserver<IsClosedResp> responseObserver) {
+    IsClosedResp.Builder builder = IsClosedResp.newBuilder();
+    try {
+      SessionStatement statement = sessionManager.findStatement(request.getId());
+      builder.setStatus(OK).setIsClosed(statement == null || statement.getStatement().isClosed());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void setPoolable(SetPoolableReq request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request.getStatementId()).setPoolable(request.getPoolable());
+      responseObserver.onNext(ok(request.getStatementId().getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void isPoolable(StatementHandle request, StreamObserver<IsPoolableResp> responseObserver) {
+    IsPoolableResp.Builder builder = IsPoolableResp.newBuilder();
+    try {
+      builder.setStatus(OK).setIsPoolable(getStatement(request).isPoolable());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void closeOnCompletion(StatementHandle request, StreamObserver<DirectStatusResp> responseObserver) {
+    try {
+      getStatement(request).closeOnCompletion();
+      responseObserver.onNext(ok(request.getId()));
+    } catch (Exception e) {
+      responseObserver.onNext(error(e));
+    }
+    responseObserver.onCompleted();
+  }
+
+  @Override
+  public void isCloseOnCompletion(
+    StatementHandle request, StreamObserver<IsCloseOnCompletionResp> responseObserver) {
+    IsCloseOnCompletionResp.Builder builder = IsCloseOnCompletionResp.newBuilder();
+    try {
+      builder.setStatus(OK).setCloseOnCompletion(getStatement(request).isCloseOnCompletion());
+    } catch (Exception e) {
+      builder.setStatus(GrpcUtils.errorStatus(e));
+    }
+    responseObserver.onNext(builder.build());
+    responseObserver.onCompleted();
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.apache.kyuubi.grpc.health.HealthStatus;
+import org.apache.kyuubi.grpc.jdbc.connection.ConnectionGrpc;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the load of a server and derives the health of its services, without touching the
+ * database:
+ * <ul>
+ *   <li>the calls queued for a worker, beyond {@code maxQueuedCalls} all the services are UNHEALTHY</li>
+ *   <li>the lag of the event loops, beyond {@code maxEventLoopLagMillis} all the services are UNHEALTHY</li>
+ *   <li>the open sessions, from {@code maxSessions} on the Connection service is UNHEALTHY as it can
+ *   not take new sessions, the other services keep serving the open ones</li>
+ * </ul>
+ * The lag of an event loop is how long a task submitted to it waits to run, a probe still waiting
+ * counts as lagging since it was submitted. The status of the whole server,
+ * {@link HealthStatusManager#SERVER}, is left to the server lifecycle.
+ */
+class LoadMonitor implements Runnable {
+
+  private final HealthStatusManager health;
+  private final List<String> serviceNames;
+  private final ThreadPoolExecutor workers;
+  private final EventExecutorGroup eventLoops;
+  private final SessionManager sessionManager;
+  private final int maxQueuedCalls;
+  private final long maxEventLoopLagMillis;
+  private final int maxSessions;
+
+  private final AtomicInteger pendingProbes = new AtomicInteger();
+  private final AtomicLong probeLagNanos = new AtomicLong();
+  private long probeStartNanos;
+  private volatile int queuedCalls;
+  private volatile long eventLoopLagMillis;
+
+  LoadMonitor(HealthStatusManager health, List<String> serviceNames, ThreadPoolExecutor workers,
+              EventExecutorGroup eventLoops, SessionManager sessionManager,
+              int maxQueuedCalls, long maxEventLoopLagMillis, int maxSessions) {
+    this.health = health;
+    this.serviceNames = serviceNames;
+    this.workers = workers;
+    this.eventLoops = eventLoops;
+    this.sessionManager = sessionManager;
+    this.maxQueuedCalls = maxQueuedCalls;
+    this.maxEventLoopLagMillis = maxEventLoopLagMillis;
+    this.maxSessions = maxSessions;
+  }
+
+  @Override
+  public synchronized void run() {
+    queuedCalls = workers.getQueue().size();
+    eventLoopLagMillis = TimeUnit.NANOSECONDS.toMillis(probeEventLoops(System.nanoTime()));
+    boolean overloaded = queuedCalls > maxQueuedCalls || eventLoopLagMillis > maxEventLoopLagMillis;
+    boolean full = sessionManager.getSessionCount() >= maxSessions;
+
+    HealthStatus status = overloaded ? HealthStatus.UNHEALTHY : HealthStatus.HEALTHY;
+    for (String serviceName : serviceNames) {
+      if (serviceName.equals(ConnectionGrpc.SERVICE_NAME) && full) {
+        health.setStatus(serviceName, HealthStatus.UNHEALTHY);
+      } else {
+        health.setStatus(serviceName, status);
+      }
+    }
+  }
+
+  /**
+   * @return the lag of the last round of probes, and start the next round once it completed
+   */
+  private long probeEventLoops(long now) {
+    if (pendingProbes.get() > 0) {
+      return Math.max(probeLagNanos.get(), now - probeStartNanos);
+    }
+    long lag = probeLagNanos.getAndSet(0);
+    long start = now;
+    probeStartNanos = start;
+    for (EventExecutor eventLoop : eventLoops) {
+      pendingProbes.incrementAndGet();
+      try {
+        eventLoop.execute(() -> {
+          probeLagNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+          pendingProbes.decrementAndGet();
+        });
+      } catch (RejectedExecutionException e) {
+        // shutting down
+        pendingProbes.decrementAndGet();
+      }
+    }
+    return lag;
+  }
+
+  int getQueuedCalls() {
+    return queuedCalls;
+  }
+
+  long getEventLoopLagMillis() {
+    return eventLoopLagMillis;
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.HandleRegistry;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.apache.kyuubi.grpc.jdbc.ResultSetSchema;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.apache.kyuubi.grpc.jdbc.statement.FetchDirection;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+
+/**
+ * A result set fetched by the clients with GetNextResultSet or StreamResultSet. The result set
+ * is closed as soon as it is exhausted, further fetches return empty batches.
+ *
+ * <p>A result set drained into a {@link ResultSpool} by {@link #spool} is closed at once, its
+ * batches are then served from the spool.
+ *
+ * <p>Every batch is numbered by its first row, so a client can fetch the last batch again when
+ * the response was lost, the batch exhausting the result set too until the empty batch after it
+ * is fetched. The rows of a scrollable result set can be fetched in any order, and the result
+ * set stays open once exhausted.
+ *
+ * <p>The partitions of an operation take turns to fetch its next batch, so several streams can
+ * carry the result, each batch still numbered by its first row in the result set. A partition
+ * can only be fetched forward, from its cursor or its last batch again.
+ */
+public class Operation {
+
+  private final String id;
+  private final Session session;
+  private final String ownerId;
+  private final ResultSet resultSet;
+  private final AutoCloseable owned;
+  private final TypeId[] types;
+  private ResultSetSchema schema;
+  private ResultSpool.SpooledResult spooled = null;
+  private boolean closed = false;
+  private final boolean scrollable;
+  // the number of the row the cursor is on
+  private long position = 0;
+  private long sequence = 0;
+  // kept to fetch it again until the empty batch is fetched, forward only result sets
+  private ColumnDataSet lastBatch = null;
+  private long lastStartRow = 0;
+  // tracks the last access time of the operation
+  private final HandleRegistry<Operation> registry;
+  // the operation whose batches the partition fetches, null if not a partition
+  private final Operation parent;
+  private final List<String> partitionIds = new ArrayList<>();
+
+  /**
+   * @param ownerId        the statement or prepared statement producing the result set, null if none
+   * @param owned          closed together with the operation, e.g. its statement, may be null
+   */
+  Operation(String id, Session session, String ownerId, ResultSet resultSet, AutoCloseable owned,
+            HandleRegistry<Operation> registry) throws SQLException {
+    this.id = id;
+    this.session = session;
+    this.ownerId = ownerId;
+    this.resultSet = resultSet;
+    this.owned = owned;
+    this.registry = registry;
+    this.types = ResultSets.vectorTypes(resultSet.getMetaData());
+    this.scrollable = resultSet.getType() != ResultSet.TYPE_FORWARD_ONLY;
+    this.parent = null;
+  }
+
+  /**
+   * A partition of the parent, see {@link #fetch}.
+   */
+  Operation(String id, Operation parent, HandleRegistry<Operation> registry) {
+    this.id = id;
+    this.session = parent.session;
+    this.ownerId = parent.ownerId;
+    this.resultSet = parent.resultSet;
+    this.owned = null;
+    this.registry = registry;
+    this.types = parent.types;
+    this.scrollable = false;
+    this.parent = parent;
+    synchronized (parent) {
+      parent.partitionIds.add(id);
+    }
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Session getSession() {
+    return session;
+  }
+
+  public String getOwnerId() {
+    return ownerId;
+  }
+
+  /**
+   * @return the operation of the partition, null if not a partition
+   */
+  public Operation getParent() {
+    return parent;
+  }
+
+  public synchronized List<String> getPartitionIds() {
+    return new ArrayList<>(partitionIds);
+  }
+
+  /**
+   * @return true if it was the last partition
+   */
+  synchronized boolean removePartition(String partitionId) {
+    return partitionIds.remove(partitionId) && partitionIds.isEmpty();
+  }
+
+  public synchronized ResultSetSchema getSchema() throws SQLException {
+    if (parent != null) {
+      return parent.getSchema();
+    }
+    if (schema == null) {
+      if (closed) {
+        throw new SQLException("Operation " + id + " is closed", "24000");
+      }
+      schema = ResultSets.schema(resultSet.getMetaData());
+    }
+    return schema;
+  }
+
+  /**
+   * Fetch the whole result set into the spool and close it, e.g. to release the cursor of the
+   * engine before the client fetches the result.
+   *
+   * @param batchSize the rows of the spooled batches, the later fetches return these batches
+   *                  whatever their fetch size
+   */
+  public synchronized void spool(ResultSpool.SpooledResult result, int batchSize) throws SQLException {
+    getSchema();
+    try {
+      while (true) {
+        ColumnDataSet batch = ResultSets.nextBatch(resultSet, types, batchSize);
+        int rows = ResultSets.rowCount(batch);
+        if (rows > 0) {
+          result.append(batch);
+        }
+        if (rows < batchSize) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      result.close();
+      throw new SQLException("Failed to spool operation " + id + ": " + e.getMessage(), "HY000", e);
+    }
+    spooled = result;
+    closeResultSet();
+    if (!spooled.hasNext()) {
+      close();
+    }
+  }
+
+  public synchronized boolean isSpooled() {
+    return spooled != null;
+  }
+
+  /**
+   * @return the next batch of at most fetchSize rows, empty once the result set is exhausted
+   */
+  public synchronized ColumnDataSet next(int fetchSize) throws SQLException {
+    return fetch(0, FetchDirection.FETCH_FORWARD, fetchSize).getData();
+  }
+
+  public synchronized boolean isScrollable() {
+    return scrollable && spooled == null && partitionIds.isEmpty();
+  }
+
+  /**
+   * Fetch a batch of at most fetchSize rows by position.
+   *
+   * @param startRow  the 1-based number of the first row to fetch, 0 to continue from the cursor
+   * @param direction FETCH_REVERSE to fetch the rows backwards, scrollable result sets only
+   * @return the batch with the number of its first row and its sequence number, without status
+   */
+  public synchronized GetNextColumnSetResp.Builder fetch(long startRow, FetchDirection direction, int fetchSize)
+    throws SQLException {
+    boolean reverse = direction == FetchDirection.FETCH_REVERSE;
+    if (parent != null) {
+      return fetchPartition(startRow, reverse, fetchSize);
+    }
+    if (isScrollable()) {
+      if (closed) {
+        throw new SQLException("Operation " + id + " is closed", "24000");
+      }
+      session.touch();
+      registry.touch(id);
+      long first = startRow != 0 ? startRow : reverse ? position - 1 : position + 1;
+      // position the cursor next to the first row, absolute(0) is before the first row
+      resultSet.absolute(row(Math.max(reverse ? first + 1 : first - 1, 0)));
+      ColumnDataSet batch = ResultSets.nextBatch(resultSet, types, fetchSize, reverse);
+      int rows = ResultSets.rowCount(batch);
+      if (rows > 0) {
+        position = reverse ? first - rows + 1 : first + rows - 1;
+      }
+      return GetNextColumnSetResp.newBuilder().setData(batch).setStartRow(Math.max(first, 0)).setSequence(++sequence);
+    }
+    if (reverse) {
+      throw new SQLException("Operation " + id + " can only be fetched forward", "24000");
+    }
+    if (startRow != 0 && startRow != position + 1) {
+      if (lastBatch != null && startRow == lastStartRow) {
+        // a retry
+        return GetNextColumnSetResp.newBuilder().setData(lastBatch).setStartRow(lastStartRow).setSequence(sequence);
+      }
+      throw new SQLException("Operation " + id + " can only be fetched from row " + (position + 1)
+        + " or " + lastStartRow + ", not " + startRow, "24000");
+    }
+    ColumnDataSet batch = forward(fetchSize);
+    lastBatch = closed && ResultSets.rowCount(batch) == 0 ? null : batch;
+    lastStartRow = position + 1;
+    position += ResultSets.rowCount(batch);
+    return GetNextColumnSetResp.newBuilder().setData(batch).setStartRow(lastStartRow).setSequence(++sequence);
+  }
+
+  private GetNextColumnSetResp.Builder fetchPartition(long startRow, boolean reverse, int fetchSize)
+    throws SQLException {
+    if (reverse) {
+      throw new SQLException("Partition " + id + " can only be fetched forward", "24000");
+    }
+    if (startRow != 0) {
+      if (lastBatch != null && startRow == lastStartRow) {
+        return GetNextColumnSetResp.newBuilder().setData(lastBatch).setStartRow(lastStartRow).setSequence(sequence);
+      }
+      throw new SQLException("Partition " + id + " can only be fetched from its cursor or row "
+        + lastStartRow + ", not " + startRow, "24000");
+    }
+    if (closed) {
+      lastBatch = null;
+      return GetNextColumnSetResp.newBuilder().setData(ResultSets.nextBatch(resultSet, types, 0));
+    }
+    session.touch();
+    registry.touch(id);
+    GetNextColumnSetResp.Builder builder = parent.fetch(0, FetchDirection.FETCH_FORWARD, fetchSize);
+    lastBatch = builder.getData();
+    lastStartRow = builder.getStartRow();
+    if (ResultSets.rowCount(lastBatch) < fetchSize) {
+      exhausted();
+    }
+    return builder.setSequence(++sequence);
+  }
+
+  private int row(long row) throws SQLException {
+    if (row > Integer.MAX_VALUE) {
+      throw new SQLException("Row " + row + " is out of range", "HY107");
+    }
+    return (int) row;
+  }
+
+  private ColumnDataSet forward(int fetchSize) throws SQLException {
+    if (closed) {
+      return ResultSets.nextBatch(resultSet, types, 0);
+    }
+    session.touch();
+    registry.touch(id);
+    if (spooled != null) {
+      ColumnDataSet batch;
+      try {
+        batch = spooled.next();
+      } catch (IOException e) {
+        throw new SQLException("Failed to read the spooled operation " + id + ": " + e.getMessage(), "HY000", e);
+      }
+      if (!spooled.hasNext()) {
+        exhausted();
+      }
+      return batch == null ? ResultSets.nextBatch(resultSet, types, 0) : batch;
+    }
+    ColumnDataSet batch = ResultSets.nextBatch(resultSet, types, fetchSize);
+    if (ResultSets.rowCount(batch) < fetchSize) {
+      exhausted();
+    }
+    return batch;
+  }
+
+  /**
+   * The batches from the start row in the direction until the first empty one, see {@link #fetch}.
+   */
+  public Iterator<GetNextColumnSetResp> responses(long startRow, FetchDirection direction, int fetchSize) {
+    return new Iterator<GetNextColumnSetResp>() {
+      private GetNextColumnSetResp pending = null;
+      private long start = startRow;
+      private boolean done = false;
+
+      @Override
+      public boolean hasNext() {
+        if (pending == null && !done) {
+          try {
+            pending = fetch(start, direction, fetchSize).setStatus(OK).build();
+          } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+          }
+          start = 0;
+          if (ResultSets.rowCount(pending.getData()) == 0) {
+            pending = null;
+            done = true;
+          }
+        }
+        return pending != null;
+      }
+
+      @Override
+      public GetNextColumnSetResp next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        GetNextColumnSetResp resp = pending;
+        pending = null;
+        return resp;
+      }
+    };
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  public synchronized void close() {
+    exhausted();
+    lastBatch = null;
+  }
+
+  /**
+   * Close the result set, its last batch is kept for a retry until the empty batch is fetched.
+   */
+  private void exhausted() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (spooled != null) {
+      spooled.close();
+    } else if (parent == null) {
+      closeResultSet();
+    }
+  }
+
+  private void closeResultSet() {
+    try {
+      resultSet.close();
+    } catch (SQLException e) {
+      // do nothing
+    }
+    if (owned != null) {
+      try {
+        owned.close();
+      } catch (Exception e) {
+        // do nothing
+      }
+    }
+  }
+}
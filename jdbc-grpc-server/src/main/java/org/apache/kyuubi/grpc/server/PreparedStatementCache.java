@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * A bounded LRU of the prepared statements of one connection, keyed by SQL, so preparing
+ * the same SQL again reuses the plan of the engine. The least recently used statement is
+ * evicted once the cache is full.
+ *
+ * <p>Each cached statement has a stable id for the clients to execute it by. The callers
+ * reference a statement while they use it, e.g. for the execution or the operation reading
+ * its result set, and release it once done; an evicted statement is only closed once its
+ * last reference is released. Preparing a SQL whose cached statement is referenced prepares
+ * a statement of its own, not cached, so two handles never share an open result set.
+ */
+public class PreparedStatementCache implements AutoCloseable {
+
+  public static final int DEFAULT_CAPACITY = 256;
+
+  private final Connection connection;
+  private final Map<String, Entry> bySql;
+  private final Map<String, Entry> byId = new HashMap<>();
+  private long hits = 0;
+  private long misses = 0;
+
+  public PreparedStatementCache(Connection connection, int capacity) {
+    this.connection = connection;
+    this.bySql = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > capacity) {
+          byId.remove(eldest.getValue().id);
+          evicted(eldest.getValue().plan);
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @return the cached statement of the SQL, prepared on a miss, referenced until released
+   */
+  public synchronized Entry prepare(String sql) throws SQLException {
+    Entry entry = bySql.get(sql);
+    if (entry != null && !entry.plan.statement.isClosed()) {
+      if (entry.plan.references > 0) {
+        // in use, e.g. by the operation reading its result set
+        misses++;
+        Plan plan = new Plan(connection.prepareStatement(sql));
+        Entry own = new Entry(UUID.randomUUID().toString(), sql, plan, false);
+        byId.put(own.id, own);
+        own.plan.references++;
+        return own;
+      }
+      hits++;
+      entry.plan.references++;
+      return entry.reused();
+    }
+    misses++;
+    if (entry != null) {
+      byId.remove(entry.id);
+      evicted(entry.plan);
+    }
+    entry = new Entry(UUID.randomUUID().toString(), sql, new Plan(connection.prepareStatement(sql)), false);
+    bySql.put(sql, entry);
+    byId.put(entry.id, entry);
+    entry.plan.references++;
+    return entry;
+  }
+
+  /**
+   * @return the statement of the id referenced until released, null if it was never prepared
+   * or has been evicted
+   */
+  public synchronized Entry acquire(String id) {
+    Entry entry = byId.get(id);
+    if (entry == null) {
+      return null;
+    }
+    // touch it in the access order
+    bySql.get(entry.sql);
+    entry.plan.references++;
+    return entry;
+  }
+
+  /**
+   * Drop a reference taken by {@link #prepare} or {@link #acquire}, closing the statement if it
+   * was evicted in the meantime.
+   */
+  public synchronized void release(Entry entry) {
+    Plan plan = entry.plan;
+    if (--plan.references == 0 && plan.evicted) {
+      closeQuietly(plan.statement);
+    }
+  }
+
+  public synchronized boolean contains(String id) {
+    return byId.containsKey(id);
+  }
+
+  /**
+   * Remove the statement of the id, closed once it is no longer referenced.
+   */
+  public synchronized void evict(String id) {
+    Entry entry = byId.remove(id);
+    if (entry != null) {
+      bySql.remove(entry.sql, entry);
+      evicted(entry.plan);
+    }
+  }
+
+  /**
+   * Drop the handle of a statement that is not cached, closed once it is no longer referenced.
+   * A cached statement stays for the later Prepare calls of its SQL.
+   *
+   * @return whether the handle was dropped
+   */
+  public synchronized boolean discard(String id) {
+    Entry entry = byId.get(id);
+    if (entry == null || bySql.get(entry.sql) == entry) {
+      return false;
+    }
+    evict(id);
+    return true;
+  }
+
+  // with the lock held
+  private void evicted(Plan plan) {
+    plan.evicted = true;
+    if (plan.references == 0) {
+      closeQuietly(plan.statement);
+    }
+  }
+
+  public synchronized int size() {
+    return bySql.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Close all the statements, referenced or not, e.g. together with the connection.
+   */
+  @Override
+  public synchronized void close() {
+    byId.values().forEach(entry -> {
+      entry.plan.evicted = true;
+      closeQuietly(entry.plan.statement);
+    });
+    bySql.clear();
+    byId.clear();
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      // do nothing
+    }
+  }
+
+  // the statement shared by the entries of a SQL, guarded by the cache
+  private static final class Plan {
+    final PreparedStatement statement;
+    int references = 0;
+    boolean evicted = false;
+
+    Plan(PreparedStatement statement) {
+      this.statement = statement;
+    }
+  }
+
+  public static class Entry {
+    private final String id;
+    private final String sql;
+    private final Plan plan;
+    private final boolean cached;
+
+    private Entry(String id, String sql, Plan plan, boolean cached) {
+      this.id = id;
+      this.sql = sql;
+      this.plan = plan;
+      this.cached = cached;
+    }
+
+    private Entry reused() {
+      return new Entry(id, sql, plan, true);
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public PreparedStatement getStatement() {
+      return plan.statement;
+    }
+
+    /**
+     * @return whether it was served from the cache
+     */
+    public boolean isCached() {
+      return cached;
+    }
+  }
+}
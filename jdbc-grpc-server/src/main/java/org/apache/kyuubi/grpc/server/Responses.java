@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.GrpcUtils;
+import org.apache.kyuubi.grpc.jdbc.DirectStatusResp;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+
+final class Responses {
+
+  private Responses() {
+  }
+
+  static DirectStatusResp ok(String id) {
+    return DirectStatusResp.newBuilder()
+      .setStatus(OK)
+      .setIdentifier(id)
+      .build();
+  }
+
+  static DirectStatusResp error(Exception e) {
+    return DirectStatusResp.newBuilder()
+      .setStatus(GrpcUtils.errorStatus(e))
+      .build();
+  }
+
+  /**
+   * Proto3 strings can not be null, an empty name or pattern does not narrow the search.
+   */
+  static String emptyToNull(String value) {
+    return value == null || value.isEmpty() ? null : value;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.GrpcUtils;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+
+import java.util.Iterator;
+
+import static org.apache.kyuubi.grpc.GrpcUtils.OK;
+
+/**
+ * Server side pump of the Jdbc.StreamResultSet RPC. It pulls the next batch from the source
+ * only while the transport is ready to send, and resumes from the onReady callback after the
+ * client drains its flow control window, so the source is never read ahead of the consumer.
+ *
+ * <p>The source is closed once the stream is completed, failed or cancelled by the client,
+ * unless asked to keep it open on cancel so the client can resume the stream later.
+ */
+public class ResultSetStreamer implements Runnable {
+
+  private final ServerCallStreamObserver<GetNextColumnSetResp> observer;
+  private final Iterator<GetNextColumnSetResp> responses;
+  private final AutoCloseable source;
+  private final boolean closeOnCancel;
+  private volatile boolean cancelled = false;
+  private boolean done = false;
+
+  private ResultSetStreamer(
+    ServerCallStreamObserver<GetNextColumnSetResp> observer,
+    Iterator<GetNextColumnSetResp> responses,
+    AutoCloseable source,
+    boolean closeOnCancel) {
+    this.observer = observer;
+    this.responses = responses;
+    this.source = source;
+    this.closeOnCancel = closeOnCancel;
+  }
+
+  /**
+   * Start streaming the batches, must be called within the service method.
+   *
+   * @param batches the result batches
+   * @param source  closed once the stream terminates, may be null
+   * @param respOb  the response observer of the service method
+   */
+  public static void stream(
+    Iterator<ColumnDataSet> batches,
+    AutoCloseable source,
+    StreamObserver<GetNextColumnSetResp> respOb) {
+    Iterator<GetNextColumnSetResp> responses = new Iterator<GetNextColumnSetResp>() {
+      @Override
+      public boolean hasNext() {
+        return batches.hasNext();
+      }
+
+      @Override
+      public GetNextColumnSetResp next() {
+        return GetNextColumnSetResp.newBuilder().setStatus(OK).setData(batches.next()).build();
+      }
+    };
+    streamResponses(responses, source, true, respOb);
+  }
+
+  /**
+   * Start streaming the responses, must be called within the service method.
+   *
+   * @param responses     the responses with their batch, status and row numbers
+   * @param source        closed once the stream terminates, may be null
+   * @param closeOnCancel false to keep the source open when the client cancels the stream
+   * @param respOb        the response observer of the service method
+   */
+  public static void streamResponses(
+    Iterator<GetNextColumnSetResp> responses,
+    AutoCloseable source,
+    boolean closeOnCancel,
+    StreamObserver<GetNextColumnSetResp> respOb) {
+    ServerCallStreamObserver<GetNextColumnSetResp> observer =
+      (ServerCallStreamObserver<GetNextColumnSetResp>) respOb;
+    ResultSetStreamer streamer = new ResultSetStreamer(observer, responses, source, closeOnCancel);
+    observer.setOnCancelHandler(streamer::cancel);
+    observer.setOnReadyHandler(streamer);
+    streamer.run();
+  }
+
+  private void cancel() {
+    cancelled = true;
+    synchronized (this) {
+      if (!done) {
+        done = true;
+        if (closeOnCancel) {
+          closeSource();
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized void run() {
+    if (done) {
+      return;
+    }
+    try {
+      while (!cancelled && observer.isReady()) {
+        if (!responses.hasNext()) {
+          done = true;
+          closeSource();
+          observer.onCompleted();
+          return;
+        }
+        observer.onNext(responses.next());
+      }
+    } catch (Exception e) {
+      done = true;
+      if (closeOnCancel || !cancelled) {
+        closeSource();
+      }
+      if (!cancelled) {
+        observer.onNext(GetNextColumnSetResp.newBuilder().setStatus(GrpcUtils.errorStatus(e)).build());
+        observer.onCompleted();
+      }
+    }
+  }
+
+  private void closeSource() {
+    if (source != null) {
+      try {
+        source.close();
+      } catch (Exception e) {
+        // do nothing
+      }
+    }
+  }
+}
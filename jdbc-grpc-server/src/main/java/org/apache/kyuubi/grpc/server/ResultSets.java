@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.ParameterValues;
+import org.apache.kyuubi.grpc.jdbc.*;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+
+/**
+ * Converts JDBC result sets to the {@link ResultSetSchema} and {@link ColumnDataSet} batches
+ * of the protocol.
+ */
+public class ResultSets {
+
+  private ResultSets() {
+  }
+
+  /**
+   * @return the type of the typed vector carrying the column, types without a typed vector,
+   * e.g. ARRAY or STRUCT, are carried as their string representation
+   */
+  public static TypeId vectorType(int sqlType) {
+    TypeId typeId = ParameterValues.fromSqlType(sqlType);
+    return ColumnVectors.isSupported(typeId) ? typeId : TypeId.STRING;
+  }
+
+  public static TypeId[] vectorTypes(ResultSetMetaData metaData) throws SQLException {
+    TypeId[] types = new TypeId[metaData.getColumnCount()];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = vectorType(metaData.getColumnType(i + 1));
+    }
+    return types;
+  }
+
+  public static ResultSetSchema schema(ResultSetMetaData metaData) throws SQLException {
+    ResultSetSchema.Builder schema = ResultSetSchema.newBuilder();
+    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      DataType.Builder type = DataType.newBuilder()
+        .setTypeId(vectorType(metaData.getColumnType(i)))
+        .setTypeName(nullToEmpty(metaData.getColumnTypeName(i)))
+        .setPrecision(Math.max(metaData.getPrecision(i), 0))
+        .setScale(Math.max(metaData.getScale(i), 0))
+        .setDisplaySize(Math.max(metaData.getColumnDisplaySize(i), 0));
+      schema.addColumns(ColumnInfo.newBuilder()
+        .setColumnIndex(i)
+        .setAutoIncrement(metaData.isAutoIncrement(i))
+        .setCaseSensitive(metaData.isCaseSensitive(i))
+        .setSearchable(metaData.isSearchable(i))
+        .setCurrency(metaData.isCurrency(i))
+        .setNullable(metaData.isNullable(i))
+        .setSigned(metaData.isSigned(i))
+        .setColumnLabel(nullToEmpty(metaData.getColumnLabel(i)))
+        .setColumnName(nullToEmpty(metaData.getColumnName(i)))
+        .setSchemaName(nullToEmpty(metaData.getSchemaName(i)))
+        .setTableName(nullToEmpty(metaData.getTableName(i)))
+        .setCatalogName(nullToEmpty(metaData.getCatalogName(i)))
+        .setReadOnly(metaData.isReadOnly(i))
+        .setWritable(metaData.isWritable(i))
+        .setDefinitelyWritable(metaData.isDefinitelyWritable(i))
+        .setClassName(nullToEmpty(metaData.getColumnClassName(i)))
+        .setType(type));
+    }
+    return schema.build();
+  }
+
+  /**
+   * Read at most fetchSize rows from the current position of the result set.
+   *
+   * @param types the vector types of the columns, see {@link #vectorTypes(ResultSetMetaData)}
+   */
+  public static ColumnDataSet nextBatch(ResultSet rs, TypeId[] types, int fetchSize) throws SQLException {
+    return nextBatch(rs, types, fetchSize, false);
+  }
+
+  /**
+   * @param reverse read the rows with {@link ResultSet#previous()} instead, scrollable result sets only
+   */
+  public static ColumnDataSet nextBatch(ResultSet rs, TypeId[] types, int fetchSize, boolean reverse)
+    throws SQLException {
+    ColumnVectors.Builder[] columns = new ColumnVectors.Builder[types.length];
+    for (int i = 0; i < types.length; i++) {
+      columns[i] = ColumnVectors.builder(types[i]);
+    }
+    int rows = 0;
+    while (rows < fetchSize && (reverse ? rs.previous() : rs.next())) {
+      for (int i = 0; i < types.length; i++) {
+        columns[i].add(getValue(rs, i + 1, types[i]));
+      }
+      rows++;
+    }
+    ColumnDataSet.Builder batch = ColumnDataSet.newBuilder();
+    for (ColumnVectors.Builder column : columns) {
+      batch.addColumns(column.build());
+    }
+    return batch.build();
+  }
+
+  public static int rowCount(ColumnDataSet batch) {
+    return batch.getColumnsCount() == 0 ? 0 : ColumnVectors.rowCount(batch.getColumns(0));
+  }
+
+  private static Object getValue(ResultSet rs, int index, TypeId type) throws SQLException {
+    Object value;
+    switch (type) {
+      case BOOLEAN:
+        value = rs.getBoolean(index);
+        break;
+      case TINYINT:
+      case SMALLINT:
+      case INT:
+      case YEAR_MONTH_INTERVAL:
+        value = rs.getInt(index);
+        break;
+      case LONG:
+      case DAY_TIME_INTERVAL:
+        value = rs.getLong(index);
+        break;
+      case FLOAT:
+        value = rs.getFloat(index);
+        break;
+      case DOUBLE:
+        value = rs.getDouble(index);
+        break;
+      case DECIMAL:
+        value = rs.getBigDecimal(index);
+        break;
+      case DATE:
+        value = rs.getDate(index);
+        break;
+      case TIME:
+        value = rs.getTime(index);
+        break;
+      case TIMESTAMP_WITH_TIMEZONE:
+        value = rs.getObject(index, OffsetDateTime.class);
+        break;
+      case TIMESTAMP:
+      case TIMESTAMP_LOCAL_TIMEZONE:
+        value = rs.getTimestamp(index);
+        break;
+      case BINARY:
+        value = rs.getBytes(index);
+        break;
+      case NULL:
+        return null;
+      default:
+        value = rs.getString(index);
+        break;
+    }
+    return rs.wasNull() ? null : value;
+  }
+
+  private static String nullToEmpty(String value) {
+    return value == null ? "" : value;
+  }
+}
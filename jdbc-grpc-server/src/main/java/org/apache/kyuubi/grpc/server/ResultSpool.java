@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Buffers the batches of the results until the clients fetch them. The first batches of a result
+ * stay on heap up to a per result threshold, the next ones are written to a temporary file of the
+ * spool directory and served from read-only mappings of the file, so a large result costs page
+ * cache rather than heap.
+ *
+ * <p>The heap held by all the results is bounded by a budget, once it is exceeded the batches of
+ * the least recently used results are spilled to their files. A file is deleted once its result
+ * is closed.
+ *
+ * <p>Every result does its I/O under a lock of its own, the lock of the spool only guards the
+ * accounting of the heap, so the results spooled or fetched concurrently do not wait for each
+ * other's files.
+ */
+public class ResultSpool implements Closeable {
+
+  public static final long DEFAULT_MEMORY_THRESHOLD = 4L << 20;
+  public static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+
+  private final Path directory;
+  private final long memoryThreshold;
+  private final long memoryBudget;
+  private final Set<SpooledResult> open = new HashSet<>();
+  // the results holding batches on heap, least recently used first
+  private final LinkedHashMap<SpooledResult, Boolean> inMemory = new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryUsed = 0;
+  private long spilledBytes = 0;
+  private boolean closed = false;
+
+  /**
+   * @param directory       where to create the files, created if missing
+   * @param memoryThreshold the bytes of batches a result keeps on heap
+   * @param memoryBudget    the bytes of batches all the results keep on heap
+   */
+  public ResultSpool(Path directory, long memoryThreshold, long memoryBudget) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.memoryThreshold = memoryThreshold;
+    this.memoryBudget = memoryBudget;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return the bytes of the batches held on heap
+   */
+  public synchronized long getMemoryUsed() {
+    return memoryUsed;
+  }
+
+  /**
+   * @return the bytes of the batches written to files since the spool was created
+   */
+  public synchronized long getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  public synchronized SpooledResult create() throws IOException {
+    if (closed) {
+      throw new IOException("The result spool is closed");
+    }
+    SpooledResult result = new SpooledResult();
+    open.add(result);
+    return result;
+  }
+
+  /**
+   * Account the bytes a result added to or removed from the heap, with the lock of the result held.
+   */
+  private synchronized void account(SpooledResult result, long bytes, boolean onHeap) {
+    memoryUsed += bytes;
+    if (onHeap) {
+      inMemory.put(result, Boolean.TRUE);
+    } else {
+      inMemory.remove(result);
+    }
+  }
+
+  private synchronized void spilled(long bytes) {
+    spilledBytes += bytes;
+  }
+
+  private synchronized void closed(SpooledResult result) {
+    open.remove(result);
+  }
+
+  /**
+   * Spill the least recently used results until the heap is back within the budget, without
+   * the lock of any result held.
+   */
+  private void spillOver() throws IOException {
+    while (true) {
+      SpooledResult eldest;
+      synchronized (this) {
+        if (memoryUsed <= memoryBudget || inMemory.isEmpty()) {
+          return;
+        }
+        eldest = inMemory.keySet().iterator().next();
+      }
+      eldest.spill();
+    }
+  }
+
+  @Override
+  public void close() {
+    List<SpooledResult> results;
+    synchronized (this) {
+      closed = true;
+      results = new ArrayList<>(open);
+    }
+    for (SpooledResult result : results) {
+      result.close();
+    }
+  }
+
+  private static final class Batch {
+    // on heap until spilled
+    ColumnDataSet data;
+    int size;
+    long offset;
+  }
+
+  /**
+   * The batches of one result, fetched in the order they were appended.
+   */
+  public final class SpooledResult implements Closeable {
+    private final List<Batch> batches = new ArrayList<>();
+    private int next = 0;
+    private long memoryBytes = 0;
+    private FileChannel channel = null;
+    private long fileLength = 0;
+    // the mapping of the file from mappedOffset, replaced once the fetches move past it
+    private MappedByteBuffer mapped = null;
+    private long mappedOffset = 0;
+    private boolean closed = false;
+
+    private SpooledResult() {
+    }
+
+    private void ensureOpen() throws IOException {
+      if (closed) {
+        throw new IOException("The spooled result is closed");
+      }
+    }
+
+    public void append(ColumnDataSet data) throws IOException {
+      synchronized (this) {
+        ensureOpen();
+        Batch batch = new Batch();
+        batch.size = data.getSerializedSize();
+        batches.add(batch);
+        if (memoryBytes + batch.size > memoryThreshold) {
+          write(batch, data);
+          return;
+        }
+        batch.data = data;
+        memoryBytes += batch.size;
+        account(this, batch.size, true);
+      }
+      spillOver();
+    }
+
+    public synchronized boolean hasNext() {
+      return !closed && next < batches.size();
+    }
+
+    /**
+     * @return the next batch, null once all of them are fetched
+     */
+    public ColumnDataSet next() throws IOException {
+      ByteBuffer buffer;
+      synchronized (this) {
+        ensureOpen();
+        if (next >= batches.size()) {
+          return null;
+        }
+        Batch batch = batches.set(next++, null);
+        if (batch.data != null) {
+          memoryBytes -= batch.size;
+          account(this, -batch.size, memoryBytes > 0);
+          return batch.data;
+        }
+        buffer = slice(batch.offset, batch.size);
+      }
+      // the mapping outlives the file, decoding does not need the lock
+      return ColumnDataSet.parseFrom(buffer);
+    }
+
+    // with the lock of the result held
+    private void write(Batch batch, ColumnDataSet data) throws IOException {
+      if (channel == null) {
+        Path file = Files.createTempFile(directory, "result-", ".spool");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.DELETE_ON_CLOSE);
+      }
+      ByteBuffer bytes = ByteBuffer.wrap(data.toByteArray());
+      batch.offset = fileLength;
+      while (bytes.hasRemaining()) {
+        fileLength += channel.write(bytes, fileLength);
+      }
+      spilled(batch.size);
+    }
+
+    /**
+     * Every byte of the file is mapped once: the batches are fetched in order, so a batch beyond
+     * the current mapping starts a new one over the rest of the file, and the previous mapping
+     * is released together with the last batch sliced from it.
+     */
+    // with the lock of the result held
+    private ByteBuffer slice(long offset, int size) throws IOException {
+      if (mapped == null || offset < mappedOffset || offset + size > mappedOffset + mapped.capacity()) {
+        long length = Math.min(fileLength - offset, Integer.MAX_VALUE);
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        mappedOffset = offset;
+      }
+      ByteBuffer buffer = mapped.duplicate();
+      buffer.position((int) (offset - mappedOffset));
+      buffer.limit((int) (offset - mappedOffset) + size);
+      return buffer.slice();
+    }
+
+    /**
+     * Move the batches left on heap to the file.
+     */
+    private void spill() throws IOException {
+      synchronized (this) {
+        for (int i = next; i < batches.size(); i++) {
+          Batch batch = batches.get(i);
+          if (batch.data != null) {
+            write(batch, batch.data);
+            batch.data = null;
+          }
+        }
+        account(this, -memoryBytes, false);
+        memoryBytes = 0;
+      }
+    }
+
+    /**
+     * Release the batches and delete the file.
+     */
+    @Override
+    public void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        account(this, -memoryBytes, false);
+        memoryBytes = 0;
+        batches.clear();
+        mapped = null;
+        if (channel != null) {
+          try {
+            channel.close();
+          } catch (IOException e) {
+            // do nothing
+          }
+        }
+      }
+      closed(this);
+    }
+  }
+}
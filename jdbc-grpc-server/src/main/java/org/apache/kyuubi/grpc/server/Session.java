@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.HandleRegistry;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The server side state of a client connection: the JDBC connection borrowed from the
+ * {@link javax.sql.DataSource} and the ids of the statements, operations and prepared
+ * statements created on it, which are released together with the session.
+ */
+public class Session {
+
+  private final String id;
+  private final Connection connection;
+  private final PreparedStatementCache preparedStatements;
+  final Set<String> statementIds = ConcurrentHashMap.newKeySet();
+  final Set<String> operationIds = ConcurrentHashMap.newKeySet();
+  final Set<String> preparedIds = ConcurrentHashMap.newKeySet();
+  // savepoints by name, or by id for the unnamed ones
+  final Map<String, java.sql.Savepoint> savepoints = new ConcurrentHashMap<>();
+  // tracks the last access time of the session
+  private final HandleRegistry<Session> registry;
+
+  Session(String id, Connection connection, int preparedStatementCacheSize, HandleRegistry<Session> registry) {
+    this.id = id;
+    this.connection = connection;
+    this.preparedStatements = new PreparedStatementCache(connection, preparedStatementCacheSize);
+    this.registry = registry;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Connection getConnection() {
+    return connection;
+  }
+
+  public PreparedStatementCache getPreparedStatements() {
+    return preparedStatements;
+  }
+
+  /**
+   * @return the last access time in milliseconds, -1 once the session is closed
+   */
+  public long getLastAccessTime() {
+    return registry.getLastAccessTime(id);
+  }
+
+  void touch() {
+    registry.touch(id);
+  }
+
+  void close() throws SQLException {
+    preparedStatements.close();
+    connection.close();
+  }
+}
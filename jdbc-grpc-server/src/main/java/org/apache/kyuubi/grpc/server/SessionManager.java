@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.HandleRegistry;
+import org.apache.kyuubi.grpc.server.HandleReaper.HandleType;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The registries of the sessions, statements, operations and prepared statements of a server,
+ * all of them keyed by the ids handed out to the clients. Every lookup of a handle refreshes the
+ * last access time of the handle and its session. The handles idle for longer than the timeouts
+ * of the {@link HandleReaper} are closed by {@link #reapIdleHandles(long)}, the operations running
+ * in the background and their session are never idle.
+ *
+ * <p>Lookups of unknown handles fail with a {@link SQLException}: 08003 for connections,
+ * 26000 for statements and prepared statements, 24000 for operations.
+ */
+public class SessionManager {
+
+  private final DataSource dataSource;
+  private final HandleReaper reaper;
+  private final int preparedStatementCacheSize;
+  private final HandleRegistry<Session> sessions = new HandleRegistry<>();
+  private final HandleRegistry<SessionStatement> statements = new HandleRegistry<>();
+  private final HandleRegistry<Operation> operations = new HandleRegistry<>();
+  // share the ids of their result sets in operations
+  private final HandleRegistry<AsyncOperation> asyncOperations = new HandleRegistry<>();
+  // prepared statement id -> session
+  private final HandleRegistry<Session> preparedOwners = new HandleRegistry<>();
+  private ResultSpool resultSpool = null;
+
+  public SessionManager(DataSource dataSource, HandleReaper reaper, int preparedStatementCacheSize) {
+    this.dataSource = dataSource;
+    this.reaper = reaper;
+    this.preparedStatementCacheSize = preparedStatementCacheSize;
+  }
+
+  public HandleReaper getReaper() {
+    return reaper;
+  }
+
+  /**
+   * Buffer the results of the operations running in the background in the spool, null to let
+   * the clients fetch them from the cursors of the engine.
+   */
+  public SessionManager resultSpool(ResultSpool resultSpool) {
+    this.resultSpool = resultSpool;
+    return this;
+  }
+
+  public ResultSpool getResultSpool() {
+    return resultSpool;
+  }
+
+  static String newId() {
+    return UUID.randomUUID().toString();
+  }
+
+  /**
+   * Borrow a connection from the data source for a new session, or return the existing session
+   * of the id.
+   *
+   * @param id       the id requested by the client, a new one is generated if null or empty
+   * @param user     the user to connect as, null to use the data source defaults
+   * @param password the password of the user
+   */
+  public Session openSession(String id, String user, String password) throws SQLException {
+    if (id != null && !id.isEmpty()) {
+      Session existing = sessions.get(id);
+      if (existing != null) {
+        return existing;
+      }
+    } else {
+      id = newId();
+    }
+    Connection connection = user == null ? dataSource.getConnection() : dataSource.getConnection(user, password);
+    Session session = new Session(id, connection, preparedStatementCacheSize, sessions);
+    Session previous = sessions.putIfAbsent(id, session);
+    if (previous != null) {
+      // opened concurrently with the same id
+      connection.close();
+      return previous;
+    }
+    reaper.schedule(HandleType.SESSION, id, sessions.getLastAccessTime(id));
+    return session;
+  }
+
+  public Session getSession(String id) throws SQLException {
+    Session session = sessions.get(id);
+    if (session == null) {
+      throw new SQLException("Connection " + id + " not found", "08003");
+    }
+    return session;
+  }
+
+  public Collection<Session> getSessions() {
+    return sessions.values();
+  }
+
+  /**
+   * Close the session and release everything created on it.
+   *
+   * @return false if the session does not exist
+   */
+  public boolean closeSession(String id) throws SQLException {
+    Session session = sessions.remove(id);
+    if (session == null) {
+      return false;
+    }
+    release(session);
+    session.close();
+    return true;
+  }
+
+  /**
+   * Remove the session without closing its connection, e.g. after aborting it.
+   */
+  public Session removeSession(String id) throws SQLException {
+    Session session = sessions.remove(id);
+    if (session == null) {
+      throw new SQLException("Connection " + id + " not found", "08003");
+    }
+    release(session);
+    return session;
+  }
+
+  private void release(Session session) {
+    for (String operationId : session.operationIds) {
+      AsyncOperation asyncOperation = asyncOperations.remove(operationId);
+      if (asyncOperation != null) {
+        asyncOperation.close();
+      }
+      Operation operation = operations.remove(operationId);
+      if (operation != null) {
+        operation.close();
+      }
+    }
+    for (String statementId : session.statementIds) {
+      SessionStatement statement = statements.remove(statementId);
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          // do nothing
+        }
+      }
+    }
+    for (String preparedId : session.preparedIds) {
+      preparedOwners.remove(preparedId);
+    }
+  }
+
+  public SessionStatement createStatement(Session session, String id, Statement statement) {
+    if (id == null || id.isEmpty()) {
+      id = newId();
+    }
+    SessionStatement sessionStatement = new SessionStatement(id, session, statement);
+    statements.put(id, sessionStatement);
+    session.statementIds.add(id);
+    reaper.schedule(HandleType.STATEMENT, id, statements.getLastAccessTime(id));
+    return sessionStatement;
+  }
+
+  public SessionStatement getStatement(String id) throws SQLException {
+    SessionStatement statement = statements.get(id);
+    if (statement == null) {
+      throw new SQLException("Statement " + id + " not found", "26000");
+    }
+    statement.getSession().touch();
+    return statement;
+  }
+
+  /**
+   * @return the statement of the id if it exists, without refreshing its session
+   */
+  public SessionStatement findStatement(String id) {
+    return id == null ? null : statements.peek(id);
+  }
+
+  public boolean closeStatement(String id) throws SQLException {
+    SessionStatement statement = statements.remove(id);
+    if (statement == null) {
+      return false;
+    }
+    statement.getSession().statementIds.remove(id);
+    closeOperationsOf(statement.getSession(), id);
+    statement.close();
+    return true;
+  }
+
+  /**
+   * Register a result set for the clients to fetch. The callers close the previous operations
+   * of the owner with {@link #closeOperationsOf} before executing it again.
+   *
+   * @param ownerId        the statement or prepared statement producing the result set, may be null
+   * @param owned          closed together with the operation, e.g. its statement, may be null
+   */
+  public Operation newOperation(Session session, String ownerId, ResultSet resultSet, AutoCloseable owned)
+    throws SQLException {
+    return newOperation(session, newId(), ownerId, resultSet, owned);
+  }
+
+  /**
+   * Register a result set under the id of the {@link AsyncOperation} producing it.
+   */
+  public Operation newOperation(Session session, String id, String ownerId, ResultSet resultSet,
+                                AutoCloseable owned) throws SQLException {
+    Operation operation = new Operation(id, session, ownerId, resultSet, owned, operations);
+    operations.put(id, operation);
+    session.operationIds.add(id);
+    reaper.schedule(HandleType.OPERATION, id, operations.getLastAccessTime(id));
+    return operation;
+  }
+
+  /**
+   * Register the partitions of an operation, fetched by the clients like operations. The
+   * operation is closed with its last partition.
+   */
+  public List<Operation> newPartitions(Operation operation, int count) {
+    List<Operation> partitions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Operation partition = new Operation(newId(), operation, operations);
+      operations.put(partition.getId(), partition);
+      operation.getSession().operationIds.add(partition.getId());
+      reaper.schedule(HandleType.OPERATION, partition.getId(), operations.getLastAccessTime(partition.getId()));
+      partitions.add(partition);
+    }
+    return partitions;
+  }
+
+  /**
+   * Register a SQL to execute in the background on the statement, owned by the statement.
+   */
+  public AsyncOperation newAsyncOperation(SessionStatement statement) {
+    AsyncOperation operation = new AsyncOperation(newId(), statement);
+    asyncOperations.put(operation.getId(), operation);
+    statement.getSession().operationIds.add(operation.getId());
+    reaper.schedule(HandleType.OPERATION, operation.getId(), asyncOperations.getLastAccessTime(operation.getId()));
+    return operation;
+  }
+
+  public AsyncOperation getAsyncOperation(String id) throws SQLException {
+    AsyncOperation operation = asyncOperations.get(id);
+    if (operation == null) {
+      throw new SQLException("Operation " + id + " not found", "24000");
+    }
+    operation.getStatement().getSession().touch();
+    return operation;
+  }
+
+  public Operation getOperation(String id) throws SQLException {
+    Operation operation = operations.get(id);
+    if (operation == null) {
+      throw new SQLException("Operation " + id + " not found", "24000");
+    }
+    operation.getSession().touch();
+    return operation;
+  }
+
+  /**
+   * Close the operation, canceling it if it runs in the background, and its result set. Closing
+   * an operation closes its partitions, closing its last partition closes it.
+   */
+  public void closeOperation(String id) {
+    AsyncOperation asyncOperation = asyncOperations.remove(id);
+    if (asyncOperation != null) {
+      asyncOperation.getStatement().getSession().operationIds.remove(id);
+      asyncOperation.close();
+    }
+    Operation operation = operations.remove(id);
+    if (operation != null) {
+      operation.getSession().operationIds.remove(id);
+      operation.close();
+      operation.getPartitionIds().forEach(this::closeOperation);
+      Operation parent = operation.getParent();
+      if (parent != null && parent.removePartition(id)) {
+        closeOperation(parent.getId());
+      }
+    }
+  }
+
+  /**
+   * Unregister the operation of the partition once its result set is exhausted. The partitions
+   * stay registered until the clients fetch their empty batch.
+   */
+  public void closeExhaustedParent(Operation partition) {
+    Operation parent = partition.getParent();
+    if (parent != null && parent.isClosed() && operations.remove(parent.getId()) != null) {
+      parent.getSession().operationIds.remove(parent.getId());
+    }
+  }
+
+  /**
+   * Close the result set of an operation running in the background, keeping its status for
+   * the clients polling it.
+   */
+  public void closeResult(String id) {
+    Operation operation = operations.remove(id);
+    if (operation != null) {
+      operation.close();
+    }
+  }
+
+  private boolean isOwnedBy(String operationId, String ownerId) {
+    Operation operation = operations.peek(operationId);
+    if (operation != null) {
+      return ownerId.equals(operation.getOwnerId());
+    }
+    AsyncOperation asyncOperation = asyncOperations.peek(operationId);
+    return asyncOperation != null && ownerId.equals(asyncOperation.getStatement().getId());
+  }
+
+  public void closeOperationsOf(Session session, String ownerId) {
+    List<String> owned = new ArrayList<>();
+    for (String operationId : session.operationIds) {
+      if (isOwnedBy(operationId, ownerId)) {
+        owned.add(operationId);
+      }
+    }
+    owned.forEach(this::closeOperation);
+  }
+
+  public void registerPrepared(Session session, String preparedId) {
+    preparedOwners.put(preparedId, session);
+    session.preparedIds.add(preparedId);
+  }
+
+  /**
+   * @return the session owning the prepared statement
+   */
+  public Session getPreparedOwner(String preparedId) throws SQLException {
+    Session session = preparedOwners.get(preparedId);
+    if (session == null) {
+      throw new SQLException("Prepared statement " + preparedId + " not found", "26000");
+    }
+    session.touch();
+    return session;
+  }
+
+  public void unregisterPrepared(String preparedId) {
+    Session session = preparedOwners.remove(preparedId);
+    if (session != null) {
+      session.preparedIds.remove(preparedId);
+    }
+  }
+
+  public int getSessionCount() {
+    return sessions.size();
+  }
+
+  public int getStatementCount() {
+    return statements.size();
+  }
+
+  public int getOperationCount() {
+    return operations.size();
+  }
+
+  public int getAsyncOperationCount() {
+    return asyncOperations.size();
+  }
+
+  /**
+   * Close the handles idle for longer than their timeout, the operations and statements first.
+   *
+   * @return the number of handles closed
+   */
+  public int reapIdleHandles(long now) {
+    int reaped = 0;
+    for (HandleReaper.Handle handle : reaper.due(now)) {
+      long lastAccessTime = getLastAccessTime(handle.type, handle.id);
+      if (lastAccessTime < 0) {
+        // closed in the meantime
+        continue;
+      }
+      if (now - lastAccessTime < reaper.getIdleTimeout(handle.type)) {
+        reaper.schedule(handle.type, handle.id, lastAccessTime);
+        continue;
+      }
+      try {
+        switch (handle.type) {
+          case OPERATION:
+            closeOperation(handle.id);
+            break;
+          case STATEMENT:
+            closeStatement(handle.id);
+            break;
+          default:
+            closeSession(handle.id);
+            break;
+        }
+      } catch (SQLException e) {
+        // the connection is broken anyway
+      }
+      reaper.reaped(handle.type);
+      reaped++;
+    }
+    return reaped;
+  }
+
+  /**
+   * @return the last access time of the handle, -1 if it is closed. A statement is in use as
+   * long as its results are fetched, a session as long as it runs operations in the background.
+   */
+  private long getLastAccessTime(HandleType type, String id) {
+    switch (type) {
+      case OPERATION:
+        AsyncOperation asyncOperation = asyncOperations.peek(id);
+        if (asyncOperation != null && !asyncOperation.isTerminated()) {
+          asyncOperations.touch(id);
+        }
+        return Math.max(operations.getLastAccessTime(id), asyncOperations.getLastAccessTime(id));
+      case STATEMENT:
+        SessionStatement statement = statements.peek(id);
+        long lastAccessTime = statements.getLastAccessTime(id);
+        if (statement == null || lastAccessTime < 0) {
+          return -1;
+        }
+        for (String operationId : statement.getSession().operationIds) {
+          if (isOwnedBy(operationId, id)) {
+            lastAccessTime = Math.max(lastAccessTime, getLastAccessTime(HandleType.OPERATION, operationId));
+          }
+        }
+        return lastAccessTime;
+      default:
+        Session session = sessions.peek(id);
+        if (session != null) {
+          for (String operationId : session.operationIds) {
+            AsyncOperation running = asyncOperations.peek(operationId);
+            if (running != null && !running.isTerminated()) {
+              sessions.touch(id);
+              break;
+            }
+          }
+        }
+        return sessions.getLastAccessTime(id);
+    }
+  }
+
+  /**
+   * Close the operations running in the background and the results they produced.
+   */
+  public void closeAsyncOperations() {
+    for (String id : new ArrayList<>(asyncOperations.ids())) {
+      closeOperation(id);
+    }
+  }
+
+  public void closeAll() {
+    for (String id : new ArrayList<>(sessions.ids())) {
+      try {
+        closeSession(id);
+      } catch (SQLException e) {
+        // do nothing
+      }
+    }
+  }
+}
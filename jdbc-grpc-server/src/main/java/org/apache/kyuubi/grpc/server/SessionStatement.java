@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A {@link Statement} created by CreateStatement, with the operation of its current result.
+ */
+public class SessionStatement {
+
+  private final String id;
+  private final Session session;
+  private final Statement statement;
+  private volatile String currentOperationId;
+
+  SessionStatement(String id, Session session, Statement statement) {
+    this.id = id;
+    this.session = session;
+    this.statement = statement;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Session getSession() {
+    return session;
+  }
+
+  public Statement getStatement() {
+    return statement;
+  }
+
+  /**
+   * @return the operation of the current result set of the statement, null if none
+   */
+  public String getCurrentOperationId() {
+    return currentOperationId;
+  }
+
+  void setCurrentOperationId(String operationId) {
+    this.currentOperationId = operationId;
+  }
+
+  void close() throws SQLException {
+    statement.close();
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel of deadlines in milliseconds. Scheduling and expiring an item are
+ * O(1), whatever the number of items, and advancing the wheel costs O(1) per elapsed tick.
+ *
+ * <p>The first level has {@code wheelSize} buckets of one tick each. A deadline beyond its span
+ * goes to an overflow level whose ticks are the span of the level below, and is moved down once
+ * its bucket comes due. Items expire at the first tick at or after their deadline, never before.
+ *
+ * <p>Items can not be cancelled, the owner ignores or reschedules the stale ones as they expire.
+ */
+public class TimingWheel<T> {
+
+  private final long tickMillis;
+  private final int wheelSize;
+  private final Level root;
+  // scheduled with a deadline already passed, returned by the next advance
+  private final List<T> due = new ArrayList<>();
+  private int size = 0;
+
+  public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+    if (tickMillis <= 0 || wheelSize <= 1) {
+      throw new IllegalArgumentException("Invalid tick " + tickMillis + " or wheel size " + wheelSize);
+    }
+    this.tickMillis = tickMillis;
+    this.wheelSize = wheelSize;
+    this.root = new Level(tickMillis, startMillis);
+  }
+
+  public synchronized void schedule(T item, long deadline) {
+    Entry<T> entry = new Entry<>(item, deadline);
+    if (!root.add(entry)) {
+      due.add(item);
+    }
+    size++;
+  }
+
+  /**
+   * Advance the wheel to the time.
+   *
+   * @return the items whose deadline is at or before the time
+   */
+  public synchronized List<T> advance(long now) {
+    List<T> expired = new ArrayList<>(due);
+    due.clear();
+    if (size == expired.size()) {
+      // nothing left on the wheel, skip the empty ticks
+      root.advance(now);
+    }
+    while (root.currentTime + tickMillis <= now) {
+      long time = root.currentTime + tickMillis;
+      root.advance(time);
+      for (Level level = root; level != null; level = level.overflow) {
+        if (time % level.tick == 0) {
+          level.flush(time, expired);
+        }
+      }
+    }
+    size -= expired.size();
+    return expired;
+  }
+
+  /**
+   * @return the number of items not returned by {@link #advance(long)} yet
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  private static final class Entry<T> {
+    final T item;
+    final long deadline;
+
+    Entry(T item, long deadline) {
+      this.item = item;
+      this.deadline = deadline;
+    }
+  }
+
+  private final class Level {
+    final long tick;
+    final long span;
+    final List<ArrayDeque<Entry<T>>> buckets;
+    long currentTime;
+    Level overflow;
+
+    Level(long tick, long startMillis) {
+      this.tick = tick;
+      this.span = tick * wheelSize;
+      this.buckets = new ArrayList<>(wheelSize);
+      for (int i = 0; i < wheelSize; i++) {
+        buckets.add(new ArrayDeque<>());
+      }
+      this.currentTime = startMillis - Math.floorMod(startMillis, tick);
+    }
+
+    /**
+     * @return false if the entry is already due
+     */
+    boolean add(Entry<T> entry) {
+      if (this == root) {
+        // the first tick at or after the deadline, the bucket of the current time is flushed
+        // already so it holds the entries of the next revolution
+        long expiration = Math.floorDiv(entry.deadline + tick - 1, tick) * tick;
+        if (expiration <= currentTime) {
+          return false;
+        }
+        if (expiration <= currentTime + span) {
+          buckets.get(index(expiration)).add(entry);
+          return true;
+        }
+      } else {
+        // flushed at the start of the tick of the deadline to move the entry down in time
+        long expiration = Math.floorDiv(entry.deadline, tick) * tick;
+        if (expiration < currentTime + span) {
+          buckets.get(index(expiration)).add(entry);
+          return true;
+        }
+      }
+      if (overflow == null) {
+        overflow = new Level(span, currentTime);
+      }
+      return overflow.add(entry);
+    }
+
+    void advance(long time) {
+      if (time >= currentTime + tick) {
+        currentTime = time - Math.floorMod(time, tick);
+      }
+      if (overflow != null) {
+        overflow.advance(time);
+      }
+    }
+
+    /**
+     * Move the entries of the bucket of the time down the wheel, the due ones to expired.
+     */
+    void flush(long time, List<T> expired) {
+      ArrayDeque<Entry<T>> bucket = buckets.get(index(time));
+      Entry<T> entry;
+      while ((entry = bucket.poll()) != null) {
+        if (!root.add(entry)) {
+          expired.add(entry.item);
+        }
+      }
+    }
+
+    private int index(long time) {
+      return (int) Math.floorMod(Math.floorDiv(time, tick), (long) wheelSize);
+    }
+  }
+}
@@ -0,0 +1,763 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.ConnectionConfigs;
+import org.apache.kyuubi.grpc.ParameterValues;
+import org.apache.kyuubi.grpc.StatusCode;
+import org.apache.kyuubi.grpc.client.ColumnSetIterator;
+import org.apache.kyuubi.grpc.client.MetadataCache;
+import org.apache.kyuubi.grpc.client.PartitionedResultReader;
+import org.apache.kyuubi.grpc.client.RetainedBatch;
+import org.apache.kyuubi.grpc.client.RetainedBatchIterator;
+import org.apache.kyuubi.grpc.client.SimpleBlockingJdbcClient;
+import org.apache.kyuubi.grpc.client.metrics.MetricsClientInterceptor;
+import org.apache.kyuubi.grpc.health.*;
+import org.apache.kyuubi.grpc.jdbc.*;
+import org.apache.kyuubi.grpc.jdbc.connection.ConnectionGrpc;
+import org.apache.kyuubi.grpc.jdbc.connection.SetSavepointResp;
+import org.apache.kyuubi.grpc.jdbc.statement.BindAndExecuteResp;
+import org.apache.kyuubi.grpc.jdbc.statement.ExecuteAndFetchResp;
+import org.apache.kyuubi.grpc.jdbc.statement.FetchDirection;
+import org.apache.kyuubi.grpc.jdbc.statement.OperationStatusResp;
+import org.apache.kyuubi.grpc.jdbc.statement.PrepareResp;
+import org.apache.kyuubi.grpc.jdbc.statement.ResultSetType;
+import org.apache.kyuubi.grpc.metrics.Counter;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class JdbcGrpcServerTest {
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private JdbcGrpcServer server;
+  private SimpleBlockingJdbcClient client;
+  private JdbcGrpc.JdbcBlockingStub jdbcStub;
+  private String connectionId;
+
+  @Before
+  public void setUp() throws IOException {
+    start(builder -> builder);
+  }
+
+  private void start(UnaryOperator<JdbcGrpcServer.Builder> options) throws IOException {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:server_test_" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+    server = options.apply(JdbcGrpcServer.builder()
+      .dataSource(dataSource)
+      .workerThreads(4)
+      .fetchSize(2)
+      .reapInterval(0, TimeUnit.MILLISECONDS)
+      .healthCheckInterval(50, TimeUnit.MILLISECONDS)
+      .maxSessions(2))
+      .build()
+      .start();
+    client = new SimpleBlockingJdbcClient(ManagedChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext());
+    jdbcStub = JdbcGrpc.newBlockingStub(client.getChannelPool().select(null));
+    connectionId = assertOk(client.openConnection(Collections.emptyMap(), Optional.empty())).getIdentifier();
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    assertOk(client.executeQuery(statementId, "CREATE TABLE t (id INT PRIMARY KEY, name VARCHAR(16))"));
+    assertOk(client.executeQuery(statementId, "INSERT INTO t VALUES (1, 'a'), (2, 'b'), (3, null)"));
+    assertOk(client.closeStatement(statementId));
+  }
+
+  @After
+  public void tearDown() {
+    client.shutdownNow();
+    server.shutdown();
+  }
+
+  private static DirectStatusResp assertOk(DirectStatusResp resp) {
+    assertEquals(resp.getStatus().getErrorMessage(), StatusCode.OK, resp.getStatus().getStatusCode());
+    return resp;
+  }
+
+  private List<Object> fetchColumn(String operationId, int column) {
+    List<Object> values = new ArrayList<>();
+    while (true) {
+      GetNextColumnSetResp resp = client.getNextResultSet(operationId, 0);
+      assertEquals(resp.getStatus().getErrorMessage(), StatusCode.OK, resp.getStatus().getStatusCode());
+      if (resp.getData().getColumnsCount() == 0 || ColumnVectors.rowCount(resp.getData().getColumns(0)) == 0) {
+        return values;
+      }
+      ColumnData data = resp.getData().getColumns(column);
+      for (int r = 0; r < ColumnVectors.rowCount(data); r++) {
+        values.add(ColumnVectors.get(data, r));
+      }
+    }
+  }
+
+  @Test
+  public void testOpenConnection() {
+    DirectStatusResp resp = assertOk(client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.RESULT_FORMAT, ConnectionConfigs.RESULT_FORMAT_ARROW),
+      Optional.of("conn-1")));
+    assertEquals("conn-1", resp.getIdentifier());
+    assertEquals("true", resp.getExtraInfoOrThrow(ConnectionConfigs.STATE_AUTO_COMMIT));
+    assertEquals(ConnectionConfigs.RESULT_FORMAT_COLUMNAR, resp.getExtraInfoOrThrow(ConnectionConfigs.RESULT_FORMAT));
+    assertEquals(2, server.getSessionManager().getSessionCount());
+
+    // reopening the same id joins the session
+    assertOk(client.openConnection(Collections.emptyMap(), Optional.of("conn-1")));
+    assertEquals(2, server.getSessionManager().getSessionCount());
+    assertOk(client.closeConnection("conn-1"));
+    assertEquals(1, server.getSessionManager().getSessionCount());
+    assertEquals(StatusCode.ERROR, client.closeConnection("conn-1").getStatus().getStatusCode());
+  }
+
+  private static HealthStatus nextStatus(Iterator<HealthCheckResponse> watch, HealthStatus expected) {
+    while (true) {
+      HealthStatus status = watch.next().getStatusesOrThrow(ConnectionGrpc.SERVICE_NAME);
+      if (status == expected) {
+        return status;
+      }
+    }
+  }
+
+  @Test
+  public void testHealth() {
+    HealthGrpc.HealthBlockingStub healthStub = HealthGrpc.newBlockingStub(client.getChannelPool().select(null))
+      .withDeadlineAfter(10, TimeUnit.SECONDS);
+    assertEquals(
+      Arrays.asList("", "Connection", "Jdbc", "PreparedStatement", "Statement"),
+      healthStub.getServices(GetServicesReq.getDefaultInstance()).getServicesList());
+    HealthCheckResponse resp = healthStub.check(
+      HealthCheckReq.newBuilder().addServices(JdbcGrpc.SERVICE_NAME).addServices("ResultSet").build());
+    assertEquals(HealthStatus.HEALTHY, resp.getStatusesOrThrow(JdbcGrpc.SERVICE_NAME));
+    assertEquals(HealthStatus.NOT_FOUND, resp.getStatusesOrThrow("ResultSet"));
+
+    // the Connection service turns UNHEALTHY from 2 sessions on, and back once one is closed
+    Iterator<HealthCheckResponse> watch = healthStub.watch(
+      HealthCheckReq.newBuilder().addServices(ConnectionGrpc.SERVICE_NAME).build());
+    assertEquals(HealthStatus.HEALTHY, watch.next().getStatusesOrThrow(ConnectionGrpc.SERVICE_NAME));
+    String secondId = assertOk(client.openConnection(Collections.emptyMap(), Optional.empty())).getIdentifier();
+    nextStatus(watch, HealthStatus.UNHEALTHY);
+    assertEquals(HealthStatus.HEALTHY, healthStub.check(HealthCheckReq.newBuilder().addServices(JdbcGrpc.SERVICE_NAME)
+      .build()).getStatusesOrThrow(JdbcGrpc.SERVICE_NAME));
+    // the whole server stays HEALTHY
+    assertEquals(HealthStatus.HEALTHY, healthStub.check(HealthCheckReq.newBuilder()
+      .addServices(HealthStatusManager.SERVER).build()).getStatusesOrThrow(HealthStatusManager.SERVER));
+    assertOk(client.closeConnection(secondId));
+    nextStatus(watch, HealthStatus.HEALTHY);
+
+    server.getHealthStatusManager().enterTerminalState();
+    nextStatus(watch, HealthStatus.UNHEALTHY);
+    assertFalse(watch.hasNext());
+  }
+
+  @Test
+  public void testReapingDisabled() {
+    // reapInterval(0), the open handles are never put on the wheel
+    HandleReaper reaper = server.getSessionManager().getReaper();
+    assertEquals(0, reaper.getIdleTimeout(HandleReaper.HandleType.SESSION));
+    assertEquals(0, reaper.getMetrics().counter(HandleReaper.SCHEDULED).getCount());
+  }
+
+  @Test
+  public void testMetadataCache() {
+    String cachedId = assertOk(client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.CLIENT_METADATA_CACHE_ENABLED, "true"), Optional.empty()))
+      .getIdentifier();
+    String tables = assertOk(client.getTables(cachedId, null, "PUBLIC", "%", null)).getIdentifier();
+    assertEquals(Collections.singletonList("T"), fetchColumn(tables, 2));
+    String typeInfo = assertOk(client.getTypeInfo(cachedId)).getIdentifier();
+    assertEquals(StatusCode.OK, client.getResultSetSchema(typeInfo).getStatus().getStatusCode());
+    assertFalse(fetchColumn(typeInfo, 0).isEmpty());
+    assertEquals(2, client.getMetadataCache().size());
+    // replayed to the retained calls too
+    String replayed = assertOk(client.getTables(cachedId, null, "PUBLIC", "%", null)).getIdentifier();
+    try (RetainedBatchIterator iterator = client.streamResultSetRetained(replayed, 10)) {
+      assertTrue(iterator.hasNext());
+      try (RetainedBatch batch = iterator.next()) {
+        assertFalse(batch.isAliased());
+        assertEquals("T", batch.getBytes(2, 0).toStringUtf8());
+      }
+      assertFalse(iterator.hasNext());
+    }
+
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    assertOk(client.executeQuery(statementId, "CREATE TABLE u (id INT)"));
+    // served from the cache until invalidated
+    assertEquals(Collections.singletonList("T"), fetchColumn(client.getTables(cachedId, null, "PUBLIC", "%", null)
+      .getIdentifier(), 2));
+    assertEquals(Arrays.asList("T", "U"), fetchColumn(client.getTables(connectionId, null, "PUBLIC", "%", null)
+      .getIdentifier(), 2));
+    client.invalidateMetadata(cachedId);
+    assertEquals(Arrays.asList("T", "U"), fetchColumn(client.getTables(cachedId, null, "PUBLIC", "%", null)
+      .getIdentifier(), 2));
+
+    // the current schema changes what the calls without a schema pattern find
+    assertOk(client.setSchema(cachedId, "PUBLIC"));
+    assertEquals(0, client.getMetadataCache().size());
+
+    assertOk(client.closeConnection(cachedId));
+    assertEquals(0, client.getMetadataCache().size());
+
+    String abortedId = assertOk(client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.CLIENT_METADATA_CACHE_ENABLED, "true"), Optional.empty()))
+      .getIdentifier();
+    fetchColumn(client.getTables(abortedId, null, "PUBLIC", "%", null).getIdentifier(), 2);
+    assertEquals(1, client.getMetadataCache().size());
+    assertOk(client.abortConnection(abortedId));
+    assertEquals(0, client.getMetadataCache().size());
+  }
+
+  @Test
+  public void testMetadataReplay() {
+    List<Object> typeNames = fetchColumn(assertOk(client.getTypeInfo(connectionId)).getIdentifier(), 0);
+    assertTrue(typeNames.size() > 2);
+    String cachedId = assertOk(client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.CLIENT_METADATA_CACHE_ENABLED, "true"), Optional.empty()))
+      .getIdentifier();
+    assertOk(client.getTypeInfo(cachedId));
+    // replayed in batches of the fetch size, not of the server
+    for (int fetchSize : new int[] {1, 3}) {
+      String typeInfo = assertOk(client.getTypeInfo(cachedId)).getIdentifier();
+      List<Object> values = new ArrayList<>();
+      while (true) {
+        GetNextColumnSetResp resp = client.getNextResultSet(typeInfo, fetchSize);
+        ColumnData data = resp.getData().getColumnsCount() == 0 ? null : resp.getData().getColumns(0);
+        if (data == null || ColumnVectors.rowCount(data) == 0) {
+          break;
+        }
+        assertTrue(ColumnVectors.rowCount(data) <= fetchSize);
+        assertEquals(values.size() + 1, resp.getStartRow());
+        for (int r = 0; r < ColumnVectors.rowCount(data); r++) {
+          values.add(ColumnVectors.get(data, r));
+        }
+      }
+      assertEquals(typeNames, values);
+    }
+
+    // too large to be cached, the rest is fetched from the server
+    SimpleBlockingJdbcClient bounded = new SimpleBlockingJdbcClient(
+      client.getChannelPool(), client.getMetricsRegistry(), new MetadataCache(16, 1, 5, TimeUnit.MINUTES));
+    String boundedId = assertOk(bounded.openConnection(
+      Collections.singletonMap(ConnectionConfigs.CLIENT_METADATA_CACHE_ENABLED, "true"), Optional.empty()))
+      .getIdentifier();
+    String typeInfo = assertOk(bounded.getTypeInfo(boundedId)).getIdentifier();
+    List<Object> values = new ArrayList<>();
+    try (ColumnSetIterator iterator = bounded.streamResultSet(typeInfo, 2)) {
+      while (iterator.hasNext()) {
+        ColumnData data = iterator.next().getColumns(0);
+        for (int r = 0; r < ColumnVectors.rowCount(data); r++) {
+          values.add(ColumnVectors.get(data, r));
+        }
+      }
+    }
+    assertEquals(typeNames, values);
+    assertEquals(0, bounded.getMetadataCache().size());
+    assertOk(bounded.closeConnection(boundedId));
+  }
+
+  @Test
+  public void testTransactions() {
+    assertOk(client.setAutoCommit(connectionId, false));
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    assertOk(client.executeQuery(statementId, "INSERT INTO t VALUES (4, 'd')"));
+    SetSavepointResp savepoint = client.setSavepoint(connectionId, "sp");
+    assertEquals(StatusCode.OK, savepoint.getStatus().getStatusCode());
+    assertOk(client.executeQuery(statementId, "INSERT INTO t VALUES (5, 'e')"));
+    assertOk(client.rollback(connectionId, "sp"));
+    assertOk(client.commit(connectionId));
+
+    String operationId = assertOk(client.executeQuery(statementId, "SELECT id FROM t ORDER BY id")).getIdentifier();
+    assertEquals(Arrays.asList(1, 2, 3, 4), fetchColumn(operationId, 0));
+    assertEquals("3B001", client.rollback(connectionId, "missing").getStatus().getSqlState());
+  }
+
+  @Test
+  public void testStatementResults() {
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    DirectStatusResp update = assertOk(client.executeQuery(statementId, "UPDATE t SET name = 'x' WHERE id < 3"));
+    assertEquals(statementId, update.getIdentifier());
+    assertEquals("2", update.getExtraInfoOrThrow(JdbcStatementService.UPDATE_COUNT));
+
+    String operationId = assertOk(client.executeQuery(statementId, "SELECT id, name FROM t ORDER BY id")).getIdentifier();
+    assertNotEquals(statementId, operationId);
+    GetResultSetSchemaResp schema = client.getResultSetSchema(operationId);
+    assertEquals(StatusCode.OK, schema.getStatus().getStatusCode());
+    assertEquals(2, schema.getSchema().getColumnsCount());
+    assertEquals(Arrays.asList("x", "x", null), fetchColumn(operationId, 1));
+
+    // executing again closes the previous result
+    String next = assertOk(client.executeQuery(statementId, "SELECT name FROM t WHERE id = 3")).getIdentifier();
+    assertEquals("24000", client.getNextResultSet(operationId, 1).getStatus().getSqlState());
+    assertEquals(Collections.singletonList(null), fetchColumn(next, 0));
+
+    assertOk(client.closeStatement(statementId));
+    assertEquals(0, server.getSessionManager().getStatementCount());
+    assertEquals(0, server.getSessionManager().getOperationCount());
+  }
+
+  @Test
+  public void testExhaustedOperationsClosed() {
+    String tables = assertOk(client.getTables(connectionId, "", "", "T", Collections.emptyList())).getIdentifier();
+    assertEquals(1, server.getSessionManager().getOperationCount());
+    assertEquals(Collections.singletonList("T"), fetchColumn(tables, 2));
+    DirectStatusResp resp = assertOk(client.executeSql(connectionId, "SELECT id FROM t", 0, 0));
+    assertEquals(3, fetchColumn(resp.getIdentifier(), 0).size());
+    // unregistered once the empty batch is fetched
+    assertEquals(0, server.getSessionManager().getOperationCount());
+    assertEquals("24000", client.getNextResultSet(resp.getIdentifier(), 1).getStatus().getSqlState());
+  }
+
+  @Test
+  public void testExecuteAndFetch() {
+    ExecuteAndFetchResp first = client.executeAndFetch(
+      connectionId, Optional.empty(), "SELECT id, name FROM t ORDER BY id", 0, 2);
+    assertEquals(StatusCode.OK, first.getStatus().getStatusCode());
+    String statementId = first.getStatementId().getId();
+    assertEquals(2, first.getSchema().getColumnsCount());
+    assertEquals(2, ColumnVectors.rowCount(first.getFirstBatch().getColumns(0)));
+    assertTrue(first.getHasMoreRows());
+    assertEquals(Collections.singletonList(3), fetchColumn(first.getOperationId(), 0));
+
+    // the whole result fits in the first batch, nothing is left open on the reused statement
+    ExecuteAndFetchResp all = client.executeAndFetch(
+      connectionId, Optional.of(statementId), "SELECT id FROM t ORDER BY id", 2, 10);
+    assertEquals(statementId, all.getStatementId().getId());
+    assertEquals(2, ColumnVectors.rowCount(all.getFirstBatch().getColumns(0)));
+    assertFalse(all.getHasMoreRows());
+    assertTrue(all.getOperationId().isEmpty());
+    assertEquals(1, server.getSessionManager().getStatementCount());
+    assertEquals(0, server.getSessionManager().getOperationCount());
+    // the limit does not stick to the reused statement
+    assertEquals(Arrays.asList(1, 2, 3), fetchColumn(assertOk(
+      client.executeQuery(statementId, "SELECT id FROM t ORDER BY id")).getIdentifier(), 0));
+
+    ExecuteAndFetchResp update = client.executeAndFetch(
+      connectionId, Optional.of(statementId), "UPDATE t SET name = 'y'", 0, 0);
+    assertEquals(StatusCode.OK, update.getStatus().getStatusCode());
+    assertFalse(update.hasSchema());
+    assertEquals(3, update.getUpdateCount());
+
+    ExecuteAndFetchResp failed = client.executeAndFetch(
+      connectionId, Optional.of(statementId), "SELECT * FROM missing", 0, 0);
+    assertEquals("42S02", failed.getStatus().getSqlState());
+    assertEquals(statementId, failed.getStatementId().getId());
+    assertOk(client.closeStatement(statementId));
+  }
+
+  private OperationStatusResp awaitTermination(OperationStatusResp status) {
+    assertEquals(StatusCode.OK, status.getStatus().getStatusCode());
+    while (!AsyncOperation.isTerminal(status.getState())) {
+      status = client.waitOperation(status.getOperationId().getId(), status.getState(), 1000);
+    }
+    return status;
+  }
+
+  @Test
+  public void testAsyncOperation() {
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    OperationStatusResp query = awaitTermination(client.executeAsync(statementId, "SELECT id FROM t ORDER BY id"));
+    assertEquals(OperationState.SUCCEEDED, query.getState());
+    assertTrue(query.getHasResultSet());
+    assertEquals(Arrays.asList(1, 2, 3), fetchColumn(query.getOperationId().getId(), 0));
+
+    OperationStatusResp update = awaitTermination(client.executeAsync(statementId, "UPDATE t SET name = 'z'"));
+    assertEquals(OperationState.SUCCEEDED, update.getState());
+    assertEquals(3, update.getUpdateCount());
+    assertTrue(update.getEndTime() >= update.getStartTime());
+
+    OperationStatusResp failed = awaitTermination(client.executeAsync(statementId, "SELECT * FROM missing"));
+    assertEquals(OperationState.RUNNING_FAILED, failed.getState());
+    assertEquals("42S02", failed.getOperationError().getSqlState());
+
+    // a long query is watched until it is canceled, the long poll returns at its timeout
+    String slow = client.executeAsync(statementId,
+      "SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100000) a, SYSTEM_RANGE(1, 100000) b WHERE a.X + b.X = 3")
+      .getOperationId().getId();
+    Iterator<OperationStatusResp> watch = client.watchOperation(slow);
+    OperationStatusResp watched = watch.next();
+    while (watched.getState() != OperationState.RUNNING) {
+      watched = watch.next();
+    }
+    OperationStatusResp waited = client.waitOperation(slow, OperationState.RUNNING, 100);
+    assertEquals(OperationState.RUNNING, waited.getState());
+    assertEquals(StatusCode.OK, client.cancelOperation(slow).getStatus().getStatusCode());
+    assertEquals(OperationState.CANCELED, watch.next().getState());
+    assertFalse(watch.hasNext());
+    assertEquals(OperationState.CANCELED, client.getOperationStatus(slow).getState());
+
+    assertEquals("24000", client.getOperationStatus("missing").getStatus().getSqlState());
+    assertOk(client.closeStatement(statementId));
+    assertEquals(0, server.getSessionManager().getAsyncOperationCount());
+    assertEquals(0, server.getSessionManager().getOperationCount());
+  }
+
+  @Test
+  public void testAsyncOperationSpooled() throws IOException {
+    // the batches are kept on heap, then spilled as the budget is exceeded
+    Path directory = folder.newFolder("spool").toPath();
+    ResultSpool spool = new ResultSpool(directory, Long.MAX_VALUE, 1);
+    tearDown();
+    start(builder -> builder.resultSpool(spool));
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    OperationStatusResp succeeded = awaitTermination(client.executeAsync(statementId, "SELECT id FROM t ORDER BY id"));
+    assertEquals(OperationState.SUCCEEDED, succeeded.getState());
+    assertTrue(spool.getSpilledBytes() > 0);
+    assertEquals(0, spool.getMemoryUsed());
+
+    String operationId = succeeded.getOperationId().getId();
+    assertEquals(Arrays.asList(1, 2, 3), fetchColumn(operationId, 0));
+    assertEquals(0, server.getSessionManager().getOperationCount());
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(0, files.count());
+    }
+    assertOk(client.closeStatement(statementId));
+  }
+
+  @Test
+  public void testAsyncOperationSpoolFailure() throws IOException {
+    // every batch goes to a file of a directory removed since
+    Path directory = folder.newFolder("spool").toPath();
+    ResultSpool spool = new ResultSpool(directory, 0, 0);
+    Files.delete(directory);
+    tearDown();
+    start(builder -> builder.resultSpool(spool));
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    OperationStatusResp failed = awaitTermination(client.executeAsync(statementId, "SELECT id FROM t ORDER BY id"));
+    assertEquals(OperationState.RUNNING_FAILED, failed.getState());
+    // the result partly spooled is closed, only the status is left
+    assertEquals(0, server.getSessionManager().getOperationCount());
+    assertEquals("24000", client.getNextResultSet(failed.getOperationId().getId(), 10).getStatus().getSqlState());
+    assertEquals(OperationState.RUNNING_FAILED, client.getOperationStatus(failed.getOperationId().getId()).getState());
+    assertOk(client.closeStatement(statementId));
+  }
+
+  @Test
+  public void testConcurrencyLimit() throws IOException {
+    tearDown();
+    start(builder -> builder.maxConcurrentCalls(1).maxConcurrentStreams(1));
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    String slow = client.executeAsync(statementId,
+      "SELECT COUNT(*) FROM SYSTEM_RANGE(1, 100000) a, SYSTEM_RANGE(1, 100000) b WHERE a.X + b.X = 3")
+      .getOperationId().getId();
+    // the watch holds the only stream permit, the short calls still get theirs
+    Iterator<OperationStatusResp> watch = client.watchOperation(slow);
+    assertNotNull(watch.next());
+    assertEquals(StatusCode.OK, client.getOperationStatus(slow).getStatus().getStatusCode());
+    try {
+      client.waitOperation(slow, OperationState.RUNNING, 100);
+      fail();
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+    }
+    assertEquals(StatusCode.OK, client.cancelOperation(slow).getStatus().getStatusCode());
+    while (watch.hasNext()) {
+      watch.next();
+    }
+    assertOk(client.closeStatement(statementId));
+  }
+
+  @Test
+  public void testStreamResultSet() {
+    DirectStatusResp resp = assertOk(jdbcStub.executeSql(ExecuteSqlReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setSql("SELECT X FROM SYSTEM_RANGE(1, 10)")
+      .setMaxRows(7)
+      .build()));
+    int rows = 0;
+    int batches = 0;
+    try (ColumnSetIterator iterator = client.streamResultSet(resp.getIdentifier(), 3)) {
+      while (iterator.hasNext()) {
+        rows += ColumnVectors.rowCount(iterator.next().getColumns(0));
+        batches++;
+      }
+    }
+    assertEquals(7, rows);
+    assertEquals(3, batches);
+    assertEquals(0, server.getSessionManager().getOperationCount());
+  }
+
+  private List<Object> column(GetNextColumnSetResp resp) {
+    assertEquals(resp.getStatus().getErrorMessage(), StatusCode.OK, resp.getStatus().getStatusCode());
+    List<Object> values = new ArrayList<>();
+    ColumnData data = resp.getData().getColumns(0);
+    for (int r = 0; r < ColumnVectors.rowCount(data); r++) {
+      values.add(ColumnVectors.get(data, r));
+    }
+    return values;
+  }
+
+  @Test
+  public void testRetryOnlyBatch() {
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    String operationId = assertOk(client.executeQuery(statementId, "SELECT id FROM t ORDER BY id")).getIdentifier();
+    // smaller than the fetch size, the only batch exhausts the result
+    GetNextColumnSetResp only = client.getNextResultSet(operationId, 10);
+    assertEquals(Arrays.asList(1, 2, 3), column(only));
+    GetNextColumnSetResp retried = client.getNextResultSet(operationId, 10, 1, FetchDirection.FETCH_FORWARD);
+    assertEquals(Arrays.asList(1, 2, 3), column(retried));
+    assertEquals(only.getSequence(), retried.getSequence());
+    assertEquals(Collections.emptyList(), column(client.getNextResultSet(operationId, 10)));
+    assertOk(client.closeStatement(statementId));
+  }
+
+  @Test
+  public void testCursorFetch() {
+    String sql = "SELECT CAST(X AS INT) FROM SYSTEM_RANGE(1, 10)";
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    String operationId = assertOk(client.executeQuery(statementId, sql)).getIdentifier();
+    GetNextColumnSetResp first = client.getNextResultSet(operationId, 4);
+    assertEquals(Arrays.asList(1, 2, 3, 4), column(first));
+    assertEquals(1, first.getStartRow());
+    GetNextColumnSetResp second = client.getNextResultSet(operationId, 4, 5, FetchDirection.FETCH_FORWARD);
+    assertEquals(Arrays.asList(5, 6, 7, 8), column(second));
+    // a retry of the last batch gets the same batch, an older one can not be fetched again
+    GetNextColumnSetResp retried = client.getNextResultSet(operationId, 4, 5, FetchDirection.FETCH_FORWARD);
+    assertEquals(second, retried);
+    assertEquals("24000", client.getNextResultSet(operationId, 4, 1, FetchDirection.FETCH_FORWARD)
+      .getStatus().getSqlState());
+    assertEquals("24000", client.getNextResultSet(operationId, 4, 0, FetchDirection.FETCH_REVERSE)
+      .getStatus().getSqlState());
+    GetNextColumnSetResp last = client.getNextResultSet(operationId, 4);
+    assertEquals(Arrays.asList(9, 10), column(last));
+    assertEquals(9, last.getStartRow());
+    assertEquals(second.getSequence() + 1, last.getSequence());
+    // the batch exhausting the result is kept until the empty batch is fetched
+    assertEquals(Arrays.asList(9, 10),
+      column(client.getNextResultSet(operationId, 4, 9, FetchDirection.FETCH_FORWARD)));
+    assertEquals(Collections.emptyList(), column(client.getNextResultSet(operationId, 4)));
+    assertEquals("24000", client.getNextResultSet(operationId, 4, 9, FetchDirection.FETCH_FORWARD)
+      .getStatus().getSqlState());
+    assertOk(client.closeStatement(statementId));
+
+    String scrollId = assertOk(client.createStatement(
+      connectionId, Optional.empty(), ResultSetType.TYPE_SCROLL_INSENSITIVE)).getIdentifier();
+    operationId = assertOk(client.executeQuery(scrollId, sql)).getIdentifier();
+    assertEquals(Arrays.asList(7, 8, 9), column(client.getNextResultSet(operationId, 3, 7, FetchDirection.FETCH_FORWARD)));
+    assertEquals(Collections.singletonList(10), column(client.getNextResultSet(operationId, 3)));
+    // an exhausted scrollable result stays open
+    assertEquals(Collections.emptyList(), column(client.getNextResultSet(operationId, 3)));
+    GetNextColumnSetResp reversed = client.getNextResultSet(operationId, 3, 5, FetchDirection.FETCH_REVERSE);
+    assertEquals(Arrays.asList(5, 4, 3), column(reversed));
+    assertEquals(5, reversed.getStartRow());
+    assertEquals(Arrays.asList(2, 1), column(client.getNextResultSet(operationId, 3, 0, FetchDirection.FETCH_REVERSE)));
+    assertEquals(Arrays.asList(1, 2, 3), column(client.getNextResultSet(operationId, 3, 1, FetchDirection.FETCH_FORWARD)));
+
+    // a stream resumed from a row
+    List<Object> streamed = new ArrayList<>();
+    try (ColumnSetIterator iterator = client.streamResultSet(operationId, 4, 6)) {
+      while (iterator.hasNext()) {
+        ColumnData data = iterator.next().getColumns(0);
+        for (int r = 0; r < ColumnVectors.rowCount(data); r++) {
+          streamed.add(ColumnVectors.get(data, r));
+        }
+      }
+    }
+    assertEquals(Arrays.asList(6, 7, 8, 9, 10), streamed);
+    assertEquals(0, server.getSessionManager().getOperationCount());
+    assertOk(client.closeStatement(scrollId));
+  }
+
+  @Test
+  public void testPartitionedResult() throws Exception {
+    String sql = "SELECT CAST(X AS INT) FROM SYSTEM_RANGE(1, 100)";
+    List<Object> expected = new ArrayList<>();
+    for (int i = 1; i <= 100; i++) {
+      expected.add(i);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      DirectStatusResp resp = assertOk(client.executeSql(connectionId, sql, 0, 3));
+      assertEquals(3, resp.getPartitionsCount());
+      PartitionedResultReader reader = new PartitionedResultReader(client, resp.getPartitionsList(), 7);
+      List<Object> merged = new ArrayList<>();
+      try (ColumnSetIterator iterator = reader.merge(executor)) {
+        while (iterator.hasNext()) {
+          ColumnData data = iterator.next().getColumns(0);
+          for (int r = 0; r < ColumnVectors.rowCount(data); r++) {
+            merged.add(ColumnVectors.get(data, r));
+          }
+        }
+      }
+      assertEquals(expected, merged);
+      // the operation is closed with its last partition
+      assertEquals(0, server.getSessionManager().getOperationCount());
+
+      // the partitions read independently cover the result
+      resp = assertOk(client.executeSql(connectionId, sql, 0, 2));
+      PartitionedResultReader independent = new PartitionedResultReader(client, resp.getPartitionsList(), 5);
+      List<Future<List<Object>>> partitions = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        int index = i;
+        partitions.add(executor.submit(() -> {
+          List<Object> values = new ArrayList<>();
+          try (ColumnSetIterator iterator = independent.partition(index)) {
+            while (iterator.hasNext()) {
+              ColumnData data = iterator.next().getColumns(0);
+              for (int r = 0; r < ColumnVectors.rowCount(data); r++) {
+                values.add(ColumnVectors.get(data, r));
+              }
+            }
+          }
+          return values;
+        }));
+      }
+      List<Object> all = new ArrayList<>();
+      for (Future<List<Object>> partition : partitions) {
+        all.addAll(partition.get(30, TimeUnit.SECONDS));
+      }
+      all.sort(Comparator.comparingInt(value -> (Integer) value));
+      assertEquals(expected, all);
+      assertEquals(0, server.getSessionManager().getOperationCount());
+    } finally {
+      executor.shutdownNow();
+    }
+    // fetched batch by batch, the operation is closed with the result set
+    DirectStatusResp unary = assertOk(client.executeSql(connectionId, "SELECT CAST(X AS INT) FROM SYSTEM_RANGE(1, 10)", 0, 2));
+    String first = unary.getPartitions(0);
+    String second = unary.getPartitions(1);
+    assertEquals(Arrays.asList(1, 2, 3, 4), column(client.getNextResultSet(first, 4)));
+    assertEquals(Arrays.asList(5, 6, 7, 8), column(client.getNextResultSet(second, 4)));
+    assertEquals(3, server.getSessionManager().getOperationCount());
+    assertEquals(Arrays.asList(9, 10), column(client.getNextResultSet(first, 4)));
+    assertEquals(2, server.getSessionManager().getOperationCount());
+    assertEquals(Collections.emptyList(), column(client.getNextResultSet(second, 4)));
+    assertEquals(Collections.emptyList(), column(client.getNextResultSet(first, 4)));
+    assertEquals(0, server.getSessionManager().getOperationCount());
+
+    assertEquals("22023", client.executeSql(connectionId, sql, 0, JdbcService.MAX_PARTITIONS + 1)
+      .getStatus().getSqlState());
+  }
+
+  @Test
+  public void testRetainedBatches() {
+    String statementId = assertOk(client.createStatement(connectionId, Optional.empty())).getIdentifier();
+    String operationId = assertOk(client.executeQuery(statementId, "SELECT name FROM t ORDER BY id")).getIdentifier();
+    RetainedBatch batch = client.getNextResultSetRetained(operationId, 10);
+    assertEquals(StatusCode.OK, batch.getResponse().getStatus().getStatusCode());
+    assertTrue(batch.isAliased());
+    assertEquals("a", batch.getBytes(0, 0).toStringUtf8());
+    assertEquals("b", batch.getBytes(0, 1).toStringUtf8());
+    assertNull(batch.getBytes(0, 2));
+    batch.close();
+    try {
+      batch.getData();
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    String streamed = assertOk(client.executeQuery(statementId,
+      "SELECT CONCAT('v', X) FROM SYSTEM_RANGE(1, 20)")).getIdentifier();
+    List<String> values = new ArrayList<>();
+    try (RetainedBatchIterator iterator = client.streamResultSetRetained(streamed, 6)) {
+      while (iterator.hasNext()) {
+        try (RetainedBatch next = iterator.next()) {
+          for (int r = 0; r < ColumnVectors.rowCount(next.getData().getColumns(0)); r++) {
+            values.add(next.getBytes(0, r).toStringUtf8());
+          }
+        }
+      }
+    }
+    assertEquals(20, values.size());
+    assertEquals("v1", values.get(0));
+    assertEquals("v20", values.get(19));
+    assertOk(client.closeStatement(statementId));
+  }
+
+  @Test
+  public void testPreparedStatement() {
+    PrepareResp prepared = client.prepare(connectionId, "SELECT name FROM t WHERE id = ?");
+    assertEquals(StatusCode.OK, prepared.getStatus().getStatusCode());
+    assertEquals(TypeId.INT, prepared.getParameterTypes(0));
+    String preparedId = prepared.getPreparedId().getId();
+    BindAndExecuteResp resp = client.bindAndExecute(preparedId,
+      Collections.singletonList(ParameterValues.of(TypeId.INT, 2)));
+    assertEquals(StatusCode.OK, resp.getStatus().getStatusCode());
+    assertTrue(resp.getHasResultSet());
+    assertEquals(Collections.singletonList("b"), fetchColumn(resp.getOperationId(), 0));
+
+    assertTrue(client.prepare(connectionId, "SELECT name FROM t WHERE id = ?").getCached());
+    assertOk(client.closeConnection(connectionId));
+    assertEquals("26000", client.bindAndExecute(preparedId,
+      Collections.singletonList(ParameterValues.of(TypeId.INT, 2))).getStatus().getSqlState());
+  }
+
+  @Test
+  public void testDatabaseMetaData() {
+    DirectStatusResp resp = assertOk(jdbcStub.getColumns(GetColumnsReq.newBuilder()
+      .setConnectionId(connectionId)
+      .setTablePattern("T")
+      .build()));
+    GetResultSetSchemaResp schema = client.getResultSetSchema(resp.getIdentifier());
+    assertEquals("COLUMN_NAME", schema.getSchema().getColumns(3).getColumnName());
+    assertEquals(Arrays.asList("ID", "NAME"), fetchColumn(resp.getIdentifier(), 3));
+
+    DirectStatusResp missing = jdbcStub.getCatalogs(GetCatalogsReq.newBuilder().setConnectionId("missing").build());
+    assertEquals("08003", missing.getStatus().getSqlState());
+  }
+
+  @Test
+  public void testGetDatabaseMetaData() {
+    GetDatabaseMetaDataResp all = client.getDatabaseMetaData(connectionId, Collections.emptyList());
+    assertEquals(StatusCode.OK, all.getStatus().getStatusCode());
+    assertEquals(DatabaseMetaData.values().length - 1, all.getEntriesCount());
+    GetDatabaseMetaDataResp some = client.getDatabaseMetaData(connectionId,
+      Arrays.asList(DatabaseMetaData.SUPPORTS_GROUP_BY, DatabaseMetaData.DATABASE_PRODUCT_NAME));
+    assertEquals(DatabaseMetaData.SUPPORTS_GROUP_BY, some.getEntries(0).getKey());
+    assertTrue(some.getEntries(0).getBoolValue());
+    assertEquals("H2", some.getEntries(1).getStringValue());
+
+    // cached for the lifetime of the connection, only the missing keys are fetched
+    String cachedId = assertOk(client.openConnection(
+      Collections.singletonMap(ConnectionConfigs.CLIENT_METADATA_CACHE_ENABLED, "true"), Optional.empty()))
+      .getIdentifier();
+    Counter calls = client.getMetricsRegistry().counter(MetricsClientInterceptor.metricName(
+      JdbcGrpc.getGetDatabaseMetaDataMethod().getFullMethodName(), MetricsClientInterceptor.STATUS + ".OK"));
+    long before = calls.getCount();
+    assertEquals(some, client.getDatabaseMetaData(cachedId,
+      Arrays.asList(DatabaseMetaData.SUPPORTS_GROUP_BY, DatabaseMetaData.DATABASE_PRODUCT_NAME)));
+    assertEquals(all, client.getDatabaseMetaData(cachedId, Collections.emptyList()));
+    assertEquals(all, client.getDatabaseMetaData(cachedId, Collections.emptyList()));
+    assertEquals(before + 2, calls.getCount());
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class PreparedStatementCacheTest {
+
+  private Connection connection;
+  private PreparedStatementCache cache;
+
+  @Before
+  public void setUp() throws SQLException {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:prepared_statement_cache_test");
+    connection = dataSource.getConnection();
+    cache = new PreparedStatementCache(connection, 1);
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    cache.close();
+    connection.close();
+  }
+
+  @Test
+  public void testReuse() throws SQLException {
+    PreparedStatementCache.Entry first = cache.prepare("SELECT 1");
+    cache.release(first);
+    PreparedStatementCache.Entry second = cache.prepare("SELECT 1");
+    assertFalse(first.isCached());
+    assertTrue(second.isCached());
+    assertEquals(first.getId(), second.getId());
+    assertSame(first.getStatement(), second.getStatement());
+    cache.release(second);
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testEvictedWhileReferenced() throws SQLException {
+    PreparedStatementCache.Entry prepared = cache.prepare("SELECT X FROM SYSTEM_RANGE(1, 3)");
+    cache.release(prepared);
+    PreparedStatementCache.Entry executing = cache.acquire(prepared.getId());
+    ResultSet rs = executing.getStatement().executeQuery();
+
+    // evicted by the next SQL, but kept open for the result set still read
+    cache.release(cache.prepare("SELECT 2"));
+    assertFalse(cache.contains(prepared.getId()));
+    assertNull(cache.acquire(prepared.getId()));
+    assertFalse(executing.getStatement().isClosed());
+    assertTrue(rs.next());
+    assertEquals(1, rs.getInt(1));
+
+    cache.release(executing);
+    assertTrue(executing.getStatement().isClosed());
+  }
+
+  @Test
+  public void testEvict() throws SQLException {
+    PreparedStatementCache.Entry entry = cache.prepare("SELECT 1");
+    cache.release(entry);
+    cache.evict(entry.getId());
+    assertEquals(0, cache.size());
+    assertTrue(entry.getStatement().isClosed());
+  }
+
+  @Test
+  public void testConcurrentHandlesOfSameSql() throws SQLException {
+    String sql = "SELECT X FROM SYSTEM_RANGE(1, 3)";
+    PreparedStatementCache.Entry first = cache.prepare(sql);
+    ResultSet firstRs = first.getStatement().executeQuery();
+    assertTrue(firstRs.next());
+
+    // the cached statement is in use, the second handle gets a statement of its own
+    PreparedStatementCache.Entry second = cache.prepare(sql);
+    assertFalse(second.isCached());
+    assertNotEquals(first.getId(), second.getId());
+    assertNotSame(first.getStatement(), second.getStatement());
+    ResultSet secondRs = second.getStatement().executeQuery();
+    assertTrue(secondRs.next());
+    assertTrue(secondRs.next());
+    assertEquals(2, secondRs.getInt(1));
+    assertTrue(firstRs.next());
+    assertEquals(2, firstRs.getInt(1));
+    assertEquals(1, cache.size());
+
+    cache.release(second);
+    assertTrue(cache.discard(second.getId()));
+    assertTrue(second.getStatement().isClosed());
+    // the cached one stays for the next Prepare of its SQL
+    assertFalse(cache.discard(first.getId()));
+    cache.release(first);
+    PreparedStatementCache.Entry third = cache.prepare(sql);
+    assertTrue(third.isCached());
+    assertEquals(first.getId(), third.getId());
+    cache.release(third);
+  }
+}
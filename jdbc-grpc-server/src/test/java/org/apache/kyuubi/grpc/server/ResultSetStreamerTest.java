@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.client.ColumnSetIterator;
+import org.apache.kyuubi.grpc.client.SimpleBlockingJdbcClient;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSet;
+import org.apache.kyuubi.grpc.jdbc.GetNextColumnSetResp;
+import org.apache.kyuubi.grpc.jdbc.JdbcGrpc;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResultSetStreamerTest {
+  private final AtomicInteger producedBatches = new AtomicInteger();
+  private final AtomicInteger closedResults = new AtomicInteger();
+  private Server server;
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() throws IOException {
+    String name = InProcessServerBuilder.generateName();
+    server = InProcessServerBuilder.forName(name)
+      .addService(new JdbcGrpc.JdbcImplBase() {
+        @Override
+        public void streamResultSet(GetNextColumnSet req, StreamObserver<GetNextColumnSetResp> respOb) {
+          // an endless result of fetch size batches
+          Iterator<ColumnDataSet> batches = new Iterator<ColumnDataSet>() {
+            @Override
+            public boolean hasNext() {
+              return true;
+            }
+
+            @Override
+            public ColumnDataSet next() {
+              long first = (long) producedBatches.getAndIncrement() * req.getFetchSize();
+              return ColumnDataSet.newBuilder()
+                .addColumns(ColumnVectors.encode(TypeId.LONG, Collections.nCopies(req.getFetchSize(), first)))
+                .build();
+            }
+          };
+          ResultSetStreamer.stream(batches, closedResults::incrementAndGet, respOb);
+        }
+      })
+      .build()
+      .start();
+    channel = InProcessChannelBuilder.forName(name).build();
+  }
+
+  @After
+  public void tearDown() {
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  @Test
+  public void testCancelStream() throws InterruptedException {
+    SimpleBlockingJdbcClient client = new SimpleBlockingJdbcClient(channel);
+    try (ColumnSetIterator iter = client.streamResultSet("op", 10)) {
+      ColumnDataSet first = iter.next();
+      assertEquals(10, ColumnVectors.rowCount(first.getColumns(0)));
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (closedResults.get() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, closedResults.get());
+    // flow control stops the producer long before the client would have read everything
+    assertTrue(producedBatches.get() < 100000);
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.ColumnVectors;
+import org.apache.kyuubi.grpc.jdbc.ColumnDataSet;
+import org.apache.kyuubi.grpc.jdbc.TypeId;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ResultSpoolTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  // the values of the batches of the same rows have the same size
+  private static ColumnDataSet batch(long from, int rows) {
+    from += 1000;
+    List<Long> values = LongStream.range(from, from + rows).boxed().collect(Collectors.toList());
+    return ColumnDataSet.newBuilder().addColumns(ColumnVectors.encode(TypeId.LONG, values)).build();
+  }
+
+  private static long files(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  @Test
+  public void testSpillAboveThreshold() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    ResultSpool spool = new ResultSpool(directory, batch(0, 100).getSerializedSize(), Long.MAX_VALUE);
+    ResultSpool.SpooledResult result = spool.create();
+    List<ColumnDataSet> batches = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      batches.add(batch(i * 100, 100));
+      result.append(batches.get(i));
+    }
+    // the first batch on heap, the others mapped from the file
+    assertEquals(batches.get(0).getSerializedSize(), spool.getMemoryUsed());
+    assertTrue(spool.getSpilledBytes() > 0);
+
+    for (ColumnDataSet expected : batches) {
+      assertTrue(result.hasNext());
+      assertEquals(expected, result.next());
+    }
+    assertFalse(result.hasNext());
+    assertNull(result.next());
+    assertEquals(0, spool.getMemoryUsed());
+
+    // unlinked at once on most platforms, at the latest once closed
+    result.close();
+    assertEquals(0, files(directory));
+    spool.close();
+    assertThrows(IOException.class, spool::create);
+  }
+
+  @Test
+  public void testSpillLeastRecentlyUsed() throws IOException {
+    Path directory = folder.newFolder().toPath();
+    int size = batch(0, 100).getSerializedSize();
+    ResultSpool spool = new ResultSpool(directory, Long.MAX_VALUE, size * 3L);
+    ResultSpool.SpooledResult first = spool.create();
+    ResultSpool.SpooledResult second = spool.create();
+    first.append(batch(0, 100));
+    first.append(batch(100, 100));
+    second.append(batch(200, 100));
+    assertEquals(0, spool.getSpilledBytes());
+
+    // the first result is the least recently used one
+    second.append(batch(300, 100));
+    assertEquals(size * 2L, spool.getMemoryUsed());
+    assertEquals(size * 2L, spool.getSpilledBytes());
+
+    assertEquals(batch(0, 100), first.next());
+    assertEquals(batch(100, 100), first.next());
+    assertEquals(batch(200, 100), second.next());
+    assertEquals(size, spool.getMemoryUsed());
+    spool.close();
+    assertEquals(0, spool.getMemoryUsed());
+    assertFalse(second.hasNext());
+  }
+
+  @Test
+  public void testConcurrentResults() throws Exception {
+    int size = batch(0, 100).getSerializedSize();
+    // every append spills the least recently used result, often another one
+    ResultSpool spool = new ResultSpool(folder.newFolder().toPath(), size * 2L, size * 3L);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        long base = t * 100_000L;
+        futures.add(executor.submit(() -> {
+          ResultSpool.SpooledResult result = spool.create();
+          for (int i = 0; i < 50; i++) {
+            result.append(batch(base + i * 100, 100));
+            if (i % 2 == 1) {
+              assertEquals(batch(base + i / 2 * 100, 100), result.next());
+            }
+          }
+          for (int i = 25; i < 50; i++) {
+            assertEquals(batch(base + i * 100, 100), result.next());
+          }
+          assertNull(result.next());
+          result.close();
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+      assertEquals(0, spool.getMemoryUsed());
+      assertTrue(spool.getSpilledBytes() > 0);
+    } finally {
+      executor.shutdownNow();
+      spool.close();
+    }
+  }
+
+  @Test
+  public void testSpoolOperation() throws IOException, SQLException {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:result_spool_test");
+    ResultSpool spool = new ResultSpool(folder.newFolder().toPath(), 0, Long.MAX_VALUE);
+    SessionManager sessionManager = new SessionManager(dataSource, new HandleReaper(10, null), 4)
+      .resultSpool(spool);
+    try {
+      Session session = sessionManager.openSession(null, null, null);
+      Statement jdbcStatement = session.getConnection().createStatement();
+      SessionStatement statement = sessionManager.createStatement(session, null, jdbcStatement);
+      Operation operation = sessionManager.newOperation(
+        session, statement.getId(), jdbcStatement.executeQuery("SELECT X FROM SYSTEM_RANGE(1, 10)"), null);
+      operation.spool(spool.create(), 4);
+      assertTrue(operation.isSpooled());
+      assertTrue(jdbcStatement.getResultSet() == null || jdbcStatement.getResultSet().isClosed());
+      assertEquals(1, operation.getSchema().getColumnsCount());
+
+      // served in the spooled batches whatever the fetch size
+      assertEquals(4, ResultSets.rowCount(operation.next(100)));
+      assertEquals(4, ResultSets.rowCount(operation.next(1)));
+      assertEquals(2, ResultSets.rowCount(operation.next(100)));
+      assertTrue(operation.isClosed());
+      assertEquals(0, ResultSets.rowCount(operation.next(100)));
+      assertEquals(0, spool.getMemoryUsed());
+    } finally {
+      sessionManager.closeAll();
+      spool.close();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.apache.kyuubi.grpc.server.HandleReaper.HandleType;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SessionManagerTest {
+  private SessionManager sessionManager;
+
+  @Before
+  public void setUp() {
+    JdbcDataSource dataSource = new JdbcDataSource();
+    dataSource.setURL("jdbc:h2:mem:session_manager_test;DB_CLOSE_DELAY=-1");
+    HandleReaper reaper = new HandleReaper(10, null)
+      .idleTimeout(HandleType.SESSION, 1000, TimeUnit.MILLISECONDS)
+      .idleTimeout(HandleType.STATEMENT, 500, TimeUnit.MILLISECONDS)
+      .idleTimeout(HandleType.OPERATION, 200, TimeUnit.MILLISECONDS);
+    sessionManager = new SessionManager(dataSource, reaper, 4);
+  }
+
+  @After
+  public void tearDown() {
+    sessionManager.closeAll();
+  }
+
+  @Test
+  public void testReapIdleHandles() throws SQLException {
+    Session session = sessionManager.openSession("idle", null, null);
+    Statement jdbcStatement = session.getConnection().createStatement();
+    SessionStatement statement = sessionManager.createStatement(session, null, jdbcStatement);
+    Operation operation = sessionManager.newOperation(
+      session, statement.getId(), jdbcStatement.executeQuery("SELECT 1"), null);
+    long now = System.currentTimeMillis();
+
+    assertEquals(0, sessionManager.reapIdleHandles(now + 100));
+    assertEquals(1, sessionManager.reapIdleHandles(now + 300));
+    assertTrue(operation.isClosed());
+    assertFalse(jdbcStatement.isClosed());
+
+    assertEquals(1, sessionManager.reapIdleHandles(now + 600));
+    assertTrue(jdbcStatement.isClosed());
+    assertFalse(session.getConnection().isClosed());
+
+    assertEquals(1, sessionManager.reapIdleHandles(now + 1100));
+    assertEquals(0, sessionManager.getSessionCount());
+    assertTrue(session.getConnection().isClosed());
+    SQLException e = assertThrows(SQLException.class, () -> sessionManager.getSession("idle"));
+    assertEquals("08003", e.getSQLState());
+
+    HandleReaper reaper = sessionManager.getReaper();
+    for (HandleType type : HandleType.values()) {
+      assertEquals(1, reaper.getReapedCount(type));
+    }
+    assertEquals(0, reaper.getMetrics().counter(HandleReaper.SCHEDULED).getCount());
+  }
+
+  @Test
+  public void testAccessReschedules() throws Exception {
+    sessionManager.openSession("idle", null, null);
+    sessionManager.openSession("active", null, null);
+    Thread.sleep(600);
+    sessionManager.getSession("active");
+    Thread.sleep(600);
+
+    assertEquals(1, sessionManager.reapIdleHandles(System.currentTimeMillis()));
+    assertEquals(1, sessionManager.getSessionCount());
+    assertNotNull(sessionManager.getSession("active"));
+    assertEquals(1, sessionManager.getReaper().getMetrics().counter(HandleReaper.SCHEDULED).getCount());
+  }
+
+  @Test
+  public void testCloseSessionCascades() throws SQLException {
+    Session session = sessionManager.openSession(null, null, null);
+    Statement jdbcStatement = session.getConnection().createStatement();
+    SessionStatement statement = sessionManager.createStatement(session, null, jdbcStatement);
+    Operation operation = sessionManager.newOperation(
+      session, statement.getId(), jdbcStatement.executeQuery("SELECT 1"), null);
+    sessionManager.registerPrepared(session, session.getPreparedStatements().prepare("SELECT ?").getId());
+    assertEquals(1, sessionManager.getStatementCount());
+    assertEquals(1, sessionManager.getOperationCount());
+
+    sessionManager.closeStatement(statement.getId());
+    assertTrue(operation.isClosed());
+    assertEquals(0, sessionManager.getOperationCount());
+
+    assertTrue(sessionManager.closeSession(session.getId()));
+    assertFalse(sessionManager.closeSession(session.getId()));
+    assertTrue(session.getConnection().isClosed());
+    assertEquals(0, session.getPreparedStatements().size());
+  }
+
+  @Test
+  public void testOperationBatches() throws SQLException {
+    Session session = sessionManager.openSession(null, null, null);
+    Statement jdbcStatement = session.getConnection().createStatement();
+    Operation operation = sessionManager.newOperation(
+      session, null, jdbcStatement.executeQuery("SELECT X FROM SYSTEM_RANGE(1, 5)"), jdbcStatement);
+    assertEquals(2, ResultSets.rowCount(operation.next(2)));
+    assertEquals(2, ResultSets.rowCount(operation.next(2)));
+    assertEquals(1, ResultSets.rowCount(operation.next(2)));
+    // closed once exhausted, together with its statement
+    assertTrue(operation.isClosed());
+    assertTrue(jdbcStatement.isClosed());
+    assertEquals(0, ResultSets.rowCount(operation.next(2)));
+  }
+}
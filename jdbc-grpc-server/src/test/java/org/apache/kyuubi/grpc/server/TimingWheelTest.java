@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.kyuubi.grpc.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+  @Test
+  public void testNeverExpireEarly() {
+    TimingWheel<Long> wheel = new TimingWheel<>(10, 8, 1000);
+    Random random = new Random(42);
+    List<Long> deadlines = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      // spans the first level and several overflow levels
+      long deadline = 1000 + random.nextInt(100000);
+      deadlines.add(deadline);
+      wheel.schedule(deadline, deadline);
+    }
+    assertEquals(10000, wheel.size());
+
+    List<Long> expired = new ArrayList<>();
+    for (long now = 1000; now <= 101010; now += 7) {
+      for (long deadline : wheel.advance(now)) {
+        assertTrue(deadline <= now);
+        // at the first tick at or after the deadline
+        assertTrue(deadline + 10 + 7 > now);
+        expired.add(deadline);
+      }
+    }
+    assertEquals(0, wheel.size());
+    Collections.sort(deadlines);
+    Collections.sort(expired);
+    assertEquals(deadlines, expired);
+  }
+
+  @Test
+  public void testScheduleWhileAdvancing() {
+    TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+    wheel.schedule("past", -5);
+    wheel.schedule("far", 1000);
+    assertEquals(Collections.singletonList("past"), wheel.advance(0));
+    // skipped over without any item due in between
+    assertTrue(wheel.advance(500).isEmpty());
+    wheel.schedule("near", 520);
+    assertEquals(Collections.singletonList("near"), wheel.advance(520));
+    assertTrue(wheel.advance(999).isEmpty());
+    assertEquals(Collections.singletonList("far"), wheel.advance(1000));
+    assertEquals(0, wheel.size());
+  }
+}